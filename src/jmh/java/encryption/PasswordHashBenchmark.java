@@ -0,0 +1,48 @@
+package encryption;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of checking a password at login ({@link PasswordHash#verifyPassword(String, String)}): the current
+ * PBKDF2-SHA256 hashes at a few iteration counts, and the legacy PBKDF2-SHA1 hashes (1000 iterations) still found in
+ * old databases. {@link PasswordHashCalibration} picks the iterations for a machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PasswordHashBenchmark {
+
+    private static final String PASSWORD = "Password123";
+
+    @Param({"100000", "310000"})
+    int iterations;
+
+    private String hash;
+    private String legacyHash;
+
+    @Setup
+    public void setUp() throws Exception {
+        hash = PasswordHash.generatePasswordHash(PASSWORD, iterations);
+        // Same format as the hashes written before the versioned ones
+        byte[] salt = new byte[16];
+        TokenUtils.random().nextBytes(salt);
+        byte[] legacy = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1")
+                .generateSecret(new PBEKeySpec(PASSWORD.toCharArray(), salt, 1000, 64 * 8)).getEncoded();
+        legacyHash = "1000:" + HexFormat.of().formatHex(salt) + ":" + HexFormat.of().formatHex(legacy);
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        return PasswordHash.verifyPassword(PASSWORD, hash);
+    }
+
+    @Benchmark
+    public boolean verifyLegacy() throws Exception {
+        return PasswordHash.verifyPassword(PASSWORD, legacyHash);
+    }
+}
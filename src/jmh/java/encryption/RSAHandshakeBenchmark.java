@@ -0,0 +1,70 @@
+package encryption;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the RSA operations of one handshake, with 2048-bit keys as the server and the clients use:
+ * <ul>
+ *     <li> {@code encryptToken}, {@code signToken}: what the server does for {@code TOKEN_REQUEST}</li>
+ *     <li> {@code decryptToken}, {@code verifyToken}: what the client does with the response, and
+ *          {@code decryptToken} is also the server's side of {@code CLIENT_AES_KEY}</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RSAHandshakeBenchmark {
+
+    private KeyPair serverKeys;
+    private KeyPair clientKeys;
+    private byte[] tokenBytes;
+    private String tokenBase64;
+    private String encryptedToken;
+    private byte[] signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        serverKeys = generator.generateKeyPair();
+        clientKeys = generator.generateKeyPair();
+        SecretKey token = TokenUtils.generateToken();
+        tokenBytes = token.getEncoded();
+        tokenBase64 = Base64.getEncoder().encodeToString(tokenBytes);
+        encryptedToken = RSAUtil.encrypt(tokenBase64, clientKeys.getPublic());
+        signature = signToken();
+    }
+
+    @Benchmark
+    public String encryptToken() throws Exception {
+        return RSAUtil.encrypt(tokenBase64, clientKeys.getPublic());
+    }
+
+    @Benchmark
+    public String decryptToken() throws Exception {
+        return RSAUtil.decrypt(encryptedToken, clientKeys.getPrivate());
+    }
+
+    @Benchmark
+    public byte[] signToken() throws Exception {
+        Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(serverKeys.getPrivate());
+        signer.update(tokenBytes);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public boolean verifyToken() throws Exception {
+        Signature verifier = Signature.getInstance("SHA256withRSA");
+        verifier.initVerify(serverKeys.getPublic());
+        verifier.update(tokenBytes);
+        return verifier.verify(signature);
+    }
+}
@@ -0,0 +1,91 @@
+package encryption;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encrypting and decrypting one protocol message with AES-GCM:
+ * <ul>
+ *     <li> {@code legacy*}: {@link TokenUtils} before the session engine (provider lookup and
+ *          {@code new SecureRandom()} on every message)</li>
+ *     <li> {@code tokenUtils*}: the static {@link TokenUtils} methods</li>
+ *     <li> {@code sessionCipher*}: a {@link SessionCipher} reused for the whole session</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionCipherBenchmark {
+
+    /** Typical request, patient listing, signal chunk, whole signal and the largest upload (50 MB) sizes */
+    @Param({"200", "4096", "65536", "1048576", "52428800"})
+    int size;
+
+    private SecretKey key;
+    private SessionCipher sessionCipher;
+    private String message;
+    private String encrypted;
+
+    @Setup
+    public void setUp() throws Exception {
+        key = TokenUtils.generateToken();
+        sessionCipher = new SessionCipher(key);
+        StringBuilder json = new StringBuilder("{\"type\":\"REQUEST_SIGNAL_RESPONSE\",\"dataBytes\":\"");
+        while (json.length() < size - 2) json.append('A');
+        message = json.append("\"}").toString();
+        encrypted = TokenUtils.encrypt(message, key);
+    }
+
+    @Benchmark
+    public String legacyEncrypt() throws Exception {
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        byte[] encryptedText = cipher.doFinal(message.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.allocate(iv.length + encryptedText.length);
+        buffer.put(iv);
+        buffer.put(encryptedText);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    @Benchmark
+    public String legacyDecrypt() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encrypted));
+        byte[] iv = new byte[12];
+        buffer.get(iv);
+        byte[] rest = new byte[buffer.remaining()];
+        buffer.get(rest);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        return new String(cipher.doFinal(rest), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String tokenUtilsEncrypt() throws Exception {
+        return TokenUtils.encrypt(message, key);
+    }
+
+    @Benchmark
+    public String tokenUtilsDecrypt() throws Exception {
+        return TokenUtils.decrypt(encrypted, key);
+    }
+
+    @Benchmark
+    public String sessionCipherEncrypt() throws Exception {
+        return sessionCipher.encrypt(message);
+    }
+
+    @Benchmark
+    public String sessionCipherDecrypt() throws Exception {
+        return sessionCipher.decrypt(encrypted);
+    }
+}
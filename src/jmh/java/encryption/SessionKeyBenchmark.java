@@ -0,0 +1,51 @@
+package encryption;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AES key generation during a reconnect storm: 500 handshakes ask for their session key at the same time
+ * (change it with {@code -t}). Sampled, so the report has the percentiles of the per-handshake latency:
+ * <ul>
+ *     <li> {@code legacyStrongRandom}: as {@code TokenUtils.generateToken} used to do it, a {@code KeyGenerator}
+ *          with {@code SecureRandom.getInstanceStrong()} for every key</li>
+ *     <li> {@code sessionKeyService}: {@link SessionKeyService#nextKey()}, from the pool while it lasts</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(500)
+public class SessionKeyBenchmark {
+
+    private SessionKeyService service;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        service = SessionKeyService.getInstance();
+        Thread.sleep(200); // let the pool fill, as it does between storms
+    }
+
+    @Benchmark
+    public SecretKey legacyStrongRandom() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128, SecureRandom.getInstanceStrong());
+        return keyGenerator.generateKey();
+    }
+
+    @Benchmark
+    public SecretKey sessionKeyService() {
+        return service.nextKey();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%nSessionKeyService: %d keys from the pool, %d generated by callers, %.1f us/key generating%n",
+                service.getPoolHits(), service.getPoolMisses(),
+                service.getGenerationNanos() / 1000.0 / Math.max(1, service.getGeneratedKeys()));
+    }
+}
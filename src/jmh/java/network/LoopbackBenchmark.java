@@ -0,0 +1,176 @@
+package network;
+
+import com.google.gson.JsonObject;
+import encryption.PasswordHash;
+import org.example.JDBC.medicaldb.MedicalConnection;
+import org.example.JDBC.medicaldb.MedicalManager;
+import org.example.JDBC.securitydb.SecurityConnection;
+import org.example.JDBC.securitydb.SecurityManager;
+import org.example.entities_medicaldb.Doctor;
+import org.example.entities_medicaldb.Patient;
+import org.example.entities_medicaldb.Signal;
+import org.example.entities_securitydb.User;
+import org.example.service.AdminLinkService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Round trips of real requests through a {@link Server} on the loopback interface, with a {@link ProtocolClient}
+ * per benchmark thread:
+ * <ul>
+ *     <li> {@code handshake}: connecting and getting the AES key (RSA on both sides, the client's public key
+ *          stored)</li>
+ *     <li> {@code login}: {@code LOGIN_REQUEST} of a doctor, mostly the password hash at the configured
+ *          {@code nightguardian.passwordIterations}</li>
+ *     <li> {@code requestSignal}: {@code REQUEST_SIGNAL} of a recording of {@code signalBytes} bytes, sent back as
+ *          Base64</li>
+ * </ul>
+ * The server runs in the benchmark JVM on copies of the databases in a temporary directory
+ * ({@code nightguardian.medicalDb}, {@code nightguardian.securityDb}, {@code nightguardian.blobStore}), seeded with
+ * one active doctor, one patient and one signal. Its log is set to {@code WARN}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoopbackBenchmark {
+
+    static final String EMAIL = "bench.doctor@nightguardian.test";
+    static final String PASSWORD = "Password123";
+    static final int TIMEOUT_MS = 30_000;
+
+    @Param({"65536", "1048576"})
+    int signalBytes;
+
+    private Path directory;
+    private MedicalManager medicalManager;
+    private SecurityManager securityManager;
+    private Server server;
+    private int port;
+    private int signalId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("loopback-bench");
+        Path medicalDb = directory.resolve("Medicaldb.db");
+        Path securityDb = directory.resolve("Securitydb.db");
+        Files.copy(Paths.get(MedicalConnection.DEFAULT_PATH), medicalDb);
+        Files.copy(Paths.get(SecurityConnection.DEFAULT_PATH), securityDb);
+        System.setProperty("nightguardian.medicalDb", medicalDb.toString());
+        System.setProperty("nightguardian.securityDb", securityDb.toString());
+        System.setProperty("nightguardian.blobStore", directory.resolve("blobs").toString());
+        System.setProperty("nightguardian.keystore", directory.resolve("server_keys.p12").toString());
+        System.setProperty("nightguardian.metricsPort", "0");
+        System.setProperty("nightguardian.logLevel", "WARN");
+
+        medicalManager = new MedicalManager();
+        securityManager = new SecurityManager();
+        seed();
+
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new Server(port, new AdminLinkService(medicalManager, securityManager));
+        server.startServer();
+    }
+
+    private void seed() throws Exception {
+        int doctorRole = securityManager.getRoleJDBC().findRoleByName("Doctor").getId();
+        securityManager.getUserJDBC().insertUser(new User(EMAIL, PasswordHash.generatePasswordHash(PASSWORD), doctorRole, true));
+        securityManager.getUserJDBC().updateUserActiveStatus(EMAIL, true);
+        medicalManager.getDoctorJDBC().insertDoctor(new Doctor("Bench", "Doctor", "600000000", EMAIL, "Neurology", "Epilepsy"));
+        int doctorId = medicalManager.getDoctorJDBC().findDoctorByEmail(EMAIL).getId();
+
+        String patientEmail = "bench.patient@nightguardian.test";
+        medicalManager.getPatientJDBC().insertPatient(new Patient("Bench", "Patient", patientEmail, "600000001",
+                LocalDate.of(2000, 1, 1), "Female", doctorId));
+        int patientId = medicalManager.getPatientJDBC().findPatientByEmail(patientEmail).getId();
+
+        byte[] content = new byte[signalBytes];
+        new Random(42).nextBytes(content);
+        Path recording = Files.write(directory.resolve("signal.zip"), content);
+        medicalManager.getSignalJDBC().insertSignal(new Signal(recording.toFile(), LocalDate.now(), "Bench signal", patientId, 100));
+        signalId = medicalManager.getSignalJDBC().getSignalSummariesByPatientId(patientId).get(0).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop();
+        medicalManager.close();
+        securityManager.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    ProtocolClient connect(KeyPair keys) throws Exception {
+        IOException last = null;
+        for (int attempt = 0; attempt < 50; attempt++) { // the server thread may not be listening yet
+            try {
+                return ProtocolClient.connect("127.0.0.1", port, EMAIL, keys, TIMEOUT_MS);
+            } catch (IOException e) {
+                last = e;
+                Thread.sleep(100);
+            }
+        }
+        throw last;
+    }
+
+    /**
+     * The logged-in session of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Session {
+        KeyPair keys;
+        ProtocolClient client;
+        int userId;
+
+        @Setup(Level.Trial)
+        public void open(LoopbackBenchmark benchmark) throws Exception {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            keys = generator.generateKeyPair();
+            client = benchmark.connect(keys);
+            JsonObject response = client.login(EMAIL, PASSWORD, "Doctor");
+            if (!"SUCCESS".equals(response.get("status").getAsString())) {
+                throw new IllegalStateException("Login failed: " + response);
+            }
+            userId = response.getAsJsonObject("data").get("id").getAsInt();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public void handshake(Session session) throws Exception {
+        connect(session.keys).close();
+    }
+
+    @Benchmark
+    public JsonObject login(Session session) throws Exception {
+        return session.client.login(EMAIL, PASSWORD, "Doctor");
+    }
+
+    @Benchmark
+    public JsonObject requestSignal(Session session) throws Exception {
+        JsonObject data = new JsonObject();
+        data.addProperty("signal_id", signalId);
+        data.addProperty("user_id", session.userId);
+        return session.client.request("REQUEST_SIGNAL", data);
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.JDBC;
+
+import org.example.JDBC.medicaldb.DoctorJDBC;
+import org.example.JDBC.medicaldb.PatientJDBC;
+import org.example.JDBC.medicaldb.ReportJDBC;
+import org.example.JDBC.medicaldb.SignalJDBC;
+import org.example.JDBC.securitydb.RoleJDBC;
+import org.example.JDBC.securitydb.UserJDBC;
+import org.example.entities_medicaldb.Doctor;
+import org.example.entities_securitydb.Role;
+import org.example.entities_securitydb.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * What the {@link StatementCache} saves on the two hottest database paths of the server, on copies of
+ * {@code Medicaldb.db} and {@code Securitydb.db}, with the cache disabled ({@code cacheSize} 0) and with
+ * {@link ConnectionPool#DEFAULT_STATEMENT_CACHE_SIZE}:
+ * <ul>
+ *     <li> {@code login}: {@code UserJDBC.isUser}, {@code UserJDBC.findUserByEmail} and {@code RoleJDBC.findRoleByID}
+ *          (the password check itself is left out, it is measured with the crypto code)</li>
+ *     <li> {@code listing}: the three queries of {@code MedicalManager.getDoctorPanel}</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StatementCacheBenchmark {
+
+    private static final String DATABASES = "src/main/java/org/example/DataBases";
+
+    @Param({"0", "32"}) // 32 = ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE
+    int cacheSize;
+
+    private Path directory;
+    private ConnectionPool medicalPool;
+    private ConnectionPool securityPool;
+    private UserJDBC userJDBC;
+    private RoleJDBC roleJDBC;
+    private PatientJDBC patientJDBC;
+    private SignalJDBC signalJDBC;
+    private ReportJDBC reportJDBC;
+    private String email;
+    private int doctorId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("statement-cache-bench");
+        Path medical = Files.copy(Path.of(DATABASES, "Medicaldb.db"), directory.resolve("Medicaldb.db"));
+        Path security = Files.copy(Path.of(DATABASES, "Securitydb.db"), directory.resolve("Securitydb.db"));
+        medicalPool = new ConnectionPool("jdbc:sqlite:" + medical, 2, 5000, cacheSize);
+        securityPool = new ConnectionPool("jdbc:sqlite:" + security, 2, 5000, cacheSize);
+
+        userJDBC = new UserJDBC(securityPool.getConnection());
+        roleJDBC = new RoleJDBC(securityPool.getConnection());
+        List<User> users = userJDBC.getAllUsers();
+        if (users.isEmpty()) throw new IllegalStateException("Securitydb has no users");
+        email = users.get(0).getEmail();
+
+        patientJDBC = new PatientJDBC(medicalPool.getConnection());
+        signalJDBC = new SignalJDBC(medicalPool.getConnection());
+        reportJDBC = new ReportJDBC(medicalPool.getConnection());
+        List<Doctor> doctors = new DoctorJDBC(medicalPool.getConnection()).getAllDoctors();
+        if (doctors.isEmpty()) throw new IllegalStateException("Medicaldb has no doctors");
+        doctorId = doctors.get(0).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        medicalPool.close();
+        securityPool.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public Role login() {
+        if (!userJDBC.isUser(email)) return null;
+        User user = userJDBC.findUserByEmail(email);
+        return roleJDBC.findRoleByID(user.getRole_id());
+    }
+
+    @Benchmark
+    public int listing() {
+        return patientJDBC.getPatientsOfDoctor(doctorId).size()
+                + signalJDBC.getSignalSummariesOfDoctor(doctorId).size()
+                + reportJDBC.getReportsOfDoctor(doctorId).size();
+    }
+}
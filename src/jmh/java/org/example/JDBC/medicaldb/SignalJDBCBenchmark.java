@@ -0,0 +1,118 @@
+package org.example.JDBC.medicaldb;
+
+import org.example.JDBC.ConnectionPool;
+import org.example.entities_medicaldb.Signal;
+import org.example.entities_medicaldb.SignalSummary;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of the {@link SignalJDBC} operations behind the signal requests, on a temporary SQLite file opened through a
+ * {@link ConnectionPool} as the server does, seeded with {@link #SIGNALS} signals of {@code recordingBytes} bytes
+ * spread over {@link #PATIENTS} patients:
+ * <ul>
+ *     <li> {@code insertSignal}: a new recording ({@code UPLOAD_SIGNAL}), written to a file before each call</li>
+ *     <li> {@code readSignal}: opening a signal and reading its whole recording ({@code REQUEST_SIGNAL})</li>
+ *     <li> {@code listSignals}: the summaries of a patient's signals ({@code REQUEST_PATIENT_SIGNALS})</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignalJDBCBenchmark {
+
+    static final int SIGNALS = 100;
+    static final int PATIENTS = 10;
+
+    @Param({"65536", "1048576"})
+    int recordingBytes;
+
+    private Path directory;
+    private ConnectionPool pool;
+    private SignalJDBC signalJDBC;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("signal-bench");
+        pool = new ConnectionPool("jdbc:sqlite:" + directory.resolve("medical.db"));
+        Connection connection = pool.getConnection();
+        try (Statement st = connection.createStatement()) {
+            // Same table as Medicaldb.db
+            st.executeUpdate("CREATE TABLE Signal (id INTEGER PRIMARY KEY AUTOINCREMENT, path BLOB NOT NULL, "
+                    + "date TEXT, comments TEXT, sampleFrequency REAL, patient_id INTEGER)");
+        }
+        signalJDBC = new SignalJDBC(connection, new SignalBlobStore(directory.resolve("blobs")));
+        for (int i = 0; i < SIGNALS; i++) {
+            File recording = newRecording();
+            signalJDBC.insertSignal(new Signal(recording, LocalDate.now().minusDays(i), "Seeded signal",
+                    1 + i % PATIENTS, 100));
+            Files.delete(recording.toPath());
+        }
+    }
+
+    private File newRecording() throws Exception {
+        byte[] content = new byte[recordingBytes];
+        random.nextBytes(content);
+        Path file = Files.createTempFile(directory, "signal_", ".zip");
+        Files.write(file, content);
+        return file.toFile();
+    }
+
+    /**
+     * The recording uploaded by one {@code insertSignal} call, written before the call and not measured.
+     */
+    @State(Scope.Thread)
+    public static class Upload {
+        File file;
+
+        @Setup(Level.Invocation)
+        public void write(SignalJDBCBenchmark benchmark) throws Exception {
+            file = benchmark.newRecording();
+        }
+
+        @TearDown(Level.Invocation)
+        public void delete() throws Exception {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pool.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public boolean insertSignal(Upload upload) {
+        return signalJDBC.insertSignal(new Signal(upload.file, LocalDate.now(), "New signal", 1, 100));
+    }
+
+    @Benchmark
+    public long readSignal() throws Exception {
+        Signal signal = signalJDBC.openSignal(1 + random.nextInt(SIGNALS));
+        try (InputStream recording = signal.openRecordingStream()) {
+            return recording.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public List<SignalSummary> listSignals() {
+        return signalJDBC.getSignalSummariesByPatientId(1 + random.nextInt(PATIENTS));
+    }
+}
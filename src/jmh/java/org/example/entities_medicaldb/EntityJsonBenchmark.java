@@ -0,0 +1,77 @@
+package org.example.entities_medicaldb;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the JSON of the entities the server sends and turning it into the text of the message, as
+ * {@code ClientHandler} does with {@link Gson#toJson(com.google.gson.JsonElement)}: one patient, one signal, one
+ * report, and the panel of a doctor with {@code patients} patients ({@code REQUEST_PATIENTS_FROM_DOCTOR}), each
+ * with 10 signals and 10 reports.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EntityJsonBenchmark {
+
+    @Param({"20"})
+    int patients;
+
+    private final Gson gson = new Gson();
+    private Patient patient;
+    private Signal signal;
+    private Report report;
+    private List<PatientPanel> panels;
+
+    @Setup
+    public void setUp() {
+        LocalDate today = LocalDate.of(2025, 11, 22);
+        Report.Symptom[] symptoms = Report.Symptom.values();
+        patient = new Patient(1, "Jane", "Doe", "jane.doe@example.com", "123456789",
+                LocalDate.of(2004, 5, 11), "Female", true, 3);
+        signal = new Signal(7, today, "Seizure during the night, 2 minutes", 1, 100);
+        report = new Report(5, today, new ArrayList<>(List.of(symptoms[0], symptoms[1], symptoms[2])), 1);
+
+        panels = new ArrayList<>();
+        for (int p = 0; p < patients; p++) {
+            List<SignalSummary> signals = new ArrayList<>();
+            List<Report> reports = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                signals.add(new SignalSummary(p * 10 + i, today.minusDays(i), "Comments of the signal", p, 100));
+                reports.add(new Report(p * 10 + i, today.minusDays(i), new ArrayList<>(List.of(symptoms[i % symptoms.length])), p));
+            }
+            panels.add(new PatientPanel(new Patient(p, "Name" + p, "Surname" + p, "patient" + p + "@example.com",
+                    "600000000", LocalDate.of(1990, 1, 1).plusDays(p), "Male", true, 3), signals, reports));
+        }
+    }
+
+    @Benchmark
+    public String patient() {
+        return gson.toJson(patient.toJason());
+    }
+
+    @Benchmark
+    public String signal() {
+        return gson.toJson(signal.toJson());
+    }
+
+    @Benchmark
+    public String report() {
+        return gson.toJson(report.toJson());
+    }
+
+    @Benchmark
+    public String doctorPanel() {
+        JsonArray array = new JsonArray();
+        for (PatientPanel panel : panels) {
+            array.add(panel.toJson());
+        }
+        return gson.toJson(array);
+    }
+}
@@ -2,92 +2,118 @@ package encryption;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
-import java.math.BigInteger;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
+import java.util.HexFormat;
 
 /**
- * This {@code PasswordHash} class is used for hashing a String password with the "PBKDF2WithmacSHA1" algorithm.
+ * This {@code PasswordHash} class is used for hashing a String password with the "PBKDF2WithHmacSHA256" algorithm.
  * This hashing will ensure the security of the storage of passwords of the {@code User} instances inside the
  * {@code securitydb} database.
+ * <p>
+ * Hashes are versioned, so the parameters can be made stronger without making users reset their passwords:
+ * </p>
+ * <ul>
+ *     <li> Version 1 (legacy): {@code iterations:salt:hash}, PBKDF2WithHmacSHA1, 1000 iterations, 64-byte hash</li>
+ *     <li> Version 2: {@code v2:iterations:salt:hash}, PBKDF2WithHmacSHA256, 32-byte hash, with the iterations
+ *          given by the {@code nightguardian.passwordIterations} property ({@link #DEFAULT_ITERATIONS} by default,
+ *          see {@link PasswordHashCalibration} to choose it for the server's hardware)</li>
+ * </ul>
+ * Salts are 16 random bytes. Both versions are verified, and {@link #needsRehash(String)} tells when a stored hash
+ * should be replaced by a new one after a successful login.
  */
 public class PasswordHash {
 
+    public static final int DEFAULT_ITERATIONS = 310_000;
+    private static final String VERSION_2 = "v2";
+    private static final String ALGORITHM_2 = "PBKDF2WithHmacSHA256";
+    private static final String ALGORITHM_1 = "PBKDF2WithHmacSHA1";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES_2 = 32;
+    private static final HexFormat HEX = HexFormat.of();
 
     /**
+     * @return the iterations used for new hashes
+     */
+    public static int getIterations() {
+        return Integer.getInteger("nightguardian.passwordIterations", DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Hashes a password with the current version and parameters.
      *
      * @param password
-     * @return
+     * @return the hash to store, {@code v2:iterations:salt:hash}
      * @throws NoSuchAlgorithmException
      * @throws InvalidKeySpecException
      */
     public static String generatePasswordHash (String password) throws NoSuchAlgorithmException, InvalidKeySpecException {
-        int iterations = 1000;
-        char[] chars = password.toCharArray();
-        byte[] salt = generateSalt();
-
-        PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, 64*8);
-        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-
-        byte[] hash = new byte[0];
-        hash = skf.generateSecret(spec).getEncoded();
-        return iterations + ":" + toHex(salt)+ ":" + toHex(hash);
+        return generatePasswordHash(password, getIterations());
     }
 
+    /**
+     * Hashes a password with the current version and the given number of iterations.
+     */
+    static String generatePasswordHash (String password, int iterations) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        byte[] salt = generateSalt();
+        byte[] hash = pbkdf2(ALGORITHM_2, password, salt, iterations, HASH_BYTES_2);
+        return VERSION_2 + ":" + iterations + ":" + HEX.formatHex(salt) + ":" + HEX.formatHex(hash);
+    }
 
-    private static byte[] generateSalt() throws NoSuchAlgorithmException {
-        SecureRandom sr = SecureRandom.getInstance("SHA1PRNG");
-        byte[] salt = new byte[16];
-        sr.nextBytes(salt);
+    private static byte[] generateSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        TokenUtils.random().nextBytes(salt);
         return salt;
     }
 
-    private static String toHex(byte[] array) throws NoSuchAlgorithmException {
-        BigInteger bi = new BigInteger(1, array);
-        String hex = bi.toString(16);
-
-        int paddingLength = (array.length*2) - hex.length();
-        if (paddingLength > 0){
-            return String.format("%0"+paddingLength+"d",0)+hex;
-        }else{
-            return hex;
+    private static byte[] pbkdf2(String algorithm, String password, byte[] salt, int iterations, int length)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, length * 8);
+        try {
+            return SecretKeyFactory.getInstance(algorithm).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
         }
     }
 
     /**
-     *
+     * Checks a password against a stored hash of any version.
      *
      * @param inputPassword
      * @param dbPassword
-     * @return
+     * @return <code> true </code> if the password matches
      * @throws NoSuchAlgorithmException
      * @throws InvalidKeySpecException
      */
     public static boolean verifyPassword (String inputPassword, String dbPassword) throws NoSuchAlgorithmException, InvalidKeySpecException {
         String[] parts = dbPassword.split(":");
+        boolean version2 = parts.length == 4 && parts[0].equals(VERSION_2);
+        int first = version2 ? 1 : 0;
 
         // Use the stored salt, hash and iterations from dbPassword
-        int iterations = Integer.parseInt(parts[0]);
-        byte[] salt = fromHex(parts[1]);
-        byte[] hash = fromHex(parts[2]);
+        int iterations = Integer.parseInt(parts[first]);
+        byte[] salt = HEX.parseHex(parts[first + 1]);
+        byte[] hash = HEX.parseHex(parts[first + 2]);
 
         // Hash the raw input password using salt, hash and iterations parameters
-        PBEKeySpec spec = new PBEKeySpec(inputPassword.toCharArray(),salt,iterations,hash.length*8);
-        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-        byte[] testHash = skf.generateSecret(spec).getEncoded();
-        int diff = hash.length ^ testHash.length;
-        for(int i =0;i<hash.length&&i<testHash.length;i++){
-            diff |= hash[i]^testHash[i];
-        }
-        return diff ==0;
+        byte[] testHash = pbkdf2(version2 ? ALGORITHM_2 : ALGORITHM_1, inputPassword, salt, iterations, hash.length);
+        return MessageDigest.isEqual(hash, testHash);
     }
 
-    private static byte[] fromHex (String hex) throws NoSuchAlgorithmException{
-        byte[] bytes = new byte[hex.length()/2];
-        for(int i=0; i<bytes.length;i++){
-            bytes[i] = (byte)Integer.parseInt(hex.substring(2*i,2*i+2),16);
+    /**
+     * @param dbPassword    a stored hash
+     * @return              <code> true </code> if it is an older version, or has fewer iterations than new hashes
+     */
+    public static boolean needsRehash(String dbPassword) {
+        String[] parts = dbPassword.split(":");
+        if (parts.length != 4 || !parts[0].equals(VERSION_2)) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(parts[1]) < getIterations();
+        } catch (NumberFormatException e) {
+            return true;
         }
-        return bytes;
     }
 }
@@ -0,0 +1,56 @@
+package encryption;
+
+import java.util.Arrays;
+
+/**
+ * Chooses the iterations of {@link PasswordHash} for the machine it runs on: the number that makes one hash take
+ * about the target time (250 ms by default). It times hashes at a probe count, scales it to the target (PBKDF2 is
+ * linear in the iterations), rounds it down to a multiple of 10000 and times that count to check it.
+ * <p>
+ *     Usage: {@code PasswordHashCalibration [targetMillis]}, then start the server with the printed
+ *     {@code -Dnightguardian.passwordIterations}. Hashes with fewer iterations are replaced on the next login of
+ *     each user.
+ * </p>
+ */
+public class PasswordHashCalibration {
+
+    private static final int PROBE_ITERATIONS = 50_000;
+    private static final int MIN_ITERATIONS = 100_000;
+    private static final int SAMPLES = 5;
+
+    public static void main(String[] args) throws Exception {
+        long targetMillis = args.length > 0 ? Long.parseLong(args[0]) : 250;
+
+        // Until the JIT has compiled PBKDF2 the probe is several times slower, repeat it until it is stable
+        double probeMillis = time(PROBE_ITERATIONS);
+        for (int i = 0; i < 10; i++) {
+            double previous = probeMillis;
+            probeMillis = time(PROBE_ITERATIONS);
+            if (Math.abs(previous - probeMillis) < previous * 0.05) break;
+        }
+        int iterations = (int) Math.min(Integer.MAX_VALUE, PROBE_ITERATIONS * targetMillis / probeMillis);
+        iterations = Math.max(MIN_ITERATIONS, iterations / 10_000 * 10_000);
+
+        System.out.printf("%d iterations: %.1f ms per hash%n", PROBE_ITERATIONS, probeMillis);
+        System.out.printf("%d iterations: %.1f ms per hash (target %d ms)%n", iterations, time(iterations), targetMillis);
+        if (iterations == MIN_ITERATIONS) {
+            System.out.println("The target is too low for this machine, using the minimum of " + MIN_ITERATIONS);
+        }
+        System.out.println("Current: " + PasswordHash.getIterations() + " iterations");
+        System.out.println("-Dnightguardian.passwordIterations=" + iterations);
+    }
+
+    /**
+     * @return the median time of a hash with the given iterations, in milliseconds
+     */
+    private static double time(int iterations) throws Exception {
+        long[] nanos = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            PasswordHash.generatePasswordHash("calibration-password", iterations);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[SAMPLES / 2] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,133 @@
+package encryption;
+
+import metrics.ServerMetrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code PasswordHashPool} class runs the password hashes of the server ({@link PasswordHash}) on a fixed number
+ * of threads, instead of on the thread of each client.
+ * <ul>
+ *     <li> A hash is made deliberately slow, so a burst of logins (or someone trying passwords) would otherwise take
+ *          every core and slow down the clients that are already logged in. With the pool at most
+ *          {@code threads} hashes run at once</li>
+ *     <li> At most {@code queueSize} more wait for a thread. When the queue is full the request is refused right
+ *          away with a {@link RejectedExecutionException}, and the login fails, instead of piling up</li>
+ *     <li> It counts the hashes run and refused, and the time spent waiting for a thread</li>
+ *     <li> The time a caller waits for its hash (queue and hash) is reported to the {@link ServerMetrics} as
+ *          cryptography time of the caller</li>
+ * </ul>
+ * The shared pool ({@link #getInstance()}) uses the {@code nightguardian.passwordThreads} (half the cores by default)
+ * and {@code nightguardian.passwordQueue} ({@link #DEFAULT_QUEUE_SIZE} by default) properties.
+ */
+public class PasswordHashPool {
+
+    public static final int DEFAULT_QUEUE_SIZE = 32;
+
+    private static final class Holder {
+        static final PasswordHashPool INSTANCE = new PasswordHashPool(
+                Integer.getInteger("nightguardian.passwordThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Integer.getInteger("nightguardian.passwordQueue", DEFAULT_QUEUE_SIZE));
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * @param threads       number of hashes that can run at once
+     * @param queueSize     number of hashes that can wait for a thread
+     */
+    public PasswordHashPool(int threads, int queueSize) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "password-hash-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @return the pool used by the server
+     */
+    public static PasswordHashPool getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * {@link PasswordHash#verifyPassword(String, String)} on the pool.
+     *
+     * @throws RejectedExecutionException if the pool is full
+     * @throws Exception if the hash fails
+     */
+    public boolean verifyPassword(String inputPassword, String dbPassword) throws Exception {
+        return run(() -> PasswordHash.verifyPassword(inputPassword, dbPassword));
+    }
+
+    /**
+     * {@link PasswordHash#generatePasswordHash(String)} on the pool.
+     *
+     * @throws RejectedExecutionException if the pool is full
+     * @throws Exception if the hash fails
+     */
+    public String generatePasswordHash(String password) throws Exception {
+        return run(() -> PasswordHash.generatePasswordHash(password));
+    }
+
+    /**
+     * Runs a hash on the pool and waits for it.
+     */
+    <T> T run(Callable<T> hash) throws Exception {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                waitNanos.addAndGet(System.nanoTime() - submitted);
+                return hash.call();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        } finally {
+            completed.incrementAndGet();
+            ServerMetrics.getInstance().addCryptoNanos(System.nanoTime() - submitted);
+        }
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return total time hashes spent waiting for a thread, in nanoseconds
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+}
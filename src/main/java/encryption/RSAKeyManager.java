@@ -1,24 +1,41 @@
 package encryption;
 
+import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.security.*;
 import java.security.spec.*;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This {@code RSAKeyManager} class manages the creation of the RSA pair keys for encryption and decryption
  * of passwords in the admin interface.
  * The algorithm used for encryption and decryption is RSA. The class defines:
  * <ul>
- *     <li> A filename that will contain the public key</li>
- *     <li> A filename that will contain the private key</li>
+ *     <li> The keystore alias that contains the public key</li>
+ *     <li> The keystore alias that contains the private key</li>
  * </ul>
- *
+ * The server's pair is kept in a PKCS#12 keystore ({@link #loadOrCreateKeyPair()}), so the server starts without
+ * generating a key and clients see the same server key after a restart. The keystore is protected by a local
+ * passphrase and the pair is replaced when it is older than the rotation period, checked when the server starts
+ * and then periodically by the server.
  *
  * @author pblan
  */
 public class RSAKeyManager {
-    private static final String publicKeyFile = "public_key"; //Static -> belongs to the class not the object
-    private static final String privateKeyFile = "private_key";
+    private static final String publicKeyAlias = "public_key"; //Static -> belongs to the class not the object
+    private static final String privateKeyAlias = "private_key";
+
+    // Outside of the sources, so the private key is never packaged or committed by mistake
+    public static final String DEFAULT_KEYSTORE = Paths.get(System.getProperty("user.home"), ".nightguardian", "server_keys.p12").toString();
+    // Where older versions kept it, moved to the default location the first time
+    static final String LEGACY_KEYSTORE = "src/main/java/org/example/DataBases/server_keys.p12";
+    public static final long DEFAULT_ROTATION_DAYS = 90;
+    private static final String PASSPHRASE_ENV = "NIGHTGUARDIAN_KEYSTORE_PASSWORD";
 
     public static KeyPair generateKeyPair() throws Exception {
         KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
@@ -27,4 +44,142 @@ public class RSAKeyManager {
         KeyPair pair = generator.generateKeyPair();
         return pair;
     }
+
+    /**
+     * Loads the server's key pair from the keystore configured with the {@code nightguardian.keystore} and
+     * {@code nightguardian.keyRotationDays} properties (by default {@link #DEFAULT_KEYSTORE}, rotated every
+     * {@link #DEFAULT_ROTATION_DAYS} days).
+     * <p>
+     * The passphrase is taken from the {@code NIGHTGUARDIAN_KEYSTORE_PASSWORD} environment variable or, when it
+     * is not set, from a {@code .pass} file next to the keystore, created with a random passphrase and only
+     * readable by its owner the first time.
+     * </p>
+     *
+     * @return the stored pair, or a new one
+     * @throws Exception if no pair can be loaded or generated
+     */
+    public static KeyPair loadOrCreateKeyPair() throws Exception {
+        String configured = System.getProperty("nightguardian.keystore");
+        File keystore = new File(configured != null ? configured : DEFAULT_KEYSTORE);
+        if (configured == null) {
+            moveLegacyKeystore(keystore);
+        }
+        long rotationDays = Long.getLong("nightguardian.keyRotationDays", DEFAULT_ROTATION_DAYS);
+        String passphrase = System.getenv(PASSPHRASE_ENV);
+        if (passphrase == null || passphrase.isEmpty()) {
+            passphrase = readOrCreatePassphrase(new File(keystore.getPath().replaceFirst("\\.p12$", "") + ".pass"));
+        }
+        return loadOrCreateKeyPair(keystore, passphrase.toCharArray(), TimeUnit.DAYS.toMillis(rotationDays));
+    }
+
+    /**
+     * Loads the key pair stored in a keystore. A new pair is generated and stored when the keystore does not
+     * exist or its pair is older than {@code maxAgeMillis}. If the keystore cannot be read (wrong passphrase,
+     * damaged file) it is left untouched and a new pair is used for this run only.
+     *
+     * @param keystore      the PKCS#12 file
+     * @param passphrase    the passphrase of the file and its entries
+     * @param maxAgeMillis  the rotation period, 0 never rotates
+     * @return              the stored pair, or a new one
+     * @throws Exception if no pair can be generated
+     */
+    public static KeyPair loadOrCreateKeyPair(File keystore, char[] passphrase, long maxAgeMillis) throws Exception {
+        if (keystore.exists()) {
+            try {
+                KeyStore store = KeyStore.getInstance("PKCS12");
+                try (InputStream in = new FileInputStream(keystore)) {
+                    store.load(in, passphrase);
+                }
+                Date created = store.getCreationDate(privateKeyAlias);
+                if (maxAgeMillis > 0 && created != null && System.currentTimeMillis() - created.getTime() > maxAgeMillis) {
+                    System.out.println("Server key pair created on " + created + ", rotating it");
+                } else {
+                    return readKeyPair(store, passphrase);
+                }
+            } catch (IOException | GeneralSecurityException e) {
+                System.err.println("Error reading keystore " + keystore + ", using a temporary key pair: " + e.getMessage());
+                return generateKeyPair();
+            }
+        }
+        KeyPair pair = generateKeyPair();
+        storeKeyPair(pair, keystore, passphrase);
+        return pair;
+    }
+
+    /**
+     * Moves the keystore and its {@code .pass} file from {@link #LEGACY_KEYSTORE} to the default location, so
+     * clients keep seeing the same server key after the upgrade.
+     */
+    private static void moveLegacyKeystore(File keystore) {
+        Path legacy = Paths.get(LEGACY_KEYSTORE);
+        if (keystore.exists() || !Files.exists(legacy)) return;
+        try {
+            Path target = keystore.toPath().toAbsolutePath();
+            Files.createDirectories(target.getParent());
+            Path legacyPass = Paths.get(LEGACY_KEYSTORE.replaceFirst("\\.p12$", "") + ".pass");
+            if (Files.exists(legacyPass)) {
+                Files.move(legacyPass, Paths.get(target.toString().replaceFirst("\\.p12$", "") + ".pass"));
+            }
+            Files.move(legacy, target);
+            System.out.println("Server keystore moved from " + legacy + " to " + target);
+        } catch (IOException e) {
+            System.err.println("Error moving keystore " + legacy + ": " + e.getMessage());
+        }
+    }
+
+    private static KeyPair readKeyPair(KeyStore store, char[] passphrase) throws GeneralSecurityException {
+        Key publicKey = store.getKey(publicKeyAlias, passphrase);
+        Key privateKey = store.getKey(privateKeyAlias, passphrase);
+        if (publicKey == null || privateKey == null) {
+            throw new KeyStoreException("Keystore has no server key pair");
+        }
+        // The keys are stored as secret entries (PKCS#12 only stores private keys with a certificate)
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        return new KeyPair(keyFactory.generatePublic(new X509EncodedKeySpec(publicKey.getEncoded())),
+                keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKey.getEncoded())));
+    }
+
+    /**
+     * Writes the pair to a new keystore that replaces the previous one atomically.
+     */
+    private static void storeKeyPair(KeyPair pair, File keystore, char[] passphrase) {
+        try {
+            KeyStore store = KeyStore.getInstance("PKCS12");
+            store.load(null, null);
+            KeyStore.PasswordProtection protection = new KeyStore.PasswordProtection(passphrase);
+            store.setEntry(publicKeyAlias, new KeyStore.SecretKeyEntry(new SecretKeySpec(pair.getPublic().getEncoded(), "RSA")), protection);
+            store.setEntry(privateKeyAlias, new KeyStore.SecretKeyEntry(new SecretKeySpec(pair.getPrivate().getEncoded(), "RSA")), protection);
+
+            Path target = keystore.toPath().toAbsolutePath();
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(target.getParent(), keystore.getName(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                store.store(out, passphrase);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Server key pair stored in " + keystore);
+        } catch (IOException | GeneralSecurityException e) {
+            System.err.println("Error storing keystore " + keystore + ": " + e.getMessage());
+        }
+    }
+
+    private static String readOrCreatePassphrase(File file) throws IOException {
+        if (file.exists()) {
+            return Files.readString(file.toPath(), StandardCharsets.UTF_8).trim();
+        }
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        String passphrase = Base64.getEncoder().withoutPadding().encodeToString(random);
+        Path path = file.toPath().toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(path); // not a POSIX file system (Windows)
+        } catch (FileAlreadyExistsException e) {
+            return Files.readString(path, StandardCharsets.UTF_8).trim(); // created by another server meanwhile
+        }
+        Files.writeString(path, passphrase, StandardCharsets.UTF_8);
+        return passphrase;
+    }
 }
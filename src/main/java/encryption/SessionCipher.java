@@ -0,0 +1,207 @@
+package encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * AES-GCM engine bound to the AES key of one session. It produces exactly the same messages as
+ * {@link TokenUtils#encrypt(String, SecretKey)} (Base64 of IV + cipher text + tag), so both sides can keep
+ * using either, but it is meant to be created once per session and reused for every message:
+ * <ul>
+ *     <li> The {@link Cipher} instances are looked up once, not on every message</li>
+ *     <li> IVs are not drawn from a {@link SecureRandom} on every message: each IV is a random 8-byte prefix,
+ *          chosen when the engine is created, followed by a 4-byte message counter. IVs never repeat within
+ *          the engine, and two engines with the same key only collide if they draw the same 64-bit prefix</li>
+ *     <li> Cipher texts (and decrypted texts) go through byte buffers owned by the engine. They grow with the messages, and
+ *          go back to their initial size after a message larger than {@link #MAX_RETAINED_BUFFER_BYTES}
+ *          (a signal), so an idle session does not keep megabytes of heap</li>
+ * </ul>
+ * After 2<sup>32</sup> messages the counter would wrap around, the engine then refuses to encrypt and the
+ * session must exchange a new key. The engine is synchronized, but a session only uses it from one thread
+ * at a time.
+ * <p>
+ * Sessions using binary frames encrypt raw bytes instead of Base64 text, with
+ * {@link #encrypt(int, byte[], byte[]...)} and {@link #decrypt(byte[], byte[], int, int)}. Both share the IV
+ * counter of the text methods.
+ * </p>
+ *
+ * @see TokenUtils
+ */
+public class SessionCipher {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int TAG_LENGTH_BITS = 128;
+    static final int IV_LENGTH_BYTES = 12;
+    private static final int TAG_LENGTH_BYTES = TAG_LENGTH_BITS / 8;
+    private static final int PREFIX_LENGTH_BYTES = 8;
+    private static final int INITIAL_BUFFER_BYTES = 1024;
+    static final int MAX_RETAINED_BUFFER_BYTES = 1024 * 1024;
+
+    private final SecretKey key;
+    private final Cipher encryptCipher;
+    private final Cipher decryptCipher;
+    private final byte[] ivPrefix = new byte[PREFIX_LENGTH_BYTES];
+    private long counter = 0;
+    private byte[] plainBuffer = new byte[INITIAL_BUFFER_BYTES];
+    private byte[] cipherBuffer = new byte[INITIAL_BUFFER_BYTES];
+
+    /**
+     * @param key   the session's AES key
+     * @throws GeneralSecurityException if AES-GCM is not available
+     */
+    public SessionCipher(SecretKey key) throws GeneralSecurityException {
+        this.key = key;
+        this.encryptCipher = Cipher.getInstance(TRANSFORMATION);
+        this.decryptCipher = Cipher.getInstance(TRANSFORMATION);
+        TokenUtils.random().nextBytes(ivPrefix);
+    }
+
+    /**
+     * @return the key this engine was created for
+     */
+    public SecretKey getKey() {
+        return key;
+    }
+
+    /**
+     * Encrypts a text, same output as {@link TokenUtils#encrypt(String, SecretKey)}.
+     *
+     * @param text  the plain text
+     * @return      Base64 of IV + cipher text + tag
+     * @throws GeneralSecurityException if the encryption fails
+     */
+    public synchronized String encrypt(String text) throws GeneralSecurityException {
+        try {
+            // String.getBytes is an intrinsic copy for the ASCII JSON of the protocol, faster than any reuse
+            byte[] plain = text.getBytes(StandardCharsets.UTF_8);
+            int length = encrypt(plain, 0, plain.length);
+            ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(cipherBuffer, 0, length));
+            return new String(encoded.array(), 0, encoded.limit(), StandardCharsets.ISO_8859_1);
+        } finally {
+            trimBuffers();
+        }
+    }
+
+    /**
+     * Encrypts bytes into the engine's cipher buffer.
+     *
+     * @return the number of bytes of IV + cipher text + tag written to {@link #cipherBuffer}
+     */
+    private int encrypt(byte[] plain, int offset, int length) throws GeneralSecurityException {
+        if (counter > 0xFFFF_FFFFL) {
+            throw new IllegalStateException("Session key used for 2^32 messages, a new key must be exchanged");
+        }
+        int total = IV_LENGTH_BYTES + length + TAG_LENGTH_BYTES;
+        if (cipherBuffer.length < total) cipherBuffer = new byte[Math.max(total, cipherBuffer.length * 2)];
+
+        System.arraycopy(ivPrefix, 0, cipherBuffer, 0, PREFIX_LENGTH_BYTES);
+        int c = (int) counter++;
+        cipherBuffer[8] = (byte) (c >>> 24);
+        cipherBuffer[9] = (byte) (c >>> 16);
+        cipherBuffer[10] = (byte) (c >>> 8);
+        cipherBuffer[11] = (byte) c;
+
+        encryptCipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, cipherBuffer, 0, IV_LENGTH_BYTES));
+        return IV_LENGTH_BYTES + encryptCipher.doFinal(plain, offset, length, cipherBuffer, IV_LENGTH_BYTES);
+    }
+
+    /**
+     * Decrypts a message produced by {@link #encrypt(String)} or {@link TokenUtils#encrypt(String, SecretKey)}.
+     *
+     * @param encryptedText Base64 of IV + cipher text + tag
+     * @return              the plain text
+     * @throws GeneralSecurityException if the message was not encrypted with this key or was modified
+     */
+    public synchronized String decrypt(String encryptedText) throws GeneralSecurityException {
+        try {
+            return decrypt(encryptedText.getBytes(StandardCharsets.ISO_8859_1));
+        } finally {
+            trimBuffers();
+        }
+    }
+
+    private String decrypt(byte[] source) throws GeneralSecurityException {
+        int maxLength = source.length / 4 * 3;
+        if (cipherBuffer.length < maxLength) cipherBuffer = new byte[Math.max(maxLength, cipherBuffer.length * 2)];
+        int length;
+        try {
+            length = Base64.getDecoder().decode(source, cipherBuffer);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Invalid Base64 message", e);
+        }
+        if (length < IV_LENGTH_BYTES + TAG_LENGTH_BYTES) {
+            throw new GeneralSecurityException("Message too short: " + length + " bytes");
+        }
+        int cipherLength = length - IV_LENGTH_BYTES;
+        if (plainBuffer.length < cipherLength) plainBuffer = new byte[Math.max(cipherLength, plainBuffer.length * 2)];
+
+        decryptCipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, cipherBuffer, 0, IV_LENGTH_BYTES));
+        int plainLength = decryptCipher.doFinal(cipherBuffer, IV_LENGTH_BYTES, cipherLength, plainBuffer, 0);
+        return new String(plainBuffer, 0, plainLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encrypts binary parts as one message, for protocols that do not need Base64 text.
+     *
+     * @param offset    bytes left free at the start of the result, for the caller's header
+     * @param aad       data authenticated but not encrypted (a frame header), may be empty
+     * @param parts     the plain bytes, encrypted one after the other
+     * @return          {@code offset} free bytes followed by IV + cipher text + tag
+     * @throws GeneralSecurityException if the encryption fails
+     */
+    public synchronized byte[] encrypt(int offset, byte[] aad, byte[]... parts) throws GeneralSecurityException {
+        if (counter > 0xFFFF_FFFFL) {
+            throw new IllegalStateException("Session key used for 2^32 messages, a new key must be exchanged");
+        }
+        int length = 0;
+        for (byte[] part : parts) length += part.length;
+        byte[] result = new byte[offset + IV_LENGTH_BYTES + length + TAG_LENGTH_BYTES];
+
+        System.arraycopy(ivPrefix, 0, result, offset, PREFIX_LENGTH_BYTES);
+        int c = (int) counter++;
+        result[offset + 8] = (byte) (c >>> 24);
+        result[offset + 9] = (byte) (c >>> 16);
+        result[offset + 10] = (byte) (c >>> 8);
+        result[offset + 11] = (byte) c;
+
+        encryptCipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, result, offset, IV_LENGTH_BYTES));
+        encryptCipher.updateAAD(aad);
+        int position = offset + IV_LENGTH_BYTES;
+        for (int i = 0; i < parts.length - 1; i++) {
+            position += encryptCipher.update(parts[i], 0, parts[i].length, result, position);
+        }
+        byte[] last = parts.length > 0 ? parts[parts.length - 1] : new byte[0];
+        encryptCipher.doFinal(last, 0, last.length, result, position);
+        return result;
+    }
+
+    /**
+     * Decrypts a message produced by {@link #encrypt(int, byte[], byte[]...)}.
+     *
+     * @param aad       the data authenticated with the message
+     * @param message   the array holding IV + cipher text + tag
+     * @param offset    where the IV starts
+     * @param length    length of IV + cipher text + tag
+     * @return          the plain bytes
+     * @throws GeneralSecurityException if the message was not encrypted with this key, or it or the aad were modified
+     */
+    public synchronized byte[] decrypt(byte[] aad, byte[] message, int offset, int length) throws GeneralSecurityException {
+        if (length < IV_LENGTH_BYTES + TAG_LENGTH_BYTES) {
+            throw new GeneralSecurityException("Message too short: " + length + " bytes");
+        }
+        decryptCipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, message, offset, IV_LENGTH_BYTES));
+        decryptCipher.updateAAD(aad);
+        return decryptCipher.doFinal(message, offset + IV_LENGTH_BYTES, length - IV_LENGTH_BYTES);
+    }
+
+    private void trimBuffers() {
+        if (plainBuffer.length > MAX_RETAINED_BUFFER_BYTES) plainBuffer = new byte[INITIAL_BUFFER_BYTES];
+        if (cipherBuffer.length > MAX_RETAINED_BUFFER_BYTES) cipherBuffer = new byte[INITIAL_BUFFER_BYTES];
+    }
+}
@@ -0,0 +1,144 @@
+package encryption;
+
+import metrics.ServerMetrics;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.security.DrbgParameters.Capability.RESEED_ONLY;
+
+/**
+ * The {@code SessionKeyService} class generates the AES keys of the sessions ({@link TokenUtils#generateToken()}).
+ * <ul>
+ *     <li> Keys come from one shared DRBG ({@code SecureRandom} "DRBG", 256-bit strength), seeded once from the
+ *          system entropy source. A handshake never waits for {@code SecureRandom.getInstanceStrong()}, which can
+ *          block on {@code /dev/random} and makes a reconnect storm wait behind the kernel pool</li>
+ *     <li> A background thread keeps a small pool of keys ready, so a handshake normally takes a key instead of
+ *          generating one. When the pool is empty (a burst larger than the pool) the key is generated
+ *          right away by the caller</li>
+ *     <li> It counts the keys taken from the pool and generated by callers, and the time spent generating, also
+ *          reported as cryptography time to the {@link ServerMetrics}. The server serves the counts on its metrics
+ *          endpoint</li>
+ * </ul>
+ * Keys are only handed out once.
+ */
+public class SessionKeyService {
+
+    public static final int DEFAULT_POOL_SIZE = 64;
+    private static final int KEY_BYTES = 16; // AES-128, as the clients expect
+
+    private static final class Holder {
+        static final SessionKeyService INSTANCE = new SessionKeyService(
+                Integer.getInteger("nightguardian.sessionKeyPool", DEFAULT_POOL_SIZE));
+    }
+
+    private final SecureRandom drbg;
+    // Lock-free, so hundreds of handshakes taking keys at once do not queue on a lock
+    private final ConcurrentLinkedQueue<SecretKey> pool = new ConcurrentLinkedQueue<>();
+    private final Semaphore room;
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong poolMisses = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+
+    /**
+     * Creates a service and, if {@code poolSize} is positive, starts the thread that fills its pool.
+     *
+     * @param poolSize  number of keys kept ready, 0 generates every key on demand
+     * @throws IllegalStateException if no DRBG is available
+     */
+    public SessionKeyService(int poolSize) {
+        try {
+            drbg = SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(256, RESEED_ONLY,
+                    "nightguardian-session-keys".getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("DRBG not available", e);
+        }
+        room = new Semaphore(Math.max(0, poolSize));
+        if (poolSize > 0) {
+            Thread filler = new Thread(this::fill, "session-key-generator");
+            filler.setDaemon(true);
+            filler.start();
+        }
+    }
+
+    /**
+     * @return the service used by {@link TokenUtils#generateToken()}
+     */
+    public static SessionKeyService getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return a new AES session key, from the pool if there is one ready
+     */
+    public SecretKey nextKey() {
+        SecretKey key = pool.poll();
+        if (key != null) {
+            room.release();
+            poolHits.incrementAndGet();
+            return key;
+        }
+        poolMisses.incrementAndGet();
+        return generate();
+    }
+
+    private SecretKey generate() {
+        long start = System.nanoTime();
+        byte[] bytes = new byte[KEY_BYTES];
+        drbg.nextBytes(bytes);
+        SecretKey key = new SecretKeySpec(bytes, "AES");
+        long elapsed = System.nanoTime() - start;
+        generationNanos.addAndGet(elapsed);
+        ServerMetrics.getInstance().addCryptoNanos(elapsed);
+        generated.incrementAndGet();
+        return key;
+    }
+
+    /**
+     * Body of the pool thread: generates keys while the pool has room.
+     */
+    private void fill() {
+        try {
+            while (true) {
+                room.acquire();
+                pool.add(generate());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getPoolHits() {
+        return poolHits.get();
+    }
+
+    public long getPoolMisses() {
+        return poolMisses.get();
+    }
+
+    public int getPooledKeys() {
+        return pool.size();
+    }
+
+    /**
+     * @return number of keys generated, by the pool thread or by callers
+     */
+    public long getGeneratedKeys() {
+        return generated.get();
+    }
+
+    /**
+     * @return total time spent generating keys, in nanoseconds
+     */
+    public long getGenerationNanos() {
+        return generationNanos.get();
+    }
+}
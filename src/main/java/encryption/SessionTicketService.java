@@ -0,0 +1,198 @@
+package encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code SessionTicketService} class issues and opens session resumption tickets, so a client that reconnects
+ * shortly after logging in gets back to encrypted traffic without the RSA handshake.
+ * <ul>
+ *     <li> A ticket is the user's id, the generation of the user's credentials, an expiry time and the AES key of
+ *          the session that logged in, encrypted with a ticket key only the server knows (AES-GCM, with a fresh
+ *          random IV per ticket). The client cannot read or change it, and the server keeps no state per ticket</li>
+ *     <li> The generation is a fingerprint of the stored password hash ({@link #generation(String)}). The server
+ *          refuses a ticket whose generation no longer matches the user, so changing the password ends every
+ *          ticket issued before</li>
+ *     <li> A resumed session does not reuse that key: both sides derive a new one from it and from a nonce sent by
+ *          each side ({@link #deriveKey(SecretKey, byte[], byte[])}), so messages recorded from an earlier
+ *          connection cannot be replayed, and only a client that knows the original key can talk on the new
+ *          connection</li>
+ * </ul>
+ * The ticket key is generated when the service is created, so tickets do not survive a server restart.
+ */
+public class SessionTicketService {
+
+    public static final long DEFAULT_LIFETIME_MS = TimeUnit.HOURS.toMillis(8);
+    public static final int NONCE_BYTES = 16;
+    private static final byte VERSION = 2;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte[] TICKET_AAD = "nightguardian-ticket".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESUME_LABEL = "nightguardian-resume".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * A valid ticket.
+     *
+     * @param userId        the user that logged in
+     * @param generation    the {@link #generation(String)} of the user's password hash when the ticket was issued
+     * @param sessionKey    the AES key of the session that received the ticket
+     * @param expiresAt     expiry time, in milliseconds since the epoch
+     */
+    public record Ticket(int userId, long generation, SecretKey sessionKey, long expiresAt) {}
+
+    private final long lifetimeMillis;
+    private final SecretKey ticketKey;
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param lifetimeMillis    how long a ticket can be used after it is issued
+     * @throws GeneralSecurityException if the ticket key cannot be generated
+     */
+    public SessionTicketService(long lifetimeMillis) throws GeneralSecurityException {
+        this.lifetimeMillis = lifetimeMillis;
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256, TokenUtils.random());
+        this.ticketKey = generator.generateKey();
+    }
+
+    /**
+     * Creates the ticket of a session that has just logged in.
+     *
+     * @param userId        the logged-in user
+     * @param generation    the {@link #generation(String)} of the user's password hash
+     * @param sessionKey    the AES key of the session
+     * @return              the ticket, URL-safe Base64
+     * @throws GeneralSecurityException if the ticket cannot be encrypted
+     */
+    public String issue(int userId, long generation, SecretKey sessionKey) throws GeneralSecurityException {
+        byte[] key = sessionKey.getEncoded();
+        ByteBuffer plain = ByteBuffer.allocate(1 + 4 + 8 + 8 + 1 + key.length);
+        plain.put(VERSION).putInt(userId).putLong(generation).putLong(System.currentTimeMillis() + lifetimeMillis)
+                .put((byte) key.length).put(key);
+
+        // A Cipher per ticket: logins on different sessions do not wait for each other
+        byte[] iv = new byte[SessionCipher.IV_LENGTH_BYTES];
+        TokenUtils.random().nextBytes(iv);
+        byte[] ticket = new byte[iv.length + plain.capacity() + SessionCipher.TAG_LENGTH_BITS / 8];
+        System.arraycopy(iv, 0, ticket, 0, iv.length);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, ticketKey, new GCMParameterSpec(SessionCipher.TAG_LENGTH_BITS, iv));
+        cipher.updateAAD(TICKET_AAD);
+        cipher.doFinal(plain.array(), 0, plain.capacity(), ticket, SessionCipher.IV_LENGTH_BYTES);
+        issued.incrementAndGet();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ticket);
+    }
+
+    /**
+     * Opens a ticket presented by a client.
+     *
+     * The caller still has to compare {@link Ticket#generation()} with the user's current password hash.
+     *
+     * @param ticket    the ticket, as returned by {@link #issue(int, long, SecretKey)}
+     * @return          its content, or {@code null} if it is malformed, was not issued by this service or has expired
+     */
+    public Ticket open(String ticket) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(ticket);
+            if (bytes.length < SessionCipher.IV_LENGTH_BYTES + SessionCipher.TAG_LENGTH_BITS / 8) {
+                throw new GeneralSecurityException("Ticket too short: " + bytes.length + " bytes");
+            }
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, ticketKey,
+                    new GCMParameterSpec(SessionCipher.TAG_LENGTH_BITS, bytes, 0, SessionCipher.IV_LENGTH_BYTES));
+            cipher.updateAAD(TICKET_AAD);
+            ByteBuffer plain = ByteBuffer.wrap(cipher.doFinal(bytes, SessionCipher.IV_LENGTH_BYTES,
+                    bytes.length - SessionCipher.IV_LENGTH_BYTES));
+            if (plain.get() != VERSION) throw new GeneralSecurityException("Unknown ticket version");
+            int userId = plain.getInt();
+            long generation = plain.getLong();
+            long expiresAt = plain.getLong();
+            byte[] key = new byte[plain.get()];
+            plain.get(key);
+            if (System.currentTimeMillis() > expiresAt) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            accepted.incrementAndGet();
+            return new Ticket(userId, generation, new SecretKeySpec(key, "AES"), expiresAt);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            rejected.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Generation of a user's credentials: the first 8 bytes of the SHA-256 of the stored password hash. It changes
+     * whenever the password does, and says nothing about the password even if a ticket were decrypted.
+     *
+     * @param passwordHash  the user's stored password hash, may be {@code null}
+     * @return              the generation to put in, and compare with, the user's tickets
+     */
+    public static long generation(String passwordHash) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(String.valueOf(passwordHash).getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Derives the AES key of a resumed session: HMAC-SHA256 of both nonces keyed with the ticket's session key,
+     * truncated to the length of that key.
+     *
+     * @param sessionKey    the key stored in the ticket
+     * @param clientNonce   the nonce sent by the client with the ticket
+     * @param serverNonce   the nonce sent back by the server
+     * @return              the new session key
+     * @throws GeneralSecurityException if HMAC-SHA256 is not available
+     */
+    public static SecretKey deriveKey(SecretKey sessionKey, byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(sessionKey.getEncoded(), "HmacSHA256"));
+        mac.update(RESUME_LABEL);
+        mac.update(clientNonce);
+        mac.update(serverNonce);
+        byte[] derived = Arrays.copyOf(mac.doFinal(), sessionKey.getEncoded().length);
+        return new SecretKeySpec(derived, "AES");
+    }
+
+    /**
+     * @return a new random nonce of {@link #NONCE_BYTES} bytes
+     */
+    public static byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        TokenUtils.random().nextBytes(nonce);
+        return nonce;
+    }
+
+    public long getLifetimeMillis() {
+        return lifetimeMillis;
+    }
+
+    public long getIssued() {
+        return issued.get();
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -1,11 +1,11 @@
 package encryption;
 
 import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
@@ -22,20 +22,43 @@ import java.util.Base64;
  *     <li> Base64 encoding of output for transport over text-based protocols</li>
  * </ul>
  * The AES key must be securely exchanged between parties (encrypted via {@code RSAUtil} and {@code RSAManager}
+ * <p>
+ *     The {@link SecureRandom} is shared and the {@link Cipher} is cached per thread, so these methods do not
+ *     look up the provider on every call. A session that sends many messages should rather keep a
+ *     {@link SessionCipher}, which produces the same messages without allocating on every call.
+ * </p>
  *
  * @author pblan
  */
 public class TokenUtils {
 
-    private static final int tag_length_bits = 128;
-    private static final int iv_length_bytes = 12;
+    private static final int tag_length_bits = SessionCipher.TAG_LENGTH_BITS;
+    private static final int iv_length_bytes = SessionCipher.IV_LENGTH_BYTES;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM not available", e);
+        }
+    });
+
+    /**
+     * @return the random generator shared by the AES code
+     */
+    static SecureRandom random() {
+        return RANDOM;
+    }
 
 
+    /**
+     * Generates the 128-bit AES key of a session, taken from the {@link SessionKeyService}.
+     *
+     * @return a new AES key
+     * @throws NoSuchAlgorithmException if AES keys cannot be generated
+     */
     public static SecretKey generateToken() throws NoSuchAlgorithmException {
-        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
-        keyGenerator.init(128, SecureRandom.getInstanceStrong());
-        SecretKey AESkey = keyGenerator.generateKey();
-        return AESkey;
+        return SessionKeyService.getInstance().nextKey();
     }
 
 
@@ -50,9 +73,9 @@ public class TokenUtils {
      */
     public static String encrypt(String text, SecretKey AESkey) throws Exception{
         byte[] iv = new byte[iv_length_bytes];
-        new SecureRandom().nextBytes(iv);
+        RANDOM.nextBytes(iv);
 
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        Cipher cipher = CIPHER.get();
         GCMParameterSpec spec = new GCMParameterSpec(tag_length_bits,iv);
         cipher.init(Cipher.ENCRYPT_MODE,AESkey,spec);
 
@@ -83,7 +106,7 @@ public class TokenUtils {
         byte[] restEncrypted = new byte[buffer.remaining()]; //message+tag
         buffer.get(restEncrypted);
 
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        Cipher cipher = CIPHER.get();
         GCMParameterSpec spec = new GCMParameterSpec(tag_length_bits, iv);
         cipher.init(Cipher.DECRYPT_MODE, AESkey,spec);
 
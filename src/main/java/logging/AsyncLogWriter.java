@@ -0,0 +1,227 @@
+package logging;
+
+import com.google.gson.JsonElement;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The {@code AsyncLogWriter} class writes the log events of the server from its own thread ({@code log-writer}).
+ * <ul>
+ *     <li> {@link Log} adds events to a {@link RingBuffer}, so the handler threads never wait for the console or the
+ *          disk, and never for each other as they did on {@code System.out}</li>
+ *     <li> When the buffer is full the event is dropped and counted, and a {@code log_events_dropped} event says
+ *          how many were lost</li>
+ *     <li> One line per event: time, level, component, event name and its fields as {@code name=value}
+ *          (JSON values as compact JSON)</li>
+ *     <li> The output is flushed when the buffer is empty, and what is left is written when the JVM exits</li>
+ * </ul>
+ * The shared writer ({@link #getInstance()}) uses the {@code nightguardian.logLevel} ({@code INFO} by default),
+ * {@code nightguardian.logBuffer} ({@link #DEFAULT_BUFFER_SIZE} events), {@code nightguardian.logValueChars}
+ * ({@link LogPolicy#DEFAULT_MAX_CHARS}) and {@code nightguardian.logFile} (standard output by default) properties.
+ */
+public final class AsyncLogWriter {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    record Event(long timeMillis, Log.Level level, String component, String thread, String event, Object[] fields) {}
+
+    private static final class Holder {
+        static final AsyncLogWriter INSTANCE = createDefault();
+    }
+
+    private final RingBuffer<Event> buffer;
+    private final Writer output;
+    private final Log.Level level;
+    private final LogPolicy policy;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean closing;
+    private long reportedDrops;
+
+    /**
+     * Creates a writer and starts its thread.
+     *
+     * @param output        where the lines are written
+     * @param level         events below this level are ignored
+     * @param bufferSize    events that can wait to be written
+     * @param maxValueChars longest value written before it is cut
+     */
+    AsyncLogWriter(Writer output, Log.Level level, int bufferSize, int maxValueChars) {
+        this.output = output;
+        this.level = level;
+        this.buffer = new RingBuffer<>(bufferSize);
+        this.policy = new LogPolicy(maxValueChars);
+        this.thread = new Thread(this::drain, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static AsyncLogWriter createDefault() {
+        Log.Level level;
+        try {
+            level = Log.Level.valueOf(System.getProperty("nightguardian.logLevel", "INFO").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            level = Log.Level.INFO;
+        }
+        Writer output = null;
+        String file = System.getProperty("nightguardian.logFile");
+        if (file != null) {
+            try {
+                output = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8, true));
+            } catch (IOException e) {
+                System.err.println("Cannot open log file " + file + ", logging to the console: " + e.getMessage());
+            }
+        }
+        if (output == null) {
+            output = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        }
+        AsyncLogWriter writer = new AsyncLogWriter(output, level,
+                Integer.getInteger("nightguardian.logBuffer", DEFAULT_BUFFER_SIZE),
+                Integer.getInteger("nightguardian.logValueChars", LogPolicy.DEFAULT_MAX_CHARS));
+        Runtime.getRuntime().addShutdownHook(new Thread(writer::close, "log-writer-shutdown"));
+        return writer;
+    }
+
+    /**
+     * @return the writer used by {@link Log#get(String)}
+     */
+    public static AsyncLogWriter getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    boolean isEnabled(Log.Level eventLevel) {
+        return eventLevel.compareTo(level) >= 0;
+    }
+
+    /**
+     * Applies the {@link LogPolicy} to the fields (name, value, name, value...) and queues the event.
+     */
+    void log(Log.Level eventLevel, String component, String event, Object[] fields) {
+        if (!isEnabled(eventLevel)) {
+            return;
+        }
+        Object[] safe = new Object[fields.length - fields.length % 2];
+        for (int i = 0; i < safe.length; i += 2) {
+            String name = String.valueOf(fields[i]);
+            safe[i] = name;
+            safe[i + 1] = policy.apply(name, fields[i + 1]);
+        }
+        Event e = new Event(System.currentTimeMillis(), eventLevel, component, Thread.currentThread().getName(), event, safe);
+        if (!buffer.offer(e)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Body of the writer thread.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                Event event = buffer.poll();
+                if (event != null) {
+                    write(event);
+                    continue;
+                }
+                reportDrops();
+                output.flush();
+                if (closing) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        } catch (IOException e) {
+            System.err.println("Log writer stopped: " + e.getMessage());
+        }
+    }
+
+    private void reportDrops() throws IOException {
+        long drops = dropped.get();
+        if (drops != reportedDrops) {
+            write(new Event(System.currentTimeMillis(), Log.Level.WARN, "AsyncLogWriter", thread.getName(),
+                    "log_events_dropped", new Object[]{"count", drops - reportedDrops}));
+            reportedDrops = drops;
+        }
+    }
+
+    private void write(Event event) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        line.append(Instant.ofEpochMilli(event.timeMillis())).append(' ')
+                .append(String.format("%-5s", event.level())).append(' ')
+                .append(event.component()).append(' ')
+                .append(event.event())
+                .append(" thread=").append(event.thread());
+        Object[] fields = event.fields();
+        for (int i = 0; i < fields.length; i += 2) {
+            line.append(' ').append(fields[i]).append('=');
+            appendValue(line, fields[i + 1]);
+        }
+        line.append('\n');
+        output.write(line.toString());
+        written.incrementAndGet();
+    }
+
+    private static void appendValue(StringBuilder line, Object value) {
+        if (value instanceof JsonElement json) {
+            line.append(json);
+            return;
+        }
+        String text = String.valueOf(value);
+        boolean quote = text.isEmpty();
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '=';
+        }
+        if (!quote) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                default -> line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Writes the queued events and stops the writer thread.
+     */
+    public void close() {
+        closing = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return events lost because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+}
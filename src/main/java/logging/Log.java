@@ -0,0 +1,53 @@
+package logging;
+
+/**
+ * The {@code Log} class is the logger of one component of the server. Events have a level, a name and fields given
+ * as pairs, written by the {@link AsyncLogWriter} as {@code name=value}:
+ * <pre>
+ * private static final Log LOG = Log.get("ClientHandler");
+ * LOG.info("login_response", "client", address, "status", "SUCCESS");
+ * </pre>
+ * Fields with key material are redacted and long values are cut ({@link LogPolicy}), so requests and responses can be
+ * passed as they are. An event below the configured level costs only the level check, use
+ * {@link #isEnabled(Level)} before building expensive fields.
+ */
+public final class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private final String component;
+    private final AsyncLogWriter writer;
+
+    Log(String component, AsyncLogWriter writer) {
+        this.component = component;
+        this.writer = writer;
+    }
+
+    /**
+     * @param component the name written in every event, usually the class name
+     * @return          a logger that writes to the shared {@link AsyncLogWriter}
+     */
+    public static Log get(String component) {
+        return new Log(component, AsyncLogWriter.getInstance());
+    }
+
+    public boolean isEnabled(Level level) {
+        return writer.isEnabled(level);
+    }
+
+    public void debug(String event, Object... fields) {
+        writer.log(Level.DEBUG, component, event, fields);
+    }
+
+    public void info(String event, Object... fields) {
+        writer.log(Level.INFO, component, event, fields);
+    }
+
+    public void warn(String event, Object... fields) {
+        writer.log(Level.WARN, component, event, fields);
+    }
+
+    public void error(String event, Object... fields) {
+        writer.log(Level.ERROR, component, event, fields);
+    }
+}
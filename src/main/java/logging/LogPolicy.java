@@ -0,0 +1,102 @@
+package logging;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The {@code LogPolicy} class decides what the values of a log event may show. It is applied by the thread that logs,
+ * so the event only keeps small copies and never the request or response objects themselves.
+ * <ul>
+ *     <li> Fields whose name looks like key material or a credential ({@code key}, {@code token},
+ *          {@code password}, {@code ticket}, {@code nonce}, {@code signature}, {@code secret}) are replaced by
+ *          {@code [redacted]}, also inside JSON objects</li>
+ *     <li> Longer strings (the Base64 payloads of signals and encrypted messages) are cut to {@code maxChars} and
+ *          end with their length, {@code ...(123456 chars)}</li>
+ *     <li> JSON arrays keep their first {@link #MAX_ARRAY_ELEMENTS} elements</li>
+ * </ul>
+ */
+final class LogPolicy {
+
+    static final int DEFAULT_MAX_CHARS = 96;
+    static final int MAX_ARRAY_ELEMENTS = 8;
+    static final String REDACTED = "[redacted]";
+    private static final List<String> SECRET_NAMES =
+            List.of("key", "token", "password", "ticket", "nonce", "signature", "secret");
+
+    private final int maxChars;
+
+    LogPolicy(int maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    static boolean isSecret(String field) {
+        String name = field.toLowerCase(Locale.ROOT);
+        for (String secret : SECRET_NAMES) {
+            if (name.contains(secret)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param field the name of the field
+     * @param value its value
+     * @return      what the log may show of it
+     */
+    Object apply(String field, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (isSecret(field)) {
+            return REDACTED;
+        }
+        if (value instanceof JsonElement json) {
+            return apply(json);
+        }
+        if (value instanceof Throwable e) {
+            return e.getClass().getSimpleName() + ": " + truncate(String.valueOf(e.getMessage()));
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Enum<?>) {
+            return value;
+        }
+        return truncate(String.valueOf(value));
+    }
+
+    JsonElement apply(JsonElement json) {
+        if (json.isJsonObject()) {
+            JsonObject copy = new JsonObject();
+            for (Map.Entry<String, JsonElement> member : json.getAsJsonObject().entrySet()) {
+                copy.add(member.getKey(), isSecret(member.getKey()) ? new JsonPrimitive(REDACTED) : apply(member.getValue()));
+            }
+            return copy;
+        }
+        if (json.isJsonArray()) {
+            JsonArray array = json.getAsJsonArray();
+            JsonArray copy = new JsonArray();
+            for (int i = 0; i < Math.min(array.size(), MAX_ARRAY_ELEMENTS); i++) {
+                copy.add(apply(array.get(i)));
+            }
+            if (array.size() > MAX_ARRAY_ELEMENTS) {
+                copy.add("...(" + array.size() + " elements)");
+            }
+            return copy;
+        }
+        if (json.isJsonPrimitive() && json.getAsJsonPrimitive().isString()) {
+            String value = json.getAsString();
+            return value.length() > maxChars ? new JsonPrimitive(truncate(value)) : json;
+        }
+        return json;
+    }
+
+    String truncate(String value) {
+        if (value.length() <= maxChars) {
+            return value;
+        }
+        return value.substring(0, maxChars) + "...(" + value.length() + " chars)";
+    }
+}
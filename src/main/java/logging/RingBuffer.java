@@ -0,0 +1,80 @@
+package logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The {@code RingBuffer} class is a bounded queue without locks, for many threads that add and one that takes.
+ * <ul>
+ *     <li> {@link #offer(Object)} never blocks and never allocates: when the buffer is full it returns
+ *          {@code false} and the element is dropped</li>
+ *     <li> Every slot has a sequence number that tells whether it is free for the lap of the producers or full for
+ *          the lap of the consumer, so producers only compete on one counter (compare and set)</li>
+ * </ul>
+ *
+ * @param <T>   the type of the elements
+ */
+final class RingBuffer<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // only used by the consumer
+
+    /**
+     * @param capacity  rounded up to a power of two
+     */
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    /**
+     * Adds an element, from any thread.
+     *
+     * @return {@code false} if the buffer is full
+     */
+    boolean offer(T element) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(slot, element);
+                    sequences.set(slot, position + 1); // publishes the element
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false; // the consumer has not freed the slot yet
+            }
+            // otherwise another producer took the slot, try the next one
+        }
+    }
+
+    /**
+     * Takes the oldest element, only from the consumer thread.
+     *
+     * @return the element, or {@code null} if the buffer is empty
+     */
+    T poll() {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        T element = elements.get(slot);
+        elements.set(slot, null);
+        sequences.set(slot, head + mask + 1); // free for the next lap
+        head++;
+        return element;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
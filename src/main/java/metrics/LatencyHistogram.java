@@ -0,0 +1,97 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LatencyHistogram} class counts durations in buckets that double in size: bucket {@code i} holds the
+ * durations up to {@code 2^i} microseconds, up to about 33 seconds, and the last bucket everything longer.
+ * <p>
+ *     Recording is a few additions on {@link LongAdder}s, so many threads can record at once without waiting for
+ *     each other. Percentiles are the upper bound of their bucket, so they are at most twice the real value.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+    public static final int BUCKETS = 27;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * @param nanos a duration in nanoseconds
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets[bucketOf(nanos)].increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 1) return 0;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+    }
+
+    /**
+     * @return the upper bound of a bucket in nanoseconds, {@code Long.MAX_VALUE} for the last one
+     */
+    public static long upperBoundNanos(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) * 1000;
+    }
+
+    /**
+     * @return the number of durations in each bucket
+     */
+    public long[] getBuckets() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) counts[i] = buckets[i].sum();
+        return counts;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) count += bucket.sum();
+        return count;
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @param quantile  between 0 and 1, e.g. 0.99
+     * @return          the percentile in nanoseconds, 0 if nothing was recorded
+     */
+    public long percentile(double quantile) {
+        return Math.min(percentile(getBuckets(), quantile), getMaxNanos());
+    }
+
+    /**
+     * Percentile of bucket counts, for example the difference of two {@link #getBuckets()} taken some time apart.
+     *
+     * @return the upper bound of the bucket of the percentile in nanoseconds, 0 if the counts are all 0
+     */
+    public static long percentile(long[] counts, double quantile) {
+        long total = 0;
+        for (long count : counts) total += count;
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBoundNanos(i);
+        }
+        return upperBoundNanos(counts.length - 1);
+    }
+}
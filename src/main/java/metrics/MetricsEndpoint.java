@@ -0,0 +1,82 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The {@code MetricsEndpoint} class serves {@link ServerMetrics#toText()} at {@code http://127.0.0.1:<port>/metrics},
+ * for Prometheus or a plain {@code curl}. It only listens on the loopback interface, and answers from one daemon
+ * thread, so a scraper cannot take time from the clients.
+ * <p>
+ *     The server starts it on the {@code nightguardian.metricsPort} port ({@link #DEFAULT_PORT} by default, 0 turns
+ *     it off).
+ * </p>
+ */
+public final class MetricsEndpoint {
+
+    public static final int DEFAULT_PORT = 9464;
+
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+
+    private MetricsEndpoint(HttpServer httpServer, ExecutorService executor) {
+        this.httpServer = httpServer;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the endpoint.
+     *
+     * @param port      the local port, 0 for any free port
+     * @param metrics   the metrics to serve
+     * @return          the running endpoint
+     * @throws IOException if the port cannot be opened
+     */
+    public static MetricsEndpoint start(int port, ServerMetrics metrics) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/metrics", exchange -> respond(exchange, metrics));
+        httpServer.start();
+        return new MetricsEndpoint(httpServer, executor);
+    }
+
+    private static void respond(HttpExchange exchange, ServerMetrics metrics) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * @return the port it listens on
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public void stop() {
+        httpServer.stop(0);
+        executor.shutdownNow();
+    }
+}
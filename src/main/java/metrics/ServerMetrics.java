@@ -0,0 +1,365 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code ServerMetrics} class records what the server is doing, for the admin window and for the scrape
+ * endpoint ({@link MetricsEndpoint}):
+ * <ul>
+ *     <li> Per message type: requests, errors, a {@link LatencyHistogram} of the time to handle them, and the part
+ *          of that time spent in the database and in cryptography</li>
+ *     <li> Bytes received from and sent to the clients</li>
+ *     <li> Duration of the handshakes, from the connection to the session key</li>
+ *     <li> Total time spent in the database and in cryptography, by any thread</li>
+ *     <li> Active and opened sessions</li>
+ *     <li> Counters kept by other components (caches, key pools), registered with
+ *          {@link #registerCounter(String, String, LongSupplier)} and read on every snapshot</li>
+ * </ul>
+ * Database and cryptography time is reported with {@link #addDbNanos(long)} and {@link #addCryptoNanos(long)} by the
+ * code that does the work, and is added to the request that the same thread is handling, if any
+ * ({@link #startRequest(String)}).
+ * <p>
+ *     All the counters only grow, {@link #snapshot()} reads them and {@link #describeRates(Snapshot, Snapshot)}
+ *     turns two snapshots into rates.
+ * </p>
+ */
+public final class ServerMetrics {
+
+    static final int MAX_TYPES = 64;
+    static final String OTHER_TYPE = "OTHER";
+    /** Label of the requests whose type the server does not handle */
+    public static final String UNKNOWN_TYPE = "UNKNOWN";
+    private static final int DB = 0;
+    private static final int CRYPTO = 1;
+
+    private static final class Holder {
+        static final ServerMetrics INSTANCE = new ServerMetrics();
+    }
+
+    private static final class TypeStats {
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder dbNanos = new LongAdder();
+        final LongAdder cryptoNanos = new LongAdder();
+    }
+
+    /**
+     * The counters of one message type.
+     *
+     * @param count     requests handled
+     * @param errors    requests that ended with an exception
+     * @param sumNanos  total time handling them
+     * @param buckets   the counts of the latency histogram
+     * @param dbNanos   part of that time in the database
+     * @param cryptoNanos part of that time in cryptography
+     */
+    public record TypeSnapshot(long count, long errors, long sumNanos, long[] buckets, long dbNanos, long cryptoNanos) {}
+
+    /**
+     * A registered counter.
+     *
+     * @param help      what it counts, also its label in the admin window
+     * @param time      whether the value is a time in nanoseconds
+     * @param value     its value
+     */
+    public record Counter(String help, boolean time, long value) {}
+
+    /**
+     * The counters of the server at one time.
+     */
+    public record Snapshot(long timeNanos, long bytesIn, long bytesOut, long dbNanos, long cryptoNanos,
+                           long handshakes, long[] handshakeBuckets, long sessionsOpened, int activeSessions,
+                           Map<String, TypeSnapshot> types, Map<String, Counter> counters) {
+
+        public long requests() {
+            return types.values().stream().mapToLong(TypeSnapshot::count).sum();
+        }
+
+        public long errors() {
+            return types.values().stream().mapToLong(TypeSnapshot::errors).sum();
+        }
+    }
+
+    /**
+     * A request being handled, see {@link #startRequest(String)}.
+     */
+    public final class Request {
+        private final TypeStats stats;
+        private final long start = System.nanoTime();
+        private final long[] thread = threadNanos.get();
+        private final long dbStart = thread[DB];
+        private final long cryptoStart = thread[CRYPTO];
+
+        private Request(TypeStats stats) {
+            this.stats = stats;
+        }
+
+        /**
+         * Records the request.
+         *
+         * @param failed    whether it ended with an exception
+         */
+        public void end(boolean failed) {
+            stats.latency.record(System.nanoTime() - start);
+            stats.dbNanos.add(thread[DB] - dbStart);
+            stats.cryptoNanos.add(thread[CRYPTO] - cryptoStart);
+            if (failed) stats.errors.increment();
+        }
+    }
+
+    private final ConcurrentHashMap<String, TypeStats> types = new ConcurrentHashMap<>();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder dbNanos = new LongAdder();
+    private final LongAdder cryptoNanos = new LongAdder();
+    private final LongAdder sessionsOpened = new LongAdder();
+    private final LatencyHistogram handshakes = new LatencyHistogram();
+    // Database and cryptography time of the current thread, so a request can take its part
+    private final ThreadLocal<long[]> threadNanos = ThreadLocal.withInitial(() -> new long[2]);
+    private volatile IntSupplier activeSessions = () -> 0;
+    private record Source(String help, boolean time, LongSupplier value) {}
+    private final ConcurrentHashMap<String, Source> counters = new ConcurrentHashMap<>();
+
+    ServerMetrics() {
+    }
+
+    /**
+     * @return the metrics of the server
+     */
+    public static ServerMetrics getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Starts timing a request. Callers pass the known message types only ({@link #UNKNOWN_TYPE} for the rest); as a
+     * last guard, after {@link #MAX_TYPES} different ones the rest are counted as {@code OTHER}.
+     *
+     * @param type  the message type
+     * @return      the request, to {@link Request#end(boolean) end} when it has been handled
+     */
+    public Request startRequest(String type) {
+        TypeStats stats = types.get(type);
+        if (stats == null) {
+            stats = types.size() < MAX_TYPES ? types.computeIfAbsent(type, t -> new TypeStats())
+                    : types.computeIfAbsent(OTHER_TYPE, t -> new TypeStats());
+        }
+        return new Request(stats);
+    }
+
+    public void addDbNanos(long nanos) {
+        dbNanos.add(nanos);
+        threadNanos.get()[DB] += nanos;
+    }
+
+    public void addCryptoNanos(long nanos) {
+        cryptoNanos.add(nanos);
+        threadNanos.get()[CRYPTO] += nanos;
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public void recordHandshake(long nanos) {
+        handshakes.record(nanos);
+    }
+
+    public void sessionOpened() {
+        sessionsOpened.increment();
+    }
+
+    /**
+     * @param source    the number of connected clients, read on every snapshot
+     */
+    public void setActiveSessions(IntSupplier source) {
+        activeSessions = source;
+    }
+
+    /**
+     * Adds a counter kept by another component to the snapshots and to the endpoint. Registering a name again
+     * replaces its source.
+     *
+     * @param name      the metric name, e.g. {@code nightguardian_session_keys_pooled_total}
+     * @param help      what it counts
+     * @param source    the counter, it only grows
+     */
+    public void registerCounter(String name, String help, LongSupplier source) {
+        counters.put(name, new Source(help, false, source));
+    }
+
+    /**
+     * As {@link #registerCounter(String, String, LongSupplier)}, for a total time in nanoseconds, served in seconds.
+     */
+    public void registerTimeCounter(String name, String help, LongSupplier nanos) {
+        counters.put(name, new Source(help, true, nanos));
+    }
+
+    public Snapshot snapshot() {
+        Map<String, TypeSnapshot> typeSnapshots = new TreeMap<>();
+        types.forEach((type, stats) -> {
+            long[] buckets = stats.latency.getBuckets();
+            long count = 0;
+            for (long bucket : buckets) count += bucket;
+            typeSnapshots.put(type, new TypeSnapshot(count, stats.errors.sum(), stats.latency.getSumNanos(), buckets,
+                    stats.dbNanos.sum(), stats.cryptoNanos.sum()));
+        });
+        Map<String, Counter> counterSnapshots = new TreeMap<>();
+        counters.forEach((name, source) ->
+                counterSnapshots.put(name, new Counter(source.help(), source.time(), source.value().getAsLong())));
+        return new Snapshot(System.nanoTime(), bytesIn.sum(), bytesOut.sum(), dbNanos.sum(), cryptoNanos.sum(),
+                handshakes.getCount(), handshakes.getBuckets(), sessionsOpened.sum(), activeSessions.getAsInt(),
+                typeSnapshots, counterSnapshots);
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text format, served by {@link MetricsEndpoint}.
+     */
+    public String toText() {
+        Snapshot s = snapshot();
+        StringBuilder text = new StringBuilder(4096);
+        gauge(text, "nightguardian_active_sessions", "Connected clients", s.activeSessions());
+        counter(text, "nightguardian_sessions_opened_total", "Client connections accepted", s.sessionsOpened());
+        counter(text, "nightguardian_bytes_received_total", "Bytes received from clients", s.bytesIn());
+        counter(text, "nightguardian_bytes_sent_total", "Bytes sent to clients", s.bytesOut());
+        counter(text, "nightguardian_db_seconds_total", "Time spent in the database", seconds(s.dbNanos()));
+        counter(text, "nightguardian_crypto_seconds_total", "Time spent in cryptography", seconds(s.cryptoNanos()));
+        s.counters().forEach((name, c) -> counter(text, name, c.help(), c.time() ? seconds(c.value()) : c.value()));
+
+        text.append("# HELP nightguardian_handshake_duration_seconds Time from the connection to the session key\n")
+                .append("# TYPE nightguardian_handshake_duration_seconds histogram\n");
+        histogram(text, "nightguardian_handshake_duration_seconds", "", s.handshakeBuckets(), handshakes.getSumNanos());
+
+        text.append("# HELP nightguardian_request_duration_seconds Time to handle a request, by message type\n")
+                .append("# TYPE nightguardian_request_duration_seconds histogram\n");
+        s.types().forEach((type, t) -> histogram(text, "nightguardian_request_duration_seconds",
+                "type=\"" + escape(type) + "\",", t.buckets(), t.sumNanos()));
+        text.append("# HELP nightguardian_request_errors_total Requests that failed, by message type\n")
+                .append("# TYPE nightguardian_request_errors_total counter\n");
+        s.types().forEach((type, t) -> sample(text, "nightguardian_request_errors_total{type=\"" + escape(type) + "\"}", t.errors()));
+        text.append("# HELP nightguardian_request_db_seconds_total Database time of the requests, by message type\n")
+                .append("# TYPE nightguardian_request_db_seconds_total counter\n");
+        s.types().forEach((type, t) -> sample(text, "nightguardian_request_db_seconds_total{type=\"" + escape(type) + "\"}", seconds(t.dbNanos())));
+        text.append("# HELP nightguardian_request_crypto_seconds_total Cryptography time of the requests, by message type\n")
+                .append("# TYPE nightguardian_request_crypto_seconds_total counter\n");
+        s.types().forEach((type, t) -> sample(text, "nightguardian_request_crypto_seconds_total{type=\"" + escape(type) + "\"}", seconds(t.cryptoNanos())));
+        return text.toString();
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, Object value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" gauge\n");
+        sample(text, name, value);
+    }
+
+    private static void counter(StringBuilder text, String name, String help, Object value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n");
+        sample(text, name, value);
+    }
+
+    private static void histogram(StringBuilder text, String name, String labels, long[] buckets, long sumNanos) {
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i];
+            String le = i == buckets.length - 1 ? "+Inf" : seconds(LatencyHistogram.upperBoundNanos(i));
+            sample(text, name + "_bucket{" + labels + "le=\"" + le + "\"}", cumulative);
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        sample(text, name + "_sum" + suffix, seconds(sumNanos));
+        sample(text, name + "_count" + suffix, cumulative);
+    }
+
+    private static void sample(StringBuilder text, String name, Object value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Escapes a label value as the text format requires: backslash, double quote and line feed.
+     */
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    /**
+     * Describes what happened between two snapshots, for the admin window: rates per second, and the latency
+     * percentiles of the requests handled in between.
+     *
+     * @param before    the older snapshot
+     * @param after     the newer snapshot
+     * @return          one line per figure, then one per message type (busiest first)
+     */
+    public static List<String> describeRates(Snapshot before, Snapshot after) {
+        double elapsed = Math.max(1, after.timeNanos() - before.timeNanos()) / 1e9;
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "Active sessions: %d (%.1f new/s)", after.activeSessions(),
+                (after.sessionsOpened() - before.sessionsOpened()) / elapsed));
+        lines.add(String.format(Locale.ROOT, "Requests: %.1f/s, errors: %.1f/s",
+                (after.requests() - before.requests()) / elapsed, (after.errors() - before.errors()) / elapsed));
+        lines.add(String.format(Locale.ROOT, "Traffic: in %s/s, out %s/s",
+                bytes((after.bytesIn() - before.bytesIn()) / elapsed), bytes((after.bytesOut() - before.bytesOut()) / elapsed)));
+        lines.add(String.format(Locale.ROOT, "Busy time: database %.0f ms/s, crypto %.0f ms/s",
+                (after.dbNanos() - before.dbNanos()) / 1e6 / elapsed, (after.cryptoNanos() - before.cryptoNanos()) / 1e6 / elapsed));
+        long[] handshakeBuckets = difference(after.handshakeBuckets(), before.handshakeBuckets());
+        lines.add(String.format(Locale.ROOT, "Handshakes: %.1f/s, p50 %s",
+                (after.handshakes() - before.handshakes()) / elapsed, millis(LatencyHistogram.percentile(handshakeBuckets, 0.5))));
+        after.counters().forEach((name, now) -> {
+            Counter then = before.counters().get(name);
+            long delta = now.value() - (then == null ? 0 : then.value());
+            lines.add(now.time() ? String.format(Locale.ROOT, "%s: %.1f ms/s", now.help(), delta / 1e6 / elapsed)
+                    : String.format(Locale.ROOT, "%s: %.1f/s", now.help(), delta / elapsed));
+        });
+
+        record Rate(String type, long count, String line) {}
+        List<Rate> rates = new ArrayList<>();
+        after.types().forEach((type, now) -> {
+            TypeSnapshot then = before.types().get(type);
+            long count = now.count() - (then == null ? 0 : then.count());
+            if (count == 0) return;
+            long[] buckets = then == null ? now.buckets() : difference(now.buckets(), then.buckets());
+            long sum = now.sumNanos() - (then == null ? 0 : then.sumNanos());
+            long db = now.dbNanos() - (then == null ? 0 : then.dbNanos());
+            long crypto = now.cryptoNanos() - (then == null ? 0 : then.cryptoNanos());
+            rates.add(new Rate(type, count, String.format(Locale.ROOT, "%s: %.1f/s, p50 %s, p99 %s, db %d%%, crypto %d%%",
+                    type, count / elapsed, millis(LatencyHistogram.percentile(buckets, 0.5)),
+                    millis(LatencyHistogram.percentile(buckets, 0.99)),
+                    sum == 0 ? 0 : db * 100 / sum, sum == 0 ? 0 : crypto * 100 / sum)));
+        });
+        rates.sort(Comparator.comparingLong(Rate::count).reversed());
+        rates.forEach(rate -> lines.add(rate.line()));
+        return lines;
+    }
+
+    private static long[] difference(long[] after, long[] before) {
+        long[] result = new long[after.length];
+        for (int i = 0; i < after.length; i++) result[i] = after[i] - before[i];
+        return result;
+    }
+
+    private static String millis(long nanos) {
+        if (nanos == Long.MAX_VALUE) return "> 33 s";
+        return nanos < 1_000_000 ? String.format(Locale.ROOT, "%.2f ms", nanos / 1e6) : String.format(Locale.ROOT, "%d ms", nanos / 1_000_000);
+    }
+
+    private static String bytes(double perSecond) {
+        if (perSecond >= 1 << 20) return String.format(Locale.ROOT, "%.1f MB", perSecond / (1 << 20));
+        if (perSecond >= 1 << 10) return String.format(Locale.ROOT, "%.1f KB", perSecond / (1 << 10));
+        return String.format(Locale.ROOT, "%.0f B", perSecond);
+    }
+}
@@ -0,0 +1,159 @@
+package network;
+
+import encryption.SessionCipher;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * Binary framing of the encrypted protocol, used instead of the {@code {"type":"ENCRYPTED","data":"<Base64>"}} lines
+ * by the clients that ask for it during the handshake.
+ * <p>
+ * Every frame is:
+ * </p>
+ * <pre>
+ * [int length][byte type][byte flags][IV (12) | AES-GCM cipher text | tag (16)]
+ * </pre>
+ * where {@code length} counts every byte after itself, and the type and flags are authenticated with the
+ * message (GCM additional data). The plain text is the UTF-8 JSON of the message, the same JSON the text
+ * protocol sends inside {@code data}. When {@link #FLAG_DATA} is set the message carries raw bytes (a signal
+ * or a signal chunk) instead of a Base64 {@code dataBytes} field, and the plain text is:
+ * <pre>
+ * [int json length][JSON][raw bytes]
+ * </pre>
+ *
+ * @see ClientHandler
+ */
+final class BinaryFrame {
+
+    static final String FRAMING_TEXT = "text";
+    static final String FRAMING_BINARY = "binary";
+
+    /** Encrypted protocol message, the only type so far */
+    static final byte TYPE_MESSAGE = 1;
+    /** The message carries raw bytes after its JSON */
+    static final byte FLAG_DATA = 0x01;
+
+    static final int LENGTH_BYTES = 4;
+    static final int HEADER_BYTES = 2;
+    // Header + IV + tag
+    static final int MIN_FRAME_BYTES = HEADER_BYTES + 12 + 16;
+    // Initial buffer of read(), it then doubles each time it is full
+    static final int READ_CHUNK_BYTES = 64 * 1024;
+
+    /**
+     * A decrypted frame.
+     *
+     * @param json  the JSON of the message
+     * @param data  the raw bytes sent with the message, {@code null} if there are none
+     */
+    record Message(String json, byte[] data) {}
+
+    private BinaryFrame() {}
+
+    /**
+     * @return the largest frame accepted by both transports, {@code nightguardian.nio.maxFrameBytes}
+     *         ({@link NioTransport#DEFAULT_MAX_FRAME_BYTES} by default)
+     */
+    static int maxFrameBytes() {
+        return Integer.getInteger("nightguardian.nio.maxFrameBytes", NioTransport.DEFAULT_MAX_FRAME_BYTES);
+    }
+
+    /**
+     * Encrypts a message into a complete frame, length prefix included.
+     *
+     * @param cipher    the session's engine
+     * @param json      the message
+     * @param data      raw bytes sent with the message, may be {@code null}
+     * @return          the bytes to write to the connection
+     * @throws GeneralSecurityException if the encryption fails
+     */
+    static byte[] encode(SessionCipher cipher, String json, byte[] data) throws GeneralSecurityException {
+        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        byte[] header = {TYPE_MESSAGE, data == null ? 0 : FLAG_DATA};
+        byte[] frame = data == null
+                ? cipher.encrypt(LENGTH_BYTES + HEADER_BYTES, header, jsonBytes)
+                : cipher.encrypt(LENGTH_BYTES + HEADER_BYTES, header, intBytes(jsonBytes.length), jsonBytes, data);
+        ByteBuffer.wrap(frame).putInt(frame.length - LENGTH_BYTES).put(header);
+        return frame;
+    }
+
+    /**
+     * Decrypts a frame.
+     *
+     * @param cipher    the session's engine
+     * @param frame     the frame without its length prefix
+     * @return          the message
+     * @throws GeneralSecurityException if the frame is malformed, was not encrypted with the session key or was modified
+     */
+    static Message decode(SessionCipher cipher, byte[] frame) throws GeneralSecurityException {
+        if (frame.length < MIN_FRAME_BYTES) {
+            throw new GeneralSecurityException("Frame too short: " + frame.length + " bytes");
+        }
+        byte type = frame[0];
+        byte flags = frame[1];
+        if (type != TYPE_MESSAGE || (flags & ~FLAG_DATA) != 0) {
+            throw new GeneralSecurityException("Unknown frame type " + type + " with flags " + flags);
+        }
+        byte[] plain = cipher.decrypt(Arrays.copyOf(frame, HEADER_BYTES), frame, HEADER_BYTES, frame.length - HEADER_BYTES);
+        if ((flags & FLAG_DATA) == 0) {
+            return new Message(new String(plain, StandardCharsets.UTF_8), null);
+        }
+        int jsonLength = plain.length < 4 ? -1 : ByteBuffer.wrap(plain).getInt();
+        if (jsonLength < 0 || jsonLength > plain.length - 4) {
+            throw new GeneralSecurityException("Invalid JSON length in frame: " + jsonLength);
+        }
+        return new Message(new String(plain, 4, jsonLength, StandardCharsets.UTF_8),
+                Arrays.copyOfRange(plain, 4 + jsonLength, plain.length));
+    }
+
+    /**
+     * Reads one frame from a blocking stream. As in {@link NioTransport}, the buffer grows with the bytes received
+     * (from {@link #READ_CHUNK_BYTES}, doubling when full), the announced length is not trusted for the allocation.
+     *
+     * @param in        the client's input stream
+     * @param maxBytes  the largest frame accepted
+     * @return          the frame without its length prefix, or {@code null} if the client closed the connection
+     * @throws IOException if the connection fails, ends in the middle of a frame or the length is invalid
+     */
+    static byte[] read(InputStream in, int maxBytes) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int length;
+        try {
+            length = data.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        checkLength(length, maxBytes);
+        byte[] frame = new byte[Math.min(length, READ_CHUNK_BYTES)];
+        int read = 0;
+        while (read < length) {
+            if (read == frame.length) {
+                frame = Arrays.copyOf(frame, (int) Math.min(length, 2L * frame.length));
+            }
+            int count = data.read(frame, read, frame.length - read);
+            if (count < 0) throw new EOFException("Connection closed after " + read + " of " + length + " frame bytes");
+            read += count;
+        }
+        return frame;
+    }
+
+    /**
+     * @throws IOException if a frame of that length cannot be valid
+     */
+    static void checkLength(int length, int maxBytes) throws IOException {
+        if (length < MIN_FRAME_BYTES || length > maxBytes) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+
+    private static byte[] intBytes(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+}
@@ -1,9 +1,13 @@
 package network;
 
 import com.google.gson.*;
-import encryption.PasswordHash;
+import encryption.PasswordHashPool;
+import encryption.SessionCipher;
+import encryption.SessionTicketService;
 import encryption.TokenUtils;
 import encryption.RSAUtil;
+import logging.Log;
+import metrics.ServerMetrics;
 import org.example.JDBC.securitydb.UserJDBC;
 import org.example.entities_medicaldb.*;
 import org.example.entities_securitydb.*;
@@ -13,13 +17,14 @@ import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.io.*;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
-import java.nio.file.Files;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 /**
  * Handles all communication between the server and a single connected client.
@@ -46,6 +51,15 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *     <li>Client decrypts AES session key and confirms via {@code CLIENT_AES_KEY}</li>
  *     <li>All subsequent communication uses AES-GCM encrypted JSON</li>
  * </ol>
+ * A client that logged in on an earlier connection can instead send {@code RESUME_SESSION} with the ticket of its
+ * {@code LOGIN_RESPONSE} and skip the RSA operations (see {@link SessionTicketService}).
+ *
+ * <h3>Binary framing</h3>
+ * When the transport supports it, {@code SERVER_PUBLIC_KEY} lists {@code "framing": ["text", "binary"]}.
+ * A client that sends {@code "framing": "binary"} in {@code CLIENT_AES_KEY} receives a plain
+ * {@code {"type":"CLIENT_AES_KEY_RESPONSE","framing":"binary"}} line and must wait for it: from then on both
+ * sides exchange {@link BinaryFrame binary frames} instead of {@code ENCRYPTED} lines, and signal bytes travel
+ * raw instead of as Base64 {@code dataBytes}. Clients that do not ask keep the text protocol.
  *
  * <h3>Thread Model</h3>
  * This class implements {@link Runnable}. The {@link #run()} method loops while:
@@ -63,17 +77,36 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 
 public class ClientHandler implements Runnable {
+    private static final Log LOG = Log.get("ClientHandler");
+    private static final int ENCRYPTED_WRAPPER_CHARS = "{\"type\":\"ENCRYPTED\",\"data\":\"\"}".length();
+    private static final ServerMetrics METRICS = ServerMetrics.getInstance();
+    // The types handled by handleMessage, the only ones recorded by name in the metrics (keep both in sync)
+    private static final Set<String> MESSAGE_TYPES = Set.of("STOP_CLIENT", "LOGIN_REQUEST", "REQUEST_DOCTOR_BY_EMAIL",
+            "REQUEST_PATIENTS_FROM_DOCTOR", "REQUEST_PATIENT_BY_EMAIL", "REQUEST_DOCTOR_BY_ID", "SAVE_COMMENTS_SIGNAL",
+            "UPLOAD_SIGNAL", "UPLOAD_SIGNAL_BEGIN", "UPLOAD_SIGNAL_CHUNK", "UPLOAD_SIGNAL_END", "REQUEST_SIGNAL_CHUNK",
+            "REQUEST_SIGNAL", "REQUEST_PATIENT_SIGNALS", "SAVE_REPORT", "CLIENT_AES_KEY", "ALERT_ADMIN");
     final Socket socket;
     private final Server server;
     BufferedReader in;
     private final PrintWriter out;
     private final Gson gson = new Gson();
+    private final long connectedAt = System.nanoTime();
+    private boolean handshakeRecorded;
     //Asegura que los cambios en la variable se realizan sin interferencia de otros hilos. Evitar race conditions
     private AtomicBoolean running;
     private String clientEmail;
     private final KeyPair serverKeyPair; //This is going to be the server's public key
     private PublicKey clientPublicKey; //This is going to be the client's public key
     private SecretKey token;
+    private SessionCipher sessionCipher; //AES-GCM engine reused for every message encrypted with token
+    private SignalUploadSession signalUpload; //Chunked signal upload in progress, if any
+    private SignalDownload signalDownload; //Chunked signal download in progress, if any
+    private User principal; //User authenticated by LOGIN_REQUEST in this session, if any
+    private final InputStream frameIn; //Socket stream read once the session uses binary frames (blocking transport only)
+    private final FrameChannel frameChannel; //Null if the transport cannot carry binary frames
+    private final int maxFrameBytes = BinaryFrame.maxFrameBytes(); //Same limit as NioTransport
+    private volatile boolean binaryFraming; //The session switched from ENCRYPTED lines to binary frames
+    private byte[] frameData; //Raw bytes of the binary frame being processed, if any
     /**
      * Creates a new {@code ClientHandler} bound to a single client socket.
      * <p>
@@ -96,9 +129,69 @@ public class ClientHandler implements Runnable {
         this.socket = socket;
         this.server = server;
         this.serverKeyPair = serverKeyPair;
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+        InputStream socketIn = socket.getInputStream();
+        OutputStream socketOut = socket.getOutputStream();
+        in = new BufferedReader(new InputStreamReader(socketIn));
+        out = new PrintWriter(new OutputStreamWriter(socketOut), true);
+        running = new AtomicBoolean(true);
+        frameIn = socketIn;
+        frameChannel = new FrameChannel() {
+            @Override
+            public void startFrames() {
+                // run() checks binaryFraming before every read
+            }
+
+            @Override
+            public void writeFrame(byte[] frame) throws IOException {
+                synchronized (socketOut) {
+                    socketOut.write(frame);
+                    socketOut.flush();
+                }
+            }
+
+            @Override
+            public void closeAfterWrites() throws IOException {
+                if (!socket.isClosed()) socket.close(); // the writes are not buffered
+            }
+        };
+    }
+
+    /**
+     * Creates a {@code ClientHandler} for a connection served by {@link NioTransport}.
+     * <p>
+     * There is no input stream: the transport reads the socket channel without blocking and feeds
+     * each complete line to {@link #processLine(String)}. Responses are written to the given writer,
+     * which queues them on the channel.
+     * </p>
+     *
+     * @param socket        The socket of the client's channel
+     * @param server        The main server instance managing all connections
+     * @param serverKeyPair The server's RSA key pair used during handshake and RSA decryption
+     * @param out           The writer bound to the client's channel
+     */
+    ClientHandler(Socket socket, Server server, KeyPair serverKeyPair, PrintWriter out) {
+        this(socket, server, serverKeyPair, out, null);
+    }
+
+    /**
+     * Creates a {@code ClientHandler} for a connection served by {@link NioTransport} that can switch
+     * to binary frames.
+     *
+     * @param socket        The socket of the client's channel
+     * @param server        The main server instance managing all connections
+     * @param serverKeyPair The server's RSA key pair used during handshake and RSA decryption
+     * @param out           The writer bound to the client's channel
+     * @param frameChannel  The byte side of the channel, or {@code null} to only offer the text protocol
+     */
+    ClientHandler(Socket socket, Server server, KeyPair serverKeyPair, PrintWriter out, FrameChannel frameChannel) {
+        this.socket = socket;
+        this.server = server;
+        this.serverKeyPair = serverKeyPair;
+        this.in = null;
+        this.out = out;
         running = new AtomicBoolean(true);
+        this.frameIn = null;
+        this.frameChannel = frameChannel;
     }
 
     /**
@@ -147,7 +240,9 @@ public class ClientHandler implements Runnable {
      *     <li>{@code REQUEST_PATIENT_BY_EMAIL}</li>
      *     <li>{@code REQUEST_DOCTOR_BY_ID}</li>
      *     <li>{@code UPLOAD_SIGNAL}</li>
+     *     <li>{@code UPLOAD_SIGNAL_BEGIN}, {@code UPLOAD_SIGNAL_CHUNK}, {@code UPLOAD_SIGNAL_END}</li>
      *     <li>{@code REQUEST_SIGNAL}</li>
+     *     <li>{@code REQUEST_SIGNAL_CHUNK}</li>
      *     <li>{@code REQUEST_PATIENT_SIGNALS}</li>
      *     <li>{@code SAVE_REPORT}</li>
      *     <li>{@code SAVE_COMMENTS_SIGNAL}</li>
@@ -177,250 +272,354 @@ public class ClientHandler implements Runnable {
     public void run(){
         sendPublicKey();
         try {
-            String line;
-            label:
-            while (running.get() && (line = in.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) {continue;} //Skip empty lines
-                // Desencriptar Json
-                JsonObject request;
-                try {
-                   request = gson.fromJson(line, JsonObject.class);
-                    System.out.println(request);//Turns the lines into a JsonObject
-                }catch (JsonSyntaxException e){
-                    System.out.println(line);
-                    continue;
+            while (running.get()) {
+                if (binaryFraming) {
+                    byte[] frame = BinaryFrame.read(frameIn, maxFrameBytes);
+                    if (frame == null) break;
+                    processFrame(frame);
+                } else {
+                    String line = in.readLine();
+                    if (line == null) break;
+                    processLine(line);
                 }
-                if (request == null) {continue;}
-
-                // Extract the type field from the JSON
-                String type = request.get("type").getAsString();
-                if(token == null){
-                    switch (type){
-                        case "ACTIVATION_REQUEST": {
-                            // Activation happens BEFORE the real token is exchanged
-                            handleActivationRequest(request.getAsJsonObject("data"));
-                            break;
-                        }
+            }
+        } catch (Exception e){
+            handleSessionError(e);
+        }
+    }
+
+    /**
+     * Processes one newline-delimited JSON message received from the client: parses it, decrypts it
+     * when the AES token has already been exchanged and dispatches it to the matching handler.
+     * <p>
+     * This is the body of the {@link #run()} loop. It is also called by {@link NioTransport} worker
+     * threads with each complete frame, one frame at a time per connection.
+     * </p>
+     *
+     * @param line  the raw line received from the client, without the line terminator
+     * @throws Exception if the message cannot be processed and the session must be terminated
+     */
+    void processLine(String line) throws Exception {
+        METRICS.addBytesIn(line.length() + 1);
+        line = line.trim();
+        if (line.isEmpty()) {return;} //Skip empty lines
+        // Desencriptar Json
+        JsonObject request;
+        try {
+           request = gson.fromJson(line, JsonObject.class);//Turns the lines into a JsonObject
+        }catch (JsonSyntaxException e){
+            LOG.warn("invalid_json", "client", client(), "line", line);
+            return;
+        }
+        if (request == null) {return;}
+
+        // Extract the type field from the JSON
+        String type = request.get("type").getAsString();
+        if(token == null){
+            switch (type){
+                case "RESUME_SESSION": {
+                    // Returning client with a session ticket: no RSA handshake
+                    handleResumeSession(request);
+                    break;
+                }
+                case "ACTIVATION_REQUEST": {
+                    // Activation happens BEFORE the real token is exchanged
+                    handleActivationRequest(request.getAsJsonObject("data"));
+                    break;
+                }
+
+                case "CLIENT_PUBLIC_KEY" : {
+                    JsonObject data = request.getAsJsonObject("data");
+                    handleClientPublicKey(data);
+                    break;
+                }
+                case "TOKEN_REQUEST" : {
+                    String email = request.get("email").getAsString();
+
+                    UserJDBC userJDBC = server.getAdminLinkService().getSecurityManager().getUserJDBC();
+                    User user = userJDBC.findUserByEmail(email);
 
-                        case "CLIENT_PUBLIC_KEY" : {
-                            System.out.println("This is the Server's Key Pair: ");
-                            System.out.println("Public Key (Base64): " + Base64.getEncoder().encodeToString(serverKeyPair.getPublic().getEncoded()));
-                            System.out.println("Private Key (Base64): " + Base64.getEncoder().encodeToString(serverKeyPair.getPrivate().getEncoded()));
-                            JsonObject data = request.getAsJsonObject("data");
-                            handleClientPublicKey(data);
+                    if (user!=null && user.getPublicKey()!=null){
+                        PublicKey publicKey = userJDBC.getPublicKey(user); // parsed once, then cached
+                        if (publicKey == null){
+                            LOG.warn("invalid_public_key", "client", client(), "email", email);
                             break;
                         }
-                        case "TOKEN_REQUEST" : {
-                            String email = request.get("email").getAsString();
-
-                            UserJDBC userJDBC = server.getAdminLinkService().getSecurityManager().getUserJDBC();
-                            User user = userJDBC.findUserByEmail(email);
-
-                            if (user!=null && user.getPublicKey()!=null){
-                                try{
-                                    byte[] keyBytes = Base64.getDecoder().decode(user.getPublicKey());
-                                    X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
-                                    KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-                                    this.clientPublicKey = keyFactory.generatePublic(keySpec);
-                                    System.out.println("Retrieved and set client public key from DB for: "+email);
-                                }catch (Exception e){
-                                    System.err.println("Error decoding public key from client");
-                                    break;
-                                }
-                            }
-                            if (clientPublicKey == null){
-                                System.out.println("TOKEN_REQUEST received before CLIENT_PUBLIC_KEY");
-                                break;
-                            }
-                            //sendPublicKey();
-                            sendTokenToClient();
+                        this.clientPublicKey = publicKey;
+                        LOG.debug("public_key_loaded", "client", client(), "email", email);
+                    }
+                    if (clientPublicKey == null){
+                        LOG.warn("token_request_without_public_key", "client", client(), "email", email);
+                        break;
+                    }
+                    //sendPublicKey();
+                    sendTokenToClient();
+                    break;
+                }
+                case "ENCRYPTED_MESSAGE": {
+                    try{
+                        String encryptedMessage = request.get("message").getAsString();
+                        String signatureBase64 = request.get("signature").getAsString();
+                        String clientEmail = request.get("clientEmail").getAsString();
+
+                        String decryptedJson = RSAUtil.decrypt(encryptedMessage, serverKeyPair.getPrivate());
+                        UserJDBC userJDBC = server.getAdminLinkService().getSecurityManager().getUserJDBC();
+                        User user = userJDBC.findUserByEmail(clientEmail);
+
+                        // Get the client key from DB
+                        if (user == null || user.getPublicKey() == null){
+                            LOG.warn("no_public_key", "client", client(), "email", clientEmail);
                             break;
                         }
-                        case "ENCRYPTED_MESSAGE": {
-                            try{
-                                String encryptedMessage = request.get("message").getAsString();
-                                String signatureBase64 = request.get("signature").getAsString();
-                                String clientEmail = request.get("clientEmail").getAsString();
-
-                                String decryptedJson = RSAUtil.decrypt(encryptedMessage, serverKeyPair.getPrivate());
-                                User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByEmail(clientEmail);
-
-                                // Get the client key from DB
-                                if (user == null || user.getPublicKey() == null){
-                                    System.err.println("No user or public key found for: "+clientEmail);
-                                    break;
-                                }
-
-                                byte[] keyBytes = Base64.getDecoder().decode(user.getPublicKey());
-                                X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
-                                KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-                                this.clientPublicKey = keyFactory.generatePublic(keySpec);
-
-                                //Verify signature
-                                byte[] signatureBytes = Base64.getDecoder().decode(signatureBase64);
-                                Signature signature = Signature.getInstance("SHA256withRSA");
-                                signature.initVerify(clientPublicKey);
-                                signature.update(decryptedJson.getBytes(StandardCharsets.UTF_8));
-
-                                boolean verified = signature.verify(signatureBytes);
-                                if (!verified){
-                                    System.err.println("Signature verification failed");
-                                    break;
-                                }
-
-                                JsonObject decryptedMessage = JsonParser.parseString(decryptedJson).getAsJsonObject();
-                                String innerType = decryptedMessage.get("type").getAsString();
-
-                                if (innerType.equals("CHANGE_PASSWORD_REQUEST")){
-                                    JsonObject data = decryptedMessage.get("data").getAsJsonObject();
-                                    handleChangePassword(data);
-                                }
-
-                            }catch (Exception e){
-                                System.err.println("Error in ENCRYPTED_MESSAGE: " + e.getMessage());
-                                e.printStackTrace();
-
-                                // Send back an error response
-                                JsonObject err = new JsonObject();
-                                err.addProperty("type", "CHANGE_PASSWORD_REQUEST_RESPONSE");
-                                err.addProperty("status", "ERROR");
-                                err.addProperty("message", e.getMessage());
-                                out.println(gson.toJson(err));
-                            }
+
+                        PublicKey publicKey = userJDBC.getPublicKey(user);
+                        if (publicKey == null){
+                            LOG.warn("invalid_public_key", "client", client(), "email", clientEmail);
                             break;
                         }
-                        default:
-                            System.err.println("Received unexpected message type before AES token exchange: "+type);
-                            break;
-                    }
-                    continue;
-                }
+                        this.clientPublicKey = publicKey;
 
-                //Further requests
-                System.out.println("\nThis is the encrypted message received from the Client: "+request);
-                String typeDecrypted = type; //default original type
-                JsonObject decryptedRequest = request; //default original request
-                if(type.equals("ENCRYPTED")){
-                    String encryptedData = request.get("data").getAsString();
-                    String decryptedJson = TokenUtils.decrypt(encryptedData, token);
-                    decryptedRequest = gson.fromJson(decryptedJson, JsonObject.class);
-                    typeDecrypted = decryptedRequest.get("type").getAsString();
-                }
-                System.out.println("This is the decrypted message received in Server: "+decryptedRequest);
-
-                // The type will tell the server what action to perform
-                switch (typeDecrypted) {
-                    case "STOP_CLIENT":
-                        //TODO: Checked
-                        //Client asked to stop itself or server asked client to stop and client echoes
-                        System.out.println("Received STOP_CLIENT from"+getSocketAddress());
-                        releaseResources(in, out, socket);
-                        break;
-                    case "LOGIN_REQUEST": {
-                        //TODO: Checked
-                        System.out.println("LOGIN REQUEST");
-                        handleLogIn(decryptedRequest.getAsJsonObject("data"));
-                        break;
-                    }
-                    case "REQUEST_DOCTOR_BY_EMAIL": {
-                        //TODO: try
-                        System.out.println("REQUEST DOCTOR_BY_EMAIL");
-                        handleRequestDoctorByEmail(decryptedRequest.getAsJsonObject("data"));
-                        break;
-                    }
-                    case "REQUEST_PATIENTS_FROM_DOCTOR": {
-                        //TODO: try
-                        System.out.println("REQUEST_PATIENTS_FROM_DOCTOR");
-                        handleRequestPatientsFromDoctor(decryptedRequest.getAsJsonObject("data"));
-                        break;
-                    }
-                    case "REQUEST_PATIENT_BY_EMAIL": {
-                        // TODO: Checked
-                        System.out.println("REQUEST_PATIENT_BY_EMAIL");
-                        handleRequestPatientByEmail(decryptedRequest.getAsJsonObject("data"));
-                        break;
-                    }
-                    case "REQUEST_DOCTOR_BY_ID": {
-                        //TODO: Checked
-                        System.out.println("REQUEST DOCTOR_BY_ID");
-                        handleRequestDoctorById(decryptedRequest.getAsJsonObject("data"));
-                        break;
-                    }
-                    case "SAVE_COMMENTS_SIGNAL": {
-                        //TODO: try
-                        System.out.println("SAVE_COMMENTS_SIGNAL");
-                        handleSaveCommentsSignal(decryptedRequest.getAsJsonObject("data"));
-                        break;
-                    }
-                    case "UPLOAD_SIGNAL" : {
-                        //TODO: try
-                        System.out.println("UPLOAD_SIGNAL");
-                        handleRequestSignalPatient(decryptedRequest);
-                        break;
-                    }
-                    case "REQUEST_SIGNAL" : {
-                        //TODO: try
-                        System.out.println("REQUEST_SIGNAL");
-                        handleRequestSignal(decryptedRequest.getAsJsonObject("data"));
-                        break;
-                    }
+                        //Verify signature
+                        byte[] signatureBytes = Base64.getDecoder().decode(signatureBase64);
+                        Signature signature = Signature.getInstance("SHA256withRSA");
+                        signature.initVerify(clientPublicKey);
+                        signature.update(decryptedJson.getBytes(StandardCharsets.UTF_8));
 
-                    case "REQUEST_PATIENT_SIGNALS" : {
-                        //TODO: try
-                        System.out.println("REQUEST_PATIENT_SIGNALS");
-                        handleRequestPatientSignals(decryptedRequest.getAsJsonObject("data"));
-                        break;
-                    }
-                    case "SAVE_REPORT":{
-                        //TODO: Checked
-                        System.out.println("SAVE_REPORT");
-                        handleSaveReportRequest(decryptedRequest.getAsJsonObject("data"));
-                        break;
-                    }
+                        boolean verified = signature.verify(signatureBytes);
+                        if (!verified){
+                            LOG.warn("signature_verification_failed", "client", client(), "email", clientEmail);
+                            break;
+                        }
+
+                        JsonObject decryptedMessage = JsonParser.parseString(decryptedJson).getAsJsonObject();
+                        String innerType = decryptedMessage.get("type").getAsString();
 
-                    case "CLIENT_AES_KEY" : {
-                        //TODO: Checked
-                        System.out.println("CLIENT_AES_KEY");
-                        // This one is encrypted by public key encryption2
-                        String encryptedAESkey = request.get("data").getAsString();
-                        try {
-                            String decryptedAESkey = RSAUtil.decrypt(encryptedAESkey, serverKeyPair.getPrivate());
-                            byte[] AESkeyBytes = Base64.getDecoder().decode(decryptedAESkey); //In bytes
-                            SecretKey AESkey = new SecretKeySpec(AESkeyBytes, 0, AESkeyBytes.length, "AES");
-                            //Store the secret key inside the Handler for the connection
-                            this.token = AESkey;
-                            System.out.println("AES key retrieved and decrypted successfully");
-                            System.out.println("This is the Server's secret key AES:"+Base64.getEncoder().encodeToString(AESkey.getEncoded()));
-                            System.out.println("This is the Server's public key RSA:"+Base64.getEncoder().encodeToString(serverKeyPair.getPublic().getEncoded())+"and the private RSA key: "+Base64.getEncoder().encode(serverKeyPair.getPrivate().getEncoded()));
-
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
+                        if (innerType.equals("CHANGE_PASSWORD_REQUEST")){
+                            JsonObject data = decryptedMessage.get("data").getAsJsonObject();
+                            handleChangePassword(data);
                         }
-                        break;
-                    }
 
-                    case "ALERT_ADMIN": {
-                        System.out.println("ALERT_ADMIN");
-                        handleClientAlert(decryptedRequest.getAsJsonObject("data"));
-                        break;
+                    }catch (Exception e){
+                        LOG.error("encrypted_message_failed", "client", client(), "error", e);
+
+                        // Send back an error response
+                        JsonObject err = new JsonObject();
+                        err.addProperty("type", "CHANGE_PASSWORD_REQUEST_RESPONSE");
+                        err.addProperty("status", "ERROR");
+                        err.addProperty("message", e.getMessage());
+                        out.println(gson.toJson(err));
                     }
+                    break;
                 }
+                default:
+                    LOG.warn("unexpected_before_token", "client", client(), "type", type);
+                    break;
+            }
+            return;
+        }
 
+        //Further requests
+        String typeDecrypted = type; //default original type
+        JsonObject decryptedRequest = request; //default original request
+        if(type.equals("ENCRYPTED")){
+            String encryptedData = request.get("data").getAsString();
+            long start = System.nanoTime();
+            String decryptedJson = sessionCipher(token).decrypt(encryptedData);
+            METRICS.addCryptoNanos(System.nanoTime() - start);
+            decryptedRequest = gson.fromJson(decryptedJson, JsonObject.class);
+            typeDecrypted = decryptedRequest.get("type").getAsString();
+        }
+        dispatch(typeDecrypted, decryptedRequest);
+    }
+
+    /**
+     * Makes the transport read binary frames, if it can. Must be called before the line that acknowledges the
+     * switch is sent: the client can send a frame as soon as it reads it.
+     * @return <code> true </code> if the session now uses binary frames
+     */
+    private boolean switchToBinaryFraming() {
+        if (frameChannel == null) {
+            return false;
+        }
+        frameChannel.startFrames();
+        binaryFraming = true;
+        return true;
+    }
+
+    /**
+     * Processes one binary frame received from a client that switched to binary framing
+     * (see {@link BinaryFrame}): decrypts it and dispatches the message as {@link #processLine(String)} does.
+     * The raw bytes of the frame, if any, replace the Base64 {@code dataBytes} of the message.
+     *
+     * @param frame the frame, without its length prefix
+     * @throws Exception if the message cannot be processed and the session must be terminated
+     */
+    void processFrame(byte[] frame) throws Exception {
+        METRICS.addBytesIn(frame.length + BinaryFrame.LENGTH_BYTES);
+        long start = System.nanoTime();
+        BinaryFrame.Message message = BinaryFrame.decode(sessionCipher(token), frame);
+        METRICS.addCryptoNanos(System.nanoTime() - start);
+        JsonObject decryptedRequest = gson.fromJson(message.json(), JsonObject.class);
+        frameData = message.data();
+        try {
+            dispatch(decryptedRequest.get("type").getAsString(), decryptedRequest);
+        } finally {
+            frameData = null;
+        }
+    }
+
+    /**
+     * Runs the handler of a message received after the AES token exchange.
+     *
+     * @param typeDecrypted     the type of the message
+     * @param decryptedRequest  the message
+     * @throws Exception if the message cannot be processed and the session must be terminated
+     */
+    private void dispatch(String typeDecrypted, JsonObject decryptedRequest) throws Exception {
+        LOG.debug("request", "client", client(), "type", typeDecrypted, "message", decryptedRequest);
+        // The type is client input: anything else is one fixed label, so it cannot fill the metrics with junk series
+        ServerMetrics.Request timing = METRICS.startRequest(
+                MESSAGE_TYPES.contains(typeDecrypted) ? typeDecrypted : ServerMetrics.UNKNOWN_TYPE);
+        boolean failed = true;
+        try {
+            handleMessage(typeDecrypted, decryptedRequest);
+            failed = false;
+        } finally {
+            timing.end(failed);
+        }
+    }
+
+    /**
+     * The switch of {@link #dispatch(String, JsonObject)}.
+     */
+    private void handleMessage(String typeDecrypted, JsonObject decryptedRequest) throws Exception {
+        // The type will tell the server what action to perform
+        switch (typeDecrypted) {
+            case "STOP_CLIENT":
+                //TODO: Checked
+                //Client asked to stop itself or server asked client to stop and client echoes
+                LOG.info("stop_client", "client", client());
+                releaseResources(in, out, socket);
+                break;
+            case "LOGIN_REQUEST": {
+                //TODO: Checked
+                handleLogIn(decryptedRequest.getAsJsonObject("data"));
+                break;
             }
-        } catch (Exception e){
-            if(e.getClass() == SocketException.class){
+            case "REQUEST_DOCTOR_BY_EMAIL": {
+                //TODO: try
+                handleRequestDoctorByEmail(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+            case "REQUEST_PATIENTS_FROM_DOCTOR": {
+                //TODO: try
+                handleRequestPatientsFromDoctor(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+            case "REQUEST_PATIENT_BY_EMAIL": {
+                // TODO: Checked
+                handleRequestPatientByEmail(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+            case "REQUEST_DOCTOR_BY_ID": {
+                //TODO: Checked
+                handleRequestDoctorById(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+            case "SAVE_COMMENTS_SIGNAL": {
+                //TODO: try
+                handleSaveCommentsSignal(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+            case "UPLOAD_SIGNAL" : {
+                //TODO: try
+                handleRequestSignalPatient(decryptedRequest);
+                break;
+            }
+            case "UPLOAD_SIGNAL_BEGIN" : {
+                handleUploadSignalBegin(decryptedRequest);
+                break;
+            }
+            case "UPLOAD_SIGNAL_CHUNK" : {
+                handleUploadSignalChunk(decryptedRequest);
+                break;
+            }
+            case "UPLOAD_SIGNAL_END" : {
+                handleUploadSignalEnd(decryptedRequest);
+                break;
+            }
+            case "REQUEST_SIGNAL_CHUNK" : {
+                handleRequestSignalChunk(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+            case "REQUEST_SIGNAL" : {
+                //TODO: try
+                handleRequestSignal(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+
+            case "REQUEST_PATIENT_SIGNALS" : {
+                //TODO: try
+                handleRequestPatientSignals(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+            case "SAVE_REPORT":{
+                //TODO: Checked
+                handleSaveReportRequest(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+
+            case "CLIENT_AES_KEY" : {
+                //TODO: Checked
+                // This one is encrypted by public key encryption2
+                String encryptedAESkey = decryptedRequest.get("data").getAsString();
                 try {
-                    System.out.println("Client stopped connection abruptly");
-                    releaseResources(in, out, socket);
-                    System.out.println("Client thread stopped");
-                } catch (IOException ex) {
-                    throw new RuntimeException(ex);
+                    long start = System.nanoTime();
+                    String decryptedAESkey = RSAUtil.decrypt(encryptedAESkey, serverKeyPair.getPrivate());
+                    METRICS.addCryptoNanos(System.nanoTime() - start);
+                    byte[] AESkeyBytes = Base64.getDecoder().decode(decryptedAESkey); //In bytes
+                    SecretKey AESkey = new SecretKeySpec(AESkeyBytes, 0, AESkeyBytes.length, "AES");
+                    //Store the secret key inside the Handler for the connection
+                    this.token = AESkey;
+                    handshakeDone();
+                    LOG.debug("aes_key_received", "client", client());
+
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
                 }
-            }else{
-                System.out.println("Client: "+socket.getInetAddress()+":"+running.get());
-                //System.out.println("Error reading from client"+e.getMessage());
+                if (decryptedRequest.has("framing") && BinaryFrame.FRAMING_BINARY.equals(decryptedRequest.get("framing").getAsString())) {
+                    startBinaryFraming();
+                }
+                break;
             }
+
+            case "ALERT_ADMIN": {
+                handleClientAlert(decryptedRequest.getAsJsonObject("data"));
+                break;
+            }
+
+            default:
+                LOG.warn("unknown_message_type", "client", client(), "type", typeDecrypted);
+                break;
+        }
+    }
+
+    /**
+     * Cleans up after an exception ends the session: an abrupt disconnection releases the
+     * client resources, any other error is only logged.
+     *
+     * @param e the exception that terminated the session
+     */
+    void handleSessionError(Exception e) {
+        if(e.getClass() == SocketException.class){
+            try {
+                LOG.info("client_disconnected", "client", client(), "abrupt", true);
+                releaseResources(in, out, socket);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }else{
+            LOG.error("session_error", "client", client(), "running", running.get(), "error", e);
         }
     }
 
@@ -445,13 +644,12 @@ public class ClientHandler implements Runnable {
 
             if (user !=null){
                 userJDBC.changePublicKey(user, clientPublicKeyBase64);
-                System.out.println("Stored new client public key for: "+user.getEmail());
+                LOG.info("public_key_stored", "client", client(), "email", user.getEmail());
             }else{
-                System.out.println("User not found when storing public key");
+                LOG.warn("public_key_user_not_found", "client", client(), "email", email);
             }
-            System.out.println("Received and stored Client's Public Key: "+Base64.getEncoder().encodeToString(this.clientPublicKey.getEncoded()));
         }catch (Exception e){
-            System.out.println("Failed to parse client's public key: "+e.getMessage());
+            LOG.warn("invalid_public_key", "client", client(), "error", e);
         }
     }
     /**
@@ -515,12 +713,11 @@ public class ClientHandler implements Runnable {
      */
 
     private void handleActivationRequest(JsonObject data){
-            System.out.println("Handling activation request");
             String email = data.get("email").getAsString();
             String tempPassword = data.get("temp_pass").getAsString();
             String oneTimeToken = data.get("temp_token").getAsString();
 
-            System.out.println("Activation request from: "+email);
+            LOG.info("activation_request", "client", client(), "email", email);
 
             JsonObject response = new JsonObject();
             response.addProperty("type", "ACTIVATION_REQUEST_RESPONSE");
@@ -533,7 +730,7 @@ public class ClientHandler implements Runnable {
                 out.flush();
                 return;
             }
-            if (!PasswordHash.verifyPassword(tempPassword,user.getPassword())){
+            if (!PasswordHashPool.getInstance().verifyPassword(tempPassword,user.getPassword())){
                 //Verification if the password is the same as the hashedPassword in the DB
                 response.addProperty("status", "ERROR");
                 response.addProperty("message", "Invalid temporary password");
@@ -577,14 +774,14 @@ public class ClientHandler implements Runnable {
             response.addProperty("message", "Account activated successfully");
             out.println(response);
             out.flush();
-            System.out.println("User activated successfully: "+email);
+            LOG.info("user_activated", "client", client(), "email", email);
 
         }catch (Exception e){
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Server error during activation");
             out.println(response);
             out.flush();
-            e.printStackTrace();
+            LOG.error("activation_failed", "client", client(), "email", email, "error", e);
         }
     }
 
@@ -597,7 +794,7 @@ public class ClientHandler implements Runnable {
     private void sendTokenToClient () throws Exception{
         SecretKey token = TokenUtils.generateToken();
         this.token = token; //Stores token for this session
-        System.out.println("🔑 Server's AES Token (Base64): " + Base64.getEncoder().encodeToString(token.getEncoded()));
+        long start = System.nanoTime();
         // Encrypt token with client's Public Key -> Confidentiality
         String encryptedToken = RSAUtil.encrypt(Base64.getEncoder().encodeToString(token.getEncoded()), clientPublicKey);
         // Sign token with server's Private Key -> Authenticity
@@ -605,6 +802,7 @@ public class ClientHandler implements Runnable {
         signature.initSign(serverKeyPair.getPrivate());
         signature.update(token.getEncoded());
         byte[] signatureBytes = signature.sign();
+        METRICS.addCryptoNanos(System.nanoTime() - start);
 
         //Prepare JSON response to Client
         JsonObject response = new JsonObject();
@@ -612,10 +810,12 @@ public class ClientHandler implements Runnable {
         response.addProperty("token", encryptedToken);
         response.addProperty("signature", Base64.getEncoder().encodeToString(signatureBytes));
 
-        System.out.println("This is the token sent: "+response);
-        out.println(gson.toJson(response));
+        String line = gson.toJson(response);
+        out.println(line);
         out.flush();
-        System.out.println("AES token sent to Client successfully");
+        METRICS.addBytesOut(line.length() + 1);
+        handshakeDone();
+        LOG.debug("token_sent", "client", client());
     }
 
     /**
@@ -628,10 +828,42 @@ public class ClientHandler implements Runnable {
         JsonObject response = new JsonObject();
         response.addProperty("type", "SERVER_PUBLIC_KEY");
         response.addProperty("data", serverPublicKey);
-        out.println(gson.toJson(response));
+        if (frameChannel != null) {
+            JsonArray framing = new JsonArray();
+            framing.add(BinaryFrame.FRAMING_TEXT);
+            framing.add(BinaryFrame.FRAMING_BINARY);
+            response.add("framing", framing);
+        }
+        String line = gson.toJson(response);
+        out.println(line);
         out.flush();
+        METRICS.addBytesOut(line.length() + 1);
 
-        System.out.println("Sent Server's Public Key to Client");
+        LOG.debug("server_public_key_sent", "client", client());
+    }
+
+    /**
+     * Records the duration of the handshake when the session has its AES key, the first time.
+     */
+    private void handshakeDone() {
+        if (!handshakeRecorded) {
+            handshakeRecorded = true;
+            METRICS.recordHandshake(System.nanoTime() - connectedAt);
+        }
+    }
+
+    /**
+     * Switches the session to binary frames, as asked by the client in {@code CLIENT_AES_KEY}, and acknowledges
+     * it with the last text line of the session. A client that asks for binary frames when they were not offered
+     * is told {@code "framing": "text"} and keeps the text protocol.
+     */
+    private void startBinaryFraming() {
+        JsonObject response = new JsonObject();
+        response.addProperty("type", "CLIENT_AES_KEY_RESPONSE");
+        response.addProperty("framing", switchToBinaryFraming() ? BinaryFrame.FRAMING_BINARY : BinaryFrame.FRAMING_TEXT);
+        out.println(gson.toJson(response));
+        out.flush();
+        LOG.info("framing", "client", client(), "framing", response.get("framing").getAsString());
     }
 
     private void handleClientAlert(JsonObject data) {
@@ -652,12 +884,11 @@ public class ClientHandler implements Runnable {
 
         int patientId = data.get("patient_id").getAsInt();
         int userId   = data.get("user_id").getAsInt();
-        User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(userId);
+        User user = findRequestingUser(userId);
         if (user == null) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "User not found");
 
-            System.out.println("\nBefore encryption, REQUEST_PATIENT_SIGNALS_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
@@ -665,15 +896,14 @@ public class ClientHandler implements Runnable {
         if (role == null || !role.getRolename().equals("Doctor")) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Not authorized");
-            System.out.println("\nBefore encryption, REQUEST_PATIENT_SIGNALS_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
 
-        List<Signal> signals = server.getAdminLinkService().getMedicalManager().getSignalJDBC().getSignalsByPatientId(patientId);
+        List<SignalSummary> signals = server.getAdminLinkService().getMedicalManager().getSignalJDBC().getSignalSummariesByPatientId(patientId);
 
         JsonArray signalsArray = new JsonArray();
-        for (Signal signal : signals) {
+        for (SignalSummary signal : signals) {
             JsonObject signalObj = new JsonObject();
             signalObj.addProperty("signal_id", signal.getId());
             signalObj.addProperty("date", signal.getDate().toString());
@@ -684,7 +914,6 @@ public class ClientHandler implements Runnable {
 
         response.addProperty("status", "SUCCESS");
         response.add("signals", signalsArray);
-        System.out.println("\nBefore encryption, REQUEST_PATIENT_SIGNALS_RESPONSE to Client: "+response);
         sendEncrypted(response,out, token);
     }
 
@@ -692,59 +921,153 @@ public class ClientHandler implements Runnable {
      * Handles a REQUEST_SIGNAL request by validating the user, locating the
      * requested signal, encoding its ZIP file as Base64, and returning it
      * with metadata in an encrypted response.
+     * <p>
+     * When the request contains {@code "chunked": true} the response only carries the metadata and the
+     * {@code total_size} of the recording, which is then fetched with {@code REQUEST_SIGNAL_CHUNK} requests
+     * (see {@link #handleRequestSignalChunk(JsonObject)}).
      * @param data
      * @throws IOException
      */
     private void handleRequestSignal(JsonObject data) throws IOException {
-        System.out.println(data.toString());
         JsonObject response = new JsonObject();
         response.addProperty("type", "REQUEST_SIGNAL_RESPONSE");
 
+        Signal signal = findSignalForDoctor(data, response);
+        if (signal == null) {
+            return;
+        }
+
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("signal_id", signal.getId());
+        metadata.addProperty("patient_id", signal.getPatientId());
+        metadata.addProperty("sampling_rate", signal.getSampleFrequency());
+        metadata.addProperty("comments", signal.getComments());
+        metadata.addProperty("date", signal.getDate().toString());
+        response.addProperty("status", "SUCCESS");
+        //TODO: Ver si realmente coge bien la metadata
+        response.add("metadata", metadata);
+        response.addProperty("filename", "signal_" + signal.getId() + ".zip");
+
+        if (data.has("chunked") && data.get("chunked").getAsBoolean()) {
+            closeSignalDownload();
+            signalDownload = new SignalDownload(signal.getId(), signal.openRecording());
+            response.addProperty("compression", "zip");
+            response.addProperty("total_size", signalDownload.getSize());
+            response.addProperty("max_chunk_bytes", SignalDownload.MAX_CHUNK_BYTES);
+        } else {
+            byte[] zipBytes;
+            try (InputStream recording = signal.openRecordingStream()) {
+                zipBytes = recording.readAllBytes();
+            }
+            response.addProperty("compression", binaryFraming ? "zip" : "zip-base64");
+            sendEncrypted(response, zipBytes, out, token);
+            return;
+        }
+
+        sendEncrypted(response,out, token);
+    }
+
+    /**
+     * Handles a REQUEST_SIGNAL_CHUNK request by sending one encrypted chunk of a signal recording.
+     * <p>
+     * Expected incoming JSON format:
+     * <pre>
+     * {
+     *   "signal_id": 7,
+     *   "user_id": 3,
+     *   "offset": 1048576,
+     *   "length": 524288
+     * }
+     * </pre>
+     * The client stores every chunk it receives and asks for the next one from {@code offset + length}.
+     * After a disconnect it sends the same request from the last offset it stored: the recording is
+     * opened again (checking the doctor as in {@code REQUEST_SIGNAL}) and the download goes on from there.
+     * The response carries {@code signal_id}, {@code offset}, {@code length}, {@code total_size},
+     * {@code last} and the Base64 {@code dataBytes} of the chunk (the raw bytes after the JSON in a binary frame).
+     * @param data
+     * @throws IOException
+     */
+    private void handleRequestSignalChunk(JsonObject data) throws IOException {
+        JsonObject response = new JsonObject();
+        response.addProperty("type", "REQUEST_SIGNAL_CHUNK_RESPONSE");
+
+        int signalId = data.get("signal_id").getAsInt();
+        if (signalDownload == null || signalDownload.getSignalId() != signalId) {
+            Signal signal = findSignalForDoctor(data, response);
+            if (signal == null) {
+                return;
+            }
+            closeSignalDownload();
+            signalDownload = new SignalDownload(signal.getId(), signal.openRecording());
+        }
+
+        long offset = data.get("offset").getAsLong();
+        int length = data.has("length") ? data.get("length").getAsInt() : SignalDownload.MAX_CHUNK_BYTES;
+        byte[] chunk;
+        try {
+            chunk = signalDownload.read(offset, length);
+        } catch (IOException e) {
+            response.addProperty("status", "ERROR");
+            response.addProperty("message", e.getMessage());
+            sendEncrypted(response,out, token);
+            return;
+        }
+
+        boolean last = offset + chunk.length >= signalDownload.getSize();
+        response.addProperty("status", "SUCCESS");
+        response.addProperty("signal_id", signalId);
+        response.addProperty("offset", offset);
+        response.addProperty("length", chunk.length);
+        response.addProperty("total_size", signalDownload.getSize());
+        response.addProperty("last", last);
+        sendEncrypted(response, chunk, out, token);
+
+        if (last) {
+            closeSignalDownload();
+        }
+    }
+
+    /**
+     * Checks that the {@code user_id} of the request belongs to a doctor and looks up the requested
+     * {@code signal_id}. When any of them fails the error is sent to the client using the given response.
+     * @param data      the request data, with {@code signal_id} and {@code user_id}
+     * @param response  the response (with its type already set) used to report an error
+     * @return          the signal, or {@code null} if an error was sent
+     */
+    private Signal findSignalForDoctor(JsonObject data, JsonObject response) {
         int signalId = data.get("signal_id").getAsInt();
         int userId   = data.get("user_id").getAsInt();
-        User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(userId);
+        User user = findRequestingUser(userId);
         if (user == null) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "User not found");
-            System.out.println("\nBefore encryption, REQUEST_SIGNAL_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
-            return;
+            return null;
         }
         Role role = server.getAdminLinkService().getSecurityManager().getRoleJDBC().findRoleByID(user.getRole_id());
         if (role == null || !role.getRolename().equals("Doctor")) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Not authorized");
-            System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_EMAIL_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
-            return;
+            return null;
         }
 
-        Signal signal = server.getAdminLinkService().getMedicalManager().getSignalJDBC().findSignalById(signalId);
-
+        Signal signal = server.getAdminLinkService().getMedicalManager().getSignalJDBC().openSignal(signalId);
         if (signal == null) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Signal not found");
-            System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_EMAIL_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
+        }
+        return signal;
+    }
 
-        }else {
-            byte[] zipBytes = Files.readAllBytes(signal.getFile().toPath());
-            String base64Zip = Base64.getEncoder().encodeToString(zipBytes);
-            JsonObject metadata = new JsonObject();
-            metadata.addProperty("signal_id", signal.getId());
-            metadata.addProperty("patient_id", signal.getPatientId());
-            metadata.addProperty("sampling_rate", signal.getSampleFrequency());
-            metadata.addProperty("comments", signal.getComments());
-            metadata.addProperty("date", signal.getDate().toString());
-            response.addProperty("status", "SUCCESS");
-            //TODO: Ver si realmente coge bien la metadata
-            response.add("metadata", metadata);
-            response.addProperty("compression", "zip-base64");
-            response.addProperty("filename", "signal_" + signal.getId() + ".zip");
-            response.addProperty("dataBytes", base64Zip);
-
-            System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_EMAIL_RESPONSE to Client: "+response);
-            sendEncrypted(response,out, token);
+    /**
+     * Closes the chunked download in progress, if any.
+     */
+    private void closeSignalDownload() {
+        if (signalDownload != null) {
+            signalDownload.close();
+            signalDownload = null;
         }
     }
 
@@ -768,7 +1091,6 @@ public class ClientHandler implements Runnable {
             LocalDateTime dateTime = LocalDateTime.parse(timestamp);
 
             String filename = dataIn.get("filename").getAsString();
-            String base64Data = dataIn.get("dataBytes").getAsString();
 
             Patient patient = server.getAdminLinkService().getMedicalManager().getPatientJDBC().findPatientByID(patientId);
 
@@ -776,12 +1098,11 @@ public class ClientHandler implements Runnable {
                 response.addProperty("status", "ERROR");
                 response.addProperty("message", "Patient not found");
 
-                System.out.println("\nBefore encryption, REQUEST_PATIENT_SIGNALS_RESPONSE to Client: "+response);
                 sendEncrypted(response,out, token);
                 return;
             }
-            // Decode base64 data
-            byte[] zipBytes = Base64.getDecoder().decode(base64Data);
+            // Decode base64 data (raw in a binary frame)
+            byte[] zipBytes = frameData != null ? frameData : Base64.getDecoder().decode(dataIn.get("dataBytes").getAsString());
 
             File tempZip = File.createTempFile("signal_", ".zip"); //se guarda temporalmente en el servidor
             try (FileOutputStream fos = new FileOutputStream(tempZip)) {
@@ -795,26 +1116,175 @@ public class ClientHandler implements Runnable {
                     patientId,
                     sampleFrequency
             );
-            System.out.println("Inserting signal for patient ID: " + patientId + " with sampling rate: " + sampleFrequency + " at " + dateTime.toString());
+            LOG.info("signal_insert", "client", client(), "patient_id", patientId, "sampling_rate", sampleFrequency, "date", dateTime);
 
                if(!server.getAdminLinkService().getMedicalManager().getSignalJDBC().insertSignal(record)) {
                 response.addProperty("status", "ERROR");
                 response.addProperty("type", "ERROR ADDING SIGNAL TO DATABASE");
                 response.addProperty("message", "Error saving signal: ");
                 // TODO: Encriptar response
-                   System.out.println("\nBefore encryption, UPLOAD_SIGNAL_RESPONSE to Client: "+response);
                    sendEncrypted(response,out, token);
                 }else {
                    response.addProperty("status", "SUCCESS");
                    response.addProperty("message", "Signal uploaded correctly");
                    //TODO: encriptar response
-                   System.out.println("\nBefore encryption, UPLOAD_SIGNAL_RESPONSE to Client: "+response);
                    sendEncrypted(response,out, token);
                }
 
     }
 
 
+    /**
+     * Handles an UPLOAD_SIGNAL_BEGIN request, the first message of a chunked signal upload.
+     * <p>
+     * Expected incoming JSON format:
+     * <pre>
+     * {
+     *   "type": "UPLOAD_SIGNAL_BEGIN",
+     *   "metadata": { "patient_id": 12, "sampling_rate": 500, "timestamp": "2025-02-12T18:32:11" },
+     *   "filename": "signal.zip"
+     * }
+     * </pre>
+     * The response carries the {@code upload_id} that every chunk must reference and the maximum
+     * size of a chunk ({@code max_chunk_bytes}, before Base64 encoding). Starting a new upload
+     * discards any upload of this client that was not finished.
+     * @param data
+     * @throws IOException
+     */
+    private void handleUploadSignalBegin(JsonObject data) throws IOException {
+        JsonObject response = new JsonObject();
+        response.addProperty("type", "UPLOAD_SIGNAL_BEGIN_RESPONSE");
+
+        JsonObject metadata = data.getAsJsonObject("metadata");
+        int patientId = metadata.get("patient_id").getAsInt();
+        int sampleFrequency = metadata.get("sampling_rate").getAsInt();
+        LocalDateTime dateTime = LocalDateTime.parse(metadata.get("timestamp").getAsString());
+        String filename = data.has("filename") ? data.get("filename").getAsString() : "signal.zip";
+
+        Patient patient = server.getAdminLinkService().getMedicalManager().getPatientJDBC().findPatientByID(patientId);
+        if (patient == null) {
+            response.addProperty("status", "ERROR");
+            response.addProperty("message", "Patient not found");
+            sendEncrypted(response,out, token);
+            return;
+        }
+
+        abortSignalUpload();
+        signalUpload = new SignalUploadSession(patientId, sampleFrequency, dateTime, filename);
+
+        response.addProperty("status", "SUCCESS");
+        response.addProperty("upload_id", signalUpload.getUploadId());
+        response.addProperty("max_chunk_bytes", SignalUploadSession.MAX_CHUNK_BYTES);
+        sendEncrypted(response,out, token);
+    }
+
+    /**
+     * Handles an UPLOAD_SIGNAL_CHUNK request by decoding the chunk and appending it to the upload's
+     * temporary file. Chunks are not acknowledged one by one, only an error aborts the upload and
+     * is reported back.
+     * <p>
+     * Expected incoming JSON format:
+     * <pre>
+     * {
+     *   "type": "UPLOAD_SIGNAL_CHUNK",
+     *   "upload_id": "…",
+     *   "seq": 0,
+     *   "dataBytes": "&lt;Base64 chunk&gt;"
+     * }
+     * </pre>
+     * @param data
+     */
+    private void handleUploadSignalChunk(JsonObject data) {
+        String uploadId = data.get("upload_id").getAsString();
+        if (signalUpload == null || !signalUpload.getUploadId().equals(uploadId)) {
+            sendUploadChunkError(uploadId, "Unknown upload");
+            return;
+        }
+        try {
+            byte[] chunk = frameData != null ? frameData : Base64.getDecoder().decode(data.get("dataBytes").getAsString());
+            signalUpload.append(data.get("seq").getAsInt(), chunk);
+        } catch (IOException | IllegalArgumentException e) {
+            abortSignalUpload();
+            sendUploadChunkError(uploadId, e.getMessage());
+        }
+    }
+
+    private void sendUploadChunkError(String uploadId, String message) {
+        JsonObject response = new JsonObject();
+        response.addProperty("type", "UPLOAD_SIGNAL_CHUNK_RESPONSE");
+        response.addProperty("status", "ERROR");
+        response.addProperty("upload_id", uploadId);
+        response.addProperty("message", message);
+        sendEncrypted(response,out, token);
+    }
+
+    /**
+     * Handles an UPLOAD_SIGNAL_END request: verifies the received chunks against the optional
+     * {@code chunks}, {@code total_size} and {@code sha256} fields, inserts the signal into the
+     * database and answers with the same {@code UPLOAD_SIGNAL_RESPONSE} as a single-message upload.
+     * @param data
+     * @throws IOException
+     */
+    private void handleUploadSignalEnd(JsonObject data) throws IOException {
+        JsonObject response = new JsonObject();
+        response.addProperty("type", "UPLOAD_SIGNAL_RESPONSE");
+
+        String uploadId = data.get("upload_id").getAsString();
+        if (signalUpload == null || !signalUpload.getUploadId().equals(uploadId)) {
+            response.addProperty("status", "ERROR");
+            response.addProperty("message", "Unknown upload");
+            sendEncrypted(response,out, token);
+            return;
+        }
+
+        SignalUploadSession upload = signalUpload;
+        signalUpload = null;
+        File recording;
+        try {
+            recording = upload.finish(
+                    data.has("chunks") ? data.get("chunks").getAsInt() : -1,
+                    data.has("total_size") ? data.get("total_size").getAsLong() : -1,
+                    data.has("sha256") ? data.get("sha256").getAsString() : null);
+        } catch (IOException e) {
+            upload.abort();
+            response.addProperty("status", "ERROR");
+            response.addProperty("message", "Upload incomplete: " + e.getMessage());
+            sendEncrypted(response,out, token);
+            return;
+        }
+
+        Signal record = new Signal(
+                recording,
+                upload.getTimestamp().toLocalDate(),
+                "",              // comments initially empty
+                upload.getPatientId(),
+                upload.getSampleFrequency()
+        );
+        LOG.info("signal_insert", "client", client(), "patient_id", upload.getPatientId(), "bytes", upload.getBytesWritten());
+        try {
+            if (server.getAdminLinkService().getMedicalManager().getSignalJDBC().insertSignal(record)) {
+                response.addProperty("status", "SUCCESS");
+                response.addProperty("message", "Signal uploaded correctly");
+            } else {
+                response.addProperty("status", "ERROR");
+                response.addProperty("message", "Error saving signal: ");
+            }
+        } finally {
+            upload.abort(); // the recording is in the database now, drop the temporary file
+        }
+        sendEncrypted(response,out, token);
+    }
+
+    /**
+     * Discards the chunked upload in progress, if any, deleting its temporary file.
+     */
+    private void abortSignalUpload() {
+        if (signalUpload != null) {
+            signalUpload.abort();
+            signalUpload = null;
+        }
+    }
+
     /**
      * Forces an immediate shutdown of this client connection from the server side.
      * <p>
@@ -833,13 +1303,12 @@ public class ClientHandler implements Runnable {
         JsonObject jsonObject = new JsonObject();
         jsonObject.addProperty("type", "STOP_CLIENT");
 
-        System.out.println("\nBefore encryption, STOP_CLIENT to Client: "+jsonObject);
         sendEncrypted(jsonObject,out, token);
 
         running.set(false);
         try {
             socket.close(); //this will unblock readline() in run()
-            System.out.println("Socktet closed"+socket.getInetAddress());
+            LOG.info("client_stopped", "client", client());
             server.removeClient(this);
         }catch (IOException e){
             e.getMessage();
@@ -875,9 +1344,14 @@ public class ClientHandler implements Runnable {
     void releaseResources(BufferedReader bufferedReader, PrintWriter out, Socket clientSocket) throws IOException {
         server.removeClient(this);
         running.set(false);
-        try {if (bufferedReader!=null) bufferedReader.close();} catch (IOException ex) {System.out.println("Error closing socket"+ex.getMessage());}
+        abortSignalUpload();
+        closeSignalDownload();
+        try {if (bufferedReader!=null) bufferedReader.close();} catch (IOException ex) {LOG.warn("close_failed", "client", client(), "error", ex);}
         if(out!=null)out.close();
-        try {if(clientSocket!=null && !clientSocket.isClosed())clientSocket.close();} catch (IOException ex) {System.out.println("Error closing socket"+ex.getMessage());}
+        try {
+            if (frameChannel != null) frameChannel.closeAfterWrites(); // NIO: once the last responses are sent
+            else if (clientSocket!=null && !clientSocket.isClosed()) clientSocket.close();
+        } catch (IOException ex) {LOG.warn("close_failed", "client", client(), "error", ex);}
     }
     /**
      * Returns the IP address of the connected client as a string.
@@ -889,6 +1363,14 @@ public class ClientHandler implements Runnable {
         return socket.getInetAddress().toString();
     }
 
+    /**
+     * @return the client's address and port for the log, also when the socket is not connected
+     */
+    private String client() {
+        InetAddress address = socket == null ? null : socket.getInetAddress();
+        return address == null ? "unknown" : address.getHostAddress() + ":" + socket.getPort();
+    }
+
     /**
      * Handles a login request sent by a client and generates an encrypted
      * {@code LOGIN_RESPONSE} message.
@@ -927,8 +1409,11 @@ public class ClientHandler implements Runnable {
      * <p>This method performs the following steps:</p>
      * <ul>
      *   <li>Extracts email, password, and access-permit role from the request</li>
-     *   <li>Checks whether the user exists in the SecurityDB</li>
-     *   <li>Validates the password</li>
+     *   <li>Reads the user and its role name from the SecurityDB in one query
+     *       ({@link UserJDBC#authenticate(String, String)}), unknown emails are answered from a cache</li>
+     *   <li>Validates the password. If the password hash pool is full the answer is
+     *       {@code "Server busy, try again"}, and if the check fails {@code "Login failed, try again"}, never
+     *       "User not found" for an email that may exist</li>
      *   <li>Verifies the user's assigned role against the required access permits</li>
      *   <li>Ensures the user account is still active</li>
      *   <li>Builds a JSON response containing either SUCCESS or ERROR</li>
@@ -947,19 +1432,34 @@ public class ClientHandler implements Runnable {
         JsonObject response = new JsonObject();
         response.addProperty("type", "LOGIN_RESPONSE");
 
-        if (server.getAdminLinkService().getSecurityManager().getUserJDBC().isUser(email)) {
-            User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().login(email, password);
-            System.out.println(user);
+        UserJDBC.Credentials credentials = null;
+        String unavailable = null;
+        try {
+            credentials = server.getAdminLinkService().getSecurityManager().getUserJDBC().authenticate(email, password);
+        } catch (RejectedExecutionException e) {
+            unavailable = "Server busy, try again";
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            LOG.error("login_failed", "client", client(), "email", email, "error", e);
+            unavailable = "Login failed, try again";
+        }
+        if (unavailable != null) {
+            response.addProperty("status", "ERROR");
+            response.addProperty("message", unavailable);
+        } else if (credentials != null) {
+            User user = credentials.passwordMatches() ? credentials.user() : null;
             if (user != null) {
-                Role role = server.getAdminLinkService().getSecurityManager().getRoleJDBC().findRoleByID(user.getRole_id());
-                if(role != null && role.getRolename().equals(accessPermits)) {
+                String rolename = credentials.rolename();
+                if(rolename != null && rolename.equals(accessPermits)) {
                     if(user.isActive()){
                         response.addProperty("status", "SUCCESS");
+                        principal = user;
                         JsonObject userObj = new JsonObject();
                         userObj.addProperty("id", user.getId());
                         userObj.addProperty("email", user.getEmail());
-                        userObj.addProperty("role", role.getRolename());
+                        userObj.addProperty("role", rolename);
                         response.add("data", userObj);
+                        addSessionTicket(response, user);
                     }else {
                         response.addProperty("status", "ERROR");
                         response.addProperty("message", "The user is no longer active.");
@@ -978,10 +1478,118 @@ public class ClientHandler implements Runnable {
             response.addProperty("message", "User not found");
         }
 
-        System.out.println("\nBefore encryption, LOGIN_RESPONSE to Client: "+response);
+        LOG.info("login", "client", client(), "email", email, "status", response.get("status").getAsString(),
+                "message", response.has("message") ? response.get("message").getAsString() : null);
         sendEncrypted(response,out, token);
     }
 
+    /**
+     * Adds a session resumption ticket to a successful {@code LOGIN_RESPONSE}: {@code "session_ticket"} and its
+     * lifetime {@code "ticket_lifetime_ms"}. See {@link #handleResumeSession(JsonObject)}.
+     * @param response  the login response
+     * @param user      the logged-in user
+     */
+    private void addSessionTicket(JsonObject response, User user) {
+        SessionTicketService tickets = server.getSessionTickets();
+        if (tickets == null) {
+            return;
+        }
+        try {
+            String ticket = tickets.issue(user.getId(), SessionTicketService.generation(user.getPassword()), token);
+            response.addProperty("session_ticket", ticket);
+            response.addProperty("ticket_lifetime_ms", tickets.getLifetimeMillis());
+        } catch (GeneralSecurityException e) {
+            LOG.error("ticket_failed", "client", client(), "error", e);
+        }
+    }
+
+    /**
+     * Handles a RESUME_SESSION request, sent instead of the RSA handshake by a client that logged in on an earlier
+     * connection.
+     * <p>
+     * Expected incoming JSON format (plain text, before any key exchange):
+     * <pre>
+     * {
+     *   "type": "RESUME_SESSION",
+     *   "ticket": "&lt;session_ticket of the LOGIN_RESPONSE&gt;",
+     *   "client_nonce": "&lt;Base64 of 16 random bytes&gt;",
+     *   "framing": "binary"        (optional)
+     * }
+     * </pre>
+     * If the ticket is valid, its user is still active and has not changed the password since the ticket was issued,
+     * the server answers
+     * {@code {"type":"RESUME_SESSION_RESPONSE","status":"SUCCESS","server_nonce":"<Base64>","user_id":3,"framing":"text"}}
+     * and both sides continue with encrypted messages, using the key derived with
+     * {@link SessionTicketService#deriveKey(SecretKey, byte[], byte[])} from the session key of the ticket and the two
+     * nonces. The session is already logged in as the ticket's user. Otherwise the status is {@code ERROR} and the
+     * client must do the full handshake and log in again.
+     * </p>
+     * @param request
+     */
+    private void handleResumeSession(JsonObject request) {
+        JsonObject response = new JsonObject();
+        response.addProperty("type", "RESUME_SESSION_RESPONSE");
+
+        SessionTicketService tickets = server.getSessionTickets();
+        SessionTicketService.Ticket ticket = null;
+        byte[] clientNonce = null;
+        try {
+            if (tickets != null && request.has("ticket") && request.has("client_nonce")) {
+                ticket = tickets.open(request.get("ticket").getAsString());
+                clientNonce = Base64.getDecoder().decode(request.get("client_nonce").getAsString());
+            }
+        } catch (IllegalArgumentException e) {
+            ticket = null;
+        }
+        User user = ticket == null ? null : server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(ticket.userId());
+        if (user == null || !user.isActive() || clientNonce.length < SessionTicketService.NONCE_BYTES
+                || ticket.generation() != SessionTicketService.generation(user.getPassword())) {
+            response.addProperty("status", "ERROR");
+            response.addProperty("message", "Session cannot be resumed, log in again");
+            LOG.info("session_resume_refused", "client", client(), "ticket_valid", ticket != null);
+            out.println(gson.toJson(response));
+            out.flush();
+            return;
+        }
+
+        byte[] serverNonce = SessionTicketService.newNonce();
+        try {
+            token = SessionTicketService.deriveKey(ticket.sessionKey(), clientNonce, serverNonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+        handshakeDone();
+        principal = user;
+        clientEmail = user.getEmail();
+        response.addProperty("status", "SUCCESS");
+        response.addProperty("server_nonce", Base64.getEncoder().encodeToString(serverNonce));
+        response.addProperty("user_id", user.getId());
+        boolean binary = request.has("framing") && BinaryFrame.FRAMING_BINARY.equals(request.get("framing").getAsString())
+                && switchToBinaryFraming();
+        response.addProperty("framing", binary ? BinaryFrame.FRAMING_BINARY : BinaryFrame.FRAMING_TEXT);
+        out.println(gson.toJson(response));
+        out.flush();
+        LOG.info("session_resumed", "client", client(), "user_id", user.getId());
+    }
+
+    /**
+     * Returns the user a request is made for ({@code user_id}). Once the client has logged in, requests can only
+     * be made for the logged-in user. The user is read through the {@code UserJDBC} cache, which is invalidated
+     * when an account changes, so a deactivated account is refused on its next request.
+     * @param userId    the {@code user_id} of the request
+     * @return          the user, or {@code null} if it does not exist, is not active or is not the session's user
+     */
+    private User findRequestingUser(int userId) {
+        if (principal != null && principal.getId() != userId) {
+            return null;
+        }
+        User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(userId);
+        if (user == null || !user.isActive()) {
+            return null;
+        }
+        return user;
+    }
+
     /**
      * Handles a REQUEST_DOCTOR_BY_EMAIL request by validating the user and role,
      * retrieving the doctor data if authorized, and sending the encrypted response.
@@ -994,11 +1602,10 @@ public class ClientHandler implements Runnable {
 
         String email = dataIn.get("email").getAsString();
         Integer user_id = dataIn.get("user_id").getAsInt();
-        User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(user_id);
+        User user = findRequestingUser(user_id);
         if(user == null){
             response.addProperty("status", "ERROR");
             response.addProperty("message", "User not found");
-            System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_EMAIL_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
@@ -1007,7 +1614,6 @@ public class ClientHandler implements Runnable {
         if(role==null || !role.getRolename().equals("Doctor") || !email.equals(user.getEmail())) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Not authorized");
-            System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_EMAIL_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
@@ -1025,7 +1631,6 @@ public class ClientHandler implements Runnable {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Doctor not found");
         }
-        System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_EMAIL_RESPONSE to Client: "+response);
         sendEncrypted(response, out, token);
     }
 
@@ -1041,10 +1646,9 @@ public class ClientHandler implements Runnable {
 
         int doctor_id = data.get("doctor_id").getAsInt();
         int user_id = data.get("user_id").getAsInt();
-        User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(user_id);
+        User user = findRequestingUser(user_id);
         if(user == null){
             response.addProperty("status", "ERROR");
-            System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_ID_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
@@ -1053,7 +1657,6 @@ public class ClientHandler implements Runnable {
         if(role == null){
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Role not found");
-            System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_ID_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
@@ -1064,7 +1667,6 @@ public class ClientHandler implements Runnable {
                 response.addProperty("status", "ERROR");
                 response.addProperty("message", "Not authorized");
 
-                System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_ID_RESPONSE to Client: "+response);
                 sendEncrypted(response,out, token);
                 return;
             }
@@ -1077,7 +1679,6 @@ public class ClientHandler implements Runnable {
                 response.addProperty("status", "ERROR");
                 response.addProperty("message", "Not authorized");
 
-                System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_ID_RESPONSE to Client: "+response);
                 sendEncrypted(response,out, token);
                 return;
             }
@@ -1088,7 +1689,6 @@ public class ClientHandler implements Runnable {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Doctor not found");
         }
-        System.out.println("\nBefore encryption REQUEST_DOCTOR_BY_ID_RESPONSE to Client: "+response);
         sendEncrypted(response,out, token);
     }
 
@@ -1105,11 +1705,10 @@ public class ClientHandler implements Runnable {
 
         String email = data.get("email").getAsString();
         Integer user_id = data.get("user_id").getAsInt();
-        User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(user_id);
+        User user = findRequestingUser(user_id);
         if(user == null || !user.getEmail().equals(email)) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Not authorized");
-            System.out.println("\nBefore encryption, REQUEST_PATIENT_BY_EMAIL_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
@@ -1118,11 +1717,11 @@ public class ClientHandler implements Runnable {
         if(patient != null) {
             if(patient.isActive()) {
                 response.addProperty("status", "SUCCESS");
-                List<Signal> signals = server.getAdminLinkService().getMedicalManager().getSignalJDBC().getSignalsByPatientId(patient.getId());
+                List<SignalSummary> signals = server.getAdminLinkService().getMedicalManager().getSignalJDBC().getSignalSummariesByPatientId(patient.getId());
                 List<Report> symptoms = server.getAdminLinkService().getMedicalManager().getReportJDBC().getReportsByPatientId(patient.getId());
                 JsonObject pJson = patient.toJason();
                 JsonArray signalArray = new JsonArray();
-                for (Signal s : signals) {
+                for (SignalSummary s : signals) {
                     signalArray.add(s.toJson());
                 }
                 JsonArray symptomsArray = new JsonArray();
@@ -1132,7 +1731,6 @@ public class ClientHandler implements Runnable {
                 pJson.add("signals", signalArray);
                 pJson.add("reports", symptomsArray);
                 response.add("patient", pJson);
-                System.out.println(pJson.toString());
             }else {
                 response.addProperty("status", "ERROR");
                 response.addProperty("message", "The user is no longer active");
@@ -1141,7 +1739,6 @@ public class ClientHandler implements Runnable {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Doctor not found");
         }
-        System.out.println("\nBefore encryption, REQUEST_PATIENT_BY_EMAIL_RESPONSE to Client: "+response);
         sendEncrypted(response,out, token);
     }
 
@@ -1158,31 +1755,18 @@ public class ClientHandler implements Runnable {
 
         Integer doctorId = data.get("doctor_id").getAsInt();
         Integer user_id = data.get("user_id").getAsInt();
-        User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(user_id);
+        User user = findRequestingUser(user_id);
         Doctor doctor = server.getAdminLinkService().getMedicalManager().getDoctorJDBC().getDoctor(doctorId);
 
         if(user != null && doctor != null && doctor.getEmail().equals(user.getEmail())) {
 
             response.addProperty("status", "SUCCESS");
-            List<Patient> patients = server.getAdminLinkService().getMedicalManager().getPatientJDBC().getPatientsOfDoctor(doctorId);
+            // Patients, signal summaries and reports in three queries, whatever the size of the panel
+            List<PatientPanel> panels = server.getAdminLinkService().getMedicalManager().getDoctorPanel(doctorId);
 
             JsonArray patientArray = new JsonArray();
-            for (Patient p : patients) {
-                List<Signal> signals = server.getAdminLinkService().getMedicalManager().getSignalJDBC().getSignalsByPatientId(p.getId());
-                List<Report> symptoms = server.getAdminLinkService().getMedicalManager().getReportJDBC().getReportsByPatientId(p.getId());
-                JsonObject pJson = p.toJason();
-                JsonArray signalArray = new JsonArray();
-                for (Signal s : signals) {
-                    signalArray.add(s.toJson());
-                }
-                JsonArray symptomsArray = new JsonArray();
-                for (Report s : symptoms) {
-                    symptomsArray.add(s.toJson());
-                }
-                pJson.add("signals", signalArray);
-                pJson.add("reports", symptomsArray);
-
-                patientArray.add(pJson);
+            for (PatientPanel panel : panels) {
+                patientArray.add(panel.toJson());
             }
 
             response.add("patients", patientArray);
@@ -1192,7 +1776,6 @@ public class ClientHandler implements Runnable {
             response.addProperty("message", "Not authorized");
         }
 
-        System.out.println("\nBefore encryption, REQUEST_PATIENT_FROM_DOCTOR_RESPONSE to Client: "+response);
         sendEncrypted(response,out, token);
     }
 
@@ -1211,11 +1794,10 @@ public class ClientHandler implements Runnable {
         Integer signal_id = data.get("signal_id").getAsInt();
         Integer patient_id = data.get("patient_id").getAsInt();
 
-        User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(user_id);
+        User user = findRequestingUser(user_id);
         if(user == null) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Not authorized");
-            System.out.println("\nBefore encryption, SAVE_COMMENTS_SIGNAL_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
@@ -1226,7 +1808,8 @@ public class ClientHandler implements Runnable {
         Doctor doctor1 = server.getAdminLinkService().getMedicalManager().getDoctorJDBC().getDoctorFromPatient(patient_id);
 
         if(doctor!= null && doctor1 != null && doctor1.getId() == doctor.getId()) {
-            if(server.getAdminLinkService().getMedicalManager().getSignalJDBC().updateSignalComments(signal_id, comments)) {
+            // Batched with other clients' writes, answered once the batch is committed
+            if(server.getAdminLinkService().getMedicalManager().getWriteBehindQueue().updateSignalComments(signal_id, comments).join()) {
                 response.addProperty("status", "SUCCESS");
             }else{
                 response.addProperty("status", "ERROR");
@@ -1237,7 +1820,6 @@ public class ClientHandler implements Runnable {
             response.addProperty("message", "Not authorized");
         }
 
-        System.out.println("\nBefore encryption, REQUEST_DOCTOR_BY_EMAIL_RESPONSE to Client: "+response);
         sendEncrypted(response,out, token);
     }
 
@@ -1257,16 +1839,14 @@ public class ClientHandler implements Runnable {
         if(report == null) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Error parsing report");
-            System.out.println("\nBefore encryption, SAVE_REPORT_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
 
-        User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByID(user_id);
+        User user = findRequestingUser(user_id);
         if(user == null) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Not authorized");
-            System.out.println("\nBefore encryption, SAVE_REPORT_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
@@ -1275,14 +1855,14 @@ public class ClientHandler implements Runnable {
         if(patient == null) {
             response.addProperty("status", "ERROR");
             response.addProperty("message", "Not authorized");
-            System.out.println("\nBefore encryption, SAVE_REPORT_RESPONSE to Client: "+response);
             sendEncrypted(response,out, token);
             return;
         }
 
         if(patient.getEmail().equals(user.getEmail())) {
             report.setPatientId(patient_id);
-            if(server.getAdminLinkService().getMedicalManager().getReportJDBC().insertReport(report)) {
+            // Batched with other clients' writes, answered once the batch is committed
+            if(server.getAdminLinkService().getMedicalManager().getWriteBehindQueue().insertReport(report).join()) {
                 response.addProperty("status", "SUCCESS");
             }else{
                 response.addProperty("status", "ERROR");
@@ -1293,7 +1873,6 @@ public class ClientHandler implements Runnable {
             response.addProperty("message", "Not authorized");
         }
 
-        System.out.println("\nBefore encryption, SAVE_REPORT_RESPONSE to Client: "+response);
         sendEncrypted(response,out, token);
     }
 
@@ -1316,14 +1895,14 @@ public class ClientHandler implements Runnable {
             response.addProperty("message", "User not found");
         } else{
             User user = server.getAdminLinkService().getSecurityManager().getUserJDBC().findUserByEmail(email);
-            String hashedPassword = encryption.PasswordHash.generatePasswordHash(newPassword);
-            boolean success = server.getAdminLinkService().getSecurityManager().getUserJDBC().changePassword(user,hashedPassword);
+            // changePassword hashes it
+            boolean success = server.getAdminLinkService().getSecurityManager().getUserJDBC().changePassword(user,newPassword);
             if (success){
                 response.addProperty("status", "SUCCESS");
                 JsonObject userObj = new JsonObject();
                 userObj.addProperty("email", email);
                 response.add("data", userObj);
-                System.out.println("Password successfully updated for user: "+email);
+                LOG.info("password_changed", "client", client(), "email", email);
             }else{
                 response.addProperty("status", "ERROR");
                 response.addProperty("message", "Failed to update password");
@@ -1344,11 +1923,51 @@ public class ClientHandler implements Runnable {
         wrapper.addProperty("message", encrypted);
         wrapper.addProperty("signature", signatureBase64);
 
-        System.out.println("\n Before encryption, CHANGE_PASSWORD_RESPONSE to Client: "+response);
+        LOG.debug("response", "client", client(), "message", response);
         out.println(gson.toJson(wrapper));
         out.flush();
     }
 
+    /**
+     * Returns the AES-GCM engine of the session, created again when the key changes (new token exchange).
+     * @param AESkey    the session's AES key
+     * @return          the engine bound to that key
+     * @throws GeneralSecurityException if AES-GCM is not available
+     */
+    private SessionCipher sessionCipher(SecretKey AESkey) throws GeneralSecurityException {
+        if (sessionCipher == null || sessionCipher.getKey() != AESkey) {
+            sessionCipher = new SessionCipher(AESkey);
+        }
+        return sessionCipher;
+    }
+
+    /**
+     * Encrypts a message that carries binary data: in a binary frame the bytes are sent raw after the JSON,
+     * with the text protocol they are added to the message as Base64 {@code dataBytes}.
+     *
+     * @param message
+     * @param dataBytes
+     * @param out
+     * @param AESkey
+     */
+    private void sendEncrypted(JsonObject message, byte[] dataBytes, PrintWriter out, SecretKey AESkey){
+        if (!binaryFraming) {
+            message.addProperty("dataBytes", Base64.getEncoder().encodeToString(dataBytes));
+            sendEncrypted(message, out, AESkey);
+            return;
+        }
+        LOG.debug("response", "client", client(), "message", message, "bytes", dataBytes.length);
+        try{
+            long start = System.nanoTime();
+            byte[] frame = BinaryFrame.encode(sessionCipher(AESkey), message.toString(), dataBytes);
+            METRICS.addCryptoNanos(System.nanoTime() - start);
+            frameChannel.writeFrame(frame);
+            METRICS.addBytesOut(frame.length);
+        }catch (Exception e){
+            LOG.error("send_failed", "client", client(), "error", e);
+        }
+    }
+
     /**
      * Encrypts the Json's data property.
      *
@@ -1357,20 +1976,30 @@ public class ClientHandler implements Runnable {
      * @param AESkey
      */
     private void sendEncrypted(JsonObject message, PrintWriter out, SecretKey AESkey){
+        LOG.debug("response", "client", client(), "message", message);
         try{
-            String encryptedJson = TokenUtils.encrypt(message.toString(), AESkey);
+            long start = System.nanoTime();
+            if (binaryFraming) {
+                byte[] frame = BinaryFrame.encode(sessionCipher(AESkey), message.toString(), null);
+                METRICS.addCryptoNanos(System.nanoTime() - start);
+                frameChannel.writeFrame(frame);
+                METRICS.addBytesOut(frame.length);
+                return;
+            }
+            String encryptedJson = sessionCipher(AESkey).encrypt(message.toString());
+            METRICS.addCryptoNanos(System.nanoTime() - start);
             JsonObject wrapper = new JsonObject();
 
             //TODO: ver si realmente el type debería ser especifico para cada case o no
             wrapper.addProperty("type", "ENCRYPTED");
             wrapper.addProperty("data", encryptedJson);
 
-            System.out.println("\nThis is the encrypted message sent to Client: "+wrapper);
-
             out.println(wrapper); //String Json
             out.flush();
+            // Base64 needs no escaping, so the line is the wrapper around the data and a newline
+            METRICS.addBytesOut(ENCRYPTED_WRAPPER_CHARS + encryptedJson.length() + 1);
         }catch (Exception e){
-            e.printStackTrace();
+            LOG.error("send_failed", "client", client(), "error", e);
         }
     }
 
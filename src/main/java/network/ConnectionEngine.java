@@ -0,0 +1,47 @@
+package network;
+
+/**
+ * Strategy used by the {@link Server} to run the sessions of the accepted clients.
+ * <p>
+ * The server only accepts sockets and builds a {@link ClientHandler} for each of them. How (and if) that
+ * handler gets a thread is decided by the engine, which keeps the admission control policy in one place:
+ * </p>
+ * <ul>
+ *     <li>{@link #start()} prepares the worker threads every time the server is (re)started</li>
+ *     <li>{@link #submit(Runnable)} admits a new session or rejects it when the server is at capacity</li>
+ *     <li>{@link #shutdown()} stops the worker threads when the server is stopped</li>
+ * </ul>
+ *
+ * @see ExecutorConnectionEngine
+ */
+public interface ConnectionEngine {
+
+    /**
+     * Prepares the engine to accept sessions. Called by {@link Server#startServer()}.
+     */
+    void start();
+
+    /**
+     * Tries to admit a new client session.
+     *
+     * @param session   the session to run (normally a {@link ClientHandler})
+     * @return          <code> true </code> if the session was admitted (running or waiting for a free slot)
+     *                  <code> false </code> if it was rejected and the caller must close the connection
+     */
+    boolean submit(Runnable session);
+
+    /**
+     * @return the number of sessions currently running
+     */
+    int getActiveSessions();
+
+    /**
+     * @return the number of admitted sessions waiting for a free slot
+     */
+    int getQueuedSessions();
+
+    /**
+     * Stops accepting sessions and releases the worker threads. Called by {@link Server#stop()}.
+     */
+    void shutdown();
+}
@@ -0,0 +1,127 @@
+package network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Default {@link ConnectionEngine} of the {@link Server}, backed by a bounded {@link ThreadPoolExecutor}.
+ * <p>
+ * The executor bounds the work the server accepts in two levels:
+ * </p>
+ * <ul>
+ *     <li> At most {@code maxSessions} client sessions run at the same time</li>
+ *     <li> At most {@code acceptQueueLimit} extra sessions wait for a free slot (e.g. a ward of patient
+ *          apps reconnecting at once after a Wi-Fi drop)</li>
+ *     <li> Anything beyond that is rejected and the server answers with a {@code SERVER_BUSY} message</li>
+ * </ul>
+ * Sessions run in virtual threads by default, so a blocked {@code readLine()} does not pin a platform thread.
+ * Platform threads can still be selected for debugging or profiling.
+ * <p>
+ * Defaults can be overridden without recompiling with the system properties
+ * {@code nightguardian.maxSessions} and {@code nightguardian.acceptQueue}.
+ * </p>
+ */
+public class ExecutorConnectionEngine implements ConnectionEngine {
+
+    public static final int DEFAULT_MAX_SESSIONS = 500;
+    public static final int DEFAULT_ACCEPT_QUEUE = 200;
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    private final int maxSessions;
+    private final int acceptQueueLimit;
+    private final boolean virtualThreads;
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * Creates an engine with virtual threads and the default (or system property) limits.
+     */
+    public ExecutorConnectionEngine() {
+        this(Integer.getInteger("nightguardian.maxSessions", DEFAULT_MAX_SESSIONS),
+                Integer.getInteger("nightguardian.acceptQueue", DEFAULT_ACCEPT_QUEUE),
+                true);
+    }
+
+    /**
+     * Creates an engine with the given limits.
+     *
+     * @param maxSessions       maximum number of client sessions running at the same time
+     * @param acceptQueueLimit  maximum number of admitted sessions waiting for a free slot
+     * @param virtualThreads    <code> true </code> to run each session in a virtual thread,
+     *                          <code> false </code> to use platform threads
+     */
+    public ExecutorConnectionEngine(int maxSessions, int acceptQueueLimit, boolean virtualThreads) {
+        if (maxSessions <= 0 || acceptQueueLimit < 0) {
+            throw new IllegalArgumentException("Invalid session limits: max=" + maxSessions + ", queue=" + acceptQueueLimit);
+        }
+        this.maxSessions = maxSessions;
+        this.acceptQueueLimit = acceptQueueLimit;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (executor != null && !executor.isShutdown()) return;
+
+        ThreadFactory factory = virtualThreads
+                ? Thread.ofVirtual().name("client-", 0).factory()
+                : Thread.ofPlatform().name("client-", 0).daemon(true).factory();
+        // A zero-capacity queue is not allowed by ArrayBlockingQueue, one waiting slot is the minimum
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxSessions, maxSessions,
+                IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, acceptQueueLimit)),
+                factory,
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true); //idle slots do not keep threads alive
+        executor = pool;
+        System.out.println("Connection engine started (" + (virtualThreads ? "virtual" : "platform")
+                + " threads, max sessions: " + maxSessions + ", accept queue: " + acceptQueueLimit + ")");
+    }
+
+    @Override
+    public boolean submit(Runnable session) {
+        ThreadPoolExecutor pool = executor;
+        if (pool == null || pool.isShutdown()) {
+            return false;
+        }
+        try {
+            pool.execute(session);
+            return true;
+        } catch (RejectedExecutionException e) {
+            System.out.println("Session rejected, server at capacity (active: " + getActiveSessions()
+                    + ", queued: " + getQueuedSessions() + ")");
+            return false;
+        }
+    }
+
+    @Override
+    public int getActiveSessions() {
+        ThreadPoolExecutor pool = executor;
+        return pool == null ? 0 : pool.getActiveCount();
+    }
+
+    @Override
+    public int getQueuedSessions() {
+        ThreadPoolExecutor pool = executor;
+        return pool == null ? 0 : pool.getQueue().size();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if (executor == null) return;
+        // Sockets are closed by the server first, interrupting only wakes up whatever is left
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public int getAcceptQueueLimit() {
+        return acceptQueueLimit;
+    }
+}
@@ -0,0 +1,32 @@
+package network;
+
+import java.io.IOException;
+
+/**
+ * Byte side of a client connection, used by a {@link ClientHandler} once its session has switched to
+ * {@link BinaryFrame binary frames}, and to close the connection when the session ends. Transports that cannot carry binary frames do not give one to the handler,
+ * and the handler then does not offer binary framing to the client.
+ */
+interface FrameChannel {
+
+    /**
+     * Called before the handler acknowledges the switch: every byte the client sends from now on is part of
+     * a binary frame.
+     */
+    void startFrames();
+
+    /**
+     * Writes one complete frame.
+     *
+     * @param frame the frame, length prefix included. The channel may keep it until it is sent
+     * @throws IOException if the connection fails
+     */
+    void writeFrame(byte[] frame) throws IOException;
+
+    /**
+     * Closes the connection once the bytes already written have been sent.
+     *
+     * @throws IOException if the connection cannot be closed
+     */
+    void closeAfterWrites() throws IOException;
+}
@@ -0,0 +1,415 @@
+package network;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import encryption.PasswordHash;
+import org.example.JDBC.medicaldb.MedicalConnection;
+import org.example.JDBC.medicaldb.MedicalManager;
+import org.example.JDBC.securitydb.SecurityConnection;
+import org.example.JDBC.securitydb.SecurityManager;
+import org.example.entities_medicaldb.Doctor;
+import org.example.entities_medicaldb.Patient;
+import org.example.entities_medicaldb.Report;
+import org.example.entities_securitydb.User;
+import org.example.service.AdminLinkService;
+import ui.RandomData;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Simulates patient and doctor applications against a {@link Server} started in this JVM, on copies of the
+ * databases in a temporary directory, and reports the latency seen by the clients.
+ * <p>
+ *     Every simulated client runs sessions in a loop: connect with the real RSA→AES handshake ({@link ProtocolClient}),
+ *     {@code LOGIN_REQUEST}, then {@code nightguardian.load.sessionRequests} requests (20 by default) separated by a
+ *     random think time, and disconnect. Patients send {@code SAVE_REPORT} (60%), {@code UPLOAD_SIGNAL} (30%, a zipped
+ *     recording of {@code nightguardian.load.signalSeconds} seconds at 100 Hz, 60 by default) and {@code ALERT_ADMIN}
+ *     (10%). Doctors send {@code REQUEST_PATIENTS_FROM_DOCTOR}. The accounts are created before the run, each doctor
+ *     with an equal share of the patients.
+ * </p>
+ * <p>
+ *     The first {@code nightguardian.load.warmupSeconds} seconds (5 by default) are not measured. The report gives,
+ *     per request type (and {@code HANDSHAKE}), the throughput, the errors and the p50/p99/p999/max latency. It is
+ *     printed and written as JSON; if the JSON file is already there, the p99 of the previous run is shown next to
+ *     the new one.
+ * </p>
+ * <p>
+ *     Usage: {@code LoadGenerator [patients] [doctors] [seconds] [thinkMillis] [results.json]}
+ *     (defaults 100, 10, 60, 1000, {@code load-results.json}). Think times are drawn from an exponential
+ *     distribution with the given mean. Patients are assigned to the doctors in turn, so there must be at least one
+ *     doctor when there are patients.
+ * </p>
+ */
+public class LoadGenerator {
+
+    static final String PASSWORD = "Password123";
+    static final String HANDSHAKE = "HANDSHAKE";
+    static final int SAMPLING_RATE = 100;
+    static final int TIMEOUT_MS = 60_000;
+    static final int KEY_PAIRS = 16; // shared by the clients, generating one per client takes longer than a run
+
+    record Account(String email, String role, int userId, int entityId) {}
+
+    /**
+     * Latencies of one request type, in nanoseconds.
+     */
+    static final class Samples {
+        private long[] values = new long[1024];
+        private int count;
+        private int errors;
+
+        synchronized void add(long nanos, boolean failed) {
+            if (count == values.length) values = Arrays.copyOf(values, count * 2);
+            values[count++] = nanos;
+            if (failed) errors++;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+
+        synchronized int getErrors() {
+            return errors;
+        }
+    }
+
+    private final int port;
+    private final List<Account> accounts;
+    private final KeyPair[] keyPairs;
+    private final long thinkMillis;
+    private final int sessionRequests = Integer.getInteger("nightguardian.load.sessionRequests", 20);
+    private final int signalSeconds = Integer.getInteger("nightguardian.load.signalSeconds", 60);
+    private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+    private volatile long measureFrom;
+    private volatile boolean stopped;
+
+    LoadGenerator(int port, List<Account> accounts, KeyPair[] keyPairs, long thinkMillis) {
+        this.port = port;
+        this.accounts = accounts;
+        this.keyPairs = keyPairs;
+        this.thinkMillis = thinkMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int patients = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int doctors = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        long thinkMillis = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+        Path results = Paths.get(args.length > 4 ? args[4] : "load-results.json");
+        int warmupSeconds = Integer.getInteger("nightguardian.load.warmupSeconds", 5);
+        if (patients > 0 && doctors < 1) {
+            System.err.println("Usage: LoadGenerator [patients] [doctors] [seconds] [thinkMillis] [results.json]");
+            System.err.println("Patients need a doctor: doctors must be at least 1 when patients is not 0");
+            return;
+        }
+
+        Path directory = Files.createTempDirectory("load-generator");
+        Path medicalDb = Files.copy(Paths.get(MedicalConnection.DEFAULT_PATH), directory.resolve("Medicaldb.db"));
+        Path securityDb = Files.copy(Paths.get(SecurityConnection.DEFAULT_PATH), directory.resolve("Securitydb.db"));
+        System.setProperty("nightguardian.medicalDb", medicalDb.toString());
+        System.setProperty("nightguardian.securityDb", securityDb.toString());
+        System.setProperty("nightguardian.blobStore", directory.resolve("blobs").toString());
+        System.setProperty("nightguardian.keystore", directory.resolve("server_keys.p12").toString());
+        System.setProperty("nightguardian.logLevel", System.getProperty("nightguardian.logLevel", "WARN"));
+
+        MedicalManager medicalManager = new MedicalManager();
+        SecurityManager securityManager = new SecurityManager();
+        Server server = null;
+        try {
+            List<Account> accounts = createAccounts(medicalManager, securityManager, patients, doctors);
+            KeyPair[] keyPairs = new KeyPair[Math.min(KEY_PAIRS, accounts.size())];
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            for (int i = 0; i < keyPairs.length; i++) keyPairs[i] = generator.generateKeyPair();
+
+            int port;
+            try (ServerSocket probe = new ServerSocket(0)) {
+                port = probe.getLocalPort();
+            }
+            server = new Server(port, new AdminLinkService(medicalManager, securityManager));
+            server.startServer();
+
+            LoadGenerator load = new LoadGenerator(port, accounts, keyPairs, thinkMillis);
+            JsonObject report = load.run(warmupSeconds, seconds);
+            report.add("config", config(patients, doctors, seconds, thinkMillis, warmupSeconds, load));
+            JsonObject previous = Files.exists(results) ? JsonParser.parseString(Files.readString(results)).getAsJsonObject() : null;
+            print(report, previous);
+            Files.writeString(results, new GsonBuilder().setPrettyPrinting().create().toJson(report));
+            System.out.println("Results written to " + results.toAbsolutePath());
+        } finally {
+            if (server != null) server.stop();
+            medicalManager.close();
+            securityManager.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * Creates active patient and doctor accounts that all share the same password hash.
+     *
+     * @throws IllegalArgumentException if there are patients but no doctors to assign them to
+     */
+    static List<Account> createAccounts(MedicalManager medicalManager, SecurityManager securityManager,
+                                        int patients, int doctors) throws Exception {
+        if (patients > 0 && doctors < 1) {
+            throw new IllegalArgumentException("Patients need a doctor, got " + doctors + " doctors");
+        }
+        String hash = PasswordHash.generatePasswordHash(PASSWORD);
+        int doctorRole = securityManager.getRoleJDBC().findRoleByName("Doctor").getId();
+        int patientRole = securityManager.getRoleJDBC().findRoleByName("Patient").getId();
+        List<Account> accounts = new ArrayList<>();
+        int[] doctorIds = new int[Math.max(0, doctors)];
+        for (int i = 0; i < doctors; i++) {
+            String email = "load.doctor" + i + "@nightguardian.test";
+            Doctor doctor = RandomData.generateRandomDoctor();
+            doctor.setEmail(email);
+            medicalManager.getDoctorJDBC().insertDoctor(doctor);
+            doctorIds[i] = medicalManager.getDoctorJDBC().findDoctorByEmail(email).getId();
+            accounts.add(new Account(email, "Doctor", createUser(securityManager, email, hash, doctorRole), doctorIds[i]));
+        }
+        for (int i = 0; i < patients; i++) {
+            String email = "load.patient" + i + "@nightguardian.test";
+            Patient patient = RandomData.generateRandomPatient();
+            patient.setEmail(email);
+            patient.setDoctorId(doctorIds[i % doctorIds.length]);
+            patient.setActive(true);
+            medicalManager.getPatientJDBC().insertPatient(patient);
+            int patientId = medicalManager.getPatientJDBC().findPatientByEmail(email).getId();
+            accounts.add(new Account(email, "Patient", createUser(securityManager, email, hash, patientRole), patientId));
+        }
+        return accounts;
+    }
+
+    private static int createUser(SecurityManager securityManager, String email, String hash, int role) throws Exception {
+        securityManager.getUserJDBC().insertUser(new User(email, hash, role, true));
+        securityManager.getUserJDBC().updateUserActiveStatus(email, true);
+        return securityManager.getUserJDBC().findUserByEmail(email).getId();
+    }
+
+    /**
+     * Runs one thread per account for the warm-up and the measured time.
+     *
+     * @return the report of the measured time
+     */
+    JsonObject run(int warmupSeconds, int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            Account account = accounts.get(i);
+            KeyPair keys = keyPairs[i % keyPairs.length];
+            Random random = new Random(i);
+            Thread thread = new Thread(() -> simulate(account, keys, random), "load-" + account.email());
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds + seconds));
+        long measuredNanos = System.nanoTime() - measureFrom;
+        stopped = true;
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT_MS);
+        }
+        return report(measuredNanos);
+    }
+
+    /**
+     * The sessions of one simulated client, until the run is stopped.
+     */
+    private void simulate(Account account, KeyPair keys, Random random) {
+        int userId = account.userId();
+        while (!stopped) {
+            String type = HANDSHAKE;
+            long start = System.nanoTime();
+            try (ProtocolClient client = ProtocolClient.connect("127.0.0.1", port, account.email(), keys, TIMEOUT_MS)) {
+                record(HANDSHAKE, start, false);
+                type = "LOGIN_REQUEST";
+                start = System.nanoTime();
+                JsonObject login = client.login(account.email(), PASSWORD, account.role());
+                record(type, start, failed(login));
+                for (int i = 0; i < sessionRequests && !stopped; i++) {
+                    think(random);
+                    if (stopped) break;
+                    JsonObject request = nextRequest(account, userId, random);
+                    type = request.get("type").getAsString();
+                    start = System.nanoTime();
+                    JsonObject response = client.request(request);
+                    record(type, start, failed(response));
+                }
+            } catch (Exception e) {
+                record(type, start, true);
+                if (!stopped) think(random);
+            }
+        }
+    }
+
+    private JsonObject nextRequest(Account account, int userId, Random random) {
+        JsonObject request = new JsonObject();
+        JsonObject data = new JsonObject();
+        data.addProperty("user_id", userId);
+        if (account.role().equals("Doctor")) {
+            request.addProperty("type", "REQUEST_PATIENTS_FROM_DOCTOR");
+            data.addProperty("doctor_id", account.entityId());
+            request.add("data", data);
+            return request;
+        }
+        int choice = random.nextInt(100);
+        if (choice < 60) {
+            Report.Symptom[] symptoms = Report.Symptom.values();
+            JsonArray chosen = new JsonArray();
+            for (int i = 0, n = 1 + random.nextInt(3); i < n; i++) {
+                chosen.add(symptoms[random.nextInt(symptoms.length)].name());
+            }
+            JsonObject report = new JsonObject();
+            report.addProperty("id", 0);
+            report.addProperty("date", LocalDate.now().toString());
+            report.add("symptoms", chosen);
+            request.addProperty("type", "SAVE_REPORT");
+            data.addProperty("patient_id", account.entityId());
+            data.add("report", report);
+            request.add("data", data);
+        } else if (choice < 90) {
+            JsonObject metadata = new JsonObject();
+            metadata.addProperty("patient_id", account.entityId());
+            metadata.addProperty("sampling_rate", SAMPLING_RATE);
+            metadata.addProperty("timestamp", LocalDateTime.now().toString());
+            request.addProperty("type", "UPLOAD_SIGNAL");
+            request.add("metadata", metadata);
+            request.addProperty("filename", "signal.zip");
+            request.addProperty("dataBytes", Base64.getEncoder().encodeToString(
+                    RandomData.generateSignalZip(random, signalSeconds, SAMPLING_RATE)));
+        } else {
+            request.addProperty("type", "ALERT_ADMIN");
+            data.addProperty("patient_id", account.entityId());
+            request.add("data", data);
+        }
+        return request;
+    }
+
+    private static boolean failed(JsonObject response) {
+        return response.has("status") && !"SUCCESS".equals(response.get("status").getAsString());
+    }
+
+    private void think(Random random) {
+        if (thinkMillis <= 0) return;
+        long millis = (long) (-Math.log(1 - random.nextDouble()) * thinkMillis);
+        try {
+            Thread.sleep(Math.min(millis, thinkMillis * 10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        }
+    }
+
+    private void record(String type, long start, boolean failed) {
+        long end = System.nanoTime();
+        if (start < measureFrom || stopped) return;
+        samples.computeIfAbsent(type, t -> new Samples()).add(end - start, failed);
+    }
+
+    /**
+     * @return the throughput and latency percentiles of every request type
+     */
+    JsonObject report(long measuredNanos) {
+        double seconds = measuredNanos / 1e9;
+        JsonObject report = new JsonObject();
+        report.addProperty("finishedAt", Instant.now().toString());
+        report.addProperty("measuredSeconds", Math.round(seconds * 10) / 10.0);
+        JsonObject types = new JsonObject();
+        long total = 0;
+        long errors = 0;
+        for (Map.Entry<String, Samples> entry : new TreeMap<>(samples).entrySet()) {
+            long[] sorted = entry.getValue().sorted();
+            JsonObject type = new JsonObject();
+            type.addProperty("count", sorted.length);
+            type.addProperty("errors", entry.getValue().getErrors());
+            type.addProperty("perSecond", round(sorted.length / seconds));
+            type.addProperty("p50Ms", millis(percentile(sorted, 0.50)));
+            type.addProperty("p99Ms", millis(percentile(sorted, 0.99)));
+            type.addProperty("p999Ms", millis(percentile(sorted, 0.999)));
+            type.addProperty("maxMs", millis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+            types.add(entry.getKey(), type);
+            total += sorted.length;
+            errors += entry.getValue().getErrors();
+        }
+        report.addProperty("requests", total);
+        report.addProperty("errors", errors);
+        report.addProperty("perSecond", round(total / seconds));
+        report.add("types", types);
+        return report;
+    }
+
+    static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return round(nanos / 1e6);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static JsonObject config(int patients, int doctors, int seconds, long thinkMillis, int warmupSeconds,
+                                     LoadGenerator load) {
+        JsonObject config = new JsonObject();
+        config.addProperty("patients", patients);
+        config.addProperty("doctors", doctors);
+        config.addProperty("seconds", seconds);
+        config.addProperty("thinkMillis", thinkMillis);
+        config.addProperty("warmupSeconds", warmupSeconds);
+        config.addProperty("sessionRequests", load.sessionRequests);
+        config.addProperty("signalSeconds", load.signalSeconds);
+        config.addProperty("passwordIterations", PasswordHash.getIterations());
+        config.addProperty("transport", System.getProperty("nightguardian.transport", "BLOCKING"));
+        return config;
+    }
+
+    private static void print(JsonObject report, JsonObject previous) {
+        JsonObject before = previous != null && previous.has("types") ? previous.getAsJsonObject("types") : new JsonObject();
+        System.out.printf(Locale.ROOT, "%n%d requests in %.1f s: %.1f/s, %d errors%n", report.get("requests").getAsLong(),
+                report.get("measuredSeconds").getAsDouble(), report.get("perSecond").getAsDouble(),
+                report.get("errors").getAsLong());
+        System.out.printf(Locale.ROOT, "%-30s %8s %7s %9s %9s %9s %9s %s%n",
+                "type", "count", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms", previous != null ? "previous p99" : "");
+        for (Map.Entry<String, JsonElement> entry : report.getAsJsonObject("types").entrySet()) {
+            JsonObject type = entry.getValue().getAsJsonObject();
+            String was = before.has(entry.getKey())
+                    ? String.format(Locale.ROOT, "%.2f", before.getAsJsonObject(entry.getKey()).get("p99Ms").getAsDouble()) : "";
+            System.out.printf(Locale.ROOT, "%-30s %8d %7d %9.2f %9.2f %9.2f %9.2f %s%n", entry.getKey(),
+                    type.get("count").getAsLong(), type.get("errors").getAsLong(), type.get("p50Ms").getAsDouble(),
+                    type.get("p99Ms").getAsDouble(), type.get("p999Ms").getAsDouble(), type.get("maxMs").getAsDouble(), was);
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking transport for the newline-delimited JSON protocol, built on a single {@link Selector}.
+ * <p>
+ * Instead of one thread blocked in {@code readLine()} per client, one selector thread owns every
+ * {@link SocketChannel}:
+ * </p>
+ * <ul>
+ *     <li> Accepts connections and creates a {@link ClientHandler} for each of them</li>
+ *     <li> Reads whatever bytes are available and splits them into complete lines (frames), or into
+ *          {@link BinaryFrame binary frames} once the session has switched to them</li>
+ *     <li> Hands the frames to a small worker pool that runs {@link ClientHandler#processLine(String)}
+ *          (or {@link ClientHandler#processFrame(byte[])}).
+ *          Frames of the same client are processed one at a time and in order, because the protocol
+ *          keeps per-session state (public keys, AES token)</li>
+ *     <li> Writes the queued responses back when the channel is writable</li>
+ * </ul>
+ * Idle clients only cost their buffers, so one small server can keep thousands of patient
+ * devices connected overnight. A client cannot make the server buffer without limit:
+ * <ul>
+ *     <li> At most {@code nightguardian.nio.maxPendingFrames} frames (32 by default) wait for a worker; the
+ *          selector stops reading the channel until half of them are processed</li>
+ *     <li> At most {@code nightguardian.nio.maxQueuedBytes} bytes of responses (8 MB by default, or one
+ *          larger response) wait for the channel to become writable. A worker with more to write waits, and a
+ *          client that does not read them for {@code nightguardian.nio.writeStallMillis} (10 s by default)
+ *          is disconnected</li>
+ *     <li> A frame is at most {@code nightguardian.nio.maxFrameBytes} bytes ({@link #DEFAULT_MAX_FRAME_BYTES}),
+ *          and a binary frame's buffer grows with the bytes received rather than its announced length</li>
+ * </ul>
+ *
+ * @see Server.Transport
+ */
+public class NioTransport {
+
+    public static final int DEFAULT_WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // Old clients upload a signal as one Base64 line, the frame limit must leave room for it (a zip of ~45 MB).
+    // Larger recordings go through UPLOAD_SIGNAL_BEGIN/CHUNK/END.
+    public static final int DEFAULT_MAX_FRAME_BYTES = 64 * 1024 * 1024;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final long STALL_CHECK_MILLIS = 1000;
+
+    private final Server server;
+    private final int maxFrameBytes;
+    private final ExecutorService workers;
+    private final int maxPendingFrames = Integer.getInteger("nightguardian.nio.maxPendingFrames", 32);
+    private final long maxQueuedBytes = Long.getLong("nightguardian.nio.maxQueuedBytes", 8L * 1024 * 1024);
+    private final long writeStallNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("nightguardian.nio.writeStallMillis", 10_000));
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES); // only used by the selector thread
+    private volatile Selector selector;
+    private volatile ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    public NioTransport(Server server) {
+        this(server, DEFAULT_WORKERS, BinaryFrame.maxFrameBytes());
+    }
+
+    public NioTransport(Server server, int workerThreads, int maxFrameBytes) {
+        this.server = server;
+        this.maxFrameBytes = maxFrameBytes;
+        this.workers = Executors.newFixedThreadPool(workerThreads,
+                Thread.ofPlatform().name("nio-worker-", 0).daemon(true).factory());
+    }
+
+    /**
+     * Binds the given port and runs the selector loop in the calling thread until {@link #close()}.
+     *
+     * @param port  the port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    public void serve(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        System.out.println("NIO transport started on port " + port);
+
+        long nextStallCheck = System.nanoTime();
+        try {
+            while (running) {
+                selector.select(STALL_CHECK_MILLIS);
+                if (System.nanoTime() - nextStallCheck >= 0) {
+                    closeStalled();
+                    nextStallCheck = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STALL_CHECK_MILLIS);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            NioConnection connection = (NioConnection) key.attachment();
+                            if (key.isReadable()) connection.read();
+                            if (key.isValid() && key.isWritable()) connection.flushQueued();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        Object attachment = key.attachment();
+                        if (attachment instanceof NioConnection connection) {
+                            connection.disconnected(e);
+                        }
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // close() was called
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stops the selector loop, closes the listening channel and the worker pool.
+     * Client channels are closed by {@link Server#closeAllClients()}.
+     */
+    public void close() {
+        running = false;
+        try {
+            if (serverChannel != null) serverChannel.close();
+            if (selector != null) selector.close();
+        } catch (IOException e) {
+            System.out.println("Error closing NIO transport: " + e.getMessage());
+        }
+        workers.shutdownNow();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Closes the connections waiting to be closed whose client has not read the last responses in time.
+     * Runs in the selector thread.
+     */
+    private void closeStalled() {
+        long now = System.nanoTime();
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection connection) {
+                connection.closeIfStalled(now);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+        System.out.println("Client connected from IP: " + channel.socket().getInetAddress().getHostAddress());
+
+        NioConnection connection = new NioConnection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        PrintWriter out = new PrintWriter(new ChannelWriter(connection), true);
+        connection.handler = new ClientHandler(channel.socket(), server, server.getKeyPair(), out, connection);
+        server.addClient(connection.handler);
+        System.out.println("New client connected. Total: " + server.getConnectedClients().size());
+        workers.execute(connection.handler::sendPublicKey);
+    }
+
+    /**
+     * State of one client channel: the partial frame being read, the frames waiting for a worker
+     * and the response bytes waiting for the channel to become writable. Workers waiting for room in
+     * {@code outbound} wait on the connection and are notified when the selector writes or closes it.
+     */
+    private final class NioConnection implements FrameChannel {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ClientHandler handler;
+        private final ByteArrayOutputStream partialFrame = new ByteArrayOutputStream();
+        private final ConcurrentLinkedQueue<Object> frames = new ConcurrentLinkedQueue<>(); // lines (String) or binary frames (byte[])
+        private final AtomicInteger pendingFrames = new AtomicInteger();
+        private final AtomicBoolean readPaused = new AtomicBoolean(false);
+        private volatile boolean binary;
+        // Binary frame being read, only used by the selector thread
+        private final byte[] frameLength = new byte[BinaryFrame.LENGTH_BYTES];
+        private int frameLengthRead;
+        private byte[] frame;
+        private int frameExpected;
+        private int frameRead;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>(); // guarded by this
+        private long queuedBytes; // guarded by this
+        private boolean closing; // guarded by this
+        private long closingSince; // guarded by this
+        private volatile boolean closed;
+
+        NioConnection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads the available bytes and queues every complete line. Runs in the selector thread.
+         */
+        void read() throws IOException {
+            readBuffer.clear();
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                disconnected(null);
+                return;
+            }
+            byte[] bytes = readBuffer.array();
+            if (binary) {
+                readFrames(bytes, n);
+            } else {
+                readLines(bytes, n);
+            }
+            if (closed) return;
+            if (pendingFrames.get() >= maxPendingFrames) {
+                pauseReading();
+            }
+            schedule();
+        }
+
+        /**
+         * Queues every complete line of the bytes read. Runs in the selector thread.
+         */
+        private void readLines(byte[] bytes, int n) {
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (bytes[i] == '\n') {
+                    partialFrame.write(bytes, start, i - start);
+                    queue(partialFrame.toString(StandardCharsets.UTF_8));
+                    partialFrame.reset();
+                    start = i + 1;
+                }
+            }
+            partialFrame.write(bytes, start, n - start);
+            if (partialFrame.size() > maxFrameBytes) {
+                System.out.println("Frame too large from " + handler.getSocketAddress() + ", closing connection");
+                disconnected(null);
+            }
+        }
+
+        private void queue(Object frame) {
+            frames.add(frame);
+            pendingFrames.incrementAndGet();
+        }
+
+        /**
+         * Stops reading the channel while the workers catch up. Runs in the selector thread.
+         */
+        private void pauseReading() {
+            readPaused.set(true);
+            key.interestOpsAnd(~SelectionKey.OP_READ);
+            // The worker may have drained the frames before seeing the flag
+            if (pendingFrames.get() <= maxPendingFrames / 2) {
+                resumeReading();
+            }
+        }
+
+        private void resumeReading() {
+            if (readPaused.compareAndSet(true, false) && !closed) {
+                try {
+                    key.interestOpsOr(SelectionKey.OP_READ);
+                    key.selector().wakeup();
+                } catch (CancelledKeyException e) {
+                    // closed meanwhile
+                }
+            }
+        }
+
+        /**
+         * Queues every complete binary frame of the bytes read. Runs in the selector thread.
+         */
+        private void readFrames(byte[] bytes, int n) {
+            if (partialFrame.size() > 0) {
+                // Bytes sent right after the line that switched the framing
+                byte[] pending = partialFrame.toByteArray();
+                partialFrame.reset();
+                readFrames(pending, pending.length);
+            }
+            int i = 0;
+            while (i < n && !closed) {
+                if (frame == null) {
+                    frameLength[frameLengthRead++] = bytes[i++];
+                    if (frameLengthRead < BinaryFrame.LENGTH_BYTES) continue;
+                    frameLengthRead = 0;
+                    int length = ByteBuffer.wrap(frameLength).getInt();
+                    try {
+                        BinaryFrame.checkLength(length, maxFrameBytes);
+                    } catch (IOException e) {
+                        System.out.println(e.getMessage() + " from " + handler.getSocketAddress() + ", closing connection");
+                        disconnected(null);
+                        return;
+                    }
+                    // Grows with the bytes received, the announced length is not trusted for the allocation
+                    frame = new byte[Math.min(length, READ_BUFFER_BYTES)];
+                    frameExpected = length;
+                    frameRead = 0;
+                } else {
+                    if (frameRead == frame.length) {
+                        frame = Arrays.copyOf(frame, (int) Math.min(frameExpected, 2L * frame.length));
+                    }
+                    int count = Math.min(n - i, frame.length - frameRead);
+                    System.arraycopy(bytes, i, frame, frameRead, count);
+                    i += count;
+                    frameRead += count;
+                    if (frameRead == frameExpected) {
+                        queue(frame);
+                        frame = null;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void startFrames() {
+            binary = true;
+        }
+
+        @Override
+        public void writeFrame(byte[] frame) throws IOException {
+            write(ByteBuffer.wrap(frame));
+        }
+
+        /**
+         * Makes sure one (and only one) worker is draining the frames of this connection.
+         */
+        private void schedule() {
+            if (!frames.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this::drain);
+                } catch (java.util.concurrent.RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            Object frame;
+            while (!closed && (frame = frames.poll()) != null) {
+                if (pendingFrames.decrementAndGet() <= maxPendingFrames / 2 && readPaused.get()) {
+                    resumeReading();
+                }
+                try {
+                    if (frame instanceof byte[] bytes) {
+                        handler.processFrame(bytes);
+                    } else {
+                        handler.processLine((String) frame);
+                    }
+                } catch (Exception e) {
+                    handler.handleSessionError(e);
+                }
+            }
+            scheduled.set(false);
+            if (!closed) schedule(); // frames queued while we were finishing
+        }
+
+        /**
+         * Writes the bytes right away when nothing is pending, otherwise queues them and asks the
+         * selector to finish the job. Waits while the queue is full, and disconnects the client if it
+         * does not read for {@code writeStallNanos}. Runs in worker threads.
+         */
+        synchronized void write(ByteBuffer bytes) throws IOException {
+            long deadline = System.nanoTime() + writeStallNanos;
+            while (!closed && !closing && !outbound.isEmpty() && queuedBytes + bytes.remaining() > maxQueuedBytes) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    System.out.println("Client " + handler.getSocketAddress() + " is not reading its responses, closing connection");
+                    disconnected(null);
+                    break;
+                }
+                try {
+                    wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(left)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SocketException("Interrupted while waiting to write");
+                }
+            }
+            if (closed || closing) throw new SocketException("Connection closed");
+            if (outbound.isEmpty()) {
+                channel.write(bytes);
+            }
+            if (bytes.hasRemaining()) {
+                outbound.add(bytes);
+                queuedBytes += bytes.remaining();
+                key.interestOpsOr(SelectionKey.OP_WRITE);
+                key.selector().wakeup();
+            }
+        }
+
+        /**
+         * Writes queued responses, and closes the channel once they are all sent if the handler asked
+         * for it. Runs in the selector thread when the channel is writable.
+         */
+        synchronized void flushQueued() throws IOException {
+            try {
+                while (!outbound.isEmpty()) {
+                    ByteBuffer head = outbound.peek();
+                    int before = head.remaining();
+                    channel.write(head);
+                    queuedBytes -= before - head.remaining();
+                    if (head.hasRemaining()) return; // socket buffer full, wait for the next OP_WRITE
+                    outbound.poll();
+                }
+            } finally {
+                notifyAll(); // room for the workers waiting in write()
+            }
+            if (closing) {
+                close();
+            } else {
+                key.interestOpsAnd(~SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Closes the channel from the selector thread once the queued responses (e.g. {@code STOP_CLIENT})
+         * are sent. Called by the handler when it releases its resources.
+         */
+        @Override
+        public synchronized void closeAfterWrites() {
+            if (closed || closing) return;
+            closing = true;
+            closingSince = System.nanoTime();
+            try {
+                key.interestOpsOr(SelectionKey.OP_WRITE);
+                key.selector().wakeup();
+            } catch (CancelledKeyException e) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the channel if the client has not read the last responses in time after the handler
+         * asked to close it. Runs in the selector thread.
+         */
+        synchronized void closeIfStalled(long now) {
+            if (closing && !closed && now - closingSince > writeStallNanos) {
+                close();
+            }
+        }
+
+        /**
+         * Cleans up after the client closed the channel or the channel failed.
+         */
+        void disconnected(Exception cause) {
+            if (closed) return;
+            if (cause != null) System.out.println("Client stopped connection abruptly: " + cause.getMessage());
+            close();
+            try {
+                handler.releaseResources(null, null, handler.socket);
+            } catch (IOException e) {
+                System.out.println("Error closing socket" + e.getMessage());
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Error closing channel" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * {@link Writer} used by the {@link ClientHandler} {@code PrintWriter}: buffers the characters of
+     * a message and hands them to the channel as UTF-8 on every flush (every {@code println}).
+     */
+    private static final class ChannelWriter extends Writer {
+        private final NioConnection connection;
+        private final StringBuilder pending = new StringBuilder();
+
+        ChannelWriter(NioConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public synchronized void write(char[] cbuf, int off, int len) {
+            pending.append(cbuf, off, len);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (pending.isEmpty()) return;
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(pending));
+            pending.setLength(0);
+            connection.write(bytes);
+        }
+
+        /**
+         * Sends what is left. The channel itself is closed by {@link NioConnection#closeAfterWrites()}.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            flush();
+        }
+    }
+}
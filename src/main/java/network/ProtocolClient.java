@@ -0,0 +1,209 @@
+package network;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import encryption.RSAUtil;
+import encryption.SessionCipher;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+/**
+ * The {@code ProtocolClient} class is a minimal client of the server's text protocol, for the benchmarks and the
+ * load generator. It does what the patient and doctor applications do, without their windows:
+ * <ol>
+ *     <li>Reads {@code SERVER_PUBLIC_KEY}</li>
+ *     <li>Sends {@code CLIENT_PUBLIC_KEY} and {@code TOKEN_REQUEST}</li>
+ *     <li>Decrypts the AES key of {@code TOKEN_REQUEST_RESPONSE} with its private key and checks the server's
+ *         signature</li>
+ *     <li>Sends every request as an {@code ENCRYPTED} line and waits for the answer</li>
+ * </ol>
+ * The client is not thread-safe: one thread sends a request and reads its response at a time, as the
+ * applications do.
+ */
+public class ProtocolClient implements Closeable {
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private SessionCipher cipher;
+
+    private ProtocolClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * Connects and runs the RSA handshake of the user's account.
+     *
+     * @param host          the server's host
+     * @param port          the server's port
+     * @param email         the email of the account, whose public key becomes {@code clientKeys}
+     * @param clientKeys    the RSA key pair of the client
+     * @param timeoutMillis the connect and read timeout, 0 to wait forever
+     * @return              a client ready to send requests
+     * @throws IOException  if the connection fails or the server answers something else than the handshake
+     * @throws GeneralSecurityException if the session key cannot be decrypted or its signature is wrong
+     */
+    public static ProtocolClient connect(String host, int port, String email, KeyPair clientKeys, int timeoutMillis)
+            throws IOException, GeneralSecurityException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMillis);
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            ProtocolClient client = new ProtocolClient(socket);
+            client.handshake(email, clientKeys);
+            return client;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void handshake(String email, KeyPair clientKeys) throws IOException, GeneralSecurityException {
+        JsonObject serverKey = expect(readLine(), "SERVER_PUBLIC_KEY");
+        PublicKey serverPublicKey = KeyFactory.getInstance("RSA").generatePublic(
+                new X509EncodedKeySpec(Base64.getDecoder().decode(serverKey.get("data").getAsString())));
+
+        JsonObject data = new JsonObject();
+        data.addProperty("email", email);
+        data.addProperty("public_key", Base64.getEncoder().encodeToString(clientKeys.getPublic().getEncoded()));
+        JsonObject publicKey = new JsonObject();
+        publicKey.addProperty("type", "CLIENT_PUBLIC_KEY");
+        publicKey.add("data", data);
+        JsonObject tokenRequest = new JsonObject();
+        tokenRequest.addProperty("type", "TOKEN_REQUEST");
+        tokenRequest.addProperty("email", email);
+        out.println(publicKey);
+        out.println(tokenRequest);
+        out.flush();
+
+        JsonObject tokenResponse = expect(readLine(), "TOKEN_REQUEST_RESPONSE");
+        byte[] keyBytes;
+        try {
+            keyBytes = Base64.getDecoder().decode(RSAUtil.decrypt(tokenResponse.get("token").getAsString(), clientKeys.getPrivate()));
+        } catch (GeneralSecurityException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GeneralSecurityException("Cannot decrypt the session key", e);
+        }
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initVerify(serverPublicKey);
+        signature.update(keyBytes);
+        if (!signature.verify(Base64.getDecoder().decode(tokenResponse.get("signature").getAsString()))) {
+            throw new GeneralSecurityException("Wrong signature on the session key");
+        }
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        cipher = new SessionCipher(key);
+    }
+
+    /**
+     * Sends an encrypted request and waits for its response.
+     *
+     * @param type  the request type, e.g. {@code LOGIN_REQUEST}
+     * @param data  the {@code data} object of the request, or {@code null}
+     * @return      the decrypted response
+     * @throws IOException if the connection is closed before the response
+     * @throws GeneralSecurityException if a message cannot be encrypted or decrypted
+     */
+    public JsonObject request(String type, JsonObject data) throws IOException, GeneralSecurityException {
+        JsonObject request = new JsonObject();
+        request.addProperty("type", type);
+        if (data != null) {
+            request.add("data", data);
+        }
+        return request(request);
+    }
+
+    /**
+     * Sends an encrypted request whose fields are not in a {@code data} object, such as {@code UPLOAD_SIGNAL}, and
+     * waits for its response.
+     *
+     * @param request   the whole request, with its {@code type}
+     * @return          the decrypted response
+     * @throws IOException if the connection is closed before the response
+     * @throws GeneralSecurityException if a message cannot be encrypted or decrypted
+     */
+    public JsonObject request(JsonObject request) throws IOException, GeneralSecurityException {
+        JsonObject wrapper = new JsonObject();
+        wrapper.addProperty("type", "ENCRYPTED");
+        wrapper.addProperty("data", cipher.encrypt(request.toString()));
+        out.println(wrapper);
+        out.flush();
+
+        JsonObject response = readLine();
+        if ("ENCRYPTED".equals(response.get("type").getAsString())) {
+            return JsonParser.parseString(cipher.decrypt(response.get("data").getAsString())).getAsJsonObject();
+        }
+        return response;
+    }
+
+    /**
+     * Sends {@code LOGIN_REQUEST}.
+     *
+     * @return the {@code LOGIN_RESPONSE}
+     */
+    public JsonObject login(String email, String password, String accessPermits) throws IOException, GeneralSecurityException {
+        JsonObject data = new JsonObject();
+        data.addProperty("email", email);
+        data.addProperty("password", password);
+        data.addProperty("access_permits", accessPermits);
+        return request("LOGIN_REQUEST", data);
+    }
+
+    private JsonObject readLine() throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("Connection closed by the server");
+        }
+        return JsonParser.parseString(line).getAsJsonObject();
+    }
+
+    private static JsonObject expect(JsonObject message, String type) throws IOException {
+        String received = message.has("type") ? message.get("type").getAsString() : "";
+        if (!type.equals(received)) {
+            throw new IOException("Expected " + type + " but the server sent " + received);
+        }
+        return message;
+    }
+
+    /**
+     * Sends {@code STOP_CLIENT} and closes the socket.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (cipher != null && !socket.isClosed()) {
+                JsonObject stop = new JsonObject();
+                stop.addProperty("type", "STOP_CLIENT");
+                JsonObject wrapper = new JsonObject();
+                wrapper.addProperty("type", "ENCRYPTED");
+                wrapper.addProperty("data", cipher.encrypt(stop.toString()));
+                out.println(wrapper);
+                out.flush();
+            }
+        } catch (GeneralSecurityException e) {
+            // closing anyway
+        } finally {
+            socket.close();
+        }
+    }
+}
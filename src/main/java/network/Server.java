@@ -1,6 +1,11 @@
 package network;
 
 import encryption.RSAKeyManager;
+import encryption.SessionKeyService;
+import encryption.SessionTicketService;
+import metrics.MetricsEndpoint;
+import metrics.ServerMetrics;
+import org.example.JDBC.securitydb.UserJDBC;
 import org.example.service.AdminLinkService;
 import ui.windows.Application;
 
@@ -10,6 +15,9 @@ import java.net.Socket;
 import java.security.*;
 import java.util.ArrayList;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import Exceptions.*;
 
@@ -17,6 +25,16 @@ import Exceptions.*;
  *
  */
 public class Server {
+
+    /**
+     * How the server reads and writes the client sockets.
+     * <ul>
+     *     <li>{@code BLOCKING} - one {@link ClientHandler} session per client, run by the {@link ConnectionEngine}</li>
+     *     <li>{@code NIO} - one selector thread for every client plus a small worker pool ({@link NioTransport})</li>
+     * </ul>
+     */
+    public enum Transport { BLOCKING, NIO }
+
     private int port;
     private ServerSocket serverSocket;
     // List implementation for lock-free thread-safe concurrency. Ideal for multithreaded apps with many reads and few modifications.
@@ -24,24 +42,42 @@ public class Server {
 // private List<ClientHandler> clients;
     private volatile Boolean running = false; // So other threads can immediately see changes to this variable
 // private final Application appMain; // To access the centralized medicalManager and securityManager
-    private KeyPair keyPair; // To store the public and private RSA keys (asymmetric encryption)
+    private volatile KeyPair keyPair; // To store the public and private RSA keys (asymmetric encryption), replaced when rotated
+    private ScheduledExecutorService keyRotation; // Checks the age of the key pair while the server runs
     private AdminLinkService adminConn;
+    private final ConnectionEngine connectionEngine; // Runs the client sessions and decides when the server is full
+    private Transport transport = Transport.valueOf(System.getProperty("nightguardian.transport", "BLOCKING").toUpperCase());
+    private volatile NioTransport nioTransport;
+    private final SessionTicketService sessionTickets = createSessionTickets(); // Lets reconnecting clients skip the RSA handshake
+    private MetricsEndpoint metricsEndpoint; // Plain-text metrics on a local port while the server runs
 
 
     /**
      * Creates a new server instance on the given port, stores the AdminLinkService
-     * reference, and generates the RSA key pair for secure communication.
+     * reference, and loads the RSA key pair for secure communication from the server's keystore.
      * @param port
      * @param adminConn
      */
     public Server(int port, AdminLinkService adminConn) {
+        this(port, adminConn, new ExecutorConnectionEngine());
+    }
+
+    /**
+     * Creates a new server instance on the given port that runs its client sessions with the given
+     * {@link ConnectionEngine} (thread model, maximum concurrent sessions and accept queue).
+     * @param port
+     * @param adminConn
+     * @param connectionEngine
+     */
+    public Server(int port, AdminLinkService adminConn, ConnectionEngine connectionEngine) {
         this.port = port;
         this.adminConn = adminConn;
-        // Creates the key pair for public encryption
+        this.connectionEngine = connectionEngine;
+        // Loads (or creates) the key pair for public encryption
         try {
-            this.keyPair = RSAKeyManager.generateKeyPair();
+            this.keyPair = RSAKeyManager.loadOrCreateKeyPair();
         }catch (Exception e){
-            System.out.println("Error generating key pair: "+e.getMessage());
+            System.out.println("Error loading key pair: "+e.getMessage());
         }
     }
 
@@ -56,21 +92,30 @@ public class Server {
     public Server(ServerSocket serverSocket, AdminLinkService adminConn) throws Exception{
         this.serverSocket = serverSocket;
         this.port = -1; // unused
-        this.keyPair = RSAKeyManager.generateKeyPair();
+        this.keyPair = RSAKeyManager.loadOrCreateKeyPair();
         this.adminConn = adminConn;
+        this.connectionEngine = new ExecutorConnectionEngine();
     }
 
     /**
      * Starts the server in a dedicated thread, opens the ServerSocket,
-     * accepts incoming client connections, and creates a new ClientHandler
-     * thread for each connected client.
+     * accepts incoming client connections, and hands a new ClientHandler
+     * for each connected client to the {@link ConnectionEngine}. Clients that
+     * the engine cannot admit receive a {@code SERVER_BUSY} reply and are disconnected.
      */
     public void startServer(){
         if (running) return;  //to avoid it starting 2 times
 
         running = true;
+        connectionEngine.start();
+        startMetrics();
+        startKeyRotation();
         //create its own thread to listen for new clients
         Thread serverThread = new Thread(() -> {
+            if (transport == Transport.NIO) {
+                startNioTransport();
+                return;
+            }
             try {
                 serverSocket= createServerSocket(port);
                 System.out.println("Server started on port " + port);
@@ -80,8 +125,12 @@ public class Server {
                     System.out.println("Client connected from IP: "+clientSocket.getInetAddress().getHostAddress());
                     //New client with the server's public key
                     ClientHandler handler = new ClientHandler(clientSocket, this, keyPair);
-                    clients.add(handler);
-                    new Thread(handler).start(); //Start client thread
+                    addClient(handler);
+                    if (!connectionEngine.submit(handler)) { //Run client session
+                        clients.remove(handler);
+                        rejectConnection(clientSocket);
+                        continue;
+                    }
                     System.out.println("New client connected. Total: " + clients.size());
                 }
 
@@ -97,10 +146,104 @@ public class Server {
         serverThread.start();
     }
 
+    /**
+     * Runs the {@link NioTransport} selector loop in the server thread until the server is stopped.
+     */
+    private void startNioTransport() {
+        nioTransport = new NioTransport(this);
+        try {
+            nioTransport.serve(port);
+        } catch (IOException e) {
+            if (running) e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reports the connected clients, the session key pool and the public key cache to the {@link ServerMetrics}
+     * and starts the {@link MetricsEndpoint} on the {@code nightguardian.metricsPort} port. The server runs without
+     * it if the port is taken.
+     */
+    private void startMetrics() {
+        ServerMetrics metrics = ServerMetrics.getInstance();
+        metrics.setActiveSessions(clients::size);
+        SessionKeyService keys = SessionKeyService.getInstance();
+        metrics.registerCounter("nightguardian_session_keys_pooled_total", "Session keys taken from the pool", keys::getPoolHits);
+        metrics.registerCounter("nightguardian_session_keys_on_demand_total", "Session keys generated on demand (pool empty)",
+                keys::getPoolMisses);
+        metrics.registerTimeCounter("nightguardian_session_key_generation_seconds_total", "Session key generation time",
+                keys::getGenerationNanos);
+        UserJDBC userJDBC = adminConn == null || adminConn.getSecurityManager() == null ? null
+                : adminConn.getSecurityManager().getUserJDBC();
+        if (userJDBC != null) {
+            metrics.registerCounter("nightguardian_public_key_cache_hits_total", "Client public keys from the cache",
+                    userJDBC::getPublicKeyCacheHits);
+            metrics.registerCounter("nightguardian_public_key_cache_misses_total", "Client public keys parsed",
+                    userJDBC::getPublicKeyCacheMisses);
+        }
+        int metricsPort = Integer.getInteger("nightguardian.metricsPort", MetricsEndpoint.DEFAULT_PORT);
+        if (metricsPort <= 0 || metricsEndpoint != null) {
+            return;
+        }
+        try {
+            metricsEndpoint = MetricsEndpoint.start(metricsPort, ServerMetrics.getInstance());
+            System.out.println("Metrics on http://127.0.0.1:" + metricsEndpoint.getPort() + "/metrics");
+        } catch (IOException e) {
+            System.out.println("Metrics endpoint not started on port " + metricsPort + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reloads the key pair from the keystore every {@code nightguardian.keyRotationCheckHours} hours (24 by
+     * default, 0 to disable), so a server that keeps running rotates it once it is older than the rotation period
+     * ({@link RSAKeyManager#loadOrCreateKeyPair()}). New connections use the new pair, open sessions keep theirs.
+     */
+    private void startKeyRotation() {
+        long checkHours = Long.getLong("nightguardian.keyRotationCheckHours", 24);
+        if (checkHours <= 0 || keyRotation != null) {
+            return;
+        }
+        keyRotation = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("key-rotation").daemon(true).factory());
+        keyRotation.scheduleWithFixedDelay(this::reloadKeyPair, checkHours, checkHours, TimeUnit.HOURS);
+    }
+
+    void reloadKeyPair() {
+        try {
+            KeyPair current = RSAKeyManager.loadOrCreateKeyPair();
+            if (keyPair == null || !current.getPublic().equals(keyPair.getPublic())) {
+                keyPair = current;
+                System.out.println("Server key pair rotated, new connections use the new key");
+            }
+        } catch (Exception e) {
+            System.out.println("Error rotating key pair: " + e.getMessage());
+        }
+    }
+
+    KeyPair getKeyPair() {
+        return keyPair;
+    }
+
     ServerSocket createServerSocket(int port) throws IOException {
         return new ServerSocket(port);
     }
 
+    /**
+     * Sends a plaintext {@code SERVER_BUSY} message to a client that could not be admitted
+     * and closes its socket, so the client can retry later instead of hanging.
+     * @param clientSocket
+     */
+    private void rejectConnection(Socket clientSocket) {
+        try {
+            PrintWriter rejectOut = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()), true);
+            rejectOut.println("{\"type\":\"SERVER_BUSY\",\"status\":\"ERROR\",\"message\":\"Server at full capacity, please retry later\"}");
+            rejectOut.flush();
+        } catch (IOException e) {
+            System.out.println("Error sending rejection to client: " + e.getMessage());
+        } finally {
+            try { clientSocket.close(); } catch (IOException e) {}
+        }
+        System.out.println("Client rejected, server at full capacity");
+    }
+
     public boolean isRunning(){
         return running;
     }
@@ -133,9 +276,22 @@ public class Server {
             if (serverSocket != null) {
                 serverSocket.close();
             }
+            if (nioTransport != null) {
+                nioTransport.close();
+                nioTransport = null;
+            }
+            if (metricsEndpoint != null) {
+                metricsEndpoint.stop();
+                metricsEndpoint = null;
+            }
+            if (keyRotation != null) {
+                keyRotation.shutdownNow();
+                keyRotation = null;
+            }
 
             closeAllClients();
             clients.clear();
+            connectionEngine.shutdown();
             System.out.println("Server stopped");
 
         } catch (IOException e) {
@@ -156,6 +312,14 @@ public class Server {
         return connectedClients;
     }
 
+    /**
+     * Adds a ClientHandler, created by the accept loop or by the {@link NioTransport}, to the active client list.
+     */
+    void addClient(ClientHandler handler) {
+        clients.add(handler);
+        ServerMetrics.getInstance().sessionOpened();
+    }
+
     /**
      * Removes the given ClientHandler from the active client list and logs
      * the updated client count.
@@ -170,6 +334,38 @@ public class Server {
         return adminConn;
     }
 
+    /**
+     * @return the service that issues the session resumption tickets, or {@code null} if resumption is not available
+     */
+    public SessionTicketService getSessionTickets() {
+        return sessionTickets;
+    }
+
+    private static SessionTicketService createSessionTickets() {
+        try {
+            return new SessionTicketService(Long.getLong("nightguardian.ticketLifetimeMs", SessionTicketService.DEFAULT_LIFETIME_MS));
+        } catch (GeneralSecurityException e) {
+            System.out.println("Session resumption disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public ConnectionEngine getConnectionEngine() {
+        return connectionEngine;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Selects the transport used the next time the server is started.
+     * @param transport
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
 }
 
 
@@ -0,0 +1,74 @@
+package network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Signal recording opened by a {@link ClientHandler} to serve a chunked download
+ * ({@code REQUEST_SIGNAL} with {@code "chunked": true} followed by {@code REQUEST_SIGNAL_CHUNK} requests).
+ * <p>
+ * The recording is read from its channel ({@link org.example.entities_medicaldb.Signal#openRecording()}),
+ * one chunk at a time, into a buffer that is reused for every chunk, so serving a multi-hour recording
+ * never holds more than one chunk in heap. The download keeps no record of what the client has received:
+ * every chunk request carries its own offset, so a client that lost the connection simply asks again from
+ * the last offset it stored.
+ * </p>
+ */
+class SignalDownload {
+
+    static final int MAX_CHUNK_BYTES = 512 * 1024;
+
+    private final int signalId;
+    private final SeekableByteChannel channel;
+    private final long size;
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_CHUNK_BYTES);
+
+    /**
+     * @param signalId      the id of the signal
+     * @param channel       the recording, closed with the download
+     * @throws IOException if the size of the recording cannot be read
+     */
+    SignalDownload(int signalId, SeekableByteChannel channel) throws IOException {
+        this.signalId = signalId;
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    /**
+     * Reads one chunk of the recording.
+     *
+     * @param offset    the position of the first byte, between 0 and {@link #getSize()}
+     * @param length    the requested number of bytes, capped to {@link #MAX_CHUNK_BYTES} and to the end of the recording
+     * @return          the bytes read, empty when {@code offset} is the end of the recording
+     * @throws IOException if the offset is out of range or the recording cannot be read
+     */
+    byte[] read(long offset, int length) throws IOException {
+        if (offset < 0 || offset > size) {
+            throw new IOException("Offset " + offset + " out of range (size " + size + ")");
+        }
+        int toRead = (int) Math.min(Math.min(Math.max(length, 0), MAX_CHUNK_BYTES), size - offset);
+        buffer.clear().limit(toRead);
+        channel.position(offset);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) break;
+        }
+        byte[] chunk = new byte[buffer.position()];
+        buffer.flip().get(chunk);
+        return chunk;
+    }
+
+    /**
+     * Closes the recording.
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Error closing signal recording: " + e.getMessage());
+        }
+    }
+
+    int getSignalId() { return signalId; }
+    long getSize() { return size; }
+}
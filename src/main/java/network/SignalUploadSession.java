@@ -0,0 +1,119 @@
+package network;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * State of one chunked signal upload ({@code UPLOAD_SIGNAL_BEGIN} → N × {@code UPLOAD_SIGNAL_CHUNK} →
+ * {@code UPLOAD_SIGNAL_END}) received by a {@link ClientHandler}.
+ * <p>
+ * Every chunk is appended straight to a temporary file as soon as it is decrypted, so the heap only
+ * ever holds one chunk, whatever the length of the recording. The session also checks that:
+ * </p>
+ * <ul>
+ *     <li> Chunks arrive in order (sequence numbers start at 0) and do not exceed {@link #MAX_CHUNK_BYTES}</li>
+ *     <li> The whole upload does not exceed {@link #MAX_UPLOAD_BYTES}</li>
+ *     <li> The final chunk count, size and SHA-256 match the ones announced by the client, when given</li>
+ * </ul>
+ */
+class SignalUploadSession {
+
+    static final int MAX_CHUNK_BYTES = 512 * 1024;
+    static final long MAX_UPLOAD_BYTES = 2L * 1024 * 1024 * 1024;
+
+    private final String uploadId = UUID.randomUUID().toString();
+    private final int patientId;
+    private final int sampleFrequency;
+    private final LocalDateTime timestamp;
+    private final String filename;
+    private final File tempFile;
+    private final OutputStream fileOut;
+    private final MessageDigest sha256;
+    private int nextSeq = 0;
+    private long bytesWritten = 0;
+
+    SignalUploadSession(int patientId, int sampleFrequency, LocalDateTime timestamp, String filename) throws IOException {
+        this.patientId = patientId;
+        this.sampleFrequency = sampleFrequency;
+        this.timestamp = timestamp;
+        this.filename = filename;
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+        this.tempFile = File.createTempFile("signal_upload_", ".zip");
+        this.fileOut = new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024);
+    }
+
+    /**
+     * Appends the next chunk of the recording to the temporary file.
+     *
+     * @param seq       the sequence number of the chunk, must be the next expected one
+     * @param bytes     the decoded bytes of the chunk
+     * @throws IOException if the chunk is out of order, too large or cannot be written
+     */
+    void append(int seq, byte[] bytes) throws IOException {
+        if (seq != nextSeq) {
+            throw new IOException("Unexpected chunk " + seq + ", expected " + nextSeq);
+        }
+        if (bytes.length > MAX_CHUNK_BYTES) {
+            throw new IOException("Chunk of " + bytes.length + " bytes exceeds " + MAX_CHUNK_BYTES);
+        }
+        if (bytesWritten + bytes.length > MAX_UPLOAD_BYTES) {
+            throw new IOException("Upload exceeds " + MAX_UPLOAD_BYTES + " bytes");
+        }
+        fileOut.write(bytes);
+        sha256.update(bytes);
+        bytesWritten += bytes.length;
+        nextSeq++;
+    }
+
+    /**
+     * Closes the temporary file and verifies the values announced by the client.
+     *
+     * @param expectedChunks    the number of chunks sent by the client, or -1 to skip the check
+     * @param expectedSize      the total number of bytes sent by the client, or -1 to skip the check
+     * @param expectedSha256    the hex SHA-256 of the recording, or {@code null} to skip the check
+     * @return                  the temporary file containing the whole recording
+     * @throws IOException if the file cannot be closed or the upload does not match
+     */
+    File finish(int expectedChunks, long expectedSize, String expectedSha256) throws IOException {
+        fileOut.close();
+        if (expectedChunks >= 0 && expectedChunks != nextSeq) {
+            throw new IOException("Received " + nextSeq + " chunks, expected " + expectedChunks);
+        }
+        if (expectedSize >= 0 && expectedSize != bytesWritten) {
+            throw new IOException("Received " + bytesWritten + " bytes, expected " + expectedSize);
+        }
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(HexFormat.of().formatHex(sha256.digest()))) {
+            throw new IOException("SHA-256 mismatch");
+        }
+        return tempFile;
+    }
+
+    /**
+     * Discards the upload and deletes its temporary file.
+     */
+    void abort() {
+        try {
+            fileOut.close();
+        } catch (IOException e) {
+            System.out.println("Error closing upload file: " + e.getMessage());
+        }
+        if (tempFile.exists() && !tempFile.delete()) {
+            tempFile.deleteOnExit();
+        }
+    }
+
+    String getUploadId() { return uploadId; }
+    int getPatientId() { return patientId; }
+    int getSampleFrequency() { return sampleFrequency; }
+    LocalDateTime getTimestamp() { return timestamp; }
+    String getFilename() { return filename; }
+    long getBytesWritten() { return bytesWritten; }
+}
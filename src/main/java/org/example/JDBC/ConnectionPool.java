@@ -0,0 +1,504 @@
+package org.example.JDBC;
+
+import metrics.ServerMetrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code ConnectionPool} class shares one SQLite database between all the threads of the server
+ * (one per connected client) without sharing a single JDBC {@link Connection} between them.
+ * It opens the database in WAL mode, so readers never wait for the writer, and keeps:
+ * <ul>
+ *     <li> Up to {@code maxReaders} read connections. A thread that runs a query borrows one for as long as
+ *          the statement is open, so concurrent doctors read in parallel</li>
+ *     <li> One write connection behind a lock (the writer lane). SQLite only allows one writer at a time,
+ *          queuing in Java is cheaper than retrying on {@code SQLITE_BUSY}</li>
+ *     <li> Transactions bound to the thread that started them: {@code setAutoCommit(false)} takes the writer
+ *          lane until {@code setAutoCommit(true)}, and only that thread sees the transaction</li>
+ * </ul>
+ * The Data Access Objects keep using a plain {@link Connection}: {@link #getConnection()} returns a routing
+ * connection that picks the right physical connection on every {@code prepareStatement}. SELECT and PRAGMA
+ * queries go to a reader, anything else to the writer, and a thread holding the writer (or a transaction)
+ * uses it for everything, so it reads its own writes.
+ * <p>
+ *     Every physical connection keeps its prepared statements in a {@link StatementCache}: closing a statement
+ *     gives it back to the cache instead of finalizing it, and the next {@code prepareStatement} with the same SQL
+ *     reuses it. The cache of a reader is dropped when the reader is recycled.
+ * </p>
+ * <p>
+ *     The time spent preparing (including the wait for a connection) and executing statements is reported to the
+ *     {@link ServerMetrics} as database time.
+ * </p>
+ * <p>
+ *     Limits can be overridden with the system properties {@code nightguardian.dbReaders},
+ *     {@code nightguardian.dbBusyTimeoutMs} and {@code nightguardian.dbStatementCache}.
+ * </p>
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_READERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_BUSY_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+    private final String url;
+    private final int maxReaders;
+    private final int busyTimeoutMs;
+    private final int statementCacheSize;
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+    private final Connection writer;
+    private final ReentrantLock writerLane = new ReentrantLock(true);
+    private final BlockingQueue<Connection> idleReaders;
+    private final List<Connection> allReaders = new ArrayList<>(); // guarded by this
+    private final AtomicInteger openReaders = new AtomicInteger();
+    private final ThreadLocal<Lease> leases = new ThreadLocal<>();
+    private final Connection routingConnection;
+    private volatile boolean closed;
+
+    /**
+     * What the current thread holds: a reader, the writer lane, or both.
+     */
+    private static final class Lease {
+        Connection reader;
+        int readerUses;
+        int writerUses;
+        boolean transaction;
+
+        boolean holdsWriter() {
+            return transaction || writerUses > 0;
+        }
+    }
+
+    /**
+     * Creates a pool with the default (or system property) limits.
+     *
+     * @param url   the JDBC URL of the SQLite database
+     * @throws SQLException if the database cannot be opened
+     */
+    public ConnectionPool(String url) throws SQLException {
+        this(url, Integer.getInteger("nightguardian.dbReaders", DEFAULT_MAX_READERS),
+                Integer.getInteger("nightguardian.dbBusyTimeoutMs", DEFAULT_BUSY_TIMEOUT_MS),
+                Integer.getInteger("nightguardian.dbStatementCache", DEFAULT_STATEMENT_CACHE_SIZE));
+    }
+
+    /**
+     * @param url           the JDBC URL of the SQLite database
+     * @param maxReaders    maximum number of read connections
+     * @param busyTimeoutMs how long a thread waits for the writer lane or a free reader before failing
+     * @throws SQLException if the database cannot be opened
+     */
+    public ConnectionPool(String url, int maxReaders, int busyTimeoutMs) throws SQLException {
+        this(url, maxReaders, busyTimeoutMs, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * @param url                   the JDBC URL of the SQLite database
+     * @param maxReaders            maximum number of read connections
+     * @param busyTimeoutMs         how long a thread waits for the writer lane or a free reader before failing
+     * @param statementCacheSize    prepared statements kept per connection, 0 disables the cache
+     * @throws SQLException if the database cannot be opened
+     */
+    public ConnectionPool(String url, int maxReaders, int busyTimeoutMs, int statementCacheSize) throws SQLException {
+        if (maxReaders <= 0 || busyTimeoutMs < 0 || statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid pool limits: readers=" + maxReaders + ", timeout=" + busyTimeoutMs
+                    + ", statements=" + statementCacheSize);
+        }
+        this.url = url;
+        this.maxReaders = maxReaders;
+        this.busyTimeoutMs = busyTimeoutMs;
+        this.statementCacheSize = statementCacheSize;
+        this.idleReaders = new ArrayBlockingQueue<>(maxReaders);
+        this.writer = open(false);
+        try (Statement st = writer.createStatement()) {
+            st.execute("PRAGMA journal_mode = WAL");
+        }
+        this.routingConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new RoutingHandler());
+    }
+
+    /**
+     * @return the routing connection to hand to the Data Access Objects. Closing it closes the pool.
+     */
+    public Connection getConnection() {
+        return routingConnection;
+    }
+
+    public int getOpenReaders() {
+        return openReaders.get();
+    }
+
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    /**
+     * @return how many {@code prepareStatement} calls reused a cached statement
+     */
+    public long getStatementCacheHits() {
+        long hits = 0;
+        for (StatementCache cache : statementCaches.values()) hits += cache.getHits();
+        return hits;
+    }
+
+    /**
+     * @return how many {@code prepareStatement} calls had to prepare a new statement
+     */
+    public long getStatementCacheMisses() {
+        long misses = 0;
+        for (StatementCache cache : statementCaches.values()) misses += cache.getMisses();
+        return misses;
+    }
+
+    /**
+     * Closes every connection of the pool.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        statementCaches.values().forEach(StatementCache::clear);
+        statementCaches.clear();
+        for (Connection reader : allReaders) {
+            closeQuietly(reader);
+        }
+        allReaders.clear();
+        idleReaders.clear();
+        closeQuietly(writer);
+    }
+
+    private Connection open(boolean readOnly) throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement st = connection.createStatement()) {
+            st.execute("PRAGMA busy_timeout = " + busyTimeoutMs);
+            if (readOnly) st.execute("PRAGMA query_only = ON");
+        }
+        if (statementCacheSize > 0) {
+            statementCaches.put(connection, new StatementCache(statementCacheSize));
+        }
+        return connection;
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    private Lease lease() {
+        Lease lease = leases.get();
+        if (lease == null) {
+            lease = new Lease();
+            leases.set(lease);
+        }
+        return lease;
+    }
+
+    private void forgetIfIdle(Lease lease) {
+        if (lease.reader == null && !lease.holdsWriter()) {
+            leases.remove();
+        }
+    }
+
+    // ---- Writer lane ----
+
+    private Connection acquireWriter(Lease lease) throws SQLException {
+        if (!lease.holdsWriter()) {
+            checkOpen();
+            try {
+                if (!writerLane.tryLock(busyTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new SQLException("Database busy: writer lane not available after " + busyTimeoutMs + " ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the writer lane", e);
+            }
+        }
+        lease.writerUses++;
+        return writer;
+    }
+
+    private void releaseWriter(Lease lease) {
+        lease.writerUses--;
+        if (!lease.holdsWriter()) {
+            writerLane.unlock();
+        }
+        forgetIfIdle(lease);
+    }
+
+    // ---- Readers ----
+
+    private Connection acquireReader(Lease lease) throws SQLException {
+        if (lease.reader == null) {
+            checkOpen();
+            Connection reader = idleReaders.poll();
+            if (reader == null && openReaders.incrementAndGet() <= maxReaders) {
+                try {
+                    reader = open(true);
+                    synchronized (this) {
+                        allReaders.add(reader);
+                    }
+                } catch (SQLException e) {
+                    openReaders.decrementAndGet();
+                    throw e;
+                }
+            } else if (reader == null) {
+                openReaders.decrementAndGet();
+                try {
+                    reader = idleReaders.poll(busyTimeoutMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a reader", e);
+                }
+                if (reader == null) {
+                    throw new SQLException("Database busy: no reader available after " + busyTimeoutMs + " ms");
+                }
+            }
+            lease.reader = reader;
+        }
+        lease.readerUses++;
+        return lease.reader;
+    }
+
+    private void releaseReader(Lease lease) {
+        if (--lease.readerUses == 0) {
+            Connection reader = lease.reader;
+            lease.reader = null;
+            returnReader(reader);
+        }
+        forgetIfIdle(lease);
+    }
+
+    /**
+     * Gives a reader back to the pool, or drops it if it is no longer usable.
+     */
+    private void returnReader(Connection reader) {
+        boolean usable;
+        try {
+            usable = !closed && !reader.isClosed();
+        } catch (SQLException e) {
+            usable = false;
+        }
+        if (usable && idleReaders.offer(reader)) {
+            return;
+        }
+        synchronized (this) {
+            allReaders.remove(reader);
+        }
+        openReaders.decrementAndGet();
+        StatementCache cache = statementCaches.remove(reader);
+        if (cache != null) cache.clear();
+        closeQuietly(reader);
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) throw new SQLException("Connection pool closed");
+    }
+
+    /**
+     * @return <code> true </code> if the statement only reads and can run on a read connection
+     */
+    static boolean isRead(String sql) {
+        String s = sql.stripLeading().toUpperCase(Locale.ROOT);
+        return s.startsWith("SELECT") || s.startsWith("EXPLAIN") || (s.startsWith("PRAGMA") && !s.contains("="));
+    }
+
+    // ---- Routing ----
+
+    /**
+     * Implements the {@link Connection} handed to the Data Access Objects.
+     */
+    private final class RoutingHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return prepare(method, args, (String) args[0]);
+                case "createStatement":
+                    return prepare(method, args, null);
+                case "getAutoCommit":
+                    Lease current = leases.get();
+                    return current == null || !current.transaction;
+                case "setAutoCommit":
+                    setAutoCommit((Boolean) args[0]);
+                    return null;
+                case "commit":
+                case "rollback":
+                    Lease tx = leases.get();
+                    if (tx != null && tx.transaction) {
+                        return call(writer, method, args);
+                    }
+                    return null; // nothing pending outside a transaction
+                case "close":
+                    ConnectionPool.this.close();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(ConnectionPool.this)) return ConnectionPool.this;
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(ConnectionPool.this)) return true;
+                    break;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "ConnectionPool[" + url + "]";
+            }
+            // Anything else runs on the connection the thread already holds, or on the writer
+            Lease lease = lease();
+            if (lease.holdsWriter() || lease.reader == null) {
+                acquireWriter(lease);
+                try {
+                    return call(writer, method, args);
+                } finally {
+                    releaseWriter(lease);
+                }
+            }
+            return call(lease.reader, method, args);
+        }
+
+        private Object prepare(Method method, Object[] args, String sql) throws Throwable {
+            long start = System.nanoTime();
+            try {
+                return prepareLeased(method, args, sql);
+            } finally {
+                ServerMetrics.getInstance().addDbNanos(System.nanoTime() - start);
+            }
+        }
+
+        private Object prepareLeased(Method method, Object[] args, String sql) throws Throwable {
+            Lease lease = lease();
+            boolean useWriter = lease.holdsWriter() || sql == null || !isRead(sql);
+            Connection physical = useWriter ? acquireWriter(lease) : acquireReader(lease);
+            try {
+                // Only the plain prepareStatement(sql) is cached, the other variants change the statement's options
+                StatementCache cache = sql != null && args.length == 1 ? statementCaches.get(physical) : null;
+                Statement statement = cache != null ? cache.take(sql) : null;
+                if (statement == null) {
+                    statement = (Statement) call(physical, method, args);
+                }
+                return leasedStatement(statement, method.getReturnType(), useWriter, lease, sql, cache);
+            } catch (Throwable t) {
+                if (useWriter) releaseWriter(lease); else releaseReader(lease);
+                throw t;
+            }
+        }
+
+        private void setAutoCommit(boolean autoCommit) throws SQLException {
+            Lease lease = lease();
+            if (!autoCommit && !lease.transaction) {
+                acquireWriter(lease);
+                try {
+                    writer.setAutoCommit(false);
+                } catch (SQLException e) {
+                    releaseWriter(lease);
+                    throw e;
+                }
+                lease.writerUses--; // the transaction flag keeps the lane from now on
+                lease.transaction = true;
+            } else if (autoCommit && lease.transaction) {
+                try {
+                    writer.setAutoCommit(true); // commits what is pending, as JDBC requires
+                } finally {
+                    lease.transaction = false;
+                    lease.writerUses++;
+                    releaseWriter(lease);
+                }
+            } else {
+                forgetIfIdle(lease);
+            }
+        }
+    }
+
+    /**
+     * Wraps a statement so that closing it gives its connection back (once), and the statement to its cache.
+     * A statement given back to the cache can be reused by another call at once, so the wrapper stops
+     * forwarding anything after {@code close()}.
+     */
+    private Object leasedStatement(Statement statement, Class<?> type, boolean writerLease, Lease lease,
+                                   String sql, StatementCache cache) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean released;
+            private final List<ResultSet> results = new ArrayList<>(1);
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (released) return null;
+                        released = true;
+                        try {
+                            if (cache == null) {
+                                statement.close();
+                            } else {
+                                // Closing the results resets the statement, so a reader does not keep its snapshot
+                                for (ResultSet rs : results) rs.close();
+                                cache.giveBack(sql, (PreparedStatement) statement);
+                            }
+                        } finally {
+                            if (writerLease) releaseWriter(lease); else releaseReader(lease);
+                        }
+                        return null;
+                    case "isClosed":
+                        return released || statement.isClosed();
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                }
+                if (released) throw new SQLException("Statement is closed");
+                Object result;
+                if (method.getName().startsWith("execute")) {
+                    long start = System.nanoTime();
+                    try {
+                        result = call(statement, method, args);
+                    } finally {
+                        ServerMetrics.getInstance().addDbNanos(System.nanoTime() - start);
+                    }
+                } else {
+                    result = call(statement, method, args);
+                }
+                if (result instanceof ResultSet rs && cache != null) {
+                    results.removeIf(previous -> isClosedQuietly(previous));
+                    results.add(rs);
+                }
+                return result;
+            }
+        };
+        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static boolean isClosedQuietly(ResultSet rs) {
+        try {
+            return rs.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.JDBC;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The {@code StatementCache} class keeps the prepared statements of one physical connection, keyed by their SQL,
+ * so the Data Access Objects do not make SQLite parse and plan the same query on every request.
+ * <ul>
+ *     <li> {@link #take(String)} removes the statement from the cache while it is in use, so the same SQL can be
+ *          prepared twice by nested calls without sharing a statement</li>
+ *     <li> {@link #giveBack(String, PreparedStatement)} puts it back, evicting and closing the least recently used
+ *          statement when the cache is full</li>
+ *     <li> {@link #clear()} closes every statement, when the connection is recycled or closed</li>
+ * </ul>
+ * A connection is only used by one thread at a time (see {@link ConnectionPool}), the methods are synchronized
+ * only so that closing the pool can clear the cache from another thread.
+ */
+class StatementCache {
+
+    private final int maxSize;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxSize   maximum number of cached statements, 0 disables the cache
+     */
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param sql   the SQL of the statement
+     * @return      the cached statement, removed from the cache until it is given back, or <code> null </code>
+     */
+    synchronized PreparedStatement take(String sql) {
+        PreparedStatement statement = statements.remove(sql);
+        if (statement == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return statement;
+    }
+
+    /**
+     * Keeps a statement that is no longer in use, with its parameters cleared.
+     *
+     * @param sql       the SQL of the statement
+     * @param statement the statement, closed if it cannot be cached
+     */
+    void giveBack(String sql, PreparedStatement statement) {
+        List<PreparedStatement> evicted = new ArrayList<>(1);
+        try {
+            if (maxSize > 0 && !statement.isClosed()) {
+                statement.clearParameters();
+                synchronized (this) {
+                    PreparedStatement previous = statements.put(sql, statement);
+                    if (previous != null && previous != statement) evicted.add(previous);
+                    Iterator<PreparedStatement> eldest = statements.values().iterator();
+                    while (statements.size() > maxSize) {
+                        evicted.add(eldest.next());
+                        eldest.remove();
+                    }
+                }
+            } else {
+                evicted.add(statement);
+            }
+        } catch (SQLException e) {
+            evicted.add(statement);
+        }
+        evicted.forEach(StatementCache::closeQuietly);
+    }
+
+    /**
+     * Closes and forgets every cached statement.
+     */
+    void clear() {
+        List<PreparedStatement> all;
+        synchronized (this) {
+            all = new ArrayList<>(statements.values());
+            statements.clear();
+        }
+        all.forEach(StatementCache::closeQuietly);
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing cached statement: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StatementCache{size=" + statements.size() + ", hits=" + hits + ", misses=" + misses + '}';
+    }
+}
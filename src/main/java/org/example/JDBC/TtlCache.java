@@ -0,0 +1,99 @@
+package org.example.JDBC;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The {@code TtlCache} class is a small read-through cache shared by the server threads, used by the Data Access
+ * Objects to avoid querying again rows that every request reads (users, roles...).
+ * <ul>
+ *     <li> {@link #get(Object, Function)} returns the cached value, or loads it when it is missing or older
+ *          than the time to live</li>
+ *     <li> {@link #invalidate(Object)}, {@link #invalidateIf(Predicate)} and {@link #clear()} drop entries
+ *          when the rows change, so the next read goes to the database</li>
+ * </ul>
+ * A value loaded while an invalidation happens is not stored, so a slow read can never put back a value
+ * older than the change that invalidated it. Missing rows ({@code null}) are not cached.
+ *
+ * @param <K>   the type of the keys
+ * @param <V>   the type of the cached values
+ */
+public class TtlCache<K, V> {
+
+    private record Entry<V>(V value, long expiresAt) {}
+
+    private final long ttlNanos;
+    private final int maxSize;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param ttlMillis how long a value is served from the cache, 0 disables the cache
+     * @param maxSize   maximum number of entries, the cache is emptied when it is reached
+     */
+    public TtlCache(long ttlMillis, int maxSize) {
+        if (ttlMillis < 0 || maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache limits: ttl=" + ttlMillis + ", size=" + maxSize);
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param key       the key of the value
+     * @param loader    reads the value from the database, may return {@code null}
+     * @return          the cached or loaded value
+     */
+    public V get(K key, Function<K, V> loader) {
+        long now = System.nanoTime();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && now - entry.expiresAt() < 0) {
+            hits.incrementAndGet();
+            return entry.value();
+        }
+        misses.incrementAndGet();
+        long loadGeneration = generation.get();
+        V value = loader.apply(key);
+        if (value != null && ttlNanos > 0) {
+            if (entries.size() >= maxSize) entries.clear();
+            entries.put(key, new Entry<>(value, now + ttlNanos));
+            // An invalidation ran while loading: the value may predate it
+            if (generation.get() != loadGeneration) entries.remove(key);
+        }
+        return value;
+    }
+
+    public void invalidate(K key) {
+        generation.incrementAndGet();
+        entries.remove(key);
+    }
+
+    /**
+     * Drops every entry whose value matches the predicate.
+     */
+    public void invalidateIf(Predicate<V> predicate) {
+        generation.incrementAndGet();
+        entries.values().removeIf(entry -> predicate.test(entry.value()));
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -4,8 +4,7 @@ import org.example.entities_medicaldb.Doctor;
 import org.example.entities_medicaldb.Patient;
 
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  * Handles JDBC operations for the Doctor table.
@@ -117,8 +116,8 @@ public class DoctorJDBC {
         List<Doctor> doctors = new ArrayList<>();
         String sql = "SELECT * FROM doctor";
 
-        try (Statement st = connection.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
                 doctors.add(extractDoctorFromResultSet(rs));
@@ -133,6 +132,42 @@ public class DoctorJDBC {
         return doctors;
     }
 
+    // SQLite limits the number of parameters of a statement, larger id sets are split
+    private static final int MAX_IN_PARAMETERS = 500;
+
+    /**
+     * Retrieves the {@code Doctor} instances with the given ids using {@code IN (...)} queries, one per
+     * {@value #MAX_IN_PARAMETERS} ids.
+     *
+     * @param ids   the unique identifiers of the doctors
+     * @return      the doctors found, by id
+     */
+    public Map<Integer, Doctor> getDoctorsByIds(Collection<Integer> ids) {
+        Map<Integer, Doctor> doctors = new HashMap<>();
+        List<Integer> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+
+        for (int from = 0; from < idList.size(); from += MAX_IN_PARAMETERS) {
+            List<Integer> batch = idList.subList(from, Math.min(idList.size(), from + MAX_IN_PARAMETERS));
+            String sql = "SELECT * FROM doctor WHERE id IN (" + String.join(",", Collections.nCopies(batch.size(), "?")) + ")";
+
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    ps.setInt(i + 1, batch.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Doctor doctor = extractDoctorFromResultSet(rs);
+                        doctors.put(doctor.getId(), doctor);
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Error retrieving doctors: " + e.getMessage());
+            }
+        }
+
+        return doctors;
+    }
+
     /**
      * Updates the active status of the {@code Doctor} instance with the corresponding email.
      *
@@ -4,6 +4,8 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import org.example.JDBC.ConnectionPool;
+
 /**
  * The {@code MedicalConnection} class centralizes the creation of JDBC connections to the {@code medicaldb}
  * database. This utility class will be invoked by {@code MedicalManager} to retrieve medical information (patients,
@@ -18,7 +20,12 @@ import java.sql.SQLException;
 public class MedicalConnection {
 
     // Ruta relativa al archivo dentro de tu proyecto
-    private static final String URL = "jdbc:sqlite:src/main/java/org/example/DataBases/Medicaldb.db";
+    public static final String DEFAULT_PATH = "src/main/java/org/example/DataBases/Medicaldb.db";
+
+    // The nightguardian.medicalDb property points the server and the tools at another copy of the database
+    private static String url() {
+        return "jdbc:sqlite:" + System.getProperty("nightguardian.medicalDb", DEFAULT_PATH);
+    }
 
     static {
         try {
@@ -35,7 +42,16 @@ public class MedicalConnection {
      * @throws SQLException if a database access error occurs or the URL is invalid
      */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL);
+        return DriverManager.getConnection(url());
     }
-}
 
+    /**
+     * Opens a {@link ConnectionPool} on the medical database, shared by every thread of the server.
+     *
+     * @return  a new pool, its {@link ConnectionPool#getConnection()} is the connection to give to the Data Access Objects
+     * @throws SQLException if the database cannot be opened
+     */
+    public static ConnectionPool createPool() throws SQLException {
+        return new ConnectionPool(url());
+    }
+}
@@ -4,7 +4,9 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -12,23 +14,27 @@ import org.example.JDBC.medicaldb.*;
 import org.example.JDBC.securitydb.SecurityManager;
 import org.example.entities_medicaldb.Doctor;
 import org.example.entities_medicaldb.Patient;
+import org.example.entities_medicaldb.PatientPanel;
 import org.example.entities_medicaldb.Report;
 import org.example.entities_medicaldb.Signal;
+import org.example.entities_medicaldb.SignalSummary;
 import org.example.entities_securitydb.Role;
 import org.example.entities_securitydb.User;
 
 /**
  * The {@code MedicalManager} class manages all operations related to the {@code medicaldb} database.
- * This class acts like a ConnectionManager but for the medical context. This class opens one database
- * connection and creates one instance of each Data Access Object using this connection.
+ * This class acts like a ConnectionManager but for the medical context. This class opens a
+ * {@link org.example.JDBC.ConnectionPool} and creates one instance of each Data Access Object using the pool's
+ * routing connection, so the client threads read in parallel and write one at a time.
  * It encapsulates:
  * <ul>
- *     <li> An active JDBC connection to the {@code medicaldb} database</li>
+ *     <li> A pooled JDBC connection to the {@code medicaldb} database</li>
  *     <li> Initialization of Data Access Object classes:
  *          {@link PatientJDBC} responsible for JDBC operations on the {@code Patient} table
  *          {@link DoctorJDBC} responsible for JDBC operation on the {@code Doctor} table
  *          {@link ReportJDBC} responsible for JDBC operations on the {@code Report} table
  *          {@link SignalJDBC} responsible for JDBC operations on the {@code Signal} table</li>
+ *     <li> A {@link WriteBehindQueue} that batches the reports and signal comments sent by the clients</li>
  * </ul>
  *
  * <p>
@@ -61,23 +67,8 @@ public class MedicalManager{
         medicalManager.signalJDBC.insertSignal(signal2);
         medicalManager.reportJDBC.insertReport(report2);*/
 
-        List<Patient> patients =  medicalManager.getPatientJDBC().getAllPatients();
-        for (Patient patient : patients) {
-            //System.out.println(patient.toJason().toString());
-            List<Signal> signals = medicalManager.getSignalJDBC().getSignalsByPatientId(patient.getId());
-            List<Report> symptoms = medicalManager.getReportJDBC().getReportsByPatientId(patient.getId());
-            JsonObject pJson = patient.toJason();
-            JsonArray signalArray = new JsonArray();
-            for (Signal s : signals) {
-                signalArray.add(s.toJson());
-            }
-            JsonArray symptomsArray = new JsonArray();
-            for (Report s : symptoms) {
-                symptomsArray.add(s.toJson());
-            }
-            pJson.add("signals", signalArray);
-            pJson.add("reports", symptomsArray);
-            System.out.println(pJson.toString());
+        for (PatientPanel panel : medicalManager.getAllPatientPanels()) {
+            System.out.println(panel.toJson().toString());
         }
 
         /*Patient patient = new Patient("Jane", "Doe", "jane.doe@example.com", "123456789", LocalDate.of(2004, 05, 11), "Female", 3);
@@ -104,16 +95,18 @@ public class MedicalManager{
     private DoctorJDBC doctorJDBC;
     private ReportJDBC reportJDBC;
     private SignalJDBC signalJDBC;
+    private WriteBehindQueue writeBehindQueue;
 
     public MedicalManager() {
         try {
-            this.connection = MedicalConnection.getConnection();
+            this.connection = MedicalConnection.createPool().getConnection();
             System.out.println("Connected to SQLite medicaldb");
 
             this.patientJDBC = new PatientJDBC(connection);
             this.doctorJDBC = new DoctorJDBC(connection);
             this.reportJDBC = new ReportJDBC(connection);
             this.signalJDBC = new SignalJDBC(connection);
+            this.writeBehindQueue = new WriteBehindQueue(connection, reportJDBC, signalJDBC);
 
         } catch (SQLException e) {
             System.err.println("Error connecting to medicaldb: " + e.getMessage());
@@ -140,10 +133,60 @@ public class MedicalManager{
         return signalJDBC;
     }
 
+    public WriteBehindQueue getWriteBehindQueue() {
+        return writeBehindQueue;
+    }
+
+    /**
+     * Retrieves the full panel of a doctor: every patient with the summaries of their signals and their reports.
+     * It runs three queries whatever the number of patients, instead of two per patient.
+     *
+     * @param doctorId  the doctor's unique identifier
+     * @return          a panel for each patient of the doctor
+     */
+    public List<PatientPanel> getDoctorPanel(int doctorId) {
+        List<Patient> patients = patientJDBC.getPatientsOfDoctor(doctorId);
+        Map<Integer, List<SignalSummary>> signals = signalJDBC.getSignalSummariesOfDoctor(doctorId);
+        Map<Integer, List<Report>> reports = reportJDBC.getReportsOfDoctor(doctorId);
+        return toPanels(patients, signals, reports);
+    }
+
+    /**
+     * Retrieves the panel of every patient, in three queries.
+     *
+     * @return  a panel for each patient in the database
+     */
+    public List<PatientPanel> getAllPatientPanels() {
+        List<Patient> patients = patientJDBC.getAllPatients();
+        Map<Integer, List<SignalSummary>> signals = new HashMap<>();
+        for (SignalSummary summary : signalJDBC.getAllSignalSummaries()) {
+            signals.computeIfAbsent(summary.getPatientId(), k -> new ArrayList<>()).add(summary);
+        }
+        Map<Integer, List<Report>> reports = new HashMap<>();
+        for (Report report : reportJDBC.getAllReports()) {
+            reports.computeIfAbsent(report.getPatientId(), k -> new ArrayList<>()).add(report);
+        }
+        return toPanels(patients, signals, reports);
+    }
+
+    private static List<PatientPanel> toPanels(List<Patient> patients, Map<Integer, List<SignalSummary>> signals,
+                                               Map<Integer, List<Report>> reports) {
+        List<PatientPanel> panels = new ArrayList<>(patients.size());
+        for (Patient patient : patients) {
+            panels.add(new PatientPanel(patient,
+                    signals.getOrDefault(patient.getId(), List.of()),
+                    reports.getOrDefault(patient.getId(), List.of())));
+        }
+        return panels;
+    }
+
     /**
-     * Closes the connection to the {@code medicaldb} database if it is still open.
+     * Commits the pending writes and closes the connection to the {@code medicaldb} database if it is still open.
      */
     public void close() {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.close();
+        }
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -122,8 +122,8 @@ public class PatientJDBC {
         List<Patient> patients = new ArrayList<>();
         String sql = "SELECT * FROM patient";
 
-        try (Statement st = connection.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
                 patients.add(extractPatientFromResultSet(rs));
@@ -9,7 +9,9 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -107,8 +109,8 @@ public class ReportJDBC {
         List<Report> reports = new ArrayList<>();
         String sql = "SELECT * FROM report";
 
-        try (Statement st = connection.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
                 reports.add(extractReportFromResultSet(rs));
@@ -151,6 +153,32 @@ public class ReportJDBC {
         return reports;
     }
 
+    /**
+     * Retrieves the reports of every patient of a doctor in a single query.
+     *
+     * @param doctorId     the doctor's unique identifier
+     * @return             the reports grouped by patient id (patients without reports are not included)
+     */
+    public Map<Integer, List<Report>> getReportsOfDoctor(int doctorId) {
+        Map<Integer, List<Report>> reports = new HashMap<>();
+        String sql = "SELECT * FROM report WHERE patient_id IN (SELECT id FROM patient WHERE doctor_id = ?) "
+                + "ORDER BY patient_id, id";
+
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, doctorId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Report report = extractReportFromResultSet(rs);
+                    reports.computeIfAbsent(report.getPatientId(), k -> new ArrayList<>()).add(report);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error retrieving reports of doctor: " + e.getMessage());
+        }
+
+        return reports;
+    }
+
     /**
      * Permanently deletes the {@code Report} instance specifying its unique identifier
      *
@@ -0,0 +1,144 @@
+package org.example.JDBC.medicaldb;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code SignalBlobMigration} class moves the recordings still stored inside the {@code Signal} rows
+ * (the {@code path} column) to the {@link SignalBlobStore}. It can be run as many times as needed:
+ * <ul>
+ *     <li> Every row without {@code blob_sha256} is copied to the blob store, one row at a time, and then
+ *          updated to reference it (the {@code path} column is emptied in the same transaction)</li>
+ *     <li> The {@code SignalBlob} reference counts are recomputed from the {@code Signal} rows, so rows
+ *          removed by a cascade or by hand do not keep their recordings alive</li>
+ *     <li> Recordings nobody references are deleted from the blob store</li>
+ *     <li> The database is vacuumed, giving the space of the old recordings back to the file system</li>
+ * </ul>
+ * Stop the server before running it.
+ */
+public class SignalBlobMigration {
+
+    public static void main(String[] args) {
+        MedicalManager medicalManager = new MedicalManager();
+        try {
+            SignalBlobMigration migration = new SignalBlobMigration(medicalManager.getConnection(), medicalManager.getSignalJDBC());
+            int moved = migration.moveInlineSignals();
+            int removed = migration.recountReferences();
+            migration.vacuum();
+            System.out.println("Signals moved to the blob store: " + moved + ", unreferenced recordings deleted: " + removed);
+        } catch (SQLException e) {
+            System.err.println("Error migrating signals: " + e.getMessage());
+        } finally {
+            medicalManager.close();
+        }
+    }
+
+    private final Connection connection;
+    private final SignalJDBC signalJDBC;
+    private final SignalBlobStore blobStore;
+
+    public SignalBlobMigration(Connection connection, SignalJDBC signalJDBC) {
+        this.connection = connection;
+        this.signalJDBC = signalJDBC;
+        this.blobStore = signalJDBC.getBlobStore();
+    }
+
+    /**
+     * Moves every recording stored inside its {@code Signal} row to the blob store. A row that fails is
+     * reported and left as it was.
+     *
+     * @return the number of rows moved
+     * @throws SQLException if the rows to move cannot be listed
+     */
+    public int moveInlineSignals() throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id FROM Signal WHERE blob_sha256 IS NULL AND length(path) > 0")) {
+            while (rs.next()) ids.add(rs.getInt("id"));
+        }
+
+        int moved = 0;
+        for (int id : ids) {
+            // One recording in memory at a time
+            byte[] zipBytes;
+            try (PreparedStatement ps = connection.prepareStatement("SELECT path FROM Signal WHERE id = ?")) {
+                ps.setInt(1, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) continue;
+                    zipBytes = rs.getBytes("path");
+                }
+            }
+            SignalBlobStore.Staged staged = null;
+            boolean created = false;
+            try {
+                staged = blobStore.stage(zipBytes);
+                String sha256 = staged.getSha256();
+                connection.setAutoCommit(false);
+                signalJDBC.addBlobReference(sha256, staged.getSize());
+                created = blobStore.publish(staged);
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "UPDATE Signal SET path = ?, blob_sha256 = ? WHERE id = ? AND blob_sha256 IS NULL")) {
+                    ps.setBytes(1, new byte[0]);
+                    ps.setString(2, sha256);
+                    ps.setInt(3, id);
+                    ps.executeUpdate();
+                }
+                connection.commit();
+                moved++;
+                System.out.println("Signal " + id + " moved to blob " + sha256);
+            } catch (Exception e) {
+                if (created) blobStore.delete(staged.getSha256());
+                connection.rollback();
+                System.err.println("Error moving signal " + id + ": " + e.getMessage());
+            } finally {
+                if (staged != null) blobStore.discard(staged);
+                connection.setAutoCommit(true);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Recomputes the reference counts of the {@code SignalBlob} table and deletes the recordings that no
+     * {@code Signal} row references.
+     *
+     * @return the number of recordings deleted
+     * @throws SQLException if the SQL query is invalid
+     */
+    public int recountReferences() throws SQLException {
+        List<String> orphans = new ArrayList<>();
+        connection.setAutoCommit(false);
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("UPDATE SignalBlob SET refcount = "
+                    + "(SELECT COUNT(*) FROM Signal WHERE Signal.blob_sha256 = SignalBlob.sha256)");
+            try (ResultSet rs = st.executeQuery("SELECT sha256 FROM SignalBlob WHERE refcount <= 0")) {
+                while (rs.next()) orphans.add(rs.getString("sha256"));
+            }
+            st.executeUpdate("DELETE FROM SignalBlob WHERE refcount <= 0");
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+
+        int removed = 0;
+        for (String sha256 : orphans) {
+            if (blobStore.delete(sha256)) removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Rebuilds the database file so the space of the recordings moved out is released.
+     *
+     * @throws SQLException if the database is in use
+     */
+    public void vacuum() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("VACUUM");
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package org.example.JDBC.medicaldb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * The {@code SignalBlobStore} class keeps the recordings (ZIP files) of the signals on the local disk,
+ * outside of the {@code medicaldb} SQLite file. Each recording is stored once, in a file named after
+ * the SHA-256 of its content (content addressing), and the {@code Signal} row only keeps that hash:
+ * <ul>
+ *     <li> {@code <root>/ab/cd/abcd…} – the recording whose SHA-256 starts with {@code abcd}</li>
+ *     <li> Two identical uploads share the same file, the {@code SignalBlob} table of {@link SignalJDBC}
+ *          counts the rows referencing it so the file is only deleted with the last of them</li>
+ * </ul>
+ * Files are written to a temporary name ({@link #stage(File)}) and moved into place atomically by the
+ * transaction that references them ({@link #publish(Staged)}), so a reader never sees a half-written
+ * recording and a recording is never deleted while a new row starts to reference it. Copies are done with {@link FileChannel#transferTo}, letting the OS move the
+ * bytes without passing them through the Java heap.
+ * <p>
+ *     The root directory is {@link #DEFAULT_ROOT} (next to the database file) unless the system
+ *     property {@code nightguardian.blobStore} says otherwise.
+ * </p>
+ *
+ * @see SignalBlobMigration
+ */
+public class SignalBlobStore {
+
+    public static final String DEFAULT_ROOT = "src/main/java/org/example/DataBases/blobs";
+
+    private final Path root;
+
+    /**
+     * Creates a store in the default (or system property) root directory.
+     */
+    public SignalBlobStore() {
+        this(Paths.get(System.getProperty("nightguardian.blobStore", DEFAULT_ROOT)));
+    }
+
+    public SignalBlobStore(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * A recording copied next to its place in the store but not visible yet. It becomes part of the store with
+     * {@link #publish(Staged)}, inside the transaction that counts its reference, or is thrown away with
+     * {@link #discard(Staged)}.
+     */
+    public static final class Staged {
+        private final String sha256;
+        private final long size;
+        private final Path tmp;      // null if the recording was already stored when it was staged
+        private final File file;     // the recording, to copy it again if the stored one is deleted meanwhile
+        private final byte[] bytes;
+
+        private Staged(String sha256, long size, Path tmp, File file, byte[] bytes) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.tmp = tmp;
+            this.file = file;
+            this.bytes = bytes;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * Hashes a recording and copies it to a temporary file of the store, unless a recording with the same content
+     * is already stored. Done outside of any transaction, as it reads and writes the whole recording.
+     *
+     * @param source    the recording to store
+     * @return          the staged recording
+     * @throws IOException if the recording cannot be read or written
+     */
+    public Staged stage(File source) throws IOException {
+        String sha256 = hash(source.toPath());
+        Path target = pathOf(sha256);
+        Path tmp = Files.exists(target) ? null : copyNextTo(target, source, null);
+        return new Staged(sha256, source.length(), tmp, source, null);
+    }
+
+    /**
+     * Same as {@link #stage(File)} for a recording held in memory (e.g. read from an old {@code Signal} row).
+     */
+    public Staged stage(byte[] bytes) throws IOException {
+        String sha256 = HexFormat.of().formatHex(newDigest().digest(bytes));
+        Path target = pathOf(sha256);
+        Path tmp = Files.exists(target) ? null : copyNextTo(target, null, bytes);
+        return new Staged(sha256, bytes.length, tmp, null, bytes);
+    }
+
+    /**
+     * Makes a staged recording part of the store. Must be called by the thread holding the writer lane (inside the
+     * transaction that adds its reference), so that a concurrent {@link SignalJDBC#deleteSignal(int)} of the same
+     * recording cannot remove the file between this check and the commit.
+     *
+     * @param staged    the recording returned by {@code stage}
+     * @return          <code> true </code> if this call created the file, which must be deleted again if the
+     *                  transaction is rolled back
+     *                  <code> false </code> if the recording was already stored
+     * @throws IOException if the recording cannot be written
+     */
+    public boolean publish(Staged staged) throws IOException {
+        Path target = pathOf(staged.sha256);
+        if (Files.exists(target)) {
+            discard(staged);
+            return false;
+        }
+        // Deleted since it was staged: copy it now
+        Path tmp = staged.tmp != null ? staged.tmp : copyNextTo(target, staged.file, staged.bytes);
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the temporary copy of a staged recording, if any.
+     */
+    public void discard(Staged staged) {
+        if (staged.tmp == null) return;
+        try {
+            Files.deleteIfExists(staged.tmp);
+        } catch (IOException e) {
+            System.err.println("Error deleting staged blob " + staged.tmp + ": " + e.getMessage());
+        }
+    }
+
+    private Path copyNextTo(Path target, File file, byte[] bytes) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            if (bytes != null) {
+                Files.write(tmp, bytes);
+            } else {
+                try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    transfer(in, out);
+                    out.force(false);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return tmp;
+    }
+
+    /**
+     * @param sha256    the key of the recording
+     * @return          the file of the recording (it may not exist if the store was tampered with)
+     */
+    public File get(String sha256) {
+        return pathOf(sha256).toFile();
+    }
+
+    public boolean contains(String sha256) {
+        return Files.exists(pathOf(sha256));
+    }
+
+    /**
+     * Sends a range of a stored recording to the given channel with {@link FileChannel#transferTo}.
+     *
+     * @param sha256    the key of the recording
+     * @param position  the first byte to send
+     * @param count     the maximum number of bytes to send
+     * @param target    where the bytes are written
+     * @return          the number of bytes sent
+     * @throws IOException if the recording cannot be read or the channel cannot be written
+     */
+    public long transferTo(String sha256, long position, long count, WritableByteChannel target) throws IOException {
+        try (FileChannel in = FileChannel.open(pathOf(sha256), StandardOpenOption.READ)) {
+            long end = Math.min(in.size(), position + count);
+            long sent = 0;
+            while (position + sent < end) {
+                long n = in.transferTo(position + sent, end - position - sent, target);
+                if (n <= 0) break;
+                sent += n;
+            }
+            return sent;
+        }
+    }
+
+    /**
+     * Deletes a stored recording. Called by {@link SignalJDBC} once no {@code Signal} row references it, still
+     * holding the writer lane.
+     *
+     * @param sha256    the key of the recording
+     * @return          <code> true </code> if the file was deleted
+     *                  <code> false </code> if it did not exist or could not be deleted
+     */
+    public boolean delete(String sha256) {
+        try {
+            return Files.deleteIfExists(pathOf(sha256));
+        } catch (IOException e) {
+            System.err.println("Error deleting signal blob " + sha256 + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    private Path pathOf(String sha256) {
+        if (sha256.length() != 64 || !sha256.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            throw new IllegalArgumentException("Invalid SHA-256 key: " + sha256);
+        }
+        String key = sha256.toLowerCase();
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream()); // the digest is computed while reading
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void transfer(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        long position = 0;
+        while (position < size) {
+            long n = in.transferTo(position, size - position, out);
+            if (n <= 0) {
+                // Some file systems refuse a zero-copy transfer, fall back to a plain copy
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                while (in.read(buffer, position) > 0) {
+                    buffer.flip();
+                    position += out.write(buffer);
+                    buffer.clear();
+                }
+                return;
+            }
+            position += n;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.example.JDBC.medicaldb;
 
 import org.example.entities_medicaldb.Signal;
+import org.example.entities_medicaldb.SignalSummary;
 
 import java.io.*;
 import java.sql.*;
@@ -8,7 +9,9 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.GZIPInputStream;
 
@@ -16,6 +19,12 @@ import java.util.zip.GZIPInputStream;
  * The {@code SignalJDBC} class handles JDBC operations for the simplified {@code Signal} entity.
  * This class is typically created and managed by {@link MedicalManager} which provides a shared
  * {@link Connection} to the medical database.
+ * <p>
+ *     The recordings are not kept inside the {@code Signal} rows but in a {@link SignalBlobStore}. Each row
+ *     references its recording by the SHA-256 in the {@code blob_sha256} column, and the {@code SignalBlob}
+ *     table counts how many rows reference each recording. Rows written before the blob store existed keep the
+ *     ZIP in the {@code path} column and are still readable; {@link SignalBlobMigration} moves them out.
+ * </p>
  *
  * @author MariaMM04
  * @author MamenCortes
@@ -23,10 +32,47 @@ import java.util.zip.GZIPInputStream;
 
 public class SignalJDBC {
 
-    private static Connection connection;
+    // Metadata columns, everything but the recording
+    private static final String SUMMARY_COLUMNS = "id, date, comments, sampleFrequency, patient_id";
+
+    private final Connection connection;
+    private final SignalBlobStore blobStore;
 
     public SignalJDBC(Connection connection) {
+        this(connection, new SignalBlobStore());
+    }
+
+    public SignalJDBC(Connection connection, SignalBlobStore blobStore) {
         this.connection = connection;
+        this.blobStore = blobStore;
+        ensureBlobSchema();
+    }
+
+    /**
+     * Adds the {@code blob_sha256} column and the {@code SignalBlob} reference count table to databases
+     * created before the blob store existed.
+     */
+    private void ensureBlobSchema() {
+        if (connection == null) return;
+        try (Statement st = connection.createStatement()) {
+            boolean hasColumn = false;
+            try (ResultSet rs = st.executeQuery("PRAGMA table_info(Signal)")) {
+                while (rs.next()) {
+                    if ("blob_sha256".equalsIgnoreCase(rs.getString("name"))) hasColumn = true;
+                }
+            }
+            if (!hasColumn) {
+                st.executeUpdate("ALTER TABLE Signal ADD COLUMN blob_sha256 TEXT");
+            }
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS SignalBlob ("
+                    + "sha256 TEXT PRIMARY KEY, size INTEGER NOT NULL, refcount INTEGER NOT NULL)");
+        } catch (SQLException e) {
+            System.err.println("Error preparing signal blob schema: " + e.getMessage());
+        }
+    }
+
+    public SignalBlobStore getBlobStore() {
+        return blobStore;
     }
 
     /**
@@ -89,7 +135,11 @@ public class SignalJDBC {
 
     /**
      * Inserts an existing {@code Signal} into the medical database {@code medicaldb} by a SQL query specified
-     * inside the method
+     * inside the method. The recording is copied to the {@link SignalBlobStore} first and the row only
+     * references it. The copy is published in the transaction that counts the reference, and deleted again if
+     * that transaction fails, so a concurrent {@link #deleteSignal(int)} of the same recording never leaves the
+     * row without its file. Inside a caller's transaction that is later rolled back, a newly stored recording
+     * stays on disk until {@link SignalBlobMigration} removes it.
      *
      * @param signal    An existing report
      * @return          boolean value of the performed insertion. May be:
@@ -98,32 +148,91 @@ public class SignalJDBC {
      */
     public boolean insertSignal(Signal signal) {
         boolean inserted=false;
-        String sql = "INSERT INTO signal (path, date, comments, sampleFrequency, patient_id) VALUES (?, ?, ?, ?, ?)";
-
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        String sql = "INSERT INTO signal (path, date, comments, sampleFrequency, patient_id, blob_sha256) VALUES (?, ?, ?, ?, ?, ?)";
 
-            byte[] zipBytes = signal.getFile() != null
-                    ? java.nio.file.Files.readAllBytes(signal.getFile().toPath())
-                    : null;
-
-            ps.setBytes(1, zipBytes);
-            ps.setDate(2, signal.getDate() != null ? Date.valueOf(signal.getDate()) : null);
-            ps.setString(3, signal.getComments());
-            ps.setDouble(4, signal.getSampleFrequency());
-            ps.setInt(5, signal.getPatientId());
-
-            ps.executeUpdate();
+        SignalBlobStore.Staged staged = null;
+        try {
+            staged = signal.getFile() != null ? blobStore.stage(signal.getFile()) : null;
+            String sha256 = staged != null ? staged.getSha256() : null;
+            boolean autoCommit = connection.getAutoCommit();
+            boolean created = false;
+            connection.setAutoCommit(false); // takes the writer lane, shared with deleteSignal
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                if (staged != null) {
+                    addBlobReference(sha256, staged.getSize());
+                    created = blobStore.publish(staged);
+                }
+                ps.setBytes(1, sha256 != null ? new byte[0] : null);
+                ps.setDate(2, signal.getDate() != null ? Date.valueOf(signal.getDate()) : null);
+                ps.setString(3, signal.getComments());
+                ps.setDouble(4, signal.getSampleFrequency());
+                ps.setInt(5, signal.getPatientId());
+                ps.setString(6, sha256);
+                ps.executeUpdate();
+
+                if (autoCommit) connection.commit();
+            } catch (SQLException | IOException e) {
+                if (autoCommit) connection.rollback();
+                if (created) blobStore.delete(sha256); // nobody else can reference it before the lane is released
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            signal.setBlobSha256(sha256);
 
             System.out.println("Signal inserted successfully: " + signal.getFile());
-        inserted=true;
+            inserted=true;
         } catch (SQLException | IOException e) {
             System.err.println("Error inserting signal: " + e.getMessage());
+        } finally {
+            if (staged != null) blobStore.discard(staged);
         }
         return  inserted;
     }
 
+    /**
+     * Counts one more {@code Signal} row referencing the given recording. Must run inside the transaction
+     * that writes the row.
+     *
+     * @param sha256    the key of the recording in the blob store
+     * @param size      the size of the recording in bytes
+     * @throws SQLException if the SQL query is invalid
+     */
+    void addBlobReference(String sha256, long size) throws SQLException {
+        String sql = "INSERT INTO SignalBlob (sha256, size, refcount) VALUES (?, ?, 1) "
+                + "ON CONFLICT(sha256) DO UPDATE SET refcount = refcount + 1";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, sha256);
+            ps.setLong(2, size);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Counts one less {@code Signal} row referencing the given recording. Must run inside the transaction
+     * that deletes the row.
+     *
+     * @param sha256    the key of the recording in the blob store
+     * @return          <code> true </code> if no row references the recording anymore and its file can be deleted
+     * @throws SQLException if the SQL query is invalid
+     */
+    private boolean removeBlobReference(String sha256) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "UPDATE SignalBlob SET refcount = refcount - 1 WHERE sha256 = ?")) {
+            ps.setString(1, sha256);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "DELETE FROM SignalBlob WHERE sha256 = ? AND refcount <= 0")) {
+            ps.setString(1, sha256);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
     /**
      * Retrieves {@code Signal} by its unique identifier (id) from the medical database by a SQL query.
+     * Recordings still kept inside the row are extracted to a temporary file, which the caller must delete
+     * once done ({@link Signal#getBlobSha256()} is {@code null} for them).
      *
      * @param id     the desired signal's we want to retrieve id
      * @return       the desired signal we want to retrieve
@@ -151,6 +260,47 @@ public class SignalJDBC {
         return signal;
     }
 
+    /**
+     * Retrieves {@code Signal} by its unique identifier without reading its recording. The recording is read
+     * on demand through {@link Signal#openRecording()}:
+     * <ul>
+     *     <li> From its file when it is in the {@link SignalBlobStore} ({@link Signal#getFile()} is set)</li>
+     *     <li> From the row, one range at a time, when it is still kept in the {@code path} column
+     *          (see {@link SqliteBlobChannel}); no file is created</li>
+     * </ul>
+     *
+     * @param id     the desired signal's id
+     * @return       the signal, or {@code null} if it does not exist
+     */
+    public Signal openSignal(int id) {
+        String sql = "SELECT " + SUMMARY_COLUMNS + ", blob_sha256, length(path) AS size FROM signal WHERE id = ?";
+
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    System.out.println("No signal found with ID: " + id);
+                    return null;
+                }
+                SignalSummary summary = extractSummaryFromResultSet(rs);
+                String sha256 = rs.getString("blob_sha256");
+                long size = rs.getLong("size");
+
+                Signal signal = new Signal(id, sha256 != null ? blobStore.get(sha256) : null, summary.getDate(),
+                        summary.getComments(), summary.getPatientId(), summary.getSampleFrequency());
+                signal.setBlobSha256(sha256);
+                if (sha256 == null) {
+                    Connection rowConnection = connection;
+                    signal.setRecording(() -> new SqliteBlobChannel(rowConnection, id, size));
+                }
+                return signal;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error finding signal: " + e.getMessage());
+        }
+        return null;
+    }
+
     /**
      * Retrieves all {@code Signal} instances stored in the medical database by a SQL query.
      *
@@ -160,8 +310,8 @@ public class SignalJDBC {
         List<Signal> signals = new ArrayList<>();
         String sql = "SELECT * FROM signal";
 
-        try (Statement st = connection.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
                 signals.add(extractSignalFromResultSet(rs));
@@ -185,23 +335,147 @@ public class SignalJDBC {
      */
     public void deleteSignal(int id) {
         String sql = "DELETE FROM signal WHERE id = ?";
+        String orphanBlob = null;
+        boolean autoCommit;
+
+        try {
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement select = connection.prepareStatement("SELECT blob_sha256 FROM signal WHERE id = ?");
+                 PreparedStatement ps = connection.prepareStatement(sql)) {
+                select.setInt(1, id);
+                String sha256 = null;
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) sha256 = rs.getString("blob_sha256");
+                }
+
+                ps.setInt(1, id);
+                int affected = ps.executeUpdate();
+                if (affected > 0 && sha256 != null && removeBlobReference(sha256)) {
+                    orphanBlob = sha256;
+                }
+                if (autoCommit) {
+                    connection.commit();
+                    // Only once the row is gone for good, and only if no other signal shares the recording.
+                    // Still holding the writer lane, so no insert can start referencing it meanwhile.
+                    if (orphanBlob != null) blobStore.delete(orphanBlob);
+                }
+                // Inside a caller's transaction the file is kept: a rollback would bring the row back.
+
+                if (affected > 0) {
+                    System.out.println("Signal deleted (ID: " + id + ")");
+                } else {
+                    System.out.println("No signal found to delete with ID: " + id);
+                }
+            } catch (SQLException e) {
+                if (autoCommit) connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error deleting signal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the metadata of all the signals associated to the desired patient, without reading
+     * their recordings.
+     *
+     * @param patientId    the patient's unique identifier
+     * @return             a list of the summaries of the patient's signals
+     */
+    public List<SignalSummary> getSignalSummariesByPatientId(int patientId) {
+        List<SignalSummary> summaries = new ArrayList<>();
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM signal WHERE patient_id = ?";
+
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, patientId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    summaries.add(extractSummaryFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error retrieving signal summaries by patient: " + e.getMessage());
+        }
+
+        return summaries;
+    }
+
+    /**
+     * Retrieves the metadata of the signals of every patient of a doctor in a single query, without reading
+     * their recordings.
+     *
+     * @param doctorId     the doctor's unique identifier
+     * @return             the summaries grouped by patient id (patients without signals are not included)
+     */
+    public Map<Integer, List<SignalSummary>> getSignalSummariesOfDoctor(int doctorId) {
+        Map<Integer, List<SignalSummary>> summaries = new HashMap<>();
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM signal "
+                + "WHERE patient_id IN (SELECT id FROM patient WHERE doctor_id = ?) ORDER BY patient_id, id";
+
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, doctorId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    SignalSummary summary = extractSummaryFromResultSet(rs);
+                    summaries.computeIfAbsent(summary.getPatientId(), k -> new ArrayList<>()).add(summary);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error retrieving signal summaries of doctor: " + e.getMessage());
+        }
+
+        return summaries;
+    }
+
+    /**
+     * Retrieves the metadata of a signal by its unique identifier, without reading its recording.
+     *
+     * @param id     the signal's id
+     * @return       the summary of the signal, or {@code null} if it does not exist
+     */
+    public SignalSummary findSignalSummaryById(int id) {
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM signal WHERE id = ?";
 
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, id);
-            int affected = ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return extractSummaryFromResultSet(rs);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error finding signal summary: " + e.getMessage());
+        }
+        return null;
+    }
 
-            if (affected > 0) {
-                System.out.println("Signal deleted (ID: " + id + ")");
-            } else {
-                System.out.println("No signal found to delete with ID: " + id);
+    /**
+     * Retrieves the metadata of all the signals stored in the medical database, without reading their recordings.
+     *
+     * @return  A list of the summaries of all the signals
+     */
+    public List<SignalSummary> getAllSignalSummaries() {
+        List<SignalSummary> summaries = new ArrayList<>();
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM signal";
+
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                summaries.add(extractSummaryFromResultSet(rs));
             }
         } catch (SQLException e) {
-            System.err.println("Error deleting signal: " + e.getMessage());
+            System.err.println("Error retrieving signal summaries: " + e.getMessage());
         }
+
+        return summaries;
     }
 
     /**
-     * Retrieves all {@code Signal} instances associated to the desired patient.
+     * Retrieves all {@code Signal} instances associated to the desired patient, with their recordings.
+     * Use {@link #getSignalSummariesByPatientId(int)} when only the metadata is needed.
      *
      * @param patientId    the patient's unique identifier associated to the desired report
      * @return             a list of all Signal instances
@@ -236,14 +510,17 @@ public class SignalJDBC {
      */
     private Signal extractSignalFromResultSet(ResultSet rs) throws SQLException {
         int id = rs.getInt("id");
-        byte[] zipBytes = rs.getBytes("path");
+        String sha256 = rs.getString("blob_sha256");
+        byte[] zipBytes = sha256 == null ? rs.getBytes("path") : null;
         File file= null;
 
-        if (zipBytes != null) {
+        if (sha256 != null) {
+            // The recording is already a file of the blob store, no copy needed
+            file = blobStore.get(sha256);
+        } else if (zipBytes != null) {
             try {
-                // Archivo temporal
+                // Archivo temporal, lo borra quien pidió la señal
                 file = File.createTempFile("signal_" + id + "_", ".zip");
-                file.deleteOnExit();
 
                 try (FileOutputStream fos = new FileOutputStream(file)) {
                     fos.write(zipBytes);
@@ -254,6 +531,37 @@ public class SignalJDBC {
             }
         }
 
+        LocalDate date = readDate(rs);
+        String comments = rs.getString("comments");
+        int patientId = rs.getInt("patient_id");
+        double sampleFrequency = rs.getDouble(("sampleFrequency"));
+
+        Signal signal = new Signal(id, file, date, comments, patientId, sampleFrequency);
+        signal.setBlobSha256(sha256);
+        return signal;
+    }
+
+    /**
+     * Utility method that creates a {@code SignalSummary} instance from the current ResultSet row, which only
+     * needs the metadata columns.
+     *
+     * @param rs        the ResultSet which contains the information to create a SignalSummary instance
+     * @return          the created SignalSummary instance
+     * @throws SQLException     if the SQL query is invalid
+     */
+    private SignalSummary extractSummaryFromResultSet(ResultSet rs) throws SQLException {
+        return new SignalSummary(
+                rs.getInt("id"),
+                readDate(rs),
+                rs.getString("comments"),
+                rs.getInt("patient_id"),
+                rs.getDouble("sampleFrequency"));
+    }
+
+    /**
+     * Reads the {@code date} column of the current row, stored either as epoch millis or as a SQL date.
+     */
+    private static LocalDate readDate(ResultSet rs) throws SQLException {
         //LocalDate date = rs.getDate("date") != null ? rs.getDate("date").toLocalDate() : null;
         LocalDate date = null;
         try {
@@ -271,12 +579,7 @@ public class SignalJDBC {
                 date = sqlDate.toLocalDate();
             }
         }
-        //LocalDate date = rs.getDate("date") != null ? rs.getDate("date").toLocalDate() : null;
-        String comments = rs.getString("comments");
-        int patientId = rs.getInt("patient_id");
-        double sampleFrequency = rs.getDouble(("sampleFrequency"));
-
-        return new Signal(id, file, date, comments, patientId, sampleFrequency);
+        return date;
     }
     /**
      * Updates the comments of the {@code Signal} instance by its corresponding signalId
@@ -0,0 +1,107 @@
+package org.example.JDBC.medicaldb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Read-only {@link SeekableByteChannel} over the recording kept inside the {@code path} column of a
+ * {@code Signal} row.
+ * <p>
+ *     The recording is never copied as a whole: every {@link #read(ByteBuffer)} asks SQLite for the next
+ *     range only, with {@code substr(path, position, length)}, and reads at most {@link #MAX_READ_BYTES}
+ *     at a time. The SQLite JDBC driver does not expose the incremental blob API, range reads are the
+ *     closest equivalent it offers.
+ * </p>
+ */
+public class SqliteBlobChannel implements SeekableByteChannel {
+
+    public static final int MAX_READ_BYTES = 256 * 1024;
+
+    private final Connection connection;
+    private final int signalId;
+    private final long size;
+    private long position = 0;
+    private boolean open = true;
+
+    /**
+     * @param connection    the connection to the medical database
+     * @param signalId      the id of the {@code Signal} row
+     * @param size          the size of the recording, {@code length(path)}
+     */
+    public SqliteBlobChannel(Connection connection, int signalId, long size) {
+        this.connection = connection;
+        this.signalId = signalId;
+        this.size = size;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) throw new ClosedChannelException();
+        if (position >= size) return -1;
+        int length = (int) Math.min(Math.min(dst.remaining(), MAX_READ_BYTES), size - position);
+        if (length == 0) return 0;
+
+        // substr() positions start at 1
+        try (PreparedStatement ps = connection.prepareStatement("SELECT substr(path, ?, ?) FROM Signal WHERE id = ?")) {
+            ps.setLong(1, position + 1);
+            ps.setInt(2, length);
+            ps.setInt(3, signalId);
+            try (ResultSet rs = ps.executeQuery()) {
+                byte[] bytes = rs.next() ? rs.getBytes(1) : null;
+                if (bytes == null || bytes.length == 0) {
+                    throw new IOException("Signal " + signalId + " recording ended before " + size + " bytes");
+                }
+                dst.put(bytes);
+                position += bytes.length;
+                return bytes.length;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Error reading signal " + signalId + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (!open) throw new ClosedChannelException();
+        if (newPosition < 0) throw new IllegalArgumentException("Negative position: " + newPosition);
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
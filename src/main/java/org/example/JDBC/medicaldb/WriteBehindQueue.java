@@ -0,0 +1,188 @@
+package org.example.JDBC.medicaldb;
+
+import org.example.entities_medicaldb.Report;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The {@code WriteBehindQueue} class groups the small writes that clients send in bursts (symptom reports and
+ * signal comments) into one transaction, instead of one commit (and one fsync) per request.
+ * <ul>
+ *     <li> Client threads add their write to a bounded queue and get a future</li>
+ *     <li> A single writer thread takes every pending write (up to {@link #MAX_BATCH}), runs them with
+ *          {@link ReportJDBC} and {@link SignalJDBC} in one transaction and commits</li>
+ *     <li> The futures complete only after the commit, with the result of each write, or <code> false </code>
+ *          for the whole batch if the commit fails. A client is never told its data is saved before it is</li>
+ * </ul>
+ * When the queue is full, a write waits up to {@link #OFFER_TIMEOUT_MS} for room and is then refused
+ * (completed with <code> false </code>).
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int MAX_BATCH = 256;
+    public static final long OFFER_TIMEOUT_MS = 5000;
+
+    private record Write(String description, BooleanSupplier action, CompletableFuture<Boolean> done) {}
+
+    private final Connection connection;
+    private final ReportJDBC reportJDBC;
+    private final SignalJDBC signalJDBC;
+    private final BlockingQueue<Write> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile long batches;
+    private volatile long writes;
+
+    /**
+     * Creates the queue and starts its writer thread.
+     *
+     * @param connection    the connection the DAOs use, its transactions group each batch
+     * @param reportJDBC    the reports DAO
+     * @param signalJDBC    the signals DAO
+     */
+    public WriteBehindQueue(Connection connection, ReportJDBC reportJDBC, SignalJDBC signalJDBC) {
+        this(connection, reportJDBC, signalJDBC, Integer.getInteger("nightguardian.writeQueueCapacity", DEFAULT_CAPACITY));
+    }
+
+    public WriteBehindQueue(Connection connection, ReportJDBC reportJDBC, SignalJDBC signalJDBC, int capacity) {
+        this.connection = connection;
+        this.reportJDBC = reportJDBC;
+        this.signalJDBC = signalJDBC;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drain, "medicaldb-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues {@link ReportJDBC#insertReport(Report)}.
+     *
+     * @param report    the report to insert
+     * @return          completes after the commit with <code> true </code> if the report was saved
+     */
+    public CompletableFuture<Boolean> insertReport(Report report) {
+        return submit("report of patient " + report.getPatientId(), () -> reportJDBC.insertReport(report));
+    }
+
+    /**
+     * Queues {@link SignalJDBC#updateSignalComments(int, String)}.
+     *
+     * @param signalId      the signal's id
+     * @param newComments   the new comments
+     * @return              completes after the commit with <code> true </code> if the comments were saved
+     */
+    public CompletableFuture<Boolean> updateSignalComments(int signalId, String newComments) {
+        return submit("comments of signal " + signalId, () -> signalJDBC.updateSignalComments(signalId, newComments));
+    }
+
+    private CompletableFuture<Boolean> submit(String description, BooleanSupplier action) {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        if (!running) {
+            System.err.println("Write queue closed, refusing " + description);
+            done.complete(false);
+            return done;
+        }
+        try {
+            if (!queue.offer(new Write(description, action, done), OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                System.err.println("Write queue full, refusing " + description);
+                done.complete(false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done.complete(false);
+        }
+        return done;
+    }
+
+    /**
+     * Body of the writer thread: one transaction per batch until the queue is closed and empty.
+     */
+    private void drain() {
+        List<Write> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                Write first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Write> batch) {
+        boolean[] results = new boolean[batch.size()];
+        boolean committed = false;
+        try {
+            connection.setAutoCommit(false);
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    results[i] = runQuietly(batch.get(i));
+                }
+                connection.commit();
+                committed = true;
+            } catch (SQLException e) {
+                System.err.println("Error committing batch of " + batch.size() + " writes: " + e.getMessage());
+                connection.rollback();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error running batch of " + batch.size() + " writes: " + e.getMessage());
+        }
+        batches++;
+        writes += batch.size();
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).done().complete(committed && results[i]);
+        }
+    }
+
+    private static boolean runQuietly(Write write) {
+        try {
+            return write.action().getAsBoolean();
+        } catch (RuntimeException e) {
+            System.err.println("Error saving " + write.description() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    /**
+     * Stops accepting writes, commits the ones already queued and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(OFFER_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Writes queued while the writer was stopping
+        for (Write write; (write = queue.poll()) != null; ) {
+            System.err.println("Write queue closed, refusing " + write.description());
+            write.done().complete(false);
+        }
+    }
+}
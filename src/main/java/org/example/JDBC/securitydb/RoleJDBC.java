@@ -1,5 +1,6 @@
 package org.example.JDBC.securitydb;
 
+import org.example.JDBC.TtlCache;
 import org.example.entities_securitydb.Role;
 
 import java.sql.*;
@@ -10,6 +11,10 @@ import java.util.List;
  * The {@code RoleJDBC} class is a Data Access Object class responsible for all JDBC operations related to the
  * {@code Role} table. This class is typically used by {@link SecurityManager} to perform operations
  * over the security database and to provide the active Connection which is shared by all methods in this DAO
+ * <p>
+ *     Roles are read on every request to check what a user may do, and they do not change while the server runs,
+ *     so {@link #findRoleByID(int)} is served from a {@link TtlCache}.
+ * </p>
  *
  * @author MariaMM04
  * @author MamenCortes
@@ -17,6 +22,8 @@ import java.util.List;
 public class RoleJDBC {
 
     private final Connection connection;
+    private final TtlCache<Integer, Role> roleCache =
+            new TtlCache<>(Long.getLong("nightguardian.roleCacheTtlMs", 10 * 60_000L), 1000);
 
     public RoleJDBC(Connection connection) {
         this.connection = connection;
@@ -34,6 +41,7 @@ public class RoleJDBC {
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, role.getRolename());
             ps.executeUpdate();
+            roleCache.clear();
             System.out.println("Role inserted successfully: " + role.getRolename());
         } catch (SQLException e) {
             System.err.println("Error inserting role: " + e.getMessage());
@@ -70,12 +78,18 @@ public class RoleJDBC {
     }
 
     /**
-     * Retrieves {@code Role} by its unique identifier (id) from the security database by a SQL query.
+     * Retrieves {@code Role} by its unique identifier (id) from the security database, or from the cache
+     * if it was read recently.
      *
      * @param id     the unique id of the role we want to retrieve
      * @return       the desired role we want to retrieve
      */
     public Role findRoleByID(int id) {
+        Role role = roleCache.get(id, this::loadRoleByID);
+        return role == null ? null : new Role(role.getId(), role.getRolename());
+    }
+
+    private Role loadRoleByID(int id) {
         String sql = "SELECT * FROM roles WHERE id = ?";
         Role role = null;
 
@@ -107,8 +121,8 @@ public class RoleJDBC {
         List<Role> roles = new ArrayList<>();
         String sql = "SELECT * FROM roles";
 
-        try (Statement st = connection.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
                 roles.add(extractRoleFromResultSet(rs));
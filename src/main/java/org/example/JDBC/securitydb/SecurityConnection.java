@@ -4,6 +4,8 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import org.example.JDBC.ConnectionPool;
+
 /**
  * The {@code SecurityConnection} class is a utility class responsible for creating JDBC connections
  * to the {@code securitydb} database.
@@ -19,7 +21,12 @@ import java.sql.SQLException;
  */
 public class SecurityConnection {
 
-    private static final String URL = "jdbc:sqlite:src/main/java/org/example/DataBases/Securitydb.db";
+    public static final String DEFAULT_PATH = "src/main/java/org/example/DataBases/Securitydb.db";
+
+    // The nightguardian.securityDb property points the server and the tools at another copy of the database
+    private static String url() {
+        return "jdbc:sqlite:" + System.getProperty("nightguardian.securityDb", DEFAULT_PATH);
+    }
 
     static {
         try {
@@ -37,6 +44,16 @@ public class SecurityConnection {
      * @throws SQLException if a database access errors occurs or the URL is invalid
      */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL);
+        return DriverManager.getConnection(url());
+    }
+
+    /**
+     * Opens a {@link ConnectionPool} on the security database, shared by every thread of the server.
+     *
+     * @return  a new pool, its {@link ConnectionPool#getConnection()} is the connection to give to the Data Access Objects
+     * @throws SQLException if the database cannot be opened
+     */
+    public static ConnectionPool createPool() throws SQLException {
+        return new ConnectionPool(url());
     }
 }
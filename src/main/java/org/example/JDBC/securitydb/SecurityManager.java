@@ -13,7 +13,8 @@ import org.example.entities_securitydb.User;
  * Central manager for the JDBC operations related to the {@code securitydb} database.
  * This class is focused exclusively on the security layer. It defines:
  * <ul>
- *     <li> Opens and maintains a single {@link Connection} to the {@code securitydb} database</li>
+ *     <li> Opens a {@link org.example.JDBC.ConnectionPool} on the {@code securitydb} database and shares its
+ *          routing {@link Connection}, so every client thread gets its own physical connection</li>
  *     <li> Initializes the Data Access Object classes {@link UserJDBC} and {@link RoleJDBC} </li>
  * </ul>
  *
@@ -52,7 +53,7 @@ public class SecurityManager {
      */
     public SecurityManager() {
         try {
-            this.connection = SecurityConnection.getConnection();
+            this.connection = SecurityConnection.createPool().getConnection();
             System.out.println("Connected to SQLite securitydb");
 
             // Inicializa las clases JDBC de cada entidad
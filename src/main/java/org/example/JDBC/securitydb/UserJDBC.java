@@ -1,13 +1,21 @@
 package org.example.JDBC.securitydb;
 
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import Exceptions.RegisterError;
 import encryption.PasswordHash;
+import encryption.PasswordHashPool;
+import org.example.JDBC.TtlCache;
 import org.example.entities_securitydb.User; // Import User class
 import ui.windows.NewPatientPanel;
 import ui.windows.UserLogIn;
@@ -17,6 +25,24 @@ import ui.windows.UserLogIn;
  * The {@code UserJDBC} class is a Data Access Object class responsible for all JDBC operations related to the
  * {@code Users} table. This class is typically used by {@link SecurityManager} to perform operations
  * over the security database and to provide the active Connection which is shared by all methods in this DAO
+ * <p>
+ *     {@link #findUserByID(int)} is run by almost every client request to check who is asking, so it is served
+ *     from a {@link TtlCache} shared by the server threads. Every method of this class that changes a user
+ *     invalidates it, and {@link #invalidateUser(String)} lets callers that commit later (transactions) do it again
+ *     after the commit. A deactivated account is therefore refused on its next request.
+ * </p>
+ * <p>
+ *     {@link #getPublicKey(User)} parses the users' RSA public keys once and keeps the {@link PublicKey} objects,
+ *     keyed by user and stored key, for the handshakes of returning clients.
+ *     {@link #changePublicKey(User, String)} and {@link #firstLogin(User, String, String)} drop them. The server
+ *     serves the hits and misses of this cache on its metrics endpoint.
+ * </p>
+ * <p>
+ *     {@link #authenticate(String, String)} reads everything a login needs (user, password hash, role name and
+ *     active flag) in one query. Emails that are not registered are remembered for a while, so repeated logins
+ *     with a wrong email are answered without querying the database. Inserting a user, or
+ *     {@link #invalidateUser(String)}, forgets them.
+ * </p>
  *
  * @author MariaMM04
  * @author Pblan
@@ -24,7 +50,31 @@ import ui.windows.UserLogIn;
  */
 public class UserJDBC {
 
-    private static Connection connection;
+    public static final long DEFAULT_CACHE_TTL_MS = 30_000;
+    public static final long DEFAULT_PUBLIC_KEY_CACHE_TTL_MS = 10 * 60_000;
+    public static final long DEFAULT_UNKNOWN_EMAIL_TTL_MS = 60_000;
+
+    /**
+     * The result of {@link #authenticate(String, String)} for a registered email.
+     *
+     * @param user              the user, with its password hash, active flag and role id
+     * @param rolename          the name of its role, {@code null} if the role does not exist
+     * @param passwordMatches   whether the password was right
+     */
+    public record Credentials(User user, String rolename, boolean passwordMatches) {}
+
+    // The Base64 text is the key's fingerprint: exact, and cheaper to hash than a digest of it
+    private record PublicKeyId(int userId, String encodedKey) {}
+    private record CachedPublicKey(int userId, PublicKey key) {}
+
+    private final Connection connection;
+    private final TtlCache<Integer, User> userCache =
+            new TtlCache<>(Long.getLong("nightguardian.userCacheTtlMs", DEFAULT_CACHE_TTL_MS), 10_000);
+    private final TtlCache<PublicKeyId, CachedPublicKey> publicKeyCache =
+            new TtlCache<>(Long.getLong("nightguardian.publicKeyCacheTtlMs", DEFAULT_PUBLIC_KEY_CACHE_TTL_MS), 10_000);
+    // Emails that are not in the table, stored as TRUE
+    private final TtlCache<String, Boolean> unknownEmails =
+            new TtlCache<>(Long.getLong("nightguardian.unknownEmailTtlMs", DEFAULT_UNKNOWN_EMAIL_TTL_MS), 10_000);
 
     public UserJDBC(Connection connection) throws SQLException {
         this.connection = connection;
@@ -49,6 +99,7 @@ public class UserJDBC {
             ps.setString(4,user.getPublicKey());
             ps.setBoolean(5, false); //false by default
             ps.executeUpdate();
+            unknownEmails.invalidate(user.getEmail());
             System.out.println("User inserted successfully: " + user.getEmail());
             return true;
         } catch (SQLException e) {
@@ -92,12 +143,80 @@ public class UserJDBC {
     }
 
     /**
-     * Retrieves {@code User} by its unique identifier (id) from the security database by a SQL query.
+     * Retrieves {@code User} by its unique identifier (id) from the security database, or from the cache
+     * if it was read recently.
      *
      * @param id     the unique identifier of the user we want to retrieve
-     * @return       the desired user we want to retrieve
+     * @return       the desired user we want to retrieve (a copy, changing it does not change the cache)
      */
     public User findUserByID(int id) {
+        User user = userCache.get(id, this::loadUserByID);
+        if (user == null) return null;
+        return new User(user.getId(), user.getEmail(), user.getPassword(), user.isActive(), user.getRole_id(), user.getPublicKey());
+    }
+
+    /**
+     * Drops the cached copy of a user, so the next {@link #findUserByID(int)} reads the database.
+     *
+     * @param id    the user's unique identifier
+     */
+    public void invalidateUser(int id) {
+        userCache.invalidate(id);
+    }
+
+    /**
+     * Drops the cached copy of the user with the given email, and forgets it if it was cached as not registered.
+     *
+     * @param email the user's email
+     */
+    public void invalidateUser(String email) {
+        userCache.invalidateIf(user -> user.getEmail().equals(email));
+        unknownEmails.invalidate(email);
+    }
+
+    /**
+     * Returns the user's RSA public key, parsed from its Base64 X.509 form, or from the cache if it was parsed
+     * before. The cache is keyed by the stored key too, so a changed key is never served from an old entry.
+     *
+     * @param user  the user, as read from the database
+     * @return      the public key, or {@code null} if the user has no key or it cannot be parsed
+     */
+    public PublicKey getPublicKey(User user) {
+        String encoded = user.getPublicKey();
+        if (encoded == null) return null;
+        CachedPublicKey cached = publicKeyCache.get(new PublicKeyId(user.getId(), encoded),
+                id -> parsePublicKey(id.userId(), encoded));
+        return cached == null ? null : cached.key();
+    }
+
+    /**
+     * Drops the parsed public keys of a user.
+     *
+     * @param id    the user's unique identifier
+     */
+    public void invalidatePublicKey(int id) {
+        publicKeyCache.invalidateIf(cached -> cached.userId() == id);
+    }
+
+    public long getPublicKeyCacheHits() {
+        return publicKeyCache.getHits();
+    }
+
+    public long getPublicKeyCacheMisses() {
+        return publicKeyCache.getMisses();
+    }
+
+    private static CachedPublicKey parsePublicKey(int userId, String encoded) {
+        try {
+            byte[] keyBytes = Base64.getDecoder().decode(encoded);
+            return new CachedPublicKey(userId, KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(keyBytes)));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            System.out.println("Invalid public key for user " + userId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private User loadUserByID(int id) {
         String sql = "SELECT * FROM Users WHERE id = ?";
         User user = null;
 
@@ -135,8 +254,8 @@ public class UserJDBC {
         List<User> users = new ArrayList<>();
         String sql = "SELECT * FROM Users";
 
-        try (Statement st = connection.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
                 users.add(new User(
@@ -172,6 +291,7 @@ public class UserJDBC {
             ps.setBoolean(1, active);
             ps.setString(2, email);
             int affected = ps.executeUpdate();
+            invalidateUser(email);
 
             if (affected > 0) {
                 if(active){
@@ -261,22 +381,61 @@ public class UserJDBC {
      */
 
     public User login(String email, String password) {
+        try {
+            Credentials credentials = authenticate(email, password);
+            if (credentials == null || !credentials.passwordMatches()) {
+                return null;
+            }
+            return credentials.user();
+        } catch (Exception ex) {
+            System.out.println("Log in failed: "+ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Checks a login with one query, that reads the user with the name of its role. The password is verified on
+     * the {@link PasswordHashPool}, and an old hash is replaced ({@link #rehashPassword(User, String)}).
+     *
+     * Failures are not reported as an unknown email, so the caller can tell "busy, try again" from "not registered".
+     *
+     * @param email     the user's email
+     * @param password  the user's password
+     * @return          the user's credentials, or {@code null} if the email is not registered
+     * @throws RejectedExecutionException if the {@link PasswordHashPool} is full
+     * @throws Exception if the query or the password check fails, or the thread is interrupted
+     */
+    public Credentials authenticate(String email, String password) throws Exception {
         if (email == null || email.isBlank() || password == null || password.isBlank()) {
             return null; // invalid input
         }
-        String sql = ("SELECT * FROM users WHERE email = ?"); // By only fetching the email we can check if it is unique or not
+        Credentials[] found = new Credentials[1];
+        if (unknownEmails.get(email, key -> (found[0] = loadCredentials(key)) == null ? Boolean.TRUE : null) != null) {
+            System.out.println("No user found with email: " + email);
+            return null;
+        }
+        User u = found[0].user();
+
+        //Verification if the password is the same as the hashedPassword in the DB
+        String hashedPasswordDB = u.getPassword();
+        if (!PasswordHashPool.getInstance().verifyPassword(password,hashedPasswordDB)){
+            System.out.println("Password does not match.");
+            return new Credentials(u, found[0].rolename(), false);
+        }
+        if (PasswordHash.needsRehash(hashedPasswordDB)) {
+            rehashPassword(u, password);
+        }
+        return found[0];
+    }
+
+    private Credentials loadCredentials(String email) {
+        String sql = "SELECT u.*, r.rolename FROM Users u LEFT JOIN roles r ON r.id = u.role_id WHERE u.email = ?";
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, email);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-
-                //Verification if the password is the same as the hashedPassword in the DB
-                String hashedPasswordDB = rs.getString("password");
-                if (!PasswordHash.verifyPassword(password,hashedPasswordDB)){
-                    System.out.println("Password does not match.");
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
                     return null;
                 }
-
                 User u = new User(
                         rs.getInt("id"),
                         rs.getString("email"),
@@ -285,15 +444,36 @@ public class UserJDBC {
                         rs.getInt("role_id"),
                         rs.getString("publicKey")
                 );
-                u.setRole_id(rs.getInt("role_id"));
-                return u;
+                return new Credentials(u, rs.getString("rolename"), true);
             }
-        } catch (Exception ex) {
-            System.out.println("Log in failed: "+ex.getMessage());
-            //throw new RuntimeException(ex);
-            return null;
+        } catch (SQLException e) {
+            // Not cached as unknown: the email may exist
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Replaces the stored hash of a user that has just logged in with one of the current version
+     * ({@link PasswordHash#needsRehash(String)}). If it fails the old hash is kept, and it is tried again on the
+     * next login.
+     *
+     * @param u         the user, its password is updated too
+     * @param password  the password that was verified
+     */
+    private void rehashPassword(User u, String password) {
+        String sql = "UPDATE users SET password = ? WHERE id = ? AND password = ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            String hashedPassword = PasswordHashPool.getInstance().generatePasswordHash(password);
+            ps.setString(1, hashedPassword);
+            ps.setInt(2, u.getId());
+            ps.setString(3, u.getPassword());
+            if (ps.executeUpdate() == 1) {
+                u.setPassword(hashedPassword);
+                invalidateUser(u.getId());
+            }
+        } catch (Exception e) {
+            System.out.println("Could not rehash password: "+e.getMessage());
         }
-        return null;
     }
 
     /**
@@ -308,16 +488,28 @@ public class UserJDBC {
             return false;// invalid input
         }
 
-        String sql = ("SELECT * FROM users WHERE email = ? ");
+        try {
+            return unknownEmails.get(email, this::loadUnknown) == null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private Boolean loadUnknown(String email) {
+        String sql = ("SELECT 1 FROM users WHERE email = ? ");
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, email);
             ResultSet rs = ps.executeQuery();
-            return rs.next(); //returns true if rs.next() exists
-        } catch (Exception e) {
-            return false;
+            return rs.next() ? null : Boolean.TRUE; //cached only if there is no row
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
     }
 
+    public long getUnknownEmailHits() {
+        return unknownEmails.getHits();
+    }
+
     /**
      * Changes the password of the given user of the database.
      * @param u         the user that will have its password modified
@@ -332,15 +524,16 @@ public class UserJDBC {
         }
         try {
             //Hash the new password with PBKDF2
-            String hashedPassword = PasswordHash.generatePasswordHash(password);
+            String hashedPassword = PasswordHashPool.getInstance().generatePasswordHash(password);
 
             String sql = "UPDATE users SET password = ? WHERE id = ?";
             try (PreparedStatement ps = connection.prepareStatement(sql)) {
 
-                ps.setString(1, password);
+                ps.setString(1, hashedPassword);
                 ps.setInt(2, u.getId());
                 // to check if one row has been changed
                 int row = ps.executeUpdate();
+                invalidateUser(u.getId());
                 return row == 1;
             } catch (SQLException e) {
                 throw new RuntimeException(e); // return false
@@ -372,6 +565,8 @@ public class UserJDBC {
                 ps.setInt(2, u.getId());
 
                 int row = ps.executeUpdate();
+                invalidateUser(u.getId());
+                invalidatePublicKey(u.getId());
                 System.out.println("Public key updated for user: "+u.getEmail());
                 return row == 1; // true if exactly one row was updated
             } catch (SQLException e) {
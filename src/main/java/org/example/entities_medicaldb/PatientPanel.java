@@ -0,0 +1,53 @@
+package org.example.entities_medicaldb;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.List;
+
+/**
+ * The {@code PatientPanel} class groups everything a doctor's dashboard shows for one patient:
+ * <ul>
+ *     <li> The {@link Patient}</li>
+ *     <li> The summaries of the patient's signals ({@link SignalSummary}, without the recordings)</li>
+ *     <li> The patient's {@link Report}s</li>
+ * </ul>
+ * Panels are built by {@code MedicalManager} with a constant number of queries, whatever the number of patients.
+ */
+public class PatientPanel {
+
+    private final Patient patient;
+    private final List<SignalSummary> signals;
+    private final List<Report> reports;
+
+    public PatientPanel(Patient patient, List<SignalSummary> signals, List<Report> reports) {
+        this.patient = patient;
+        this.signals = signals;
+        this.reports = reports;
+    }
+
+    public Patient getPatient() { return patient; }
+    public List<SignalSummary> getSignals() { return signals; }
+    public List<Report> getReports() { return reports; }
+
+    /**
+     * Converts this panel into the JSON sent to the doctor's client: the patient ({@link Patient#toJason()})
+     * with its {@code signals} and {@code reports} arrays.
+     *
+     * @return  a JSON representation of this panel
+     */
+    public JsonObject toJson() {
+        JsonObject pJson = patient.toJason();
+        JsonArray signalArray = new JsonArray();
+        for (SignalSummary s : signals) {
+            signalArray.add(s.toJson());
+        }
+        JsonArray symptomsArray = new JsonArray();
+        for (Report r : reports) {
+            symptomsArray.add(r.toJson());
+        }
+        pJson.add("signals", signalArray);
+        pJson.add("reports", symptomsArray);
+        return pJson;
+    }
+}
@@ -3,6 +3,11 @@ package org.example.entities_medicaldb;
 import com.google.gson.JsonObject;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
 import java.time.LocalDate;
 
 /**
@@ -15,6 +20,7 @@ import java.time.LocalDate;
  *     <li> The comments about the signal </li>
  *     <li> The foreign key referencing the {@code Patient} (patientId)</li>
  *     <li> The sampling frequency of the signal</li>
+ *     <li> The SHA-256 of the recording in the signal blob store, {@code null} for recordings still kept inside the row</li>
  * </ul>
  * <p>
  *     Instances of this class are typically reconstructed from metadata sent by the patient's device over the network.
@@ -22,18 +28,37 @@ import java.time.LocalDate;
  *     field values including the file compressed, recording date and sampling frequency. These values are used to create
  *     a new {@code Signal} instance for storage in the database.
  * </p>
+ * <p>
+ *     The recording can be read without a file on disk: {@link #openRecording()} and
+ *     {@link #openRecordingStream()} read it on demand from its {@link Recording}, which the database layer
+ *     sets when it loads a signal lazily. Without one they read the {@code file}.
+ * </p>
  *
  * @author MariaMM04
  *
  */
 public class Signal {
 
+    /**
+     * Source of the recording of a signal, opened only when the recording is read.
+     */
+    @FunctionalInterface
+    public interface Recording {
+        /**
+         * @return a new read-only channel positioned at the start of the recording
+         * @throws IOException if the recording cannot be opened
+         */
+        SeekableByteChannel open() throws IOException;
+    }
+
     private int id;
     private File file;
     private LocalDate date;
     private String comments;
     private int patientId;
     private double sampleFrequency;
+    private String blobSha256;
+    private Recording recording;
 
     /**
      * Creates an empty {@code Signal} instance with all field values of ServerMetadata specified. This constructor is typically used
@@ -119,6 +144,36 @@ public class Signal {
 
     public double getSampleFrequency() { return sampleFrequency; }
     public void setSampleFrequency(double sampleFrequency) { this.sampleFrequency = sampleFrequency; }
+
+    public String getBlobSha256() { return blobSha256; }
+    public void setBlobSha256(String blobSha256) { this.blobSha256 = blobSha256; }
+
+    public void setRecording(Recording recording) { this.recording = recording; }
+
+    /**
+     * Opens the recording of the signal for reading. Nothing is read until the channel is.
+     *
+     * @return  a new read-only channel over the recording, to be closed by the caller
+     * @throws IOException if the signal has no recording or it cannot be opened
+     */
+    public SeekableByteChannel openRecording() throws IOException {
+        if (recording != null) {
+            return recording.open();
+        }
+        if (file != null) {
+            return Files.newByteChannel(file.toPath());
+        }
+        throw new IOException("Signal " + id + " has no recording");
+    }
+
+    /**
+     * @return a new stream over the recording, to be closed by the caller
+     * @throws IOException if the signal has no recording or it cannot be opened
+     * @see #openRecording()
+     */
+    public InputStream openRecordingStream() throws IOException {
+        return Channels.newInputStream(openRecording());
+    }
     // --- Utility ---
     public byte[] decompessSignalFile() {
         // Placeholder for decompression logic
@@ -129,7 +184,7 @@ public class Signal {
     public String toString() {
         return "Signal{" +
                 "id=" + id +
-                ", path='" + file.getName() + '\'' +
+                ", path='" + (file != null ? file.getName() : "signal_" + id + ".zip") + '\'' +
                 ", date=" + date +
                 ", comments='" + comments + '\'' +
                 ", patientId=" + patientId +
@@ -140,7 +195,7 @@ public class Signal {
     public JsonObject toJson() {
         JsonObject jsonObject = new JsonObject();
         jsonObject.addProperty("id", id);
-        jsonObject.addProperty("path", file.getName());
+        jsonObject.addProperty("path", file != null ? file.getName() : "signal_" + id + ".zip");
         jsonObject.addProperty("date", date.toString());
         jsonObject.addProperty("comments", comments);
         jsonObject.addProperty("patientId", patientId);
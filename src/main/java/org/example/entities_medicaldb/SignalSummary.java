@@ -0,0 +1,81 @@
+package org.example.entities_medicaldb;
+
+import com.google.gson.JsonObject;
+
+import java.time.LocalDate;
+
+/**
+ * The {@code SignalSummary} class is a metadata-only view of a {@link Signal} stored in the medical database
+ * {@code medicaldb}. It encapsulates:
+ * <ul>
+ *     <li> The unique identifier of the signal</li>
+ *     <li> The date of the signal recording</li>
+ *     <li> The comments about the signal</li>
+ *     <li> The foreign key referencing the {@code Patient} (patientId)</li>
+ *     <li> The sampling frequency of the signal</li>
+ * </ul>
+ * <p>
+ *     Summaries are used to list the signals of a patient. They are read without touching the recording, so
+ *     listing never loads a ZIP into memory or onto the disk. The recording itself is only fetched with
+ *     {@code SignalJDBC.findSignalById} when a client asks for it.
+ * </p>
+ */
+public class SignalSummary {
+
+    private final int id;
+    private final LocalDate date;
+    private final String comments;
+    private final int patientId;
+    private final double sampleFrequency;
+
+    /**
+     * Creates a {@code SignalSummary} instance with all field values specified.
+     *
+     * @param id        the signal's unique id generated by the database
+     * @param date      the date of the recording of the signal
+     * @param comments  optional comments regarding the signal
+     * @param patientId the foreign key referencing the {@code Patient} (patientId)
+     * @param sampleFrequency   the signal's sampling frequency
+     */
+    public SignalSummary(int id, LocalDate date, String comments, int patientId, double sampleFrequency) {
+        this.id = id;
+        this.date = date;
+        this.comments = comments;
+        this.patientId = patientId;
+        this.sampleFrequency = sampleFrequency;
+    }
+
+    public int getId() { return id; }
+    public LocalDate getDate() { return date; }
+    public String getComments() { return comments; }
+    public int getPatientId() { return patientId; }
+    public double getSampleFrequency() { return sampleFrequency; }
+
+    @Override
+    public String toString() {
+        return "SignalSummary{" +
+                "id=" + id +
+                ", date=" + date +
+                ", comments='" + comments + '\'' +
+                ", patientId=" + patientId +
+                ", sampleFrequency=" + sampleFrequency +
+                '}';
+    }
+
+    /**
+     * Same JSON as {@link Signal#toJson()}. The {@code path} is the name the file gets when it is downloaded
+     * with {@code REQUEST_SIGNAL}.
+     *
+     * @return the JSON representation of the summary
+     */
+    public JsonObject toJson() {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("id", id);
+        jsonObject.addProperty("path", "signal_" + id + ".zip");
+        jsonObject.addProperty("date", date.toString());
+        jsonObject.addProperty("comments", comments);
+        jsonObject.addProperty("patientId", patientId);
+        jsonObject.addProperty("sampleFrequency", sampleFrequency);
+        return jsonObject;
+    }
+}
@@ -7,12 +7,18 @@ import org.example.entities_medicaldb.Doctor;
 import org.example.entities_medicaldb.Patient;
 import org.example.entities_securitydb.User;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Service class that synchronizes operations between medicaldb and securitydb.
  * Uses logical deactivation (active = false) instead of physical deletion.
+ * Transactions are opened with {@code setAutoCommit(false)} on the managers' pooled connections, so they only
+ * belong to the calling thread and never leak into other clients' statements.
  */
 public class AdminLinkService {
 
@@ -62,8 +68,10 @@ public class AdminLinkService {
             if (securityManager.getConnection() != null) securityManager.getConnection().rollback();
             if (medicalManager.getConnection() != null) medicalManager.getConnection().rollback();
         } finally {
-            if (securityManager.getConnection() != null) securityManager.getConnection().setAutoCommit(true);
-            if (medicalManager.getConnection() != null) medicalManager.getConnection().setAutoCommit(true);
+            endTransaction(securityManager.getConnection());
+            endTransaction(medicalManager.getConnection());
+            // Once committed, so a login during the transaction does not leave the new email cached as unknown
+            if (user != null) securityManager.getUserJDBC().invalidateUser(user.getEmail());
         }
         return result;
     }
@@ -95,8 +103,10 @@ public class AdminLinkService {
             if (securityManager.getConnection() != null) securityManager.getConnection().rollback();
             if (medicalManager.getConnection() != null) medicalManager.getConnection().rollback();
         } finally {
-            if (securityManager.getConnection() != null) securityManager.getConnection().setAutoCommit(true);
-            if (medicalManager.getConnection() != null) medicalManager.getConnection().setAutoCommit(true);
+            endTransaction(securityManager.getConnection());
+            endTransaction(medicalManager.getConnection());
+            // Once committed, so a login during the transaction does not leave the new email cached as unknown
+            if (user != null) securityManager.getUserJDBC().invalidateUser(user.getEmail());
         }
         return result;
     }
@@ -135,8 +145,10 @@ public class AdminLinkService {
             if (securityManager.getConnection() != null) securityManager.getConnection().rollback();
             if (medicalManager.getConnection() != null) medicalManager.getConnection().rollback();
         } finally {
-            if (securityManager.getConnection() != null) securityManager.getConnection().setAutoCommit(true);
-            if (medicalManager.getConnection() != null) medicalManager.getConnection().setAutoCommit(true);
+            endTransaction(securityManager.getConnection());
+            endTransaction(medicalManager.getConnection());
+            // Once committed, so no other thread caches the user as it was before the change
+            securityManager.getUserJDBC().invalidateUser(email);
         }
         return result;
     }
@@ -173,20 +185,41 @@ public class AdminLinkService {
             if (securityManager.getConnection() != null) securityManager.getConnection().rollback();
             if (medicalManager.getConnection() != null) medicalManager.getConnection().rollback();
         } finally {
-            if (securityManager.getConnection() != null) securityManager.getConnection().setAutoCommit(true);
-            if (medicalManager.getConnection() != null) medicalManager.getConnection().setAutoCommit(true);
+            endTransaction(securityManager.getConnection());
+            endTransaction(medicalManager.getConnection());
+            // Once committed, so no other thread caches the user as it was before the change
+            securityManager.getUserJDBC().invalidateUser(email);
         }
         return result;
     }
 
     /**
-     * Retrieves all patients of a Doctor
+     * Gives back the connection taken by {@code setAutoCommit(false)}. Both databases are always released, even if
+     * the first one fails, otherwise the thread would keep the writer lane of the other database.
+     * @param connection the manager's connection, may be null
+     */
+    private static void endTransaction(Connection connection) {
+        if (connection == null) return;
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.err.println("Error ending transaction: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves all patients with their Doctor. The doctors are fetched together, not one query per patient.
      * @return
      */
     public List<Patient> getAllPatientsWithDoctor() {
         List<Patient> patients = medicalManager.getPatientJDBC().getAllPatients();
+        Set<Integer> doctorIds = new HashSet<>();
+        for (Patient patient : patients) {
+            doctorIds.add(patient.getDoctorId());
+        }
+        Map<Integer, Doctor> doctors = medicalManager.getDoctorJDBC().getDoctorsByIds(doctorIds);
         for (Patient patient : patients) {
-            patient.setDoctor(medicalManager.getDoctorJDBC().getDoctor(patient.getDoctorId()));
+            patient.setDoctor(doctors.get(patient.getDoctorId()));
         }
         return patients;
     }
@@ -0,0 +1,335 @@
+package org.example.service;
+
+import Exceptions.RegisterError;
+import encryption.PasswordHash;
+import org.example.JDBC.medicaldb.MedicalConnection;
+import org.example.JDBC.medicaldb.MedicalManager;
+import org.example.JDBC.securitydb.SecurityConnection;
+import org.example.JDBC.securitydb.SecurityManager;
+import org.example.entities_medicaldb.Doctor;
+import org.example.entities_medicaldb.Patient;
+import org.example.entities_medicaldb.Report;
+import org.example.entities_medicaldb.Signal;
+import org.example.entities_securitydb.User;
+import ui.RandomData;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code DatasetGenerator} class fills copies of the databases with synthetic doctors, patients, symptom reports
+ * and recordings, to try the server with the data of several years of use.
+ * <p>
+ *     Usage: {@code DatasetGenerator <outputDir> [doctors] [patientsPerDoctor] [years] [signalsPerPatient] [signalHours]}
+ *     (50 doctors with 200 patients each, 5 years, one recording of one hour per patient by default). The databases of
+ *     the repository are copied to {@code outputDir}, which must not contain them yet, with the recordings in
+ *     {@code outputDir/blobs}, and are never written themselves.
+ * </p>
+ * <ul>
+ *     <li> Every doctor and patient has an active account, all with the password {@value #PASSWORD}</li>
+ *     <li> Every patient writes reports during the whole period, {@code nightguardian.dataset.reportsPerMonth} a
+ *          month on average (2 by default), some patients more than others</li>
+ *     <li> The recordings are generated by {@link RandomData#writeSignalZip} at
+ *          {@code nightguardian.dataset.samplingRate} Hz (100 by default), with the channels of
+ *          {@code nightguardian.dataset.channels} ({@code EEG,ACC} by default, as the BITalino boards send them)</li>
+ *     <li> {@code nightguardian.dataset.seed} (42 by default) makes the signals, reports and dates reproducible</li>
+ * </ul>
+ * Compressing the recordings takes most of the time (about 0.3 s per channel and hour at 100 Hz), so they are
+ * written to temporary files by {@code nightguardian.dataset.threads} threads (one per processor by default), ahead
+ * of the thread that inserts the rows.
+ * The rows are written with the {@code *JDBC} classes of the managers of an {@link AdminLinkService}, in transactions
+ * of {@code nightguardian.dataset.batchSize} rows (1000 by default) on both databases. The {@code *JDBC} classes print
+ * every row they insert, so {@code System.out} is silenced while writing and the progress is printed instead.
+ */
+public class DatasetGenerator {
+
+    static final String PASSWORD = "Password123";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: DatasetGenerator <outputDir> [doctors] [patientsPerDoctor] [years] [signalsPerPatient] [signalHours]");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        int doctors = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int patientsPerDoctor = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int years = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int signalsPerPatient = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        int signalHours = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+        Path medicalDb = directory.resolve("Medicaldb.db");
+        Path securityDb = directory.resolve("Securitydb.db");
+        Path blobs = directory.resolve("blobs");
+        if (Files.exists(medicalDb) || Files.exists(securityDb)) {
+            System.err.println("The databases are already in " + directory.toAbsolutePath() + ", choose an empty directory");
+            return;
+        }
+        Files.createDirectories(directory);
+        Files.copy(Paths.get(MedicalConnection.DEFAULT_PATH), medicalDb);
+        Files.copy(Paths.get(SecurityConnection.DEFAULT_PATH), securityDb);
+        System.setProperty("nightguardian.medicalDb", medicalDb.toString());
+        System.setProperty("nightguardian.securityDb", securityDb.toString());
+        System.setProperty("nightguardian.blobStore", blobs.toString());
+
+        AdminLinkService service = new AdminLinkService(new MedicalManager(), new SecurityManager());
+        try {
+            DatasetGenerator generator = new DatasetGenerator(service, directory, System.out);
+            generator.generate(doctors, patientsPerDoctor, years, signalsPerPatient, signalHours);
+        } finally {
+            service.getMedicalManager().close();
+            service.getSecurityManager().close();
+        }
+        System.out.println("Start the server on this dataset with -Dnightguardian.medicalDb=" + medicalDb
+                + " -Dnightguardian.securityDb=" + securityDb + " -Dnightguardian.blobStore=" + blobs);
+    }
+
+    private final MedicalManager medicalManager;
+    private final SecurityManager securityManager;
+    private final Path directory;
+    private final PrintStream progress;
+
+    private final int samplingRate = Integer.getInteger("nightguardian.dataset.samplingRate", 100);
+    private final int reportsPerMonth = Integer.getInteger("nightguardian.dataset.reportsPerMonth", 2);
+    private final int batchSize = Integer.getInteger("nightguardian.dataset.batchSize", 1000);
+    private final RandomData.Channel[] channels = Arrays.stream(System.getProperty("nightguardian.dataset.channels", "EEG,ACC").split(","))
+            .map(channel -> RandomData.Channel.valueOf(channel.trim().toUpperCase(Locale.ROOT)))
+            .toArray(RandomData.Channel[]::new);
+    private final Random random = new Random(Long.getLong("nightguardian.dataset.seed", 42));
+    private final Random recordingSeeds = new Random(random.nextLong());
+    private final int threads = Integer.getInteger("nightguardian.dataset.threads", Runtime.getRuntime().availableProcessors());
+    private final Deque<Future<Path>> recordings = new ArrayDeque<>();
+    private long recordingsToSubmit;
+    private int recordingNumber;
+
+    private int pendingRows;
+    private int patients;
+    private long reports;
+    private long signals;
+    private long signalBytes;
+    private long startNanos;
+
+    public DatasetGenerator(AdminLinkService service, Path directory, PrintStream progress) {
+        this.medicalManager = service.getMedicalManager();
+        this.securityManager = service.getSecurityManager();
+        this.directory = directory;
+        this.progress = progress;
+    }
+
+    /**
+     * Writes the whole dataset. A batch that fails is rolled back and the generation stops there, keeping the
+     * batches already committed.
+     *
+     * @return {@code true} if every row was written
+     * @throws GeneralSecurityException if the password hash cannot be computed
+     */
+    public boolean generate(int doctors, int patientsPerDoctor, int years, int signalsPerPatient, int signalHours)
+            throws GeneralSecurityException {
+        LocalDate end = LocalDate.now();
+        LocalDate start = end.minusYears(years);
+        String hash = PasswordHash.generatePasswordHash(PASSWORD); // one hash for every account, as it takes ~0.1 s
+        progress.println("Generating " + doctors + " doctors, " + doctors * patientsPerDoctor + " patients, "
+                + years + " years of reports and " + signalsPerPatient + " recording(s) of " + signalHours
+                + " h at " + samplingRate + " Hz " + Arrays.toString(channels) + " per patient");
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        startNanos = System.nanoTime();
+        ExecutorService recorders = Executors.newFixedThreadPool(threads);
+        recordingsToSubmit = (long) doctors * patientsPerDoctor * signalsPerPatient;
+        try {
+            beginBatch();
+            int doctorRole = securityManager.getRoleJDBC().findRoleByName("Doctor").getId();
+            int patientRole = securityManager.getRoleJDBC().findRoleByName("Patient").getId();
+            for (int d = 0; d < doctors; d++) {
+                int doctorId = insertDoctor(d, hash, doctorRole);
+                for (int p = 0; p < patientsPerDoctor; p++) {
+                    int patientId = insertPatient(d * patientsPerDoctor + p, doctorId, hash, patientRole);
+                    insertReports(patientId, start, end);
+                    for (int s = 0; s < signalsPerPatient; s++) {
+                        insertSignal(recorders, patientId, start, end, signalHours);
+                    }
+                    patients++;
+                }
+            }
+            commitBatch();
+            printProgress();
+            return true;
+        } catch (SQLException | IOException e) {
+            System.err.println("Error generating the dataset, rolling back the last batch: " + e.getMessage());
+            rollbackBatch();
+            return false;
+        } finally {
+            endBatch();
+            System.setOut(out);
+            recorders.shutdownNow();
+            deleteRecordings();
+        }
+    }
+
+    private int insertDoctor(int index, String hash, int role) throws SQLException {
+        String email = "dataset.doctor" + index + "@nightguardian.test";
+        Doctor doctor = RandomData.generateRandomDoctor();
+        doctor.setEmail(email);
+        insertUser(email, hash, role);
+        check(medicalManager.getDoctorJDBC().insertDoctor(doctor), email);
+        rowWritten();
+        return medicalManager.getDoctorJDBC().findDoctorByEmail(email).getId();
+    }
+
+    private int insertPatient(int index, int doctorId, String hash, int role) throws SQLException {
+        String email = "dataset.patient" + index + "@nightguardian.test";
+        Patient patient = RandomData.generateRandomPatient();
+        patient.setEmail(email);
+        patient.setDateOfBirth(LocalDate.of(1940, 1, 1).plusDays(random.nextInt(75 * 365)));
+        patient.setDoctorId(doctorId);
+        insertUser(email, hash, role);
+        check(medicalManager.getPatientJDBC().insertPatient(patient), email);
+        check(medicalManager.getPatientJDBC().updatePatientActiveStatus(email, true), email);
+        rowWritten();
+        return medicalManager.getPatientJDBC().findPatientByEmail(email).getId();
+    }
+
+    private void insertUser(String email, String hash, int role) throws SQLException {
+        try {
+            check(securityManager.getUserJDBC().insertUser(new User(email, hash, role, true)), email);
+        } catch (RegisterError e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+        check(securityManager.getUserJDBC().updateUserActiveStatus(email, true), email);
+    }
+
+    /**
+     * Reports spread over the period, from a quarter to 1.75 times the average rate depending on the patient.
+     */
+    private void insertReports(int patientId, LocalDate start, LocalDate end) throws SQLException {
+        long days = ChronoUnit.DAYS.between(start, end);
+        int count = (int) Math.round(reportsPerMonth * days / 30.44 * (0.25 + 1.5 * random.nextDouble()));
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) offsets[i] = (long) (random.nextDouble() * days);
+        Arrays.sort(offsets);
+        for (long offset : offsets) {
+            Report report = RandomData.generateRandomReport(random, start.plusDays(offset), patientId);
+            check(medicalManager.getReportJDBC().insertReport(report), "report of patient " + patientId);
+            reports++;
+            rowWritten();
+        }
+    }
+
+    private void insertSignal(ExecutorService recorders, int patientId, LocalDate start, LocalDate end, int hours)
+            throws SQLException, IOException {
+        Path recording = nextRecording(recorders, hours);
+        LocalDate date = start.plusDays((long) (random.nextDouble() * ChronoUnit.DAYS.between(start, end)));
+        Signal signal = new Signal(recording.toFile(), date, "Night recording, " + hours + " h", patientId, samplingRate);
+        check(medicalManager.getSignalJDBC().insertSignal(signal), "signal of patient " + patientId);
+        signalBytes += Files.size(recording);
+        Files.delete(recording);
+        signals++;
+        rowWritten();
+    }
+
+    /**
+     * Takes the oldest recording being written, first submitting the next ones so that every thread has two.
+     */
+    private Path nextRecording(ExecutorService recorders, int hours) throws IOException {
+        while (recordingsToSubmit > 0 && recordings.size() < 2 * threads) {
+            Random recordingRandom = new Random(recordingSeeds.nextLong());
+            Path file = directory.resolve("recording-" + recordingNumber++ + ".zip.tmp");
+            recordings.add(recorders.submit(() -> {
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                    RandomData.writeSignalZip(out, recordingRandom, hours * 3600L, samplingRate, channels);
+                }
+                return file;
+            }));
+            recordingsToSubmit--;
+        }
+        try {
+            return recordings.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing a recording", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not write a recording: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Deletes the recordings written ahead and not inserted, when the generation stops early.
+     */
+    private void deleteRecordings() {
+        recordings.clear();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "recording-*.zip.tmp")) {
+            for (Path file : files) Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Error deleting temporary recordings: " + e.getMessage());
+        }
+    }
+
+    private static void check(boolean written, String row) throws SQLException {
+        if (!written) {
+            throw new SQLException("Could not write " + row);
+        }
+    }
+
+    private void rowWritten() throws SQLException {
+        if (++pendingRows >= batchSize) {
+            commitBatch();
+            printProgress();
+            beginBatch();
+        }
+    }
+
+    private void beginBatch() throws SQLException {
+        securityManager.getConnection().setAutoCommit(false);
+        medicalManager.getConnection().setAutoCommit(false);
+    }
+
+    private void commitBatch() throws SQLException {
+        securityManager.getConnection().commit();
+        medicalManager.getConnection().commit();
+        endBatch();
+        pendingRows = 0;
+    }
+
+    private void rollbackBatch() {
+        try {
+            securityManager.getConnection().rollback();
+            medicalManager.getConnection().rollback();
+        } catch (SQLException e) {
+            System.err.println("Error rolling back: " + e.getMessage());
+        }
+    }
+
+    private void endBatch() {
+        try {
+            securityManager.getConnection().setAutoCommit(true);
+            medicalManager.getConnection().setAutoCommit(true);
+        } catch (SQLException e) {
+            System.err.println("Error restoring autocommit: " + e.getMessage());
+        }
+    }
+
+    private void printProgress() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        progress.printf(Locale.ROOT, "%,d patients, %,d reports, %,d signals (%,.1f MB) in %.0f s, %,.0f rows/s%n",
+                patients, reports, signals, signalBytes / 1e6, seconds, (patients + reports + signals) / Math.max(seconds, 1e-3));
+    }
+}
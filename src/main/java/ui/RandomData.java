@@ -1,8 +1,18 @@
 package ui;
 
 import org.example.entities_medicaldb.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 
 public class RandomData {
@@ -77,6 +87,131 @@ public class RandomData {
         return doctor;
     }
 
+    /**
+     * Channels of the recordings, as 10-bit samples (0 to 1023) like the BITalino boards the patients wear.
+     */
+    public enum Channel {
+        /** Heart beats (P wave, QRS complex, T wave), faster during a seizure */
+        ECG,
+        /** Alpha, theta and delta rhythms, 3 Hz spike-and-wave discharges during a seizure */
+        EEG,
+        /** Posture that changes now and then, rhythmic shaking during a seizure */
+        ACC
+    }
+
+    private static final int SAMPLES_PER_CHUNK = 4096;
+
+    /**
+     * Generates a recording as the patient application uploads it: a zip with one {@code bitalino_<n>.csv} file of
+     * an EEG and an accelerometer channel ({@code value;value} per sample), the same format as the recordings
+     * stored in {@code Medicaldb.db}. See {@link #writeSignalZip(OutputStream, Random, long, int, Channel...)}.
+     *
+     * @param random        the source of the samples
+     * @param seconds       length of the recording
+     * @param samplingRate  samples per second
+     * @return              the bytes of the zip
+     */
+    public static byte[] generateSignalZip(Random random, int seconds, int samplingRate) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(seconds * samplingRate * 2);
+        try {
+            writeSignalZip(bytes, random, seconds, samplingRate, Channel.EEG, Channel.ACC);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown by a ByteArrayOutputStream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a recording of the given channels as a zip with one {@code bitalino_<n>.csv} file, one line per
+     * sample and one column per channel, separated by {@code ;}. A quarter of the recordings contain a seizure of
+     * 30 seconds to 2 minutes, seen in every channel at the same time.
+     * <p>
+     *     The samples are written as they are generated, so recordings of several hours do not have to fit in memory.
+     * </p>
+     *
+     * @param out           where the zip is written, not closed
+     * @param random        the source of the samples
+     * @param seconds       length of the recording
+     * @param samplingRate  samples per second
+     * @param channels      the columns of the file
+     * @throws IOException  if the zip cannot be written
+     */
+    public static void writeSignalZip(OutputStream out, Random random, long seconds, int samplingRate,
+                                      Channel... channels) throws IOException {
+        long samples = seconds * samplingRate;
+        long seizureLength = (long) samplingRate * (30 + random.nextInt(91));
+        long seizureStart = random.nextInt(4) == 0 ? (long) (random.nextDouble() * Math.max(1, samples - seizureLength)) : -1;
+        double heartRate = 55 + random.nextInt(31);
+        double[] phases = {random.nextDouble(), random.nextDouble(), random.nextDouble()};
+        double beat = 0;
+        double posture = 620;
+
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.putNextEntry(new ZipEntry("bitalino_" + Math.abs(random.nextLong()) + ".csv"));
+        StringBuilder chunk = new StringBuilder(SAMPLES_PER_CHUNK * 6 * channels.length);
+        for (long i = 0; i < samples; i++) {
+            double t = (double) i / samplingRate;
+            boolean seizure = seizureStart >= 0 && i >= seizureStart && i < seizureStart + seizureLength;
+            beat = (beat + heartRate * (seizure ? 1.6 : 1) / 60 / samplingRate) % 1;
+            if (random.nextInt(samplingRate * 600) == 0) {
+                posture += (random.nextDouble() - 0.5) * 80; // turning over in bed, every 10 minutes on average
+            }
+            for (int c = 0; c < channels.length; c++) {
+                double value = switch (channels[c]) {
+                    case ECG -> 512 + 250 * ecg(beat) + 10 * Math.sin(2 * Math.PI * 0.25 * t) + random.nextGaussian() * 2;
+                    case EEG -> 512 + 25 * Math.sin(2 * Math.PI * 10 * t + phases[0]) + 15 * Math.sin(2 * Math.PI * 6 * t + phases[1])
+                            + 10 * Math.sin(2 * Math.PI * 1.5 * t + phases[2]) + random.nextGaussian() * 6
+                            + (seizure ? 220 * spikeAndWave((3 * t) % 1) : 0);
+                    case ACC -> posture + random.nextGaussian() * 0.7
+                            + (seizure ? 120 * Math.sin(2 * Math.PI * 3 * t) + random.nextGaussian() * 15 : 0);
+                };
+                if (c > 0) chunk.append(';');
+                chunk.append(Math.max(0, Math.min(1023, Math.round(value))));
+            }
+            chunk.append('\n');
+            if ((i + 1) % SAMPLES_PER_CHUNK == 0) {
+                zip.write(chunk.toString().getBytes(StandardCharsets.US_ASCII));
+                chunk.setLength(0);
+            }
+        }
+        zip.write(chunk.toString().getBytes(StandardCharsets.US_ASCII));
+        zip.closeEntry();
+        zip.finish();
+    }
+
+    /**
+     * One heart beat as a sum of gaussians, {@code phase} going from 0 to 1 over the beat.
+     */
+    private static double ecg(double phase) {
+        return 0.12 * gaussian(phase, 0.20, 0.025) - 0.15 * gaussian(phase, 0.35, 0.010)
+                + gaussian(phase, 0.37, 0.012) - 0.25 * gaussian(phase, 0.39, 0.010)
+                + 0.30 * gaussian(phase, 0.60, 0.040);
+    }
+
+    private static double gaussian(double x, double mean, double width) {
+        return Math.exp(-(x - mean) * (x - mean) / (2 * width * width));
+    }
+
+    /**
+     * One spike followed by a slow wave, {@code phase} going from 0 to 1.
+     */
+    private static double spikeAndWave(double phase) {
+        return phase < 0.15 ? Math.sin(Math.PI * phase / 0.15) : -0.35 * Math.sin(Math.PI * (phase - 0.15) / 0.85);
+    }
+
+    /**
+     * Generates a symptom report with one to three different symptoms.
+     *
+     * @param random    the source of the symptoms
+     * @param date      the day of the report
+     * @param patientId the patient who wrote it
+     * @return          a report without id
+     */
+    public static Report generateRandomReport(Random random, LocalDate date, int patientId) {
+        List<Report.Symptom> symptoms = new ArrayList<>(List.of(Report.Symptom.values()));
+        Collections.shuffle(symptoms, random);
+        return new Report(date, new ArrayList<>(symptoms.subList(0, 1 + random.nextInt(3))), patientId);
+    }
 
     // Helper method to generate a random date in "YYYY-MM-DD" format
     private static String generateRandomDate(Random random) {
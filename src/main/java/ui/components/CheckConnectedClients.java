@@ -1,5 +1,6 @@
 package ui.components;
 
+import metrics.ServerMetrics;
 import net.miginfocom.swing.MigLayout;
 import org.example.entities_medicaldb.Doctor;
 import ui.windows.Application;
@@ -16,11 +17,16 @@ import java.util.ArrayList;
  * <p>
  * The panel provides a scrollable list, a "Stop Server" button,
  * and a "Go Back" button. It also supports showing error messages.
+ * Below the list it shows the live rates of the server ({@link ServerMetrics}), refreshed every second
+ * while the panel is on screen.
  *
  *  @author MamenCortes
  */
 public class CheckConnectedClients extends JPanel implements MouseListener {
+    private static final int RATES_REFRESH_MS = 1000;
     private JLabel errorMessage;
+    private final DefaultListModel<String> ratesModel = new DefaultListModel<>();
+    private transient ServerMetrics.Snapshot lastSnapshot = ServerMetrics.getInstance().snapshot();
 
     /**
      * Creates a new CheckConnectedClients panel.
@@ -30,7 +36,7 @@ public class CheckConnectedClients extends JPanel implements MouseListener {
      * @param stopServerButton button to stop the server
      */
     public CheckConnectedClients(ArrayList<String> connectedClients, MyButton goBackButton, MyButton stopServerButton) {
-        this.setLayout(new MigLayout("wrap, fill", "push[center]push", "push[]25[]10[]10[]push"));
+        this.setLayout(new MigLayout("wrap, fill", "push[center]push", "push[]25[]10[]10[]10[]push"));
         JLabel label = new JLabel("Connected Clients: "+connectedClients.size());
         label.setFont(new Font("sansserif", 1, 30));
         label.setForeground(Application.dark_purple);
@@ -59,6 +65,24 @@ public class CheckConnectedClients extends JPanel implements MouseListener {
 
         add(scrollPane1,  "w 60%");
 
+        JList<String> ratesList = new JList<>(ratesModel);
+        ratesList.setFont(new Font("monospaced", Font.PLAIN, 12));
+        ratesList.setVisibleRowCount(10);
+        JScrollPane ratesScrollPane = new JScrollPane(ratesList);
+        ratesScrollPane.setOpaque(false);
+        add(ratesScrollPane, "w 60%");
+        ratesModel.addElement("Measuring...");
+        Timer ratesTimer = new Timer(RATES_REFRESH_MS, null);
+        ratesTimer.addActionListener(e -> {
+            if (!isDisplayable()) {
+                ratesTimer.stop(); // the window was closed
+                return;
+            }
+            refreshRates();
+        });
+        ratesTimer.setInitialDelay(RATES_REFRESH_MS);
+        ratesTimer.start();
+
         errorMessage = new JLabel();
         errorMessage.setFont(new Font("sansserif", Font.BOLD, 12));
         errorMessage.setForeground(Color.red);
@@ -81,6 +105,16 @@ public class CheckConnectedClients extends JPanel implements MouseListener {
 
 
     }
+    /**
+     * Shows the rates since the previous refresh.
+     */
+    private void refreshRates() {
+        ServerMetrics.Snapshot snapshot = ServerMetrics.getInstance().snapshot();
+        ratesModel.clear();
+        ServerMetrics.describeRates(lastSnapshot, snapshot).forEach(ratesModel::addElement);
+        lastSnapshot = snapshot;
+    }
+
     /**
      * Displays an error message to the user.
      *
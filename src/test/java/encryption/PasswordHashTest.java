@@ -0,0 +1,74 @@
+package encryption;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.util.HexFormat;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba los dos formatos de hash (el antiguo con SHA1 y el versionado), cuándo hay que
+/// rehacer un hash, y que el pool rechaza hashes cuando está lleno en vez de encolarlos sin límite.
+class PasswordHashTest {
+
+    static String legacyHash(String password) throws Exception {
+        byte[] salt = new byte[16];
+        TokenUtils.random().nextBytes(salt);
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, 1000, 64 * 8);
+        byte[] hash = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(spec).getEncoded();
+        return 1000 + ":" + HexFormat.of().formatHex(salt) + ":" + HexFormat.of().formatHex(hash);
+    }
+
+    @Test
+    void testBothFormatsAreVerified() throws Exception {
+        String legacy = legacyHash("Secret123!");
+        assertTrue(PasswordHash.verifyPassword("Secret123!", legacy));
+        assertFalse(PasswordHash.verifyPassword("Secret123?", legacy));
+        assertTrue(PasswordHash.needsRehash(legacy));
+
+        String current = PasswordHash.generatePasswordHash("Secret123!");
+        assertTrue(current.startsWith("v2:" + PasswordHash.getIterations() + ":"));
+        assertTrue(PasswordHash.verifyPassword("Secret123!", current));
+        assertFalse(PasswordHash.verifyPassword("Secret123?", current));
+        assertFalse(PasswordHash.needsRehash(current));
+
+        String weaker = PasswordHash.generatePasswordHash("Secret123!", 1000);
+        assertTrue(PasswordHash.verifyPassword("Secret123!", weaker));
+        assertTrue(PasswordHash.needsRehash(weaker));
+    }
+
+    @Test
+    void testFullPoolRejectsHashes() throws Exception {
+        PasswordHashPool pool = new PasswordHashPool(1, 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> {
+            try {
+                pool.run(() -> { running.countDown(); release.await(); return null; });
+            } catch (Exception ignored) {
+            }
+        });
+        Thread second = new Thread(() -> {
+            try {
+                pool.run(() -> null);
+            } catch (Exception ignored) {
+            }
+        });
+        first.start();
+        running.await();
+        second.start();
+        while (pool.getQueued() == 0) Thread.sleep(5);
+
+        assertThrows(RejectedExecutionException.class, () -> pool.verifyPassword("Secret123!", legacyHash("Secret123!")));
+        assertEquals(1, pool.getRejected());
+
+        release.countDown();
+        first.join();
+        second.join();
+        assertTrue(pool.verifyPassword("Secret123!", legacyHash("Secret123!")));
+        assertEquals(3, pool.getCompleted());
+    }
+}
@@ -0,0 +1,61 @@
+package encryption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba que el par de claves del servidor se guarda en el keystore y se recupera tras reiniciar,
+/// que se rota al caducar y que un keystore ilegible no se sobrescribe.
+class RSAKeyManagerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testKeyPairSurvivesRestart() throws Exception {
+        File keystore = dir.resolve("server_keys.p12").toFile();
+        char[] passphrase = "local-passphrase".toCharArray();
+
+        KeyPair created = RSAKeyManager.loadOrCreateKeyPair(keystore, passphrase, TimeUnit.DAYS.toMillis(90));
+        KeyPair loaded = RSAKeyManager.loadOrCreateKeyPair(keystore, passphrase, TimeUnit.DAYS.toMillis(90));
+
+        assertTrue(keystore.exists());
+        assertEquals(created.getPublic(), loaded.getPublic());
+        assertEquals(created.getPrivate(), loaded.getPrivate());
+        String message = RSAUtil.encrypt("hola", loaded.getPublic());
+        assertEquals("hola", RSAUtil.decrypt(message, created.getPrivate()));
+    }
+
+    @Test
+    void testExpiredKeyPairIsRotated() throws Exception {
+        File keystore = dir.resolve("server_keys.p12").toFile();
+        char[] passphrase = "local-passphrase".toCharArray();
+
+        KeyPair first = RSAKeyManager.loadOrCreateKeyPair(keystore, passphrase, 0);
+        Thread.sleep(20);
+        KeyPair rotated = RSAKeyManager.loadOrCreateKeyPair(keystore, passphrase, 10);
+        KeyPair loaded = RSAKeyManager.loadOrCreateKeyPair(keystore, passphrase, 0);
+
+        assertNotEquals(first.getPublic(), rotated.getPublic());
+        assertEquals(rotated.getPublic(), loaded.getPublic());
+    }
+
+    @Test
+    void testWrongPassphraseKeepsTheKeystore() throws Exception {
+        File keystore = dir.resolve("server_keys.p12").toFile();
+        KeyPair stored = RSAKeyManager.loadOrCreateKeyPair(keystore, "right".toCharArray(), 0);
+        byte[] before = Files.readAllBytes(keystore.toPath());
+
+        KeyPair temporary = RSAKeyManager.loadOrCreateKeyPair(keystore, "wrong".toCharArray(), 0);
+
+        assertNotEquals(stored.getPublic(), temporary.getPublic());
+        assertArrayEquals(before, Files.readAllBytes(keystore.toPath()));
+    }
+}
@@ -0,0 +1,60 @@
+package encryption;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba que el cifrador de sesión produce los mismos mensajes que TokenUtils,
+/// sin repetir IVs, y que rechaza mensajes modificados o de otra clave.
+class SessionCipherTest {
+
+    @Test
+    void testCompatibleWithTokenUtils() throws Exception {
+        SecretKey key = TokenUtils.generateToken();
+        SessionCipher cipher = new SessionCipher(key);
+        String json = "{\"type\":\"SAVE_COMMENTS_SIGNAL\",\"comments\":\"Crisis nocturna, señal ruidosa 😴\"}";
+
+        assertEquals(json, TokenUtils.decrypt(cipher.encrypt(json), key));
+        assertEquals(json, cipher.decrypt(TokenUtils.encrypt(json, key)));
+        assertEquals("", cipher.decrypt(cipher.encrypt("")));
+    }
+
+    @Test
+    void testIvsNeverRepeat() throws Exception {
+        SessionCipher cipher = new SessionCipher(TokenUtils.generateToken());
+        Set<String> ivs = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            byte[] message = Base64.getDecoder().decode(cipher.encrypt("{}"));
+            assertTrue(ivs.add(Base64.getEncoder().encodeToString(java.util.Arrays.copyOf(message, 12))));
+        }
+    }
+
+    @Test
+    void testLargeMessagesAndBufferReuse() throws Exception {
+        SecretKey key = TokenUtils.generateToken();
+        SessionCipher cipher = new SessionCipher(key);
+        String big = "x".repeat(3 * SessionCipher.MAX_RETAINED_BUFFER_BYTES);
+        assertEquals(big, cipher.decrypt(cipher.encrypt(big)));
+        assertEquals("small", TokenUtils.decrypt(cipher.encrypt("small"), key));
+    }
+
+    @Test
+    void testRejectsModifiedOrForeignMessages() throws Exception {
+        SessionCipher cipher = new SessionCipher(TokenUtils.generateToken());
+        byte[] message = Base64.getDecoder().decode(cipher.encrypt("{\"user_id\":1}"));
+        message[message.length - 1] ^= 1;
+        String tampered = Base64.getEncoder().encodeToString(message);
+        assertThrows(AEADBadTagException.class, () -> cipher.decrypt(tampered));
+
+        String foreign = TokenUtils.encrypt("{\"user_id\":1}", TokenUtils.generateToken());
+        assertThrows(AEADBadTagException.class, () -> cipher.decrypt(foreign));
+        assertThrows(GeneralSecurityException.class, () -> cipher.decrypt("AAAA"));
+    }
+}
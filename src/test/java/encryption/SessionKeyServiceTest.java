@@ -0,0 +1,46 @@
+package encryption;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba que el servicio de claves de sesión entrega claves AES distintas, primero desde el
+/// pool precalculado y, cuando se agota, generándolas en el momento.
+class SessionKeyServiceTest {
+
+    @Test
+    void testKeysComeFromThePoolUntilItIsEmpty() throws Exception {
+        SessionKeyService service = new SessionKeyService(4);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (service.getPooledKeys() < 4 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            SecretKey key = service.nextKey();
+            assertEquals("AES", key.getAlgorithm());
+            assertEquals(16, key.getEncoded().length);
+            keys.add(Base64.getEncoder().encodeToString(key.getEncoded()));
+        }
+        assertEquals(4, keys.size());
+        assertEquals(4, service.getPoolHits());
+        assertTrue(service.getGenerationNanos() > 0);
+    }
+
+    @Test
+    void testWithoutPoolEveryKeyIsGenerated() {
+        SessionKeyService service = new SessionKeyService(0);
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(Base64.getEncoder().encodeToString(service.nextKey().getEncoded()));
+        }
+        assertEquals(100, keys.size());
+        assertEquals(0, service.getPoolHits());
+        assertEquals(100, service.getPoolMisses());
+        assertEquals(100, service.getGeneratedKeys());
+    }
+}
@@ -0,0 +1,78 @@
+package logging;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba el log asíncrono: los campos con claves o credenciales se ocultan, los valores largos se
+/// recortan, los niveles filtran eventos, y el ring buffer no pierde ni duplica eventos con varios productores.
+class LogTest {
+
+    @Test
+    void testSecretsAreRedactedAndPayloadsCut() {
+        StringWriter output = new StringWriter();
+        AsyncLogWriter writer = new AsyncLogWriter(output, Log.Level.INFO, 64, 16);
+        Log log = new Log("Test", writer);
+
+        JsonObject message = new JsonObject();
+        message.addProperty("type", "CLIENT_AES_KEY");
+        message.addProperty("session_key", "c2VjcmV0LWtleS1tYXRlcmlhbA==");
+        message.addProperty("dataBytes", "A".repeat(5000));
+        log.info("request", "client", "127.0.0.1:5000", "message", message, "password", "Secret123!", "note", "two words");
+        log.debug("hidden", "a", 1);
+        writer.close();
+
+        String line = output.toString();
+        assertTrue(line.contains(" INFO  Test request thread="));
+        assertTrue(line.contains("client=127.0.0.1:5000"));
+        assertTrue(line.contains("\"session_key\":\"[redacted]\""));
+        assertTrue(line.contains("password=[redacted]"));
+        assertTrue(line.contains("AAAAAAAAAAAAAAAA...(5000 chars)"));
+        assertTrue(line.contains("note=\"two words\""));
+        assertFalse(line.contains("c2VjcmV0"));
+        assertFalse(line.contains("Secret123!"));
+        assertFalse(line.contains("hidden"));
+        assertEquals(1, writer.getWritten());
+        // The logged object is not changed
+        assertEquals(5000, message.get("dataBytes").getAsString().length());
+    }
+
+    @Test
+    @Timeout(30)
+    void testRingBufferWithSeveralProducers() throws Exception {
+        RingBuffer<Integer> buffer = new RingBuffer<>(5);
+        assertEquals(8, buffer.capacity());
+        for (int i = 0; i < 8; i++) assertTrue(buffer.offer(i));
+        assertFalse(buffer.offer(8));
+        for (int i = 0; i < 8; i++) assertEquals(i, buffer.poll());
+        assertNull(buffer.poll());
+
+        // Large enough that the producers rarely wait on a single CPU; a full buffer yields instead of spinning
+        RingBuffer<Integer> shared = new RingBuffer<>(1024);
+        int producers = 4, perProducer = 10_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = first; i < first + perProducer; i++) {
+                    while (!shared.offer(i)) Thread.yield();
+                }
+            });
+            threads[p].start();
+        }
+        Set<Integer> seen = new HashSet<>();
+        while (seen.size() < producers * perProducer) {
+            Integer value = shared.poll();
+            if (value != null) assertTrue(seen.add(value));
+            else Thread.yield();
+        }
+        for (Thread thread : threads) thread.join();
+        assertNull(shared.poll());
+    }
+}
@@ -0,0 +1,111 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba las métricas del servidor: el tiempo de base de datos y criptografía se asigna a la petición
+/// del mismo hilo, los tipos de mensaje desconocidos no crecen sin límite, las tasas entre dos instantáneas
+/// y el endpoint de texto, con los valores de las etiquetas escapados y los contadores registrados por otros
+/// componentes.
+class ServerMetricsTest {
+
+    @Test
+    void testRequestsTakeTheDbAndCryptoTimeOfTheirThread() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.addDbNanos(5_000_000); // before the request, not part of it
+        ServerMetrics.Snapshot before = metrics.snapshot();
+
+        ServerMetrics.Request request = metrics.startRequest("LOGIN_REQUEST");
+        metrics.addDbNanos(2_000_000);
+        metrics.addCryptoNanos(3_000_000);
+        request.end(false);
+        metrics.startRequest("LOGIN_REQUEST").end(true);
+        metrics.addBytesIn(100);
+        metrics.addBytesOut(2048);
+        metrics.recordHandshake(40_000_000);
+        metrics.sessionOpened();
+        metrics.setActiveSessions(() -> 1);
+
+        ServerMetrics.Snapshot after = metrics.snapshot();
+        ServerMetrics.TypeSnapshot login = after.types().get("LOGIN_REQUEST");
+        assertEquals(2, login.count());
+        assertEquals(1, login.errors());
+        assertEquals(2_000_000, login.dbNanos());
+        assertEquals(3_000_000, login.cryptoNanos());
+        assertEquals(7_000_000, after.dbNanos());
+        assertEquals(2, after.requests());
+
+        List<String> rates = ServerMetrics.describeRates(before, after);
+        assertTrue(rates.get(0).startsWith("Active sessions: 1"));
+        assertTrue(rates.stream().anyMatch(line -> line.startsWith("LOGIN_REQUEST: ")));
+        assertTrue(rates.stream().anyMatch(line -> line.startsWith("Handshakes: ") && line.endsWith("p50 65 ms")));
+
+        String text = metrics.toText();
+        assertTrue(text.contains("nightguardian_request_duration_seconds_count{type=\"LOGIN_REQUEST\"} 2\n"));
+        assertTrue(text.contains("nightguardian_request_errors_total{type=\"LOGIN_REQUEST\"} 1\n"));
+        assertTrue(text.contains("nightguardian_bytes_sent_total 2048\n"));
+        assertTrue(text.contains("nightguardian_handshake_duration_seconds_bucket{le=\"+Inf\"} 1\n"));
+    }
+
+    @Test
+    void testUnknownTypesAreCappedAndServedByTheEndpoint() throws Exception {
+        ServerMetrics metrics = new ServerMetrics();
+        for (int i = 0; i < ServerMetrics.MAX_TYPES + 10; i++) {
+            metrics.startRequest("TYPE_" + i).end(false);
+        }
+        ServerMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(ServerMetrics.MAX_TYPES + 1, snapshot.types().size());
+        assertEquals(10, snapshot.types().get(ServerMetrics.OTHER_TYPE).count());
+
+        MetricsEndpoint endpoint = MetricsEndpoint.start(0, metrics);
+        try {
+            HttpURLConnection connection = (HttpURLConnection)
+                    URI.create("http://127.0.0.1:" + endpoint.getPort() + "/metrics").toURL().openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain"));
+            try (InputStream in = connection.getInputStream()) {
+                String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(body.contains("nightguardian_request_duration_seconds_count{type=\"OTHER\"} 10\n"));
+            }
+        } finally {
+            endpoint.stop();
+        }
+    }
+
+    @Test
+    void testLabelValuesAreEscaped() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.startRequest("A\"} 1\nforged_total 9\\").end(false);
+        String text = metrics.toText();
+        assertTrue(text.contains("nightguardian_request_errors_total{type=\"A\\\"} 1\\nforged_total 9\\\\\"} 0\n"), text);
+        assertFalse(text.contains("\nforged_total"));
+    }
+
+    @Test
+    void testRegisteredCountersAreServedAndRated() {
+        ServerMetrics metrics = new ServerMetrics();
+        long[] pooled = {5};
+        long[] generating = {1_000_000};
+        metrics.registerCounter("nightguardian_test_pooled_total", "Keys from the pool", () -> pooled[0]);
+        metrics.registerTimeCounter("nightguardian_test_generation_seconds_total", "Generation time", () -> generating[0]);
+
+        ServerMetrics.Snapshot before = metrics.snapshot();
+        pooled[0] += 10;
+        generating[0] += 4_000_000;
+        ServerMetrics.Snapshot after = metrics.snapshot();
+
+        String text = metrics.toText();
+        assertTrue(text.contains("# TYPE nightguardian_test_pooled_total counter\nnightguardian_test_pooled_total 15\n"), text);
+        assertTrue(text.contains("nightguardian_test_generation_seconds_total 0.005\n"), text);
+        List<String> rates = ServerMetrics.describeRates(before, after);
+        assertTrue(rates.stream().anyMatch(line -> line.startsWith("Keys from the pool: ")));
+        assertTrue(rates.stream().anyMatch(line -> line.startsWith("Generation time: ") && line.endsWith(" ms/s")));
+    }
+}
@@ -3,6 +3,7 @@ package network;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import encryption.RSAUtil;
+import encryption.SessionTicketService;
 import javax.crypto.SecretKey;
 import encryption.*;
 import org.example.JDBC.medicaldb.*;
@@ -12,8 +13,11 @@ import org.example.JDBC.securitydb.UserJDBC;
 import org.example.entities_securitydb.*;
 import org.example.entities_medicaldb.*;
 import org.example.service.AdminLinkService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import ui.windows.Application;
 import java.io.*;
@@ -23,6 +27,7 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.KeyPair;
 import java.security.PublicKey;
 import java.time.LocalDate;
@@ -44,6 +49,20 @@ public class ClientHandlerTest {
     private KeyPair keyPair;
     private AdminLinkService adminLinkService;
 
+    @TempDir
+    static Path keystoreDir;
+
+    @BeforeAll
+    static void useTemporaryKeystore() {
+        // The servers of the tests must not write a real private key to the default keystore
+        System.setProperty("nightguardian.keystore", keystoreDir.resolve("server_keys.p12").toString());
+    }
+
+    @AfterAll
+    static void clearKeystore() {
+        System.clearProperty("nightguardian.keystore");
+    }
+
     @BeforeEach
     void setUp() throws Exception {
         serverSocket = mock(ServerSocket.class);
@@ -163,9 +182,8 @@ public class ClientHandlerTest {
         setField(server, "adminConn", mockALS);
 
         // --- Mock DB behavior ---
-        when(mockUserJDBC.isUser("doctor@mail.com")).thenReturn(true);
-        when(mockUserJDBC.login("doctor@mail.com", "123"))
-                .thenReturn(new User(1, "doctor@mail.com", "123", true, 1, "dummyKey"));
+        when(mockUserJDBC.authenticate("doctor@mail.com", "123"))
+                .thenReturn(new UserJDBC.Credentials(new User(1, "doctor@mail.com", "123", true, 1, "dummyKey"), "Doctor", true));
         when(mockRole.findRoleByID(1)).thenReturn(new Role("Doctor"));
 
         // --- Correct JSON and encryption ---
@@ -238,13 +256,11 @@ public class ClientHandlerTest {
         when(mockSec.getRoleJDBC()).thenReturn(mockRole);
 
         // Users: patient + admin trying to log in as Doctor
-        when(mockUserJDBC.isUser("patient@mail.com")).thenReturn(true);
-        when(mockUserJDBC.login("patient@mail.com", "123"))
-                .thenReturn(new User(2, "patient@mail.com", "123", true, 2, "dummy"));
+        when(mockUserJDBC.authenticate("patient@mail.com", "123"))
+                .thenReturn(new UserJDBC.Credentials(new User(2, "patient@mail.com", "123", true, 2, "dummy"), "Patient", true));
 
-        when(mockUserJDBC.isUser("admin@mail.com")).thenReturn(true);
-        when(mockUserJDBC.login("admin@mail.com", "123"))
-                .thenReturn(new User(3, "admin@mail.com", "123", true, 3, "dummy"));
+        when(mockUserJDBC.authenticate("admin@mail.com", "123"))
+                .thenReturn(new UserJDBC.Credentials(new User(3, "admin@mail.com", "123", true, 3, "dummy"), "Admin", true));
 
         when(mockRole.findRoleByID(1)).thenReturn(new Role("Doctor"));
         when(mockRole.findRoleByID(2)).thenReturn(new Role("Patient"));
@@ -329,9 +345,8 @@ public class ClientHandlerTest {
         when(mockSec.getUserJDBC()).thenReturn(mockUserJDBC);
         when(mockSec.getRoleJDBC()).thenReturn(mockRole);
 
-        when(mockUserJDBC.isUser("patient@mail.com")).thenReturn(true);
-        when(mockUserJDBC.login("patient@mail.com", "123"))
-                .thenReturn(new User(2, "patient@mail.com", "123", true, 2, "dummy"));
+        when(mockUserJDBC.authenticate("patient@mail.com", "123"))
+                .thenReturn(new UserJDBC.Credentials(new User(2, "patient@mail.com", "123", true, 2, "dummy"), "Patient", true));
         when(mockRole.findRoleByID(2)).thenReturn(new Role("Patient"));
 
         String plain =
@@ -398,13 +413,11 @@ public class ClientHandlerTest {
         when(mockSec.getUserJDBC()).thenReturn(mockUserJDBC);
         when(mockSec.getRoleJDBC()).thenReturn(mockRole);
 
-        when(mockUserJDBC.isUser("doctor@mail.com")).thenReturn(true);
-        when(mockUserJDBC.login("doctor@mail.com", "123"))
-                .thenReturn(new User(2, "doctor@mail.com", "123", true, 1, "dummy"));
+        when(mockUserJDBC.authenticate("doctor@mail.com", "123"))
+                .thenReturn(new UserJDBC.Credentials(new User(2, "doctor@mail.com", "123", true, 1, "dummy"), "Doctor", true));
 
-        when(mockUserJDBC.isUser("admin@mail.com")).thenReturn(true);
-        when(mockUserJDBC.login("admin@mail.com", "123"))
-                .thenReturn(new User(3, "admin@mail.com", "123", true, 3, "dummy"));
+        when(mockUserJDBC.authenticate("admin@mail.com", "123"))
+                .thenReturn(new UserJDBC.Credentials(new User(3, "admin@mail.com", "123", true, 3, "dummy"), "Admin", true));
 
         when(mockRole.findRoleByID(1)).thenReturn(new Role("Doctor"));
         when(mockRole.findRoleByID(2)).thenReturn(new Role("Patient"));
@@ -484,7 +497,7 @@ public class ClientHandlerTest {
         when(mockSec.getUserJDBC()).thenReturn(mockUserJDBC);
         when(mockSec.getRoleJDBC()).thenReturn(mockRole);
 
-        when(mockUserJDBC.isUser("random@mail.com")).thenReturn(false);
+        when(mockUserJDBC.authenticate("random@mail.com", "123")).thenReturn(null);
 
         String plain =
                 "{\"type\":\"LOGIN_REQUEST\",\"data\":{" +
@@ -516,6 +529,46 @@ public class ClientHandlerTest {
         assertTrue(errorSeen);
     }
 
+    @Test
+    void testHandleLoginWhenTheServerCannotCheckIt() throws Exception {
+        Server server = mock(Server.class);
+        AdminLinkService mockALS = mock(AdminLinkService.class);
+        SecurityManager mockSec = mock(SecurityManager.class);
+        UserJDBC mockUserJDBC = mock(UserJDBC.class);
+        when(server.getAdminLinkService()).thenReturn(mockALS);
+        when(mockALS.getSecurityManager()).thenReturn(mockSec);
+        when(mockSec.getUserJDBC()).thenReturn(mockUserJDBC);
+        when(mockUserJDBC.authenticate("busy@mail.com", "123"))
+                .thenThrow(new java.util.concurrent.RejectedExecutionException("Password hash pool full"));
+        when(mockUserJDBC.authenticate("dbdown@mail.com", "123"))
+                .thenThrow(new RuntimeException(new java.sql.SQLException("database is locked")));
+
+        Socket socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+        PrintWriter writer = mock(PrintWriter.class);
+        ClientHandler handler = new ClientHandler(socket, server, keyPair, writer);
+        SecretKey aes = TokenUtils.generateToken();
+        setField(handler, "token", aes);
+
+        for (String email : new String[]{"busy@mail.com", "dbdown@mail.com"}) {
+            JsonObject data = new JsonObject();
+            data.addProperty("email", email);
+            data.addProperty("password", "123");
+            data.addProperty("access_permits", "Doctor");
+            handler.handleLogIn(data);
+        }
+
+        // Neither is told that the account does not exist
+        ArgumentCaptor<JsonObject> captor = ArgumentCaptor.forClass(JsonObject.class);
+        verify(writer, times(2)).println(captor.capture());
+        JsonObject busy = decryptResponse(captor.getAllValues().get(0), aes);
+        assertEquals("ERROR", busy.get("status").getAsString());
+        assertEquals("Server busy, try again", busy.get("message").getAsString());
+        JsonObject failed = decryptResponse(captor.getAllValues().get(1), aes);
+        assertEquals("ERROR", failed.get("status").getAsString());
+        assertEquals("Login failed, try again", failed.get("message").getAsString());
+    }
+
     @Test
     void testHandleRequestPatientByEmail() throws Exception {
         Socket socket = mock(Socket.class);
@@ -547,7 +600,7 @@ public class ClientHandlerTest {
         when(mockMed.getSignalJDBC()).thenReturn(mockSignalJDBC);
         when(mockMed.getReportJDBC()).thenReturn(mockReportJDBC);
 
-        when(mockSignalJDBC.getSignalsByPatientId(anyInt())).thenReturn(List.of());
+        when(mockSignalJDBC.getSignalSummariesByPatientId(anyInt())).thenReturn(List.of());
         when(mockReportJDBC.getReportsByPatientId(anyInt())).thenReturn(List.of());
 
         when(server.getAdminLinkService()).thenReturn(mockALS);
@@ -886,7 +939,7 @@ public class ClientHandlerTest {
         when(mockMed.getSignalJDBC()).thenReturn(mockSignalJDBC);
         when(mockMed.getReportJDBC()).thenReturn(mockReportJDBC);
 
-        when(mockSignalJDBC.getSignalsByPatientId(anyInt())).thenReturn(List.of());
+        when(mockSignalJDBC.getSignalSummariesByPatientId(anyInt())).thenReturn(List.of());
         when(mockReportJDBC.getReportsByPatientId(anyInt())).thenReturn(List.of());
 
         // --- USERS ---
@@ -910,6 +963,9 @@ public class ClientHandlerTest {
         Patient p1 = new Patient("Toni", "Blue", "t@c.com", "999", LocalDate.now(), "M", 1);
         Patient p2 = new Patient("Rosa", "Green", "r@g.com", "888", LocalDate.now(), "F", 1);
         when(mockPatientJDBC.getPatientsOfDoctor(10)).thenReturn(List.of(p1, p2));
+        when(mockMed.getDoctorPanel(10)).thenReturn(List.of(
+                new PatientPanel(p1, List.of(), List.of()),
+                new PatientPanel(p2, List.of(), List.of())));
 
         // --- 3 requests (1 good, 2 forbidden) ---
         String req1 = """
@@ -1012,6 +1068,9 @@ public class ClientHandlerTest {
         when(mockDoctorJDBC.getDoctorFromPatient(5)).thenReturn(doctor);
 
         when(mockSignalJDBC.updateSignalComments(7, "hello world")).thenReturn(true);
+        // The comments go through the write-behind queue, committed on a mocked connection
+        WriteBehindQueue writeQueue = new WriteBehindQueue(mock(java.sql.Connection.class), mock(ReportJDBC.class), mockSignalJDBC);
+        when(mockMed.getWriteBehindQueue()).thenReturn(writeQueue);
 
         String plain = """
       {"type":"SAVE_COMMENTS_SIGNAL","data":{"comments":"hello world","signal_id":7,"patient_id":5,"user_id":1}}
@@ -1037,6 +1096,8 @@ public class ClientHandlerTest {
 
         assertEquals("SAVE_COMMENTS_SIGNAL_RESPONSE", resp.get("type").getAsString());
         assertEquals("SUCCESS", resp.get("status").getAsString());
+        assertEquals(1, writeQueue.getWrites());
+        writeQueue.close();
     }
 
     @Test
@@ -1205,6 +1266,85 @@ public class ClientHandlerTest {
         assertTrue(decryptedResponse.contains("Signal uploaded correctly"));
     }
 
+    @Test
+    void testHandleChunkedUploadSignal() throws Exception {
+        // -------- 1) Mock socket + server + handler --------
+        Socket socket = mock(Socket.class);
+        when(socket.getInputStream()).thenReturn(in);
+        when(socket.getOutputStream()).thenReturn(out);
+        when(socket.getInetAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+
+        Server server = mock(Server.class);
+        ClientHandler handler = new ClientHandler(socket, server, RSAKeyManager.generateKeyPair());
+
+        PrintWriter mockWriter = mock(PrintWriter.class);
+        setField(handler, "out", mockWriter);
+        SecretKey aesKey = TokenUtils.generateToken();
+        setField(handler, "token", aesKey);
+
+        // -------- 2) Wire server → AdminLinkService → MedicalManager → JDBC --------
+        AdminLinkService mockALS = mock(AdminLinkService.class);
+        MedicalManager mockMed = mock(MedicalManager.class);
+        PatientJDBC mockPatientJDBC = mock(PatientJDBC.class);
+        SignalJDBC mockSignalJDBC = mock(SignalJDBC.class);
+        when(server.getAdminLinkService()).thenReturn(mockALS);
+        when(mockALS.getMedicalManager()).thenReturn(mockMed);
+        when(mockMed.getPatientJDBC()).thenReturn(mockPatientJDBC);
+        when(mockMed.getSignalJDBC()).thenReturn(mockSignalJDBC);
+
+        Patient fakePatient = new Patient("Test", "Patient", "email@x.com", "12", LocalDate.now(), "F", 99);
+        fakePatient.setId(12);
+        when(mockPatientJDBC.findPatientByID(12)).thenReturn(fakePatient);
+
+        // The file must still hold the whole recording when it is inserted
+        List<String> insertedContent = new ArrayList<>();
+        when(mockSignalJDBC.insertSignal(any(Signal.class))).thenAnswer(inv -> {
+            Signal signal = inv.getArgument(0);
+            insertedContent.add(Files.readString(signal.getFile().toPath()));
+            return true;
+        });
+
+        // -------- 3) BEGIN --------
+        ArgumentCaptor<JsonObject> captor = ArgumentCaptor.forClass(JsonObject.class);
+        handler.processLine(encryptedLine("""
+        {"type": "UPLOAD_SIGNAL_BEGIN",
+         "metadata": {"patient_id": 12, "sampling_rate": 500, "timestamp": "2025-02-12T18:32:11"},
+         "filename": "signal_test.zip"}
+        """, aesKey));
+        verify(mockWriter).println(captor.capture());
+        JsonObject begin = JsonParser.parseString(
+                TokenUtils.decrypt(captor.getValue().get("data").getAsString(), aesKey)).getAsJsonObject();
+        assertEquals("SUCCESS", begin.get("status").getAsString());
+        String uploadId = begin.get("upload_id").getAsString();
+
+        // -------- 4) Two CHUNKs, not acknowledged one by one --------
+        String[] parts = {"SIGNAL_", "TEST_DATA"};
+        for (int seq = 0; seq < parts.length; seq++) {
+            handler.processLine(encryptedLine("""
+            {"type": "UPLOAD_SIGNAL_CHUNK", "upload_id": "%s", "seq": %d, "dataBytes": "%s"}
+            """.formatted(uploadId, seq, Base64.getEncoder().encodeToString(parts[seq].getBytes())), aesKey));
+        }
+        verify(mockWriter, times(1)).println(any(JsonObject.class));
+
+        // -------- 5) END --------
+        handler.processLine(encryptedLine("""
+        {"type": "UPLOAD_SIGNAL_END", "upload_id": "%s", "chunks": 2, "total_size": 16}
+        """.formatted(uploadId), aesKey));
+        verify(mockWriter, times(2)).println(captor.capture());
+        String end = TokenUtils.decrypt(captor.getValue().get("data").getAsString(), aesKey);
+
+        assertTrue(end.contains("\"type\":\"UPLOAD_SIGNAL_RESPONSE\""));
+        assertTrue(end.contains("\"status\":\"SUCCESS\""));
+        assertEquals(List.of("SIGNAL_TEST_DATA"), insertedContent);
+    }
+
+    private static String encryptedLine(String innerJson, SecretKey aesKey) throws Exception {
+        JsonObject wrapper = new JsonObject();
+        wrapper.addProperty("type", "ENCRYPTED");
+        wrapper.addProperty("data", TokenUtils.encrypt(innerJson, aesKey));
+        return wrapper.toString();
+    }
+
     @Test
     void testHandleRequestSignal2() throws Exception {
         // ---- 1) Socket + Server + handler ----
@@ -1254,7 +1394,7 @@ public class ClientHandlerTest {
 
         Signal fakeSignal = new Signal(zip, LocalDate.now(), "Hello world", 15, 1000);
         fakeSignal.setId(88);
-        when(mockSignalJDBC.findSignalById(88)).thenReturn(fakeSignal);
+        when(mockSignalJDBC.openSignal(88)).thenReturn(fakeSignal);
 
         // ---- 6) Inner REQUEST_SIGNAL JSON ----
         String innerJson = """
@@ -1299,6 +1439,82 @@ public class ClientHandlerTest {
         assertTrue(decResp.contains("REQUEST_SIGNAL_RESPONSE"));
     }
 
+    @Test
+    void testHandleChunkedRequestSignalResumes() throws Exception {
+        // ---- 1) Server deps: doctor user and a signal extracted to a fresh temp file on every lookup ----
+        Server server = mock(Server.class);
+        AdminLinkService mockALS = mock(AdminLinkService.class);
+        MedicalManager mockMed = mock(MedicalManager.class);
+        SecurityManager mockSec = mock(SecurityManager.class);
+        UserJDBC mockUserJDBC = mock(UserJDBC.class);
+        RoleJDBC mockRoleJDBC = mock(RoleJDBC.class);
+        SignalJDBC mockSignalJDBC = mock(SignalJDBC.class);
+        when(server.getAdminLinkService()).thenReturn(mockALS);
+        when(mockALS.getMedicalManager()).thenReturn(mockMed);
+        when(mockALS.getSecurityManager()).thenReturn(mockSec);
+        when(mockMed.getSignalJDBC()).thenReturn(mockSignalJDBC);
+        when(mockSec.getUserJDBC()).thenReturn(mockUserJDBC);
+        when(mockSec.getRoleJDBC()).thenReturn(mockRoleJDBC);
+        when(mockUserJDBC.findUserByID(1)).thenReturn(new User(1, "doc@mail.com", "pass", true, 1, "dummy"));
+        when(mockRoleJDBC.findRoleByID(1)).thenReturn(new Role(1, "Doctor"));
+        when(mockSignalJDBC.openSignal(88)).thenAnswer(inv -> {
+            File zip = File.createTempFile("signal88_", ".zip");
+            Files.writeString(zip.toPath(), "FAKE_ZIP_CONTENT");
+            Signal signal = new Signal(zip, LocalDate.now(), "Hello world", 15, 1000);
+            signal.setId(88);
+            return signal;
+        });
+
+        SecretKey aesKey = TokenUtils.generateToken();
+        Socket socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+
+        // ---- 2) First session: metadata, then the first 10 bytes ----
+        PrintWriter firstWriter = mock(PrintWriter.class);
+        ClientHandler first = new ClientHandler(socket, server, keyPair, firstWriter);
+        setField(first, "token", aesKey);
+
+        first.processLine(encryptedLine("""
+        {"type": "REQUEST_SIGNAL", "data": {"signal_id": 88, "user_id": 1, "chunked": true}}
+        """, aesKey));
+        first.processLine(encryptedLine("""
+        {"type": "REQUEST_SIGNAL_CHUNK", "data": {"signal_id": 88, "user_id": 1, "offset": 0, "length": 10}}
+        """, aesKey));
+
+        ArgumentCaptor<JsonObject> captor = ArgumentCaptor.forClass(JsonObject.class);
+        verify(firstWriter, times(2)).println(captor.capture());
+        JsonObject meta = decryptResponse(captor.getAllValues().get(0), aesKey);
+        JsonObject chunk0 = decryptResponse(captor.getAllValues().get(1), aesKey);
+        assertEquals("SUCCESS", meta.get("status").getAsString());
+        assertEquals(16, meta.get("total_size").getAsLong());
+        assertFalse(meta.has("dataBytes"));
+        assertEquals(0, chunk0.get("offset").getAsLong());
+        assertEquals(10, chunk0.get("length").getAsInt());
+        assertFalse(chunk0.get("last").getAsBoolean());
+
+        // ---- 3) Connection lost, a new session resumes from the stored offset ----
+        PrintWriter secondWriter = mock(PrintWriter.class);
+        ClientHandler second = new ClientHandler(socket, server, keyPair, secondWriter);
+        setField(second, "token", aesKey);
+        second.processLine(encryptedLine("""
+        {"type": "REQUEST_SIGNAL_CHUNK", "data": {"signal_id": 88, "user_id": 1, "offset": 10}}
+        """, aesKey));
+
+        verify(secondWriter).println(captor.capture());
+        JsonObject chunk1 = decryptResponse(captor.getValue(), aesKey);
+        assertEquals("REQUEST_SIGNAL_CHUNK_RESPONSE", chunk1.get("type").getAsString());
+        assertEquals(10, chunk1.get("offset").getAsLong());
+        assertTrue(chunk1.get("last").getAsBoolean());
+
+        String received = new String(Base64.getDecoder().decode(chunk0.get("dataBytes").getAsString()))
+                + new String(Base64.getDecoder().decode(chunk1.get("dataBytes").getAsString()));
+        assertEquals("FAKE_ZIP_CONTENT", received);
+    }
+
+    private static JsonObject decryptResponse(JsonObject wrapper, SecretKey aesKey) throws Exception {
+        return JsonParser.parseString(TokenUtils.decrypt(wrapper.get("data").getAsString(), aesKey)).getAsJsonObject();
+    }
+
     @Test
     void testHandleRequestPatientSignals2() throws Exception {
         // ---- 1) Socket + Server + handler ----
@@ -1350,10 +1566,10 @@ public class ClientHandlerTest {
                         LocalDate.now(), "F", 1));
 
         // Signals
-        when(mockSignalJDBC.getSignalsByPatientId(patientId)).thenReturn(List.of(
-                new Signal(1, LocalDate.now(), "Sig 1", 10, 500),
-                new Signal(2, LocalDate.now(), "Sig 2", 15, 1000),
-                new Signal(3, LocalDate.now(), "Sig 3", 20, 2000)
+        when(mockSignalJDBC.getSignalSummariesByPatientId(patientId)).thenReturn(List.of(
+                new SignalSummary(1, LocalDate.now(), "Sig 1", 10, 500),
+                new SignalSummary(2, LocalDate.now(), "Sig 2", 15, 1000),
+                new SignalSummary(3, LocalDate.now(), "Sig 3", 20, 2000)
         ));
 
         // ---- 5) Inner REQUEST_PATIENT_SIGNALS JSON ----
@@ -1401,5 +1617,216 @@ public class ClientHandlerTest {
         assertTrue(decResp.contains("\"signal_id\":3"));
     }
 
-}
+    @Test
+    void testRequestsAreBoundToTheLoggedInUser() throws Exception {
+        Server server = mock(Server.class);
+        AdminLinkService mockALS = mock(AdminLinkService.class);
+        MedicalManager mockMed = mock(MedicalManager.class);
+        SecurityManager mockSec = mock(SecurityManager.class);
+        UserJDBC mockUserJDBC = mock(UserJDBC.class);
+        RoleJDBC mockRoleJDBC = mock(RoleJDBC.class);
+        SignalJDBC mockSignalJDBC = mock(SignalJDBC.class);
+        when(server.getAdminLinkService()).thenReturn(mockALS);
+        when(mockALS.getMedicalManager()).thenReturn(mockMed);
+        when(mockALS.getSecurityManager()).thenReturn(mockSec);
+        when(mockMed.getSignalJDBC()).thenReturn(mockSignalJDBC);
+        when(mockSec.getUserJDBC()).thenReturn(mockUserJDBC);
+        when(mockSec.getRoleJDBC()).thenReturn(mockRoleJDBC);
+        when(mockUserJDBC.findUserByID(1)).thenReturn(new User(1, "doc@mail.com", "pass", true, 1, "dummy"));
+        when(mockUserJDBC.findUserByID(2)).thenReturn(new User(2, "doc2@mail.com", "pass", true, 1, "dummy"));
+        when(mockRoleJDBC.findRoleByID(1)).thenReturn(new Role(1, "Doctor"));
+
+        SecretKey aesKey = TokenUtils.generateToken();
+        Socket socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+        PrintWriter writer = mock(PrintWriter.class);
+        ClientHandler handler = new ClientHandler(socket, server, keyPair, writer);
+        setField(handler, "token", aesKey);
+        setField(handler, "principal", new User(1, "doc@mail.com", "pass", true, 1, "dummy"));
+
+        String request = """
+        {"type": "REQUEST_PATIENT_SIGNALS", "data": {"patient_id": 88, "user_id": %d}}
+        """;
+        // Own user: allowed
+        handler.processLine(encryptedLine(request.formatted(1), aesKey));
+        // Another doctor's user_id: refused, even though that user exists
+        handler.processLine(encryptedLine(request.formatted(2), aesKey));
+        // The account is deactivated while the session is open: refused on the next request
+        when(mockUserJDBC.findUserByID(1)).thenReturn(new User(1, "doc@mail.com", "pass", false, 1, "dummy"));
+        handler.processLine(encryptedLine(request.formatted(1), aesKey));
+
+        ArgumentCaptor<JsonObject> captor = ArgumentCaptor.forClass(JsonObject.class);
+        verify(writer, times(3)).println(captor.capture());
+        assertEquals("SUCCESS", decryptResponse(captor.getAllValues().get(0), aesKey).get("status").getAsString());
+        assertEquals("ERROR", decryptResponse(captor.getAllValues().get(1), aesKey).get("status").getAsString());
+        assertEquals("ERROR", decryptResponse(captor.getAllValues().get(2), aesKey).get("status").getAsString());
+    }
+
+    @Test
+    void testUnknownTypesAreRecordedUnderOneLabel() throws Exception {
+        Server server = mock(Server.class);
+        SecretKey aesKey = TokenUtils.generateToken();
+        Socket socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+        ClientHandler handler = new ClientHandler(socket, server, keyPair, mock(PrintWriter.class));
+        setField(handler, "token", aesKey);
+
+        metrics.ServerMetrics serverMetrics = metrics.ServerMetrics.getInstance();
+        metrics.ServerMetrics.TypeSnapshot before = serverMetrics.snapshot().types().get(metrics.ServerMetrics.UNKNOWN_TYPE);
+        handler.processLine(encryptedLine("""
+        {"type": "JUNK_TYPE_42", "data": {}}
+        """, aesKey));
+
+        java.util.Map<String, metrics.ServerMetrics.TypeSnapshot> types = serverMetrics.snapshot().types();
+        assertFalse(types.containsKey("JUNK_TYPE_42"));
+        assertEquals((before == null ? 0 : before.count()) + 1, types.get(metrics.ServerMetrics.UNKNOWN_TYPE).count());
+    }
+
+    @Test
+    void testBinaryFramingIsNegotiatedWithClientAesKey() throws Exception {
+        Server server = mock(Server.class);
+        Socket socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+        StringWriter text = new StringWriter();
+        List<byte[]> written = new ArrayList<>();
+        boolean[] started = {false};
+        FrameChannel channel = new FrameChannel() {
+            @Override
+            public void startFrames() {
+                started[0] = true;
+            }
+
+            @Override
+            public void writeFrame(byte[] frame) {
+                written.add(frame);
+            }
+
+            @Override
+            public void closeAfterWrites() {
+            }
+        };
+        ClientHandler handler = new ClientHandler(socket, server, keyPair, new PrintWriter(text, true), channel);
+
+        handler.sendPublicKey();
+        JsonObject publicKey = JsonParser.parseString(text.toString().trim()).getAsJsonObject();
+        assertEquals("binary", publicKey.getAsJsonArray("framing").get(1).getAsString());
+
+        // Token sent by TOKEN_REQUEST, confirmed by the client
+        SecretKey aesKey = TokenUtils.generateToken();
+        setField(handler, "token", aesKey);
+        JsonObject clientAesKey = new JsonObject();
+        clientAesKey.addProperty("type", "CLIENT_AES_KEY");
+        clientAesKey.addProperty("data", RSAUtil.encrypt(Base64.getEncoder().encodeToString(aesKey.getEncoded()), keyPair.getPublic()));
+        clientAesKey.addProperty("framing", "binary");
+        text.getBuffer().setLength(0);
+        handler.processLine(clientAesKey.toString());
+
+        assertTrue(started[0]);
+        assertTrue(text.toString().contains("\"framing\":\"binary\""));
+
+        // A chunk with raw bytes for an unknown upload: the error comes back as a binary frame
+        SessionCipher clientCipher = new SessionCipher(aesKey);
+        byte[] request = BinaryFrame.encode(clientCipher,
+                "{\"type\":\"UPLOAD_SIGNAL_CHUNK\",\"upload_id\":\"u1\",\"seq\":0}", new byte[]{1, 2, 3});
+        handler.processFrame(java.util.Arrays.copyOfRange(request, BinaryFrame.LENGTH_BYTES, request.length));
+
+        assertEquals(1, written.size());
+        byte[] frame = written.get(0);
+        assertEquals(frame.length - BinaryFrame.LENGTH_BYTES, java.nio.ByteBuffer.wrap(frame).getInt());
+        BinaryFrame.Message response = BinaryFrame.decode(clientCipher,
+                java.util.Arrays.copyOfRange(frame, BinaryFrame.LENGTH_BYTES, frame.length));
+        JsonObject json = JsonParser.parseString(response.json()).getAsJsonObject();
+        assertEquals("UPLOAD_SIGNAL_CHUNK_RESPONSE", json.get("type").getAsString());
+        assertEquals("ERROR", json.get("status").getAsString());
+
+        // A modified header is rejected
+        frame[BinaryFrame.LENGTH_BYTES + 1] = BinaryFrame.FLAG_DATA;
+        assertThrows(java.security.GeneralSecurityException.class, () -> BinaryFrame.decode(clientCipher,
+                java.util.Arrays.copyOfRange(frame, BinaryFrame.LENGTH_BYTES, frame.length)));
+    }
 
+    @Test
+    void testBinaryFrameReadGrowsWithTheBytesReceived() throws Exception {
+        // A whole frame larger than the first buffer arrives intact
+        byte[] payload = new byte[3 * BinaryFrame.READ_CHUNK_BYTES + 5];
+        new java.util.Random(3).nextBytes(payload);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new DataOutputStream(stream).writeInt(payload.length);
+        stream.write(payload);
+        assertArrayEquals(payload, BinaryFrame.read(new ByteArrayInputStream(stream.toByteArray()), BinaryFrame.maxFrameBytes()));
+
+        // A header announcing a large frame followed by a few bytes fails without allocating the announced length
+        stream.reset();
+        new DataOutputStream(stream).writeInt(BinaryFrame.maxFrameBytes());
+        stream.write(new byte[100]);
+        assertThrows(EOFException.class, () -> BinaryFrame.read(new ByteArrayInputStream(stream.toByteArray()), BinaryFrame.maxFrameBytes()));
+
+        // Longer than the limit: refused before reading
+        stream.reset();
+        new DataOutputStream(stream).writeInt(BinaryFrame.maxFrameBytes() + 1);
+        assertThrows(IOException.class, () -> BinaryFrame.read(new ByteArrayInputStream(stream.toByteArray()), BinaryFrame.maxFrameBytes()));
+    }
+
+    @Test
+    void testResumeSessionWithTicketSkipsHandshake() throws Exception {
+        Server server = mock(Server.class);
+        AdminLinkService mockALS = mock(AdminLinkService.class);
+        MedicalManager mockMed = mock(MedicalManager.class);
+        SecurityManager mockSec = mock(SecurityManager.class);
+        UserJDBC mockUserJDBC = mock(UserJDBC.class);
+        when(server.getAdminLinkService()).thenReturn(mockALS);
+        when(mockALS.getMedicalManager()).thenReturn(mockMed);
+        when(mockALS.getSecurityManager()).thenReturn(mockSec);
+        when(mockMed.getSignalJDBC()).thenReturn(mock(SignalJDBC.class));
+        when(mockSec.getUserJDBC()).thenReturn(mockUserJDBC);
+        when(mockUserJDBC.findUserByID(1)).thenReturn(new User(1, "doc@mail.com", "pass", true, 1, "dummy"));
+        SessionTicketService tickets = new SessionTicketService(60_000);
+        when(server.getSessionTickets()).thenReturn(tickets);
+
+        // Ticket received in the LOGIN_RESPONSE of an earlier connection
+        SecretKey loginKey = TokenUtils.generateToken();
+        String ticket = tickets.issue(1, SessionTicketService.generation("pass"), loginKey);
+
+        Socket socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+        StringWriter text = new StringWriter();
+        ClientHandler handler = new ClientHandler(socket, server, keyPair, new PrintWriter(text, true));
+
+        byte[] clientNonce = SessionTicketService.newNonce();
+        JsonObject resume = new JsonObject();
+        resume.addProperty("type", "RESUME_SESSION");
+        resume.addProperty("ticket", ticket);
+        resume.addProperty("client_nonce", Base64.getEncoder().encodeToString(clientNonce));
+        handler.processLine(resume.toString());
+
+        JsonObject response = JsonParser.parseString(text.toString().trim()).getAsJsonObject();
+        assertEquals("SUCCESS", response.get("status").getAsString());
+        SecretKey resumedKey = SessionTicketService.deriveKey(loginKey, clientNonce,
+                Base64.getDecoder().decode(response.get("server_nonce").getAsString()));
+        assertNotEquals(Base64.getEncoder().encodeToString(loginKey.getEncoded()),
+                Base64.getEncoder().encodeToString(resumedKey.getEncoded()));
+
+        // Logged in as the ticket's user, with the derived key
+        text.getBuffer().setLength(0);
+        handler.processLine(encryptedLine("""
+        {"type": "REQUEST_PATIENT_SIGNALS", "data": {"patient_id": 88, "user_id": 2}}
+        """, resumedKey));
+        JsonObject wrapper = JsonParser.parseString(text.toString().trim()).getAsJsonObject();
+        assertEquals("ERROR", decryptResponse(wrapper, resumedKey).get("status").getAsString());
+
+        // A modified ticket is refused
+        StringWriter other = new StringWriter();
+        ClientHandler second = new ClientHandler(socket, server, keyPair, new PrintWriter(other, true));
+        resume.addProperty("ticket", ticket.substring(0, ticket.length() - 2) + (ticket.endsWith("A") ? "BB" : "AA"));
+        second.processLine(resume.toString());
+        assertEquals("ERROR", JsonParser.parseString(other.toString().trim()).getAsJsonObject().get("status").getAsString());
+
+        // After a password change the ticket is refused
+        when(mockUserJDBC.findUserByID(1)).thenReturn(new User(1, "doc@mail.com", "newpass", true, 1, "dummy"));
+        StringWriter third = new StringWriter();
+        ClientHandler afterChange = new ClientHandler(socket, server, keyPair, new PrintWriter(third, true));
+        resume.addProperty("ticket", ticket);
+        afterChange.processLine(resume.toString());
+        assertEquals("ERROR", JsonParser.parseString(third.toString().trim()).getAsJsonObject().get("status").getAsString());
+    }
+}
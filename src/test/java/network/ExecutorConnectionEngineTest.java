@@ -0,0 +1,61 @@
+package network;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba que el motor de conexiones limita las sesiones activas,
+/// encola hasta el límite de la cola de aceptación y rechaza el resto.
+class ExecutorConnectionEngineTest {
+
+    private ExecutorConnectionEngine engine;
+
+    @AfterEach
+    void tearDown() {
+        if (engine != null) engine.shutdown();
+    }
+
+    @Test
+    void testRejectsSessionsBeyondMaxAndQueue() throws Exception {
+        engine = new ExecutorConnectionEngine(2, 1, true);
+        engine.start();
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        Runnable blockingSession = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        assertTrue(engine.submit(blockingSession));
+        assertTrue(engine.submit(blockingSession));
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        assertTrue(engine.submit(blockingSession)); // waits in the accept queue
+        assertFalse(engine.submit(blockingSession)); // rejected
+
+        assertEquals(2, engine.getActiveSessions());
+        assertEquals(1, engine.getQueuedSessions());
+
+        release.countDown();
+    }
+
+    @Test
+    void testRejectsBeforeStartAndAfterShutdown() {
+        engine = new ExecutorConnectionEngine(1, 1, false);
+        assertFalse(engine.submit(() -> {}));
+
+        engine.start();
+        assertTrue(engine.submit(() -> {}));
+
+        engine.shutdown();
+        assertFalse(engine.submit(() -> {}));
+    }
+}
@@ -3,17 +3,23 @@ package network;
 import Exceptions.ClientError;
 import encryption.TokenUtils;
 import org.example.service.AdminLinkService;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import ui.windows.Application;
 
 import javax.crypto.SecretKey;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.*;
+import java.nio.file.Path;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -32,6 +38,20 @@ class ServerTest {
     private OutputStream out;
     private AdminLinkService adminLinkService;
 
+    @TempDir
+    static Path keystoreDir;
+
+    @BeforeAll
+    static void useTemporaryKeystore() {
+        // The servers of the tests must not write a real private key to the default keystore
+        System.setProperty("nightguardian.keystore", keystoreDir.resolve("server_keys.p12").toString());
+    }
+
+    @AfterAll
+    static void clearKeystore() {
+        System.clearProperty("nightguardian.keystore");
+    }
+
     @BeforeEach
     void setUp() throws Exception {
         serverSocket = mock(ServerSocket.class);
@@ -127,4 +147,43 @@ class ServerTest {
         assertEquals(0, server.getConnectedClients().size());
     }
 
+    @Test
+    void testNioTransportSendsPublicKeyAndTracksClients() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Server nioServer = new Server(port, adminLinkService);
+        nioServer.setTransport(Server.Transport.NIO);
+        nioServer.startServer();
+
+        try (Socket client1 = connectWithRetry(port); Socket client2 = connectWithRetry(port)) {
+            BufferedReader reader1 = new BufferedReader(new InputStreamReader(client1.getInputStream()));
+            BufferedReader reader2 = new BufferedReader(new InputStreamReader(client2.getInputStream()));
+            assertTrue(reader1.readLine().contains("SERVER_PUBLIC_KEY"));
+            assertTrue(reader2.readLine().contains("SERVER_PUBLIC_KEY"));
+            assertEquals(2, nioServer.getConnectedClients().size());
+
+            client1.close();
+            for (int i = 0; i < 50 && nioServer.getConnectedClients().size() != 1; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, nioServer.getConnectedClients().size());
+        } finally {
+            nioServer.stop();
+        }
+        assertFalse(nioServer.isRunning());
+    }
+
+    private static Socket connectWithRetry(int port) throws Exception {
+        for (int i = 0; ; i++) {
+            try {
+                return new Socket("127.0.0.1", port);
+            } catch (ConnectException e) {
+                if (i == 50) throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package org.example.JDBC;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba el pool de conexiones: lectores en paralelo con su propia conexión,
+/// un único escritor, transacciones que solo ve el hilo que las abre y la caché de sentencias.
+class ConnectionPoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ConnectionPool pool;
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = new ConnectionPool("jdbc:sqlite:" + tempDir.resolve("pool.db"), 4, 2000);
+        connection = pool.getConnection();
+        try (PreparedStatement ps = connection.prepareStatement("CREATE TABLE item (id INTEGER PRIMARY KEY, name TEXT)")) {
+            ps.executeUpdate();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    void testDatabaseInWalMode() throws Exception {
+        try (PreparedStatement ps = connection.prepareStatement("PRAGMA journal_mode");
+             ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals("wal", rs.getString(1));
+        }
+    }
+
+    @Test
+    void testConcurrentReadersGetTheirOwnConnection() throws Exception {
+        insert("a");
+        CyclicBarrier allReading = new CyclicBarrier(3);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Callable<Connection> reader = () -> {
+                try (PreparedStatement ps = connection.prepareStatement("SELECT name FROM item");
+                     ResultSet rs = ps.executeQuery()) {
+                    assertTrue(rs.next());
+                    allReading.await(5, TimeUnit.SECONDS); // the three statements are open at once
+                    return ps.getConnection();
+                }
+            };
+            Future<Connection> r1 = executor.submit(reader);
+            Future<Connection> r2 = executor.submit(reader);
+            Future<Connection> r3 = executor.submit(reader);
+            assertNotSame(r1.get(), r2.get());
+            assertNotSame(r2.get(), r3.get());
+            assertNotSame(r1.get(), r3.get());
+            assertEquals(3, pool.getOpenReaders());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTransactionOnlyBelongsToItsThread() throws Exception {
+        connection.setAutoCommit(false);
+        insert("uncommitted");
+        assertFalse(connection.getAutoCommit());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Another client still runs in autocommit mode and does not see the pending row
+            assertTrue(executor.submit(() -> connection.getAutoCommit()).get());
+            assertEquals(0, executor.submit(this::count).get());
+            // The owner reads its own write
+            assertEquals(1, count());
+
+            connection.rollback();
+            connection.setAutoCommit(true);
+            assertEquals(0, count());
+
+            // Once released, the other thread can write
+            executor.submit(() -> insert("other")).get(5, TimeUnit.SECONDS);
+            assertEquals(1, count());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testWritersWaitForTheTransaction() throws Exception {
+        connection.setAutoCommit(false);
+        insert("first");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> second = executor.submit(() -> insert("second"));
+            Thread.sleep(200);
+            assertFalse(second.isDone()); // waiting for the writer lane
+
+            connection.commit();
+            connection.setAutoCommit(true);
+            second.get(5, TimeUnit.SECONDS);
+            assertEquals(2, count());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testWriterLaneTimeout() throws Exception {
+        ConnectionPool quick = new ConnectionPool("jdbc:sqlite:" + tempDir.resolve("pool.db"), 1, 100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            quick.getConnection().setAutoCommit(false);
+            Future<?> blocked = executor.submit(() -> {
+                try (PreparedStatement ps = quick.getConnection().prepareStatement("INSERT INTO item (name) VALUES ('x')")) {
+                    ps.executeUpdate();
+                }
+                return null;
+            });
+            ExecutionException e = assertThrows(ExecutionException.class, () -> blocked.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(SQLException.class, e.getCause());
+            quick.getConnection().setAutoCommit(true);
+        } finally {
+            executor.shutdownNow();
+            quick.close();
+        }
+    }
+
+    @Test
+    void testPreparedStatementsAreReused() throws Exception {
+        insert("a");
+        long misses = pool.getStatementCacheMisses();
+        long hits = pool.getStatementCacheHits();
+        assertEquals(1, count());
+        assertEquals(1, count());
+        assertEquals(misses + 1, pool.getStatementCacheMisses());
+        assertEquals(hits + 1, pool.getStatementCacheHits());
+
+        // The same SQL prepared twice at once gets two statements
+        try (PreparedStatement outer = connection.prepareStatement("SELECT name FROM item WHERE id = ?");
+             PreparedStatement inner = connection.prepareStatement("SELECT name FROM item WHERE id = ?")) {
+            assertNotSame(outer, inner);
+            outer.setInt(1, 1);
+            inner.setInt(1, 2);
+            try (ResultSet rs = outer.executeQuery()) {
+                assertTrue(rs.next());
+            }
+            try (ResultSet rs = inner.executeQuery()) {
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+    @Test
+    void testClosedStatementCannotBeUsed() throws Exception {
+        PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM item");
+        ps.close();
+        assertTrue(ps.isClosed());
+        assertThrows(SQLException.class, ps::executeQuery);
+    }
+
+    @Test
+    void testCachedReaderSeesNewWrites() throws Exception {
+        // Like most DAO methods, the result set is not closed before the statement
+        assertEquals(0, countLeavingResultOpen());
+        insert("a");
+        assertEquals(1, countLeavingResultOpen());
+        insert("b");
+        assertEquals(2, countLeavingResultOpen());
+    }
+
+    private Void insert(String name) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO item (name) VALUES (?)")) {
+            ps.setString(1, name);
+            ps.executeUpdate();
+        }
+        return null;
+    }
+
+    private int countLeavingResultOpen() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM item")) {
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private int count() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM item");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.example.JDBC.medicaldb;
+
+import org.example.entities_medicaldb.Signal;
+import org.example.entities_medicaldb.SignalSummary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba el almacén de señales por contenido: las grabaciones se guardan fuera
+/// de la fila, se comparten entre señales iguales y solo se borran con la última referencia; una
+/// inserción que falla no deja su grabación en disco.
+class SignalJDBCTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Connection connection;
+    private SignalJDBC signalJDBC;
+    private SignalBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("medical.db"));
+        try (Statement st = connection.createStatement()) {
+            // Same table as Medicaldb.db before the blob store existed
+            st.executeUpdate("CREATE TABLE Signal (id INTEGER PRIMARY KEY AUTOINCREMENT, path BLOB NOT NULL, "
+                    + "date TEXT, comments TEXT, sampleFrequency REAL, patient_id INTEGER)");
+        }
+        blobStore = new SignalBlobStore(tempDir.resolve("blobs"));
+        signalJDBC = new SignalJDBC(connection, blobStore);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+    }
+
+    private File recording(String content) throws Exception {
+        File file = Files.createTempFile(tempDir, "signal_", ".zip").toFile();
+        Files.writeString(file.toPath(), content);
+        return file;
+    }
+
+    @Test
+    void testSharedRecordingIsDeletedWithLastReference() throws Exception {
+        Signal first = new Signal(recording("SAME_RECORDING"), LocalDate.now(), "", 1, 100);
+        Signal second = new Signal(recording("SAME_RECORDING"), LocalDate.now(), "", 2, 100);
+        assertTrue(signalJDBC.insertSignal(first));
+        assertTrue(signalJDBC.insertSignal(second));
+        assertEquals(first.getBlobSha256(), second.getBlobSha256());
+
+        Signal stored = signalJDBC.findSignalById(1);
+        assertEquals(first.getBlobSha256(), stored.getBlobSha256());
+        assertEquals("SAME_RECORDING", Files.readString(stored.getFile().toPath()));
+
+        signalJDBC.deleteSignal(1);
+        assertTrue(blobStore.contains(first.getBlobSha256()));
+        signalJDBC.deleteSignal(2);
+        assertFalse(blobStore.contains(first.getBlobSha256()));
+    }
+
+    @Test
+    void testFailedInsertDoesNotLeaveItsRecording() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("DROP TABLE Signal"); // the INSERT fails after the recording is published
+        }
+        assertFalse(signalJDBC.insertSignal(new Signal(recording("LOST"), LocalDate.now(), "", 1, 100)));
+
+        try (Stream<Path> files = Files.walk(tempDir.resolve("blobs"))) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testRecordingDeletedAfterStagingIsStoredAgain() throws Exception {
+        File file = recording("DELETED_MEANWHILE");
+        assertTrue(signalJDBC.insertSignal(new Signal(file, LocalDate.now(), "", 1, 100)));
+        SignalBlobStore.Staged staged = blobStore.stage(file); // already stored: nothing copied
+        signalJDBC.deleteSignal(1);
+        assertFalse(blobStore.contains(staged.getSha256()));
+
+        assertTrue(blobStore.publish(staged));
+        assertEquals("DELETED_MEANWHILE", Files.readString(blobStore.get(staged.getSha256()).toPath()));
+    }
+
+    @Test
+    void testSummariesOnlyReadMetadata() throws Exception {
+        assertTrue(signalJDBC.insertSignal(new Signal(recording("A"), LocalDate.of(2025, 2, 12), "first", 7, 250)));
+        assertTrue(signalJDBC.insertSignal(new Signal(recording("B"), LocalDate.of(2025, 2, 13), "", 8, 500)));
+
+        List<SignalSummary> summaries = signalJDBC.getSignalSummariesByPatientId(7);
+        assertEquals(1, summaries.size());
+        assertEquals("first", summaries.get(0).getComments());
+        assertEquals(250, summaries.get(0).getSampleFrequency());
+        assertEquals(LocalDate.of(2025, 2, 12), summaries.get(0).getDate());
+        assertEquals("signal_1.zip", summaries.get(0).toJson().get("path").getAsString());
+
+        assertEquals(8, signalJDBC.findSignalSummaryById(2).getPatientId());
+        assertNull(signalJDBC.findSignalSummaryById(3));
+        assertEquals(2, signalJDBC.getAllSignalSummaries().size());
+    }
+
+    @Test
+    void testSignalSummariesOfDoctorInOneQuery() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("CREATE TABLE Patient (id INTEGER PRIMARY KEY, doctor_id INTEGER)");
+            st.executeUpdate("INSERT INTO Patient (id, doctor_id) VALUES (1, 10), (2, 10), (3, 20)");
+        }
+        for (int patientId = 1; patientId <= 3; patientId++) {
+            assertTrue(signalJDBC.insertSignal(new Signal(recording("R" + patientId), LocalDate.now(), "", patientId, 100)));
+        }
+        assertTrue(signalJDBC.insertSignal(new Signal(recording("R1b"), LocalDate.now(), "", 1, 100)));
+
+        Map<Integer, List<SignalSummary>> panel = signalJDBC.getSignalSummariesOfDoctor(10);
+        assertEquals(2, panel.size());
+        assertEquals(2, panel.get(1).size());
+        assertEquals(1, panel.get(2).size());
+        assertFalse(panel.containsKey(3));
+    }
+
+    @Test
+    void testOpenSignalReadsInlineRecordingInRanges() throws Exception {
+        byte[] recording = new byte[SqliteBlobChannel.MAX_READ_BYTES * 2 + 123];
+        new Random(7).nextBytes(recording);
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO Signal (path, date, comments, sampleFrequency, patient_id) VALUES (?, NULL, '', 100, 1)")) {
+            ps.setBytes(1, recording);
+            ps.executeUpdate();
+        }
+
+        Signal signal = signalJDBC.openSignal(1);
+        assertNull(signal.getFile()); // nothing copied to disk
+        try (InputStream in = signal.openRecordingStream()) {
+            assertArrayEquals(recording, in.readAllBytes());
+        }
+        try (SeekableByteChannel channel = signal.openRecording()) {
+            assertEquals(recording.length, channel.size());
+            ByteBuffer tail = ByteBuffer.allocate(10);
+            channel.position(recording.length - 10).read(tail);
+            assertArrayEquals(Arrays.copyOfRange(recording, recording.length - 10, recording.length), tail.array());
+        }
+        assertNull(signalJDBC.openSignal(2));
+    }
+
+    @Test
+    void testMigrationMovesInlineRecordings() throws Exception {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO Signal (path, date, comments, sampleFrequency, patient_id) VALUES (?, NULL, '', 100, 1)")) {
+            ps.setBytes(1, "OLD_RECORDING".getBytes());
+            ps.executeUpdate();
+        }
+        assertNull(signalJDBC.findSignalById(1).getBlobSha256());
+
+        SignalBlobMigration migration = new SignalBlobMigration(connection, signalJDBC);
+        assertEquals(1, migration.moveInlineSignals());
+        assertEquals(0, migration.moveInlineSignals());
+
+        Signal migrated = signalJDBC.findSignalById(1);
+        assertNotNull(migrated.getBlobSha256());
+        assertEquals("OLD_RECORDING", Files.readString(migrated.getFile().toPath()));
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT length(path), (SELECT refcount FROM SignalBlob) FROM Signal")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+            assertEquals(1, rs.getInt(2));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.JDBC.medicaldb;
+
+import org.example.entities_medicaldb.Report;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/// Comprueba la cola de escrituras diferidas: agrupa en una transacción lo que llega
+/// mientras se escribe y solo confirma al cliente después del commit.
+class WriteBehindQueueTest {
+
+    @Test
+    void testPendingWritesShareOneTransaction() throws Exception {
+        Connection connection = mock(Connection.class);
+        ReportJDBC reportJDBC = mock(ReportJDBC.class);
+        SignalJDBC signalJDBC = mock(SignalJDBC.class);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        when(signalJDBC.updateSignalComments(eq(1), anyString())).thenAnswer(inv -> {
+            firstStarted.countDown();
+            releaseFirst.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        when(reportJDBC.insertReport(any(Report.class))).thenReturn(true);
+        when(signalJDBC.updateSignalComments(eq(2), anyString())).thenReturn(false); // no such signal
+
+        try (WriteBehindQueue queue = new WriteBehindQueue(connection, reportJDBC, signalJDBC)) {
+            CompletableFuture<Boolean> first = queue.updateSignalComments(1, "first");
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+            // Queued while the first batch is being written
+            List<CompletableFuture<Boolean>> reports = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                reports.add(queue.insertReport(new Report(0, LocalDate.now(), new ArrayList<>(), i)));
+            }
+            CompletableFuture<Boolean> missing = queue.updateSignalComments(2, "missing");
+            assertFalse(first.isDone()); // not acknowledged before the commit
+
+            releaseFirst.countDown();
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+            for (CompletableFuture<Boolean> report : reports) {
+                assertTrue(report.get(5, TimeUnit.SECONDS));
+            }
+            assertFalse(missing.get(5, TimeUnit.SECONDS));
+            assertEquals(2, queue.getBatches());
+            assertEquals(12, queue.getWrites());
+        }
+        verify(connection, times(2)).commit();
+    }
+
+    @Test
+    void testFailedCommitIsNotAcknowledged() throws Exception {
+        Connection connection = mock(Connection.class);
+        ReportJDBC reportJDBC = mock(ReportJDBC.class);
+        when(reportJDBC.insertReport(any(Report.class))).thenReturn(true);
+        doThrow(new SQLException("disk I/O error")).when(connection).commit();
+
+        try (WriteBehindQueue queue = new WriteBehindQueue(connection, reportJDBC, mock(SignalJDBC.class))) {
+            CompletableFuture<Boolean> saved = queue.insertReport(new Report(0, LocalDate.now(), new ArrayList<>(), 1));
+            assertFalse(saved.get(5, TimeUnit.SECONDS));
+        }
+        verify(connection).rollback();
+        verify(connection).setAutoCommit(true);
+    }
+}
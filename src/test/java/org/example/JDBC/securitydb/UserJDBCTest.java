@@ -0,0 +1,129 @@
+package org.example.JDBC.securitydb;
+
+import encryption.PasswordHash;
+import org.example.entities_securitydb.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Base64;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba la caché de claves públicas: se parsea una sola vez por usuario y clave,
+/// y al cambiar la clave se descarta la anterior. También que el login rehace los hashes antiguos,
+/// lee el rol en la misma consulta y recuerda los emails que no existen hasta que se registran.
+class UserJDBCTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Connection connection;
+    private UserJDBC userJDBC;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("security.db"));
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("CREATE TABLE Users (id INTEGER PRIMARY KEY AUTOINCREMENT, email TEXT UNIQUE, password TEXT, "
+                    + "role_id INTEGER, publicKey TEXT, active BOOLEAN)");
+            st.executeUpdate("CREATE TABLE roles (id INTEGER PRIMARY KEY, rolename TEXT)");
+            st.executeUpdate("INSERT INTO roles (id, rolename) VALUES (2, 'Patient')");
+        }
+        userJDBC = new UserJDBC(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+    }
+
+    private static String newPublicKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair pair = generator.generateKeyPair();
+        return Base64.getEncoder().encodeToString(pair.getPublic().getEncoded());
+    }
+
+    @Test
+    void testPublicKeyIsParsedOnceAndDroppedWhenChanged() throws Exception {
+        String firstKey = newPublicKey();
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("INSERT INTO Users (email, password, role_id, publicKey, active) "
+                    + "VALUES ('pat@mail.com', 'x', 2, '" + firstKey + "', 1)");
+        }
+        User user = userJDBC.findUserByEmail("pat@mail.com");
+
+        PublicKey parsed = userJDBC.getPublicKey(user);
+        assertEquals(firstKey, Base64.getEncoder().encodeToString(parsed.getEncoded()));
+        assertSame(parsed, userJDBC.getPublicKey(userJDBC.findUserByEmail("pat@mail.com")));
+        assertEquals(1, userJDBC.getPublicKeyCacheMisses());
+        assertEquals(1, userJDBC.getPublicKeyCacheHits());
+
+        String secondKey = newPublicKey();
+        assertTrue(userJDBC.changePublicKey(user, secondKey));
+        PublicKey changed = userJDBC.getPublicKey(userJDBC.findUserByEmail("pat@mail.com"));
+        assertEquals(secondKey, Base64.getEncoder().encodeToString(changed.getEncoded()));
+
+        user.setPublicKey("not a key");
+        assertNull(userJDBC.getPublicKey(user));
+    }
+
+    @Test
+    void testLoginReplacesLegacyHash() throws Exception {
+        byte[] salt = new byte[16];
+        PBEKeySpec spec = new PBEKeySpec("Secret123!".toCharArray(), salt, 1000, 64 * 8);
+        byte[] hash = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(spec).getEncoded();
+        String legacy = "1000:" + HexFormat.of().formatHex(salt) + ":" + HexFormat.of().formatHex(hash);
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("INSERT INTO Users (email, password, role_id, publicKey, active) "
+                    + "VALUES ('pat@mail.com', '" + legacy + "', 2, 'key', 1)");
+        }
+
+        assertNull(userJDBC.login("pat@mail.com", "Wrong123!"));
+        assertEquals(legacy, userJDBC.findUserByEmail("pat@mail.com").getPassword());
+
+        User user = userJDBC.login("pat@mail.com", "Secret123!");
+        assertNotNull(user);
+        String stored = userJDBC.findUserByEmail("pat@mail.com").getPassword();
+        assertEquals(stored, user.getPassword());
+        assertTrue(stored.startsWith("v2:"));
+        assertFalse(PasswordHash.needsRehash(stored));
+        assertNotNull(userJDBC.login("pat@mail.com", "Secret123!"));
+        assertEquals(stored, userJDBC.findUserByEmail("pat@mail.com").getPassword());
+    }
+
+    @Test
+    void testAuthenticateReadsRoleAndRemembersUnknownEmails() throws Exception {
+        assertNull(userJDBC.authenticate("pat@mail.com", "Secret123!"));
+        assertFalse(userJDBC.isUser("pat@mail.com"));
+        assertNull(userJDBC.authenticate("pat@mail.com", "Secret123!"));
+        assertEquals(2, userJDBC.getUnknownEmailHits());
+
+        User user = new User("pat@mail.com", PasswordHash.generatePasswordHash("Secret123!"), false);
+        user.setRole_id(2);
+        user.setPublicKey("key");
+        assertTrue(userJDBC.insertUser(user));
+
+        assertTrue(userJDBC.isUser("pat@mail.com"));
+        UserJDBC.Credentials credentials = userJDBC.authenticate("pat@mail.com", "Secret123!");
+        assertTrue(credentials.passwordMatches());
+        assertEquals("Patient", credentials.rolename());
+        assertEquals("pat@mail.com", credentials.user().getEmail());
+        assertFalse(credentials.user().isActive());
+        assertFalse(userJDBC.authenticate("pat@mail.com", "Wrong123!").passwordMatches());
+        assertNull(userJDBC.login("pat@mail.com", "Wrong123!"));
+        assertEquals(2, userJDBC.getUnknownEmailHits());
+    }
+}
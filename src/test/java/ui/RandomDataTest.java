@@ -0,0 +1,46 @@
+package ui;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/// Comprueba las grabaciones sintéticas: un zip con un único csv de BITalino, una línea por muestra y una
+/// columna por canal con valores de 10 bits, y la misma grabación con la misma semilla.
+class RandomDataTest {
+
+    @Test
+    void testRecordingHasOneCsvWithASampleOfEveryChannelPerLine() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        RandomData.writeSignalZip(zip, new Random(1), 120, 100, RandomData.Channel.ECG, RandomData.Channel.EEG, RandomData.Channel.ACC);
+
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+            ZipEntry entry = in.getNextEntry();
+            assertNotNull(entry);
+            assertTrue(entry.getName().matches("bitalino_\\d+\\.csv"), entry.getName());
+            String[] lines = new String(in.readAllBytes(), StandardCharsets.US_ASCII).split("\n");
+            assertNull(in.getNextEntry());
+
+            assertEquals(120 * 100, lines.length);
+            for (String line : lines) {
+                String[] values = line.split(";");
+                assertEquals(3, values.length, line);
+                for (String value : values) {
+                    int sample = Integer.parseInt(value);
+                    assertTrue(sample >= 0 && sample <= 1023, line);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSameSeedGivesTheSameRecording() {
+        assertArrayEquals(RandomData.generateSignalZip(new Random(7), 30, 100), RandomData.generateSignalZip(new Random(7), 30, 100));
+    }
+}